@@ -86,6 +86,7 @@ public class HiveConf extends Configuration {
       HiveConf.ConfVars.METASTORE_IDENTIFIER_FACTORY,
       HiveConf.ConfVars.METASTORE_PLUGIN_REGISTRY_BUNDLE_CHECK,
       HiveConf.ConfVars.METASTORE_AUTHORIZATION_STORAGE_AUTH_CHECKS,
+      HiveConf.ConfVars.METASTORE_TRY_DIRECT_SQL,
       };
 
   /**
@@ -215,6 +216,7 @@ public class HiveConf extends Configuration {
     METASTORE_IDENTIFIER_FACTORY("datanucleus.identifierFactory", "datanucleus"),
     METASTORE_PLUGIN_REGISTRY_BUNDLE_CHECK("datanucleus.plugin.pluginRegistryBundleCheck", "LOG"),
     METASTORE_BATCH_RETRIEVE_MAX("hive.metastore.batch.retrieve.max", 300),
+    METASTORE_TRY_DIRECT_SQL("hive.metastore.try.direct.sql", true),
     METASTORE_EVENT_LISTENERS("hive.metastore.event.listeners", ""),
     // should we do checks against the storage (usually hdfs) for operations like drop_partition
     METASTORE_AUTHORIZATION_STORAGE_AUTH_CHECKS("hive.metastore.authorization.storage.checks", false),
@@ -266,6 +268,13 @@ public class HiveConf extends Configuration {
     HIVEGROUPBYSKEW("hive.groupby.skewindata", "false"),
     HIVEJOINEMITINTERVAL("hive.join.emit.interval", 1000),
     HIVEJOINCACHESIZE("hive.join.cache.size", 25000),
+    HIVEJOINSPILLCOMPACT("hive.join.spill.compact", true),
+    HIVEJOINSPILLCOMPRESS("hive.join.spill.compress", false),
+    HIVEJOINSPILLCOMPRESSCODEC("hive.join.spill.compress.codec",
+        "org.apache.hadoop.io.compress.DefaultCodec"),
+    HIVEJOINSPILLBLOCKBYTES("hive.join.spill.block.bytes", (long) 16 * 1024 * 1024),
+    HIVEJOINSPILLPREFETCH("hive.join.spill.prefetch", true),
+    HIVEJOINBATCHSPILLEDKEYS("hive.join.batch.spilled.keys", false),
     HIVEMAPJOINBUCKETCACHESIZE("hive.mapjoin.bucket.cache.size", 100),
     HIVEMAPJOINROWSIZE("hive.mapjoin.size.key", 10000),
     HIVEMAPJOINCACHEROWS("hive.mapjoin.cache.numrows", 25000),
@@ -274,8 +283,15 @@ public class HiveConf extends Configuration {
     HIVEMAPJOINFOLLOWEDBYMAPAGGRHASHMEMORY("hive.mapjoin.followby.map.aggr.hash.percentmemory", (float) 0.3),
     HIVEMAPAGGRMEMORYTHRESHOLD("hive.map.aggr.hash.force.flush.memory.threshold", (float) 0.9),
     HIVEMAPAGGRHASHMINREDUCTION("hive.map.aggr.hash.min.reduction", (float) 0.5),
+    HIVEMAPAGGRHASHPRIMITIVEKEYS("hive.map.aggr.hash.primitive.keys", true),
+    HIVEMAPAGGRHASHSPILL("hive.map.aggr.hash.spill", false),
+    HIVEMAPAGGRHASHSPILLPARTITIONS("hive.map.aggr.hash.spill.partitions", 16),
     HIVEMULTIGROUPBYSINGLEMR("hive.multigroupby.singlemr", false),
 
+    // vectorized execution of the map-side operator pipeline
+    HIVE_VECTORIZATION_ENABLED("hive.vectorized.execution.enabled", false),
+    HIVE_VECTORIZATION_BATCH_SIZE("hive.vectorized.batch.size", 1024),
+
     // for hive udtf operator
     HIVEUDTFAUTOPROGRESS("hive.udtf.auto.progress", false),
 
@@ -342,16 +358,24 @@ public class HiveConf extends Configuration {
     HIVEHASHTABLEFOLLOWBYGBYMAXMEMORYUSAGE("hive.mapjoin.followby.gby.localtask.max.memory.usage", (float) 0.55),
     HIVEHASHTABLEMAXMEMORYUSAGE("hive.mapjoin.localtask.max.memory.usage", (float) 0.90),
     HIVEHASHTABLESCALE("hive.mapjoin.check.memory.rows", (long)100000),
+    HIVEMAPJOINMAPPEDTABLE("hive.mapjoin.mapped.hashtable", false),
+    HIVEMAPJOINCACHEHASHTABLES("hive.mapjoin.cache.hashtables", true),
+    HIVEMAPJOINGRACEHASH("hive.mapjoin.grace.hash", false),
+    HIVEMAPJOINGRACEHASHPARTITIONS("hive.mapjoin.grace.hash.partitions", 16),
 
     HIVEDEBUGLOCALTASK("hive.debug.localtask",false),
 
     HIVEJOBPROGRESS("hive.task.progress", false),
 
     HIVEINPUTFORMAT("hive.input.format", ""),
+    HIVE_INPUT_SPLIT_THREADS("hive.input.split.threads", 8),
+    HIVE_INPUT_PATH_CACHE("hive.input.path.cache", false),
+    HIVE_INPUT_PATH_CACHE_SIZE("hive.input.path.cache.size", 10000),
 
     HIVEENFORCEBUCKETING("hive.enforce.bucketing", false),
     HIVEENFORCESORTING("hive.enforce.sorting", false),
     HIVEPARTITIONER("hive.mapred.partitioner", "org.apache.hadoop.hive.ql.io.DefaultHivePartitioner"),
+    HIVE_SORT_KEY_PREFIX("hive.mapred.sort.key.prefix", false),
 
     HIVESCRIPTOPERATORTRUST("hive.exec.script.trust", false),
     HIVEROWOFFSET("hive.exec.rowoffset", false),
@@ -364,6 +388,7 @@ public class HiveConf extends Configuration {
     HIVEOPTPPD("hive.optimize.ppd", true), // predicate pushdown
     // push predicates down to storage handlers
     HIVEOPTPPD_STORAGE("hive.optimize.ppd.storage", true),
+    HIVEOPTRCFILESTATSFILTER("hive.optimize.rcfile.stats.filter", false),
     HIVEOPTGROUPBY("hive.optimize.groupby", true), // optimize group by
     HIVEOPTBUCKETMAPJOIN("hive.optimize.bucketmapjoin", false), // optimize bucket map join
     HIVEOPTSORTMERGEBUCKETMAPJOIN("hive.optimize.bucketmapjoin.sortedmerge", false), // try to use sorted merge bucket map join
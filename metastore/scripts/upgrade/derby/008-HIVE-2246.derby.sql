@@ -0,0 +1,83 @@
+--
+-- HIVE-2246 Dedupe tables' column schemas from partitions in the metastore db
+--
+
+--
+-- CDS and COLUMNS_V2: the column descriptors shared by storage descriptors
+--
+CREATE TABLE "CDS" (
+  "CD_ID" BIGINT NOT NULL);
+
+ALTER TABLE "CDS" ADD CONSTRAINT "CDS_PK"
+  PRIMARY KEY ("CD_ID");
+
+CREATE TABLE "COLUMNS_V2" (
+  "CD_ID" BIGINT NOT NULL,
+  "COMMENT" VARCHAR(256),
+  "COLUMN_NAME" VARCHAR(128) NOT NULL,
+  "TYPE_NAME" VARCHAR(4000) NOT NULL,
+  "INTEGER_IDX" INTEGER NOT NULL);
+
+ALTER TABLE "COLUMNS_V2" ADD CONSTRAINT "COLUMNS_V2_PK"
+  PRIMARY KEY ("CD_ID", "COLUMN_NAME");
+
+ALTER TABLE "COLUMNS_V2" ADD CONSTRAINT "COLUMNS_V2_FK1"
+  FOREIGN KEY ("CD_ID") REFERENCES "CDS" ("CD_ID")
+  ON DELETE NO ACTION ON UPDATE NO ACTION;
+
+ALTER TABLE "SDS" ADD COLUMN "CD_ID" BIGINT;
+
+ALTER TABLE "SDS" ADD CONSTRAINT "SDS_FK2"
+  FOREIGN KEY ("CD_ID") REFERENCES "CDS" ("CD_ID")
+  ON DELETE NO ACTION ON UPDATE NO ACTION;
+
+--
+-- Every storage descriptor first gets its own column descriptor, whose id is
+-- the id of the storage descriptor
+--
+INSERT INTO "CDS" ("CD_ID")
+  SELECT "SD_ID" FROM "SDS";
+
+INSERT INTO "COLUMNS_V2" ("CD_ID", "COMMENT", "COLUMN_NAME", "TYPE_NAME", "INTEGER_IDX")
+  SELECT "SD_ID", "COMMENT", "COLUMN_NAME", "TYPE_NAME", "INTEGER_IDX" FROM "COLUMNS";
+
+UPDATE "SDS" SET "CD_ID" = "SD_ID";
+
+--
+-- The partitions that have the same columns as their table share the column
+-- descriptor of the table
+--
+UPDATE "SDS" SET "CD_ID" = (
+    SELECT "TBLS"."SD_ID" FROM "PARTITIONS", "TBLS"
+    WHERE "PARTITIONS"."TBL_ID" = "TBLS"."TBL_ID"
+      AND "PARTITIONS"."SD_ID" = "SDS"."SD_ID")
+  WHERE "SD_ID" IN (
+    SELECT P."SD_ID" FROM "PARTITIONS" P, "TBLS" T
+    WHERE P."TBL_ID" = T."TBL_ID" AND T."SD_ID" IS NOT NULL
+      AND (SELECT COUNT(*) FROM "COLUMNS" PC WHERE PC."SD_ID" = P."SD_ID")
+        = (SELECT COUNT(*) FROM "COLUMNS" TC WHERE TC."SD_ID" = T."SD_ID")
+      AND NOT EXISTS (
+        SELECT 1 FROM "COLUMNS" PC WHERE PC."SD_ID" = P."SD_ID" AND NOT EXISTS (
+          SELECT 1 FROM "COLUMNS" TC WHERE TC."SD_ID" = T."SD_ID"
+            AND TC."INTEGER_IDX" = PC."INTEGER_IDX"
+            AND TC."COLUMN_NAME" = PC."COLUMN_NAME"
+            AND TC."TYPE_NAME" = PC."TYPE_NAME"
+            AND (TC."COMMENT" = PC."COMMENT"
+              OR (TC."COMMENT" IS NULL AND PC."COMMENT" IS NULL)))));
+
+DELETE FROM "COLUMNS_V2" WHERE "CD_ID" NOT IN (
+  SELECT "CD_ID" FROM "SDS" WHERE "CD_ID" IS NOT NULL);
+
+DELETE FROM "CDS" WHERE "CD_ID" NOT IN (
+  SELECT "CD_ID" FROM "SDS" WHERE "CD_ID" IS NOT NULL);
+
+--
+-- The ids of the new column descriptors follow the ids of the storage
+-- descriptors
+--
+INSERT INTO "SEQUENCE_TABLE" ("SEQUENCE_NAME", "NEXT_VAL")
+  SELECT 'org.apache.hadoop.hive.metastore.model.MColumnDescriptor', "NEXT_VAL"
+  FROM "SEQUENCE_TABLE"
+  WHERE "SEQUENCE_NAME" = 'org.apache.hadoop.hive.metastore.model.MStorageDescriptor';
+
+DROP TABLE "COLUMNS";
@@ -0,0 +1,61 @@
+SELECT '< HIVE-2246 Dedupe tables column schemas from partitions in the metastore db >' AS ' ';
+
+CREATE TABLE IF NOT EXISTS `CDS` (
+  `CD_ID` bigint(20) NOT NULL,
+  PRIMARY KEY (`CD_ID`)
+) ENGINE=InnoDB DEFAULT CHARSET=latin1;
+
+CREATE TABLE IF NOT EXISTS `COLUMNS_V2` (
+  `CD_ID` bigint(20) NOT NULL,
+  `COMMENT` varchar(256) CHARACTER SET latin1 COLLATE latin1_bin DEFAULT NULL,
+  `COLUMN_NAME` varchar(128) CHARACTER SET latin1 COLLATE latin1_bin NOT NULL,
+  `TYPE_NAME` varchar(4000) CHARACTER SET latin1 COLLATE latin1_bin NOT NULL,
+  `INTEGER_IDX` int(11) NOT NULL,
+  PRIMARY KEY (`CD_ID`,`COLUMN_NAME`),
+  KEY `COLUMNS_V2_N49` (`CD_ID`),
+  CONSTRAINT `COLUMNS_V2_FK1` FOREIGN KEY (`CD_ID`) REFERENCES `CDS` (`CD_ID`)
+) ENGINE=InnoDB DEFAULT CHARSET=latin1;
+
+ALTER TABLE `SDS`
+  ADD COLUMN `CD_ID` bigint(20) DEFAULT NULL,
+  ADD KEY `SDS_N50` (`CD_ID`),
+  ADD CONSTRAINT `SDS_FK2` FOREIGN KEY (`CD_ID`) REFERENCES `CDS` (`CD_ID`);
+
+-- Every storage descriptor first gets its own column descriptor
+INSERT INTO `CDS` (`CD_ID`)
+  SELECT `SD_ID` FROM `SDS`;
+
+INSERT INTO `COLUMNS_V2` (`CD_ID`, `COMMENT`, `COLUMN_NAME`, `TYPE_NAME`, `INTEGER_IDX`)
+  SELECT `SD_ID`, `COMMENT`, `COLUMN_NAME`, `TYPE_NAME`, `INTEGER_IDX` FROM `COLUMNS`;
+
+UPDATE `SDS` SET `CD_ID` = `SD_ID`;
+
+-- The partitions that have the same columns as their table share its descriptor
+UPDATE `SDS` S
+  JOIN `PARTITIONS` P ON P.`SD_ID` = S.`SD_ID`
+  JOIN `TBLS` T ON T.`TBL_ID` = P.`TBL_ID`
+  SET S.`CD_ID` = T.`SD_ID`
+  WHERE T.`SD_ID` IS NOT NULL
+    AND (SELECT COUNT(*) FROM `COLUMNS` PC WHERE PC.`SD_ID` = P.`SD_ID`)
+      = (SELECT COUNT(*) FROM `COLUMNS` TC WHERE TC.`SD_ID` = T.`SD_ID`)
+    AND NOT EXISTS (
+      SELECT 1 FROM `COLUMNS` PC WHERE PC.`SD_ID` = P.`SD_ID` AND NOT EXISTS (
+        SELECT 1 FROM `COLUMNS` TC WHERE TC.`SD_ID` = T.`SD_ID`
+          AND TC.`INTEGER_IDX` = PC.`INTEGER_IDX`
+          AND TC.`COLUMN_NAME` = PC.`COLUMN_NAME`
+          AND TC.`TYPE_NAME` = PC.`TYPE_NAME`
+          AND TC.`COMMENT` <=> PC.`COMMENT`));
+
+DELETE FROM `COLUMNS_V2` WHERE `CD_ID` NOT IN (
+  SELECT `CD_ID` FROM `SDS` WHERE `CD_ID` IS NOT NULL);
+
+DELETE FROM `CDS` WHERE `CD_ID` NOT IN (
+  SELECT `CD_ID` FROM `SDS` WHERE `CD_ID` IS NOT NULL);
+
+-- The ids of the new column descriptors follow the ids of the storage descriptors
+INSERT INTO `SEQUENCE_TABLE` (`SEQUENCE_NAME`, `NEXT_VAL`)
+  SELECT 'org.apache.hadoop.hive.metastore.model.MColumnDescriptor', `NEXT_VAL`
+  FROM `SEQUENCE_TABLE`
+  WHERE `SEQUENCE_NAME` = 'org.apache.hadoop.hive.metastore.model.MStorageDescriptor';
+
+DROP TABLE `COLUMNS`;
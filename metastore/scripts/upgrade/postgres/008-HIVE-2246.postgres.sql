@@ -0,0 +1,79 @@
+SELECT '< HIVE-2246 Dedupe tables column schemas from partitions in the metastore db >';
+
+--
+-- Table: CDS
+--
+CREATE TABLE "CDS" (
+  "CD_ID" bigint NOT NULL,
+  PRIMARY KEY ("CD_ID")
+);
+
+--
+-- Table: COLUMNS_V2
+--
+CREATE TABLE "COLUMNS_V2" (
+  "CD_ID" bigint NOT NULL,
+  "COMMENT" character varying(256) DEFAULT NULL,
+  "COLUMN_NAME" character varying(128) NOT NULL,
+  "TYPE_NAME" character varying(4000) NOT NULL,
+  "INTEGER_IDX" bigint NOT NULL,
+  PRIMARY KEY ("CD_ID", "COLUMN_NAME")
+);
+CREATE INDEX "COLUMNS_V2_N49" on "COLUMNS_V2" ("CD_ID");
+
+ALTER TABLE "SDS" ADD COLUMN "CD_ID" bigint DEFAULT NULL;
+CREATE INDEX "SDS_N50" on "SDS" ("CD_ID");
+
+--
+-- Foreign Key Definitions
+--
+
+ALTER TABLE "COLUMNS_V2" ADD FOREIGN KEY ("CD_ID")
+  REFERENCES "CDS" ("CD_ID") DEFERRABLE;
+
+ALTER TABLE "SDS" ADD FOREIGN KEY ("CD_ID")
+  REFERENCES "CDS" ("CD_ID") DEFERRABLE;
+
+--
+-- Every storage descriptor first gets its own column descriptor
+--
+INSERT INTO "CDS" ("CD_ID")
+  SELECT "SD_ID" FROM "SDS";
+
+INSERT INTO "COLUMNS_V2" ("CD_ID", "COMMENT", "COLUMN_NAME", "TYPE_NAME", "INTEGER_IDX")
+  SELECT "SD_ID", "COMMENT", "COLUMN_NAME", "TYPE_NAME", "INTEGER_IDX" FROM "COLUMNS";
+
+UPDATE "SDS" SET "CD_ID" = "SD_ID";
+
+--
+-- The partitions that have the same columns as their table share its descriptor
+--
+UPDATE "SDS" SET "CD_ID" = T."SD_ID"
+  FROM "PARTITIONS" P, "TBLS" T
+  WHERE P."SD_ID" = "SDS"."SD_ID" AND T."TBL_ID" = P."TBL_ID"
+    AND T."SD_ID" IS NOT NULL
+    AND (SELECT COUNT(*) FROM "COLUMNS" PC WHERE PC."SD_ID" = P."SD_ID")
+      = (SELECT COUNT(*) FROM "COLUMNS" TC WHERE TC."SD_ID" = T."SD_ID")
+    AND NOT EXISTS (
+      SELECT 1 FROM "COLUMNS" PC WHERE PC."SD_ID" = P."SD_ID" AND NOT EXISTS (
+        SELECT 1 FROM "COLUMNS" TC WHERE TC."SD_ID" = T."SD_ID"
+          AND TC."INTEGER_IDX" = PC."INTEGER_IDX"
+          AND TC."COLUMN_NAME" = PC."COLUMN_NAME"
+          AND TC."TYPE_NAME" = PC."TYPE_NAME"
+          AND TC."COMMENT" IS NOT DISTINCT FROM PC."COMMENT"));
+
+DELETE FROM "COLUMNS_V2" WHERE "CD_ID" NOT IN (
+  SELECT "CD_ID" FROM "SDS" WHERE "CD_ID" IS NOT NULL);
+
+DELETE FROM "CDS" WHERE "CD_ID" NOT IN (
+  SELECT "CD_ID" FROM "SDS" WHERE "CD_ID" IS NOT NULL);
+
+--
+-- The ids of the new column descriptors follow the ids of the storage descriptors
+--
+INSERT INTO "SEQUENCE_TABLE" ("SEQUENCE_NAME", "NEXT_VAL")
+  SELECT 'org.apache.hadoop.hive.metastore.model.MColumnDescriptor', "NEXT_VAL"
+  FROM "SEQUENCE_TABLE"
+  WHERE "SEQUENCE_NAME" = 'org.apache.hadoop.hive.metastore.model.MStorageDescriptor';
+
+DROP TABLE "COLUMNS";
@@ -28,9 +28,11 @@ import java.net.InetAddress;
 import java.util.ArrayList;
 import java.util.Formatter;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 import org.apache.commons.logging.Log;
@@ -1244,21 +1246,89 @@ public class HiveMetaStore extends ThriftHiveMetastore {
 
     private int add_partitions_core(final RawStore ms, final List<Partition> parts)
         throws MetaException, InvalidObjectException, AlreadyExistsException {
-      String db = parts.get(0).getDbName();
-      String tbl = parts.get(0).getTableName();
-      logInfo("add_partitions : db=" + db + " tbl=" + tbl);
+      String dbName = parts.get(0).getDbName();
+      String tblName = parts.get(0).getTableName();
+      logInfo("add_partitions : db=" + dbName + " tbl=" + tblName);
 
       boolean success = false;
+      List<Path> madeDirs = new ArrayList<Path>();
       try {
         ms.openTransaction();
+        Table tbl = ms.getTable(dbName, tblName);
+        if (tbl == null) {
+          throw new InvalidObjectException(
+              "Unable to add partitions because table or database do not exist");
+        }
+
+        List<String> partNames = new ArrayList<String>(parts.size());
+        Set<String> uniqueNames = new HashSet<String>();
         for (Partition part : parts) {
-          add_partition(part);
+          if (!dbName.equalsIgnoreCase(part.getDbName())
+              || !tblName.equalsIgnoreCase(part.getTableName())) {
+            throw new InvalidObjectException("Partition " + part.getValues()
+                + " does not belong to table " + dbName + "." + tblName);
+          }
+          String partName = Warehouse.makePartName(tbl.getPartitionKeys(), part.getValues());
+          if (!uniqueNames.add(partName)) {
+            throw new AlreadyExistsException("Partition is added twice:" + part);
+          }
+          partNames.add(partName);
         }
-        success = true;
-        ms.commitTransaction();
+
+        // look the partitions up by batches instead of one at a time
+        int batchSize = hiveConf.getIntVar(HiveConf.ConfVars.METASTORE_BATCH_RETRIEVE_MAX);
+        for (int i = 0; i < partNames.size(); i += batchSize) {
+          List<Partition> oldParts = null;
+          try {
+            oldParts = ms.getPartitionsByNames(dbName, tblName,
+                partNames.subList(i, Math.min(i + batchSize, partNames.size())));
+          } catch (NoSuchObjectException e) {
+            // this means there is no existing partition
+            oldParts = null;
+          }
+          if (oldParts != null && !oldParts.isEmpty()) {
+            throw new AlreadyExistsException("Partition already exists:" + oldParts.get(0));
+          }
+        }
+
+        // only the directories of the added partitions are looked up, not
+        // all the partition directories of the table
+        long time = System.currentTimeMillis() / 1000;
+        for (int i = 0; i < parts.size(); i++) {
+          Partition part = parts.get(i);
+          Path partLocation = getNewPartitionLocation(tbl, part);
+          if (partLocation != null) {
+            part.getSd().setLocation(partLocation.toString());
+
+            if (!wh.isDir(partLocation)) {
+              if (!wh.mkdirs(partLocation)) {
+                throw new MetaException(partLocation
+                  + " is not a directory or unable to create one");
+              }
+              madeDirs.add(partLocation);
+            }
+          }
+
+          // set create time
+          part.setCreateTime((int) time);
+          if (part.getParameters() == null ||
+              part.getParameters().get(Constants.DDL_TIME) == null) {
+            part.putToParameters(Constants.DDL_TIME, Long.toString(time));
+          }
+        }
+
+        success = ms.addPartitions(dbName, tblName, parts) && ms.commitTransaction();
       } finally {
         if (!success) {
           ms.rollbackTransaction();
+          for (Path madeDir : madeDirs) {
+            wh.deleteDir(madeDir, true);
+          }
+        }
+        for (Partition part : parts) {
+          for (MetaStoreEventListener listener : listeners) {
+            listener.onAddPartition(new AddPartitionEvent(part, success, this));
+          }
         }
       }
       return parts.size();
@@ -1295,6 +1365,32 @@ public class HiveMetaStore extends ThriftHiveMetastore {
       return ret;
     }
 
+    /**
+     * Returns the location of a partition being added: the one it specifies,
+     * or its directory under the table when it specifies none. Returns null
+     * for the partitions of views.
+     */
+    private Path getNewPartitionLocation(Table tbl, Partition part) throws MetaException {
+      String partLocationStr = null;
+      if (part.getSd() != null) {
+        partLocationStr = part.getSd().getLocation();
+      }
+      if (partLocationStr == null || partLocationStr.isEmpty()) {
+        // set default location if not specified and this is
+        // a physical table partition (not a view)
+        if (tbl.getSd().getLocation() != null) {
+          return new Path(tbl.getSd().getLocation(), Warehouse
+            .makePartName(tbl.getPartitionKeys(), part.getValues()));
+        }
+        return null;
+      }
+      if (tbl.getSd().getLocation() == null) {
+        throw new MetaException(
+          "Cannot specify location for a view partition");
+      }
+      return wh.getDnsPath(new Path(partLocationStr));
+    }
+
     private Partition add_partition_core(final RawStore ms, final Partition part)
         throws InvalidObjectException, AlreadyExistsException, MetaException {
       boolean success = false, madeDir = false;
@@ -1318,26 +1414,7 @@ public class HiveMetaStore extends ThriftHiveMetastore {
               "Unable to add partition because table or database do not exist");
         }
 
-        String partLocationStr = null;
-        if (part.getSd() != null) {
-          partLocationStr = part.getSd().getLocation();
-        }
-        if (partLocationStr == null || partLocationStr.isEmpty()) {
-          // set default location if not specified and this is
-          // a physical table partition (not a view)
-          if (tbl.getSd().getLocation() != null) {
-            partLocation = new Path(tbl.getSd().getLocation(), Warehouse
-              .makePartName(tbl.getPartitionKeys(), part.getValues()));
-          }
-
-        } else {
-          if (tbl.getSd().getLocation() == null) {
-            throw new MetaException(
-              "Cannot specify location for a view partition");
-          }
-          partLocation = wh.getDnsPath(new Path(partLocationStr));
-        }
-
+        partLocation = getNewPartitionLocation(tbl, part);
         if (partLocation != null) {
           part.getSd().setLocation(partLocation.toString());
 
@@ -2086,32 +2163,29 @@ public class HiveMetaStore extends ThriftHiveMetastore {
         final List<String> groupNames) throws MetaException, TException {
       startPartitionFunction("get_partitions_ps_with_auth", db_name, tbl_name,
           part_vals);
-      List<Partition> parts = null;
-      List<Partition> matchingParts = new ArrayList<Partition>();
-
+      List<Partition> ret = null;
       try {
-        // This gets all the partitions and then filters based on the specified
-        // criteria. An alternative approach would be to get all the partition
-        // names, do the filtering on the names, and get the partition for each
-        // of the names. that match.
-
         try {
-           parts = get_partitions(db_name, tbl_name, (short) -1);
+          get_table(db_name, tbl_name);
         } catch (NoSuchObjectException e) {
           throw new MetaException(e.getMessage());
         }
 
-        for (Partition p : parts) {
-          if (MetaStoreUtils.pvalMatches(part_vals, p.getValues())) {
-            matchingParts.add(p);
+        ret = executeWithRetry(new Command<List<Partition>>() {
+          @Override
+          public List<Partition> run(RawStore ms) throws Exception {
+            return ms.listPartitionsPs(db_name, tbl_name, part_vals, max_parts);
           }
-        }
-
-        return matchingParts;
-      }
-      finally {
+        });
+      } catch (MetaException e) {
+        throw e;
+      } catch (Exception e) {
+        assert(e instanceof RuntimeException);
+        throw (RuntimeException)e;
+      } finally {
         endFunction("get_partitions_ps_with_auth");
       }
+      return ret;
     }
 
     @Override
@@ -2120,30 +2194,23 @@ public class HiveMetaStore extends ThriftHiveMetastore {
         throws MetaException, TException {
       startPartitionFunction("get_partitions_names_ps", db_name, tbl_name, part_vals);
       try {
-        Table t;
         try {
-          t = get_table(db_name, tbl_name);
+          get_table(db_name, tbl_name);
         } catch (NoSuchObjectException e) {
           throw new MetaException(e.getMessage());
         }
 
-       List<String> partNames = get_partition_names(db_name, tbl_name, max_parts);
-       List<String> filteredPartNames = new ArrayList<String>();
-
-        for(String name : partNames) {
-          LinkedHashMap<String, String> spec = Warehouse.makeSpecFromName(name);
-          List<String> vals = new ArrayList<String>();
-          // Since we are iterating through a LinkedHashMap, iteration should
-          // return the partition values in the correct order for comparison.
-          for (String val : spec.values()) {
-            vals.add(val);
-          }
-          if (MetaStoreUtils.pvalMatches(part_vals, vals)) {
-            filteredPartNames.add(name);
+        return executeWithRetry(new Command<List<String>>() {
+          @Override
+          public List<String> run(RawStore ms) throws Exception {
+            return ms.listPartitionNamesPs(db_name, tbl_name, part_vals, max_parts);
           }
-        }
-
-        return filteredPartNames;
+        });
+      } catch (MetaException e) {
+        throw e;
+      } catch (Exception e) {
+        assert(e instanceof RuntimeException);
+        throw (RuntimeException)e;
       } finally {
         endFunction("get_partitions_names_ps");
       }
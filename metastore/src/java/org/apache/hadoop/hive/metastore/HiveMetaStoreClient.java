@@ -288,6 +288,30 @@ public class HiveMetaStoreClient implements IMetaStoreClient {
     return deepCopy(client.add_partition(new_part));
   }
 
+  /**
+   * Adds the partitions in one metastore transaction, with a single lookup
+   * of their table, when the metastore is local. The thrift interface has no
+   * call for it, so they are added one by one through a remote metastore.
+   *
+   * @param new_parts
+   * @return the number of partitions added
+   * @throws InvalidObjectException
+   * @throws AlreadyExistsException
+   * @throws MetaException
+   * @throws TException
+   */
+  public int add_partitions(List<Partition> new_parts)
+      throws InvalidObjectException, AlreadyExistsException, MetaException,
+      TException {
+    if (localMetaStore) {
+      return ((HiveMetaStore.HMSHandler) client).add_partitions(new_parts);
+    }
+    for (Partition new_part : new_parts) {
+      client.add_partition(new_part);
+    }
+    return new_parts.size();
+  }
+
   /**
    * @param table_name
    * @param db_name
@@ -243,6 +243,26 @@ public interface IMetaStoreClient {
       throws InvalidObjectException, AlreadyExistsException, MetaException,
       TException;
 
+  /**
+   * Add partitions of the same table. They are added in one batch by a local
+   * metastore only: through a remote metastore they are added one at a time.
+   *
+   * @param partitions
+   *          The partitions to add
+   * @return The number of partitions added
+   * @throws InvalidObjectException
+   *           Could not find table to add to
+   * @throws AlreadyExistsException
+   *           One of the partitions already exists
+   * @throws MetaException
+   *           Could not add partitions
+   * @throws TException
+   *           Thrift exception
+   */
+  public int add_partitions(List<Partition> partitions)
+      throws InvalidObjectException, AlreadyExistsException, MetaException,
+      TException;
+
   /**
    * @param tblName
    * @param dbName
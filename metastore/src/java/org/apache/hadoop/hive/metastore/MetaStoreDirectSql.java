@@ -0,0 +1,692 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.metastore;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.jdo.PersistenceManager;
+import javax.jdo.Query;
+import javax.jdo.datastore.JDOConnection;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hadoop.hive.metastore.api.MetaException;
+import org.apache.hadoop.hive.metastore.api.Order;
+import org.apache.hadoop.hive.metastore.api.Partition;
+import org.apache.hadoop.hive.metastore.api.SerDeInfo;
+import org.apache.hadoop.hive.metastore.api.StorageDescriptor;
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.apache.hadoop.hive.metastore.parser.ExpressionTree;
+import org.apache.hadoop.hive.metastore.parser.ExpressionTree.LeafNode;
+import org.apache.hadoop.hive.metastore.parser.ExpressionTree.LogicalOperator;
+import org.apache.hadoop.hive.metastore.parser.ExpressionTree.Operator;
+import org.apache.hadoop.hive.metastore.parser.ExpressionTree.TreeNode;
+import org.apache.hadoop.hive.serde.Constants;
+
+/**
+ * MetaStoreDirectSql retrieves partitions with SQL queries against the
+ * tables of the JDO mapping (package.jdo), instead of loading each
+ * MPartition and then its storage descriptor, columns, SerDe and parameters
+ * with separate queries. The partitions are selected with one query, then
+ * each of their parts is fetched for a batch of partitions at a time.
+ *
+ * The queries are run in the transaction of the PersistenceManager. Any
+ * failure is thrown as a MetaException, and the caller is expected to fall
+ * back to JDO.
+ */
+class MetaStoreDirectSql {
+
+  private static final Log LOG = LogFactory.getLog(MetaStoreDirectSql.class.getName());
+
+  // the number of ids or names in the IN list of a query
+  private static final int BATCH_SIZE = 1000;
+
+  private final PersistenceManager pm;
+  private final boolean isMySql;
+
+  MetaStoreDirectSql(PersistenceManager pm) throws MetaException {
+    this.pm = pm;
+    String product;
+    JDOConnection jdoConn = pm.getDataStoreConnection();
+    try {
+      product = ((Connection) jdoConn.getNativeConnection()).getMetaData()
+          .getDatabaseProductName();
+    } catch (SQLException e) {
+      throw new MetaException("Cannot get the database product: " + e);
+    } finally {
+      jdoConn.close();
+    }
+    isMySql = product != null && product.toLowerCase().contains("mysql");
+  }
+
+  /**
+   * A partition, before its values, parameters and storage descriptor are
+   * retrieved.
+   */
+  private static class PartitionRow {
+    final long partId;
+    final String name;
+    final Partition part;
+    final long sdId;
+
+    PartitionRow(long partId, String name, Partition part, long sdId) {
+      this.partId = partId;
+      this.name = name;
+      this.part = part;
+      this.sdId = sdId;
+    }
+  }
+
+  /**
+   * Get the partitions of a table, ordered by name.
+   *
+   * @param max
+   *          the maximum number of partitions, or -1
+   */
+  List<Partition> getPartitions(String dbName, String tblName, int max)
+      throws MetaException {
+    return getPartitions(dbName, tblName, null, max, true);
+  }
+
+  /**
+   * Get some partitions of a table, ordered by name.
+   *
+   * @param partNames
+   *          the names of the partitions
+   * @param max
+   *          the maximum number of partitions, or -1
+   * @param withCols
+   *          whether the columns of the storage descriptors are retrieved,
+   *          or left null
+   */
+  List<Partition> getPartitionsByNames(String dbName, String tblName,
+      List<String> partNames, int max, boolean withCols) throws MetaException {
+    if (partNames.isEmpty()) {
+      return new ArrayList<Partition>();
+    }
+    return getPartitions(dbName, tblName, partNames, max, withCols);
+  }
+
+  private List<Partition> getPartitions(String dbName, String tblName,
+      List<String> partNames, int max, boolean withCols) throws MetaException {
+    dbName = dbName.toLowerCase().trim();
+    tblName = tblName.toLowerCase().trim();
+    String sqlMode = setAnsiQuotes();
+    try {
+      // the partitions, in the order of their names
+      Map<Long, PartitionRow> parts = new LinkedHashMap<Long, PartitionRow>();
+      String partsQuery = "select \"PARTITIONS\".\"PART_ID\", \"PARTITIONS\".\"SD_ID\","
+          + " \"PARTITIONS\".\"CREATE_TIME\", \"PARTITIONS\".\"LAST_ACCESS_TIME\","
+          + " \"PARTITIONS\".\"PART_NAME\" from \"PARTITIONS\""
+          + " inner join \"TBLS\" on \"PARTITIONS\".\"TBL_ID\" = \"TBLS\".\"TBL_ID\""
+          + " inner join \"DBS\" on \"TBLS\".\"DB_ID\" = \"DBS\".\"DB_ID\""
+          + " where \"DBS\".\"NAME\" = ? and \"TBLS\".\"TBL_NAME\" = ?";
+      if (partNames == null) {
+        addPartitions(parts, partsQuery + " order by \"PARTITIONS\".\"PART_NAME\" asc",
+            new Object[] {dbName, tblName}, dbName, tblName, max);
+      } else {
+        // the names are fetched in batches, the partitions are then sorted
+        Map<String, PartitionRow> byName = new HashMap<String, PartitionRow>();
+        for (int start = 0; start < partNames.size(); start += BATCH_SIZE) {
+          List<String> batch = partNames.subList(start,
+              Math.min(partNames.size(), start + BATCH_SIZE));
+          Object[] params = new Object[batch.size() + 2];
+          params[0] = dbName;
+          params[1] = tblName;
+          StringBuilder query = new StringBuilder(partsQuery);
+          query.append(" and \"PARTITIONS\".\"PART_NAME\" in (");
+          for (int i = 0; i < batch.size(); i++) {
+            query.append(i == 0 ? "?" : ",?");
+            params[i + 2] = batch.get(i);
+          }
+          query.append(")");
+          Map<Long, PartitionRow> batchParts = new LinkedHashMap<Long, PartitionRow>();
+          addPartitions(batchParts, query.toString(), params, dbName, tblName, -1);
+          for (PartitionRow row : batchParts.values()) {
+            byName.put(row.name, row);
+          }
+        }
+        List<String> names = new ArrayList<String>(byName.keySet());
+        Collections.sort(names);
+        for (String name : names) {
+          if (max >= 0 && parts.size() >= max) {
+            break;
+          }
+          PartitionRow row = byName.get(name);
+          parts.put(row.partId, row);
+        }
+      }
+      return getPartitionDetails(dbName, tblName, parts, withCols);
+    } finally {
+      restoreSqlMode(sqlMode);
+    }
+  }
+
+  /**
+   * Get the partitions of a table matching a filter, ordered by name. The
+   * filter is evaluated against the value of each key in PARTITION_KEY_VALS,
+   * which is joined once per key used by the filter. The values of integral
+   * keys are compared as numbers, and the default partition never matches
+   * them. On MySQL, which casts the values which are not numbers to 0 rather
+   * than failing, such values never match either.
+   *
+   * @param tree
+   *          the parsed filter
+   * @param defaultPartName
+   *          the name of the partition of null or empty values
+   * @param max
+   *          the maximum number of partitions, or -1
+   * @return the partitions, or null if the filter cannot be expressed in SQL
+   */
+  List<Partition> getPartitionsByFilter(Table table, ExpressionTree tree,
+      String defaultPartName, int max) throws MetaException {
+    String dbName = table.getDbName().toLowerCase().trim();
+    String tblName = table.getTableName().toLowerCase().trim();
+    List<Object> params = new ArrayList<Object>();
+    params.add(dbName);
+    params.add(tblName);
+    String filter = "";
+    Set<Integer> keys = new TreeSet<Integer>();
+    if (tree.getRoot() != null) {
+      FilterBuilder builder = new FilterBuilder(table, dbName, tblName, defaultPartName,
+          isMySql);
+      filter = builder.build(tree.getRoot());
+      if (filter == null) {
+        return null;
+      }
+      params.addAll(builder.params);
+      keys = builder.keys;
+    }
+    String sqlMode = setAnsiQuotes();
+    try {
+      StringBuilder query = new StringBuilder("select \"PARTITIONS\".\"PART_ID\","
+          + " \"PARTITIONS\".\"SD_ID\", \"PARTITIONS\".\"CREATE_TIME\","
+          + " \"PARTITIONS\".\"LAST_ACCESS_TIME\", \"PARTITIONS\".\"PART_NAME\""
+          + " from \"PARTITIONS\""
+          + " inner join \"TBLS\" on \"PARTITIONS\".\"TBL_ID\" = \"TBLS\".\"TBL_ID\""
+          + " inner join \"DBS\" on \"TBLS\".\"DB_ID\" = \"DBS\".\"DB_ID\"");
+      for (int key : keys) {
+        query.append(" inner join \"PARTITION_KEY_VALS\" \"FILTER").append(key)
+            .append("\" on \"FILTER").append(key).append("\".\"PART_ID\" = \"PARTITIONS\".\"PART_ID\"")
+            .append(" and \"FILTER").append(key).append("\".\"INTEGER_IDX\" = ").append(key);
+      }
+      query.append(" where \"DBS\".\"NAME\" = ? and \"TBLS\".\"TBL_NAME\" = ?");
+      if (filter.length() > 0) {
+        query.append(" and (").append(filter).append(")");
+      }
+      query.append(" order by \"PARTITIONS\".\"PART_NAME\" asc");
+
+      Map<Long, PartitionRow> parts = new LinkedHashMap<Long, PartitionRow>();
+      addPartitions(parts, query.toString(), params.toArray(), dbName, tblName, max);
+      return getPartitionDetails(dbName, tblName, parts, true);
+    } finally {
+      restoreSqlMode(sqlMode);
+    }
+  }
+
+  /**
+   * Translates a filter to an SQL condition over the columns
+   * "FILTER&lt;i&gt;"."PART_KEY_VAL", i being the position of each key.
+   */
+  private static class FilterBuilder {
+    private final Table table;
+    private final String dbName;
+    private final String tblName;
+    private final String defaultPartName;
+    private final boolean isMySql;
+    // the parameters of the condition, in the order of their ?
+    final List<Object> params = new ArrayList<Object>();
+    // the positions of the keys used by the condition
+    final Set<Integer> keys = new TreeSet<Integer>();
+
+    FilterBuilder(Table table, String dbName, String tblName, String defaultPartName,
+        boolean isMySql) {
+      this.table = table;
+      this.dbName = dbName;
+      this.tblName = tblName;
+      this.defaultPartName = defaultPartName;
+      this.isMySql = isMySql;
+    }
+
+    /**
+     * @return the condition, or null if the node cannot be expressed in SQL
+     */
+    String build(TreeNode node) throws MetaException {
+      if (node instanceof LeafNode) {
+        return build((LeafNode) node);
+      }
+      if (node.getLhs() == null) {
+        return null;
+      }
+      String lhs = build(node.getLhs());
+      if (lhs == null || node.getRhs() == null) {
+        return lhs;
+      }
+      String rhs = build(node.getRhs());
+      if (rhs == null) {
+        return null;
+      }
+      return "(" + lhs + (node.getAndOr() == LogicalOperator.AND ? " and " : " or ")
+          + rhs + ")";
+    }
+
+    private String build(LeafNode leaf) throws MetaException {
+      int index;
+      try {
+        index = leaf.getPartitionKeyIndex(table);
+      } catch (MetaException e) {
+        // JDO reports the invalid key
+        return null;
+      }
+      String type = table.getPartitionKeys().get(index).getType();
+      String column = "\"FILTER" + index + "\".\"PART_KEY_VAL\"";
+      Object value = leaf.value;
+      boolean integral = INTEGRAL_TYPES.contains(type);
+      if (type.equals(Constants.STRING_TYPE_NAME)) {
+        if (!(value instanceof String)) {
+          return null;
+        }
+      } else if (integral) {
+        if (!(value instanceof Long) || leaf.operator == Operator.LIKE) {
+          return null;
+        }
+        // the values of the other tables are not cast, as they may not be
+        // numbers. MySQL casts a value which is not a number to 0, so such
+        // values are left out, as the other databases would fail on them.
+        column = "(case when \"TBLS\".\"TBL_NAME\" = ? and \"DBS\".\"NAME\" = ?"
+            + " and " + column + " <> ?" + (isMySql ? " and " + column + " regexp ?" : "")
+            + " then cast(" + column + " as decimal(21,0)) end)";
+      } else {
+        return null;
+      }
+
+      String op = leaf.operator.getOp();
+      if (leaf.operator == Operator.LIKE) {
+        if (leaf.isReverseOrder) {
+          return null;
+        }
+        value = toLikePattern((String) value);
+        if (value == null) {
+          return null;
+        }
+        op = "like";
+      }
+
+      keys.add(index);
+      StringBuilder condition = new StringBuilder();
+      if (leaf.isReverseOrder) {
+        params.add(value);
+        condition.append("? ").append(op).append(' ');
+      }
+      if (integral) {
+        params.add(tblName);
+        params.add(dbName);
+        params.add(defaultPartName);
+        if (isMySql) {
+          params.add(INTEGRAL_REGEX);
+        }
+      }
+      condition.append(column);
+      if (!leaf.isReverseOrder) {
+        params.add(value);
+        condition.append(' ').append(op).append(" ?");
+        if (leaf.operator == Operator.LIKE) {
+          condition.append(" escape '").append(LIKE_ESCAPE).append('\'');
+        }
+      }
+      return condition.toString();
+    }
+  }
+
+  private static final Set<String> INTEGRAL_TYPES = new HashSet<String>(Arrays.asList(
+      Constants.TINYINT_TYPE_NAME, Constants.SMALLINT_TYPE_NAME,
+      Constants.INT_TYPE_NAME, Constants.BIGINT_TYPE_NAME));
+
+  // the values of integral keys which are numbers, on MySQL
+  private static final String INTEGRAL_REGEX = "^[-+]?[0-9]+$";
+
+  private static final char LIKE_ESCAPE = '!';
+
+  /**
+   * Translate the regular expression of a LIKE filter to an SQL LIKE pattern.
+   * Only .* and . are translated, and characters escaped with a backslash
+   * are taken literally.
+   *
+   * @return the pattern, or null if the expression uses anything else
+   */
+  static String toLikePattern(String regex) {
+    StringBuilder pattern = new StringBuilder();
+    for (int i = 0; i < regex.length(); i++) {
+      char c = regex.charAt(i);
+      if (c == '.') {
+        if (i + 1 < regex.length() && regex.charAt(i + 1) == '*') {
+          pattern.append('%');
+          i++;
+        } else {
+          pattern.append('_');
+        }
+        continue;
+      }
+      if (c == '\\') {
+        if (i + 1 == regex.length() || Character.isLetterOrDigit(regex.charAt(i + 1))) {
+          // a trailing backslash, or a class such as \d
+          return null;
+        }
+        c = regex.charAt(++i);
+      } else if ("[](){}*+?|^$".indexOf(c) >= 0) {
+        return null;
+      }
+      if (c == '%' || c == '_' || c == LIKE_ESCAPE) {
+        pattern.append(LIKE_ESCAPE);
+      }
+      pattern.append(c);
+    }
+    return pattern.toString();
+  }
+
+  /**
+   * Retrieve the values, parameters and storage descriptors of the selected
+   * partitions.
+   */
+  private List<Partition> getPartitionDetails(String dbName, String tblName,
+      Map<Long, PartitionRow> parts, boolean withCols) throws MetaException {
+    if (parts.isEmpty()) {
+      return new ArrayList<Partition>();
+    }
+
+    List<Long> partIds = new ArrayList<Long>(parts.keySet());
+    Map<Long, StorageDescriptor> sds = new HashMap<Long, StorageDescriptor>();
+    Map<Long, Long> serdeIds = new HashMap<Long, Long>();
+    Map<Long, List<StorageDescriptor>> cds = new HashMap<Long, List<StorageDescriptor>>();
+    List<Long> sdIds = new ArrayList<Long>();
+    for (PartitionRow row : parts.values()) {
+      if (!sds.containsKey(row.sdId)) {
+        sdIds.add(row.sdId);
+        sds.put(row.sdId, null);
+      }
+    }
+
+    // the values and parameters of the partitions
+    for (Object[] row : queryByIds("select \"PART_ID\", \"PART_KEY_VAL\""
+        + " from \"PARTITION_KEY_VALS\" where \"PART_ID\" in (%s)"
+        + " order by \"PART_ID\" asc, \"INTEGER_IDX\" asc", partIds)) {
+      parts.get(toLong(row[0])).part.getValues().add((String) row[1]);
+    }
+    for (Object[] row : queryByIds("select \"PART_ID\", \"PARAM_KEY\", \"PARAM_VALUE\""
+        + " from \"PARTITION_PARAMS\" where \"PART_ID\" in (%s)", partIds)) {
+      parts.get(toLong(row[0])).part.getParameters().put((String) row[1], (String) row[2]);
+    }
+
+    // the storage descriptors, their parts and their SerDes
+    for (Object[] row : queryByIds("select \"SD_ID\", \"INPUT_FORMAT\", \"IS_COMPRESSED\","
+        + " \"LOCATION\", \"NUM_BUCKETS\", \"OUTPUT_FORMAT\", \"SERDE_ID\", \"CD_ID\""
+        + " from \"SDS\" where \"SD_ID\" in (%s)", sdIds)) {
+      long sdId = toLong(row[0]);
+      if (row[6] == null) {
+        throw new MetaException("Invalid SerDeInfo object");
+      }
+      StorageDescriptor sd = new StorageDescriptor(null, (String) row[3], (String) row[1],
+          (String) row[5], toBoolean(row[2]), toInt(row[4]),
+          new SerDeInfo(null, null, new HashMap<String, String>()),
+          new ArrayList<String>(), new ArrayList<Order>(), new HashMap<String, String>());
+      sds.put(sdId, sd);
+      serdeIds.put(sdId, toLong(row[6]));
+      if (withCols && row[7] != null) {
+        sd.setCols(new ArrayList<FieldSchema>());
+        List<StorageDescriptor> cdSds = cds.get(toLong(row[7]));
+        if (cdSds == null) {
+          cdSds = new ArrayList<StorageDescriptor>();
+          cds.put(toLong(row[7]), cdSds);
+        }
+        cdSds.add(sd);
+      }
+    }
+    for (Object[] row : queryByIds("select \"SD_ID\", \"PARAM_KEY\", \"PARAM_VALUE\""
+        + " from \"SD_PARAMS\" where \"SD_ID\" in (%s)", sdIds)) {
+      sds.get(toLong(row[0])).getParameters().put((String) row[1], (String) row[2]);
+    }
+    for (Object[] row : queryByIds("select \"SD_ID\", \"BUCKET_COL_NAME\""
+        + " from \"BUCKETING_COLS\" where \"SD_ID\" in (%s)"
+        + " order by \"SD_ID\" asc, \"INTEGER_IDX\" asc", sdIds)) {
+      sds.get(toLong(row[0])).getBucketCols().add((String) row[1]);
+    }
+    for (Object[] row : queryByIds("select \"SD_ID\", \"COLUMN_NAME\", \"ORDER\""
+        + " from \"SORT_COLS\" where \"SD_ID\" in (%s)"
+        + " order by \"SD_ID\" asc, \"INTEGER_IDX\" asc", sdIds)) {
+      sds.get(toLong(row[0])).getSortCols().add(new Order((String) row[1], toInt(row[2])));
+    }
+    // the columns are read once per column descriptor, which is usually
+    // shared by all the partitions
+    for (Object[] row : queryByIds("select \"CD_ID\", \"COLUMN_NAME\", \"TYPE_NAME\","
+        + " \"COMMENT\" from \"COLUMNS_V2\" where \"CD_ID\" in (%s)"
+        + " order by \"CD_ID\" asc, \"INTEGER_IDX\" asc",
+        new ArrayList<Long>(cds.keySet()))) {
+      for (StorageDescriptor sd : cds.get(toLong(row[0]))) {
+        sd.getCols().add(new FieldSchema((String) row[1], (String) row[2], (String) row[3]));
+      }
+    }
+
+    // the SerDes, which may be shared by storage descriptors
+    Map<Long, List<SerDeInfo>> serdes = new HashMap<Long, List<SerDeInfo>>();
+    for (Map.Entry<Long, Long> e : serdeIds.entrySet()) {
+      List<SerDeInfo> infos = serdes.get(e.getValue());
+      if (infos == null) {
+        infos = new ArrayList<SerDeInfo>(1);
+        serdes.put(e.getValue(), infos);
+      }
+      infos.add(sds.get(e.getKey()).getSerdeInfo());
+    }
+    List<Long> serdeIdList = new ArrayList<Long>(serdes.keySet());
+    for (Object[] row : queryByIds("select \"SERDE_ID\", \"NAME\", \"SLIB\""
+        + " from \"SERDES\" where \"SERDE_ID\" in (%s)", serdeIdList)) {
+      for (SerDeInfo serde : serdes.get(toLong(row[0]))) {
+        serde.setName((String) row[1]);
+        serde.setSerializationLib((String) row[2]);
+      }
+    }
+    for (Object[] row : queryByIds("select \"SERDE_ID\", \"PARAM_KEY\", \"PARAM_VALUE\""
+        + " from \"SERDE_PARAMS\" where \"SERDE_ID\" in (%s)", serdeIdList)) {
+      for (SerDeInfo serde : serdes.get(toLong(row[0]))) {
+        serde.getParameters().put((String) row[1], (String) row[2]);
+      }
+    }
+
+    List<Partition> result = new ArrayList<Partition>(parts.size());
+    for (PartitionRow row : parts.values()) {
+      StorageDescriptor sd = sds.get(row.sdId);
+      if (sd == null) {
+        throw new MetaException("No storage descriptor " + row.sdId + " for partition "
+            + row.part.getValues());
+      }
+      row.part.setSd(sd);
+      result.add(row.part);
+    }
+    LOG.debug("Retrieved " + result.size() + " partitions of " + dbName + "."
+        + tblName + " with direct SQL");
+    return result;
+  }
+
+  /**
+   * Run the query selecting partitions and add them to parts.
+   */
+  private void addPartitions(Map<Long, PartitionRow> parts, String queryText,
+      Object[] params, String dbName, String tblName, int max) throws MetaException {
+    for (Object[] row : query(queryText, params)) {
+      if (max >= 0 && parts.size() >= max) {
+        break;
+      }
+      if (row[1] == null) {
+        throw new MetaException("No storage descriptor for partition " + row[4]);
+      }
+      long partId = toLong(row[0]);
+      Partition part = new Partition(new ArrayList<String>(), dbName, tblName,
+          toInt(row[2]), toInt(row[3]), null, new HashMap<String, String>());
+      parts.put(partId, new PartitionRow(partId, (String) row[4], part, toLong(row[1])));
+    }
+  }
+
+  /**
+   * Run a query with an IN list of ids, in batches of ids.
+   *
+   * @param queryText
+   *          the query, with %s where the ids go
+   */
+  private List<Object[]> queryByIds(String queryText, List<Long> ids)
+      throws MetaException {
+    List<Object[]> result = new ArrayList<Object[]>();
+    for (int start = 0; start < ids.size(); start += BATCH_SIZE) {
+      StringBuilder idList = new StringBuilder();
+      for (int i = start; i < Math.min(ids.size(), start + BATCH_SIZE); i++) {
+        if (i > start) {
+          idList.append(',');
+        }
+        idList.append(ids.get(i).longValue());
+      }
+      result.addAll(query(String.format(queryText, idList), new Object[0]));
+    }
+    return result;
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<Object[]> query(String queryText, Object[] params)
+      throws MetaException {
+    Query query = pm.newQuery("javax.jdo.query.SQL", queryText);
+    try {
+      List<Object[]> result = new ArrayList<Object[]>();
+      for (Object row : (Collection<Object>) query.executeWithArray(params)) {
+        result.add((Object[]) row);
+      }
+      return result;
+    } catch (RuntimeException e) {
+      throw new MetaException("Direct SQL query failed: " + queryText + ": " + e);
+    } finally {
+      query.closeAll();
+    }
+  }
+
+  /**
+   * The identifiers are quoted with double quotes, which MySQL accepts in its
+   * ANSI_QUOTES mode. The mode is added to the modes of the session of the
+   * connection of the current transaction, which may be any connection of
+   * the pool, and the previous modes are restored by restoreSqlMode once the
+   * queries are done.
+   *
+   * @return the previous modes, or null if they were not changed
+   */
+  private String setAnsiQuotes() throws MetaException {
+    if (!isMySql) {
+      return null;
+    }
+    JDOConnection jdoConn = pm.getDataStoreConnection();
+    Statement statement = null;
+    try {
+      Connection conn = (Connection) jdoConn.getNativeConnection();
+      statement = conn.createStatement();
+      ResultSet rs = statement.executeQuery("SELECT @@session.sql_mode");
+      String sqlMode = rs.next() ? rs.getString(1) : null;
+      sqlMode = sqlMode == null ? "" : sqlMode;
+      setSqlMode(conn, sqlMode.length() == 0 ? "ANSI_QUOTES" : sqlMode + ",ANSI_QUOTES");
+      return sqlMode;
+    } catch (SQLException e) {
+      throw new MetaException("Cannot set the ANSI_QUOTES mode: " + e);
+    } finally {
+      closeStatement(statement);
+      jdoConn.close();
+    }
+  }
+
+  /**
+   * Restore the modes of the session changed by setAnsiQuotes.
+   */
+  private void restoreSqlMode(String sqlMode) throws MetaException {
+    if (sqlMode == null) {
+      return;
+    }
+    JDOConnection jdoConn = pm.getDataStoreConnection();
+    try {
+      setSqlMode((Connection) jdoConn.getNativeConnection(), sqlMode);
+    } catch (SQLException e) {
+      throw new MetaException("Cannot restore the SQL mode: " + e);
+    } finally {
+      jdoConn.close();
+    }
+  }
+
+  private static void setSqlMode(Connection conn, String sqlMode) throws SQLException {
+    PreparedStatement statement = conn.prepareStatement("SET @@session.sql_mode = ?");
+    try {
+      statement.setString(1, sqlMode);
+      statement.execute();
+    } finally {
+      closeStatement(statement);
+    }
+  }
+
+  private static void closeStatement(Statement statement) {
+    try {
+      if (statement != null) {
+        statement.close();
+      }
+    } catch (SQLException e) {
+      LOG.warn("Cannot close the statement: " + e);
+    }
+  }
+
+  private static long toLong(Object o) {
+    return ((Number) o).longValue();
+  }
+
+  private static int toInt(Object o) {
+    return ((Number) o).intValue();
+  }
+
+  /**
+   * The booleans are mapped to CHAR(1) 'Y' or 'N' or to BIT(1), depending on
+   * the database.
+   */
+  private static boolean toBoolean(Object o) throws MetaException {
+    if (o instanceof Boolean) {
+      return ((Boolean) o).booleanValue();
+    } else if (o instanceof String) {
+      String s = ((String) o).trim();
+      return s.equalsIgnoreCase("Y") || s.equalsIgnoreCase("true") || s.equals("1");
+    } else if (o instanceof Number) {
+      return ((Number) o).intValue() != 0;
+    } else if (o instanceof byte[] && ((byte[]) o).length == 1) {
+      return ((byte[]) o)[0] != 0;
+    }
+    throw new MetaException("Cannot convert " + o + " to a boolean");
+  }
+}
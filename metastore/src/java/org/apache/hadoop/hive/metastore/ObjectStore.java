@@ -19,6 +19,7 @@
 package org.apache.hadoop.hive.metastore;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -47,6 +48,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configurable;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hive.common.FileUtils;
 import org.apache.hadoop.hive.common.classification.InterfaceAudience;
 import org.apache.hadoop.hive.common.classification.InterfaceStability;
@@ -71,6 +73,7 @@ import org.apache.hadoop.hive.metastore.api.SerDeInfo;
 import org.apache.hadoop.hive.metastore.api.StorageDescriptor;
 import org.apache.hadoop.hive.metastore.api.Table;
 import org.apache.hadoop.hive.metastore.api.Type;
+import org.apache.hadoop.hive.metastore.model.MColumnDescriptor;
 import org.apache.hadoop.hive.metastore.model.MDBPrivilege;
 import org.apache.hadoop.hive.metastore.model.MDatabase;
 import org.apache.hadoop.hive.metastore.model.MFieldSchema;
@@ -90,6 +93,7 @@ import org.apache.hadoop.hive.metastore.model.MTablePrivilege;
 import org.apache.hadoop.hive.metastore.model.MType;
 import org.apache.hadoop.hive.metastore.parser.FilterLexer;
 import org.apache.hadoop.hive.metastore.parser.FilterParser;
+import org.apache.hadoop.hive.metastore.parser.ExpressionTree;
 import org.apache.hadoop.hive.metastore.parser.ExpressionTree.ANTLRNoCaseStringStream;
 import org.apache.hadoop.util.StringUtils;
 
@@ -131,6 +135,8 @@ public class ObjectStore implements RawStore, Configurable {
   int openTrasactionCalls = 0;
   private Transaction currentTransaction = null;
   private TXN_STATUS transactionStatus = TXN_STATUS.NO_STATE;
+  private boolean tryDirectSql = false;
+  private MetaStoreDirectSql directSql = null;
 
   public ObjectStore() {
   }
@@ -197,6 +203,8 @@ public class ObjectStore implements RawStore, Configurable {
     prop = dsProps;
     pm = getPersistenceManager();
     isInitialized = pm != null;
+    tryDirectSql = HiveConf.getBoolVar(hiveConf, HiveConf.ConfVars.METASTORE_TRY_DIRECT_SQL);
+    directSql = null;
     return;
   }
 
@@ -692,9 +700,26 @@ public class ObjectStore implements RawStore, Configurable {
         if (partColGrants != null && partColGrants.size() > 0) {
           pm.deletePersistentAll(partColGrants);
         }
-        pm.deletePersistentAll(listMPartitions(dbName, tableName, -1));
+        // the column descriptors are deleted after the storage descriptors
+        // that share them
+        Set<MColumnDescriptor> cds = new HashSet<MColumnDescriptor>();
+        List<MPartition> mparts = listMPartitions(dbName, tableName, -1);
+        for (MPartition mpart : mparts) {
+          if (mpart.getSd() != null && mpart.getSd().getCD() != null) {
+            cds.add(mpart.getSd().getCD());
+            mpart.getSd().setCD(null);
+          }
+        }
+        if (tbl.getSd() != null && tbl.getSd().getCD() != null) {
+          cds.add(tbl.getSd().getCD());
+          tbl.getSd().setCD(null);
+        }
+        pm.deletePersistentAll(mparts);
         // then remove the table
         pm.deletePersistentAll(tbl);
+        for (MColumnDescriptor cd : cds) {
+          removeUnusedColumnDescriptor(cd);
+        }
       }
       success = commitTransaction();
     } finally {
@@ -917,7 +942,8 @@ public class ObjectStore implements RawStore, Configurable {
     if (msd == null) {
       return null;
     }
-    return new StorageDescriptor(noFS ? null: convertToFieldSchemas(msd.getCols()),
+    return new StorageDescriptor(noFS || msd.getCD() == null ? null
+        : convertToFieldSchemas(msd.getCD().getCols()),
         msd.getLocation(), msd.getInputFormat(), msd.getOutputFormat(), msd
         .isCompressed(), msd.getNumBuckets(), converToSerDeInfo(msd
         .getSerDeInfo()), msd.getBucketCols(), convertToOrders(msd
@@ -934,56 +960,137 @@ public class ObjectStore implements RawStore, Configurable {
     if (sd == null) {
       return null;
     }
-    return new MStorageDescriptor(convertToMFieldSchemas(sd.getCols()), sd
+    return convertToMStorageDescriptor(sd,
+        new MColumnDescriptor(convertToMFieldSchemas(sd.getCols())));
+  }
+
+  /**
+   * @param mcd
+   *          the column descriptor of the storage descriptor, which is shared
+   *          with the storage descriptors it already belongs to
+   */
+  private MStorageDescriptor convertToMStorageDescriptor(StorageDescriptor sd,
+      MColumnDescriptor mcd) throws MetaException {
+    if (sd == null) {
+      return null;
+    }
+    return new MStorageDescriptor(mcd, sd
         .getLocation(), sd.getInputFormat(), sd.getOutputFormat(), sd
         .isCompressed(), sd.getNumBuckets(), converToMSerDeInfo(sd
         .getSerdeInfo()), sd.getBucketCols(),
         convertToMOrders(sd.getSortCols()), sd.getParameters());
   }
 
+  /**
+   * @return true if both lists of columns are set and have the same columns
+   */
+  private boolean sameCols(List<MFieldSchema> cols1, List<MFieldSchema> cols2) {
+    return cols1 != null && cols2 != null
+        && convertToFieldSchemas(cols1).equals(convertToFieldSchemas(cols2));
+  }
+
+  /**
+   * Deletes a column descriptor if no storage descriptor references it
+   * anymore.
+   */
+  private void removeUnusedColumnDescriptor(MColumnDescriptor mcd) {
+    if (mcd == null) {
+      return;
+    }
+    boolean success = false;
+    try {
+      openTransaction();
+      LOG.debug("Executing removeUnusedColumnDescriptor");
+      // the storage descriptors that were changed or deleted must not be
+      // counted
+      pm.flush();
+      Query query = pm.newQuery(MStorageDescriptor.class, "this.cd == inCD");
+      query.declareParameters("org.apache.hadoop.hive.metastore.model.MColumnDescriptor inCD");
+      query.setResult("count(this)");
+      query.setUnique(true);
+      long references = ((Number) query.execute(mcd)).longValue();
+      query.closeAll();
+      if (references == 0) {
+        pm.deletePersistent(mcd);
+      }
+      success = commitTransaction();
+    } finally {
+      if (!success) {
+        rollbackTransaction();
+      }
+    }
+  }
+
+  /**
+   * Detaches a storage descriptor that is about to be deleted from its column
+   * descriptor, and deletes the column descriptor if it is not used anymore.
+   */
+  private void preDropStorageDescriptor(MStorageDescriptor msd) {
+    if (msd == null || msd.getCD() == null) {
+      return;
+    }
+    MColumnDescriptor mcd = msd.getCD();
+    msd.setCD(null);
+    removeUnusedColumnDescriptor(mcd);
+  }
+
   public boolean addPartition(Partition part) throws InvalidObjectException,
       MetaException {
+    return addPartitions(part.getDbName(), part.getTableName(), Arrays.asList(part));
+  }
+
+  public boolean addPartitions(String dbName, String tblName, List<Partition> parts)
+      throws InvalidObjectException, MetaException {
     boolean success = false;
     boolean commited = false;
     try {
-      MTable table = this.getMTable(part.getDbName(), part.getTableName());
+      openTransaction();
+      MTable table = getMTable(dbName, tblName);
+      if (table == null) {
+        throw new InvalidObjectException(
+            "Partition doesn't have a valid table or database name");
+      }
       List<MTablePrivilege> tabGrants = null;
       List<MTableColumnPrivilege> tabColumnGrants = null;
       if ("TRUE".equalsIgnoreCase(table.getParameters().get("PARTITION_LEVEL_PRIVILEGE"))) {
-        tabGrants = this.listAllTableGrants(part
-            .getDbName(), part.getTableName());
-        tabColumnGrants = this.listTableAllColumnGrants(
-            part.getDbName(), part.getTableName());
+        tabGrants = this.listAllTableGrants(dbName, tblName);
+        tabColumnGrants = this.listTableAllColumnGrants(dbName, tblName);
       }
-      openTransaction();
-      MPartition mpart = convertToMPart(part);
-      pm.makePersistent(mpart);
 
+      // the partitions and their grants are persisted together, so that the
+      // datastore is not called once per partition
       int now = (int)(System.currentTimeMillis()/1000);
       List<Object> toPersist = new ArrayList<Object>();
-      if (tabGrants != null) {
-        for (MTablePrivilege tab: tabGrants) {
-          MPartitionPrivilege partGrant = new MPartitionPrivilege(tab
-              .getPrincipalName(), tab.getPrincipalType(),
-              mpart, tab.getPrivilege(), now, tab.getGrantor(), tab
-                  .getGrantorType(), tab.getGrantOption());
-          toPersist.add(partGrant);
+      for (Partition part : parts) {
+        if (!dbName.equalsIgnoreCase(part.getDbName())
+            || !tblName.equalsIgnoreCase(part.getTableName())) {
+          throw new InvalidObjectException("Partition " + part.getValues()
+              + " does not belong to table " + dbName + "." + tblName);
         }
-      }
-
-      if (tabColumnGrants != null) {
-        for (MTableColumnPrivilege col : tabColumnGrants) {
-          MPartitionColumnPrivilege partColumn = new MPartitionColumnPrivilege(col
-              .getPrincipalName(), col.getPrincipalType(), mpart, col
-              .getColumnName(), col.getPrivilege(), now, col.getGrantor(), col
-              .getGrantorType(), col.getGrantOption());
-          toPersist.add(partColumn);
+        MPartition mpart = convertToMPart(part, table, true);
+        toPersist.add(mpart);
+
+        if (tabGrants != null) {
+          for (MTablePrivilege tab: tabGrants) {
+            MPartitionPrivilege partGrant = new MPartitionPrivilege(tab
+                .getPrincipalName(), tab.getPrincipalType(),
+                mpart, tab.getPrivilege(), now, tab.getGrantor(), tab
+                    .getGrantorType(), tab.getGrantOption());
+            toPersist.add(partGrant);
+          }
         }
 
-        if (toPersist.size() > 0) {
-          pm.makePersistentAll(toPersist);
+        if (tabColumnGrants != null) {
+          for (MTableColumnPrivilege col : tabColumnGrants) {
+            MPartitionColumnPrivilege partColumn = new MPartitionColumnPrivilege(col
+                .getPrincipalName(), col.getPrincipalType(), mpart, col
+                .getColumnName(), col.getPrivilege(), now, col.getGrantor(), col
+                .getGrantorType(), col.getGrantOption());
+            toPersist.add(partColumn);
+          }
         }
       }
+      pm.makePersistentAll(toPersist);
 
       commited = commitTransaction();
       success = true;
@@ -1040,20 +1147,35 @@ public class ObjectStore implements RawStore, Configurable {
     return mpart;
   }
 
-  private MPartition convertToMPart(Partition part)
+  /**
+   * @param useTableCD
+   *          whether the partition shares the column descriptor of its table
+   *          when it has the same columns
+   */
+  private MPartition convertToMPart(Partition part, boolean useTableCD)
       throws InvalidObjectException, MetaException {
     if (part == null) {
       return null;
     }
-    MTable mt = getMTable(part.getDbName(), part.getTableName());
+    return convertToMPart(part, getMTable(part.getDbName(), part.getTableName()),
+        useTableCD);
+  }
+
+  private MPartition convertToMPart(Partition part, MTable mt, boolean useTableCD)
+      throws InvalidObjectException, MetaException {
     if (mt == null) {
       throw new InvalidObjectException(
           "Partition doesn't have a valid table or database name");
     }
+    MStorageDescriptor msd = convertToMStorageDescriptor(part.getSd());
+    if (useTableCD && msd != null && mt.getSd() != null && mt.getSd().getCD() != null
+        && sameCols(mt.getSd().getCD().getCols(), msd.getCD().getCols())) {
+      msd.setCD(mt.getSd().getCD());
+    }
     return new MPartition(Warehouse.makePartName(convertToFieldSchemas(mt
         .getPartitionKeys()), part.getValues()), mt, part.getValues(), part
         .getCreateTime(), part.getLastAccessTime(),
-        convertToMStorageDescriptor(part.getSd()), part.getParameters());
+        msd, part.getParameters());
   }
 
   private Partition convertToPart(MPartition mpart) throws MetaException {
@@ -1066,13 +1188,13 @@ public class ObjectStore implements RawStore, Configurable {
         mpart.getParameters());
   }
 
-  private Partition convertToPart(String dbName, String tblName, MPartition mpart)
-      throws MetaException {
+  private Partition convertToPart(String dbName, String tblName, MPartition mpart,
+      boolean noFS) throws MetaException {
     if (mpart == null) {
       return null;
     }
     return new Partition(mpart.getValues(), dbName, tblName, mpart.getCreateTime(),
-        mpart.getLastAccessTime(), convertToStorageDescriptor(mpart.getSd(), true),
+        mpart.getLastAccessTime(), convertToStorageDescriptor(mpart.getSd(), noFS),
         mpart.getParameters());
   }
 
@@ -1103,6 +1225,7 @@ public class ObjectStore implements RawStore, Configurable {
           pm.deletePersistentAll(partColumnGrants);
         }
 
+        preDropStorageDescriptor(part.getSd());
         pm.deletePersistent(part);
       }
       success = commitTransaction();
@@ -1116,6 +1239,24 @@ public class ObjectStore implements RawStore, Configurable {
 
   public List<Partition> getPartitions(String dbName, String tableName, int max)
       throws MetaException {
+    if (canUseDirectSql()) {
+      List<Partition> parts = null;
+      boolean success = false;
+      try {
+        openTransaction();
+        parts = getDirectSql().getPartitions(dbName, tableName, max);
+        success = commitTransaction();
+      } catch (MetaException e) {
+        LOG.warn("Direct SQL failed, falling back to JDO: " + e.getMessage());
+      } finally {
+        if (!success) {
+          rollbackTransaction();
+        }
+      }
+      if (success) {
+        return parts;
+      }
+    }
     openTransaction();
     List<Partition> parts = convertToParts(listMPartitions(dbName, tableName,
         max));
@@ -1190,6 +1331,21 @@ public class ObjectStore implements RawStore, Configurable {
   }
 
 
+  /**
+   * The partitions are retrieved with direct SQL if it is enabled, and if no
+   * transaction is open, since a failed query would abort it.
+   */
+  private boolean canUseDirectSql() {
+    return tryDirectSql && !isActiveTransaction();
+  }
+
+  private MetaStoreDirectSql getDirectSql() throws MetaException {
+    if (directSql == null) {
+      directSql = new MetaStoreDirectSql(pm);
+    }
+    return directSql;
+  }
+
   private List<Partition> convertToParts(List<MPartition> mparts)
       throws MetaException {
     List<Partition> parts = new ArrayList<Partition>(mparts.size());
@@ -1199,11 +1355,11 @@ public class ObjectStore implements RawStore, Configurable {
     return parts;
   }
 
-  private List<Partition> convertToParts(String dbName, String tblName, List<MPartition> mparts)
-      throws MetaException {
+  private List<Partition> convertToParts(String dbName, String tblName,
+      List<MPartition> mparts, boolean noFS) throws MetaException {
     List<Partition> parts = new ArrayList<Partition>(mparts.size());
     for (MPartition mp : mparts) {
-      parts.add(convertToPart(dbName, tblName, mp));
+      parts.add(convertToPart(dbName, tblName, mp, noFS));
     }
     return parts;
   }
@@ -1251,6 +1407,9 @@ public class ObjectStore implements RawStore, Configurable {
           "table.tableName == t1 && table.database.name == t2");
       query.declareParameters("java.lang.String t1, java.lang.String t2");
       query.setOrdering("partitionName ascending");
+      if (max >= 0) {
+        query.setRange(0, max);
+      }
       mparts = (List<MPartition>) query.execute(tableName, dbName);
       LOG.debug("Done executing query for listMPartitions");
       pm.retrieveAll(mparts);
@@ -1267,6 +1426,38 @@ public class ObjectStore implements RawStore, Configurable {
   @Override
   public List<Partition> getPartitionsByNames(String dbName, String tblName,
       List<String> partNames) throws MetaException, NoSuchObjectException {
+    return getPartitionsByNames(dbName, tblName, partNames, false);
+  }
+
+  /**
+   * @param withCols
+   *          whether the columns of the storage descriptors are retrieved, or
+   *          left null
+   */
+  private List<Partition> getPartitionsByNames(String dbName, String tblName,
+      List<String> partNames, boolean withCols) throws MetaException {
+    if (partNames.isEmpty()) {
+      return new ArrayList<Partition>();
+    }
+    if (canUseDirectSql()) {
+      List<Partition> parts = null;
+      boolean success = false;
+      try {
+        openTransaction();
+        parts = getDirectSql().getPartitionsByNames(dbName, tblName, partNames, -1,
+            withCols);
+        success = commitTransaction();
+      } catch (MetaException e) {
+        LOG.warn("Direct SQL failed, falling back to JDO: " + e.getMessage());
+      } finally {
+        if (!success) {
+          rollbackTransaction();
+        }
+      }
+      if (success) {
+        return parts;
+      }
+    }
 
     boolean success = false;
     try {
@@ -1300,7 +1491,7 @@ public class ObjectStore implements RawStore, Configurable {
 
       List<MPartition> mparts = (List<MPartition>) query.executeWithMap(params);
       // pm.retrieveAll(mparts); // retrieveAll is pessimistic. some fields may not be needed
-      List<Partition> results = convertToParts(dbName, tblName, mparts);
+      List<Partition> results = convertToParts(dbName, tblName, mparts, !withCols);
       // pm.makeTransientAll(mparts); // makeTransient will prohibit future access of unfetched fields
       query.closeAll();
       success = commitTransaction();
@@ -1315,6 +1506,37 @@ public class ObjectStore implements RawStore, Configurable {
   @Override
   public List<Partition> getPartitionsByFilter(String dbName, String tblName,
       String filter, short maxParts) throws MetaException, NoSuchObjectException {
+    if (canUseDirectSql()) {
+      List<Partition> parts = null;
+      boolean success = false;
+      try {
+        openTransaction();
+        // the filter is evaluated with SQL when it can be, and otherwise by
+        // JDOQL, which only selects the names. A missing table is reported
+        // by the JDO path.
+        MTable mtable = getMTable(dbName, tblName);
+        if (mtable != null) {
+          parts = getDirectSql().getPartitionsByFilter(convertToTable(mtable),
+              parseFilter(filter),
+              HiveConf.getVar(hiveConf, HiveConf.ConfVars.DEFAULTPARTITIONNAME), maxParts);
+          if (parts == null) {
+            parts = getDirectSql().getPartitionsByNames(dbName, tblName,
+                listPartitionNamesByFilter(dbName, tblName, filter, maxParts), -1, true);
+          }
+        }
+        success = commitTransaction();
+      } catch (MetaException e) {
+        LOG.warn("Direct SQL failed, falling back to JDO: " + e.getMessage());
+      } finally {
+        if (!success) {
+          rollbackTransaction();
+        }
+      }
+      if (success && parts != null) {
+        LOG.info("# parts after pruning = " + parts.size());
+        return parts;
+      }
+    }
     openTransaction();
     List<Partition> parts = convertToParts(listMPartitionsByFilter(dbName,
         tblName, filter, maxParts));
@@ -1323,6 +1545,32 @@ public class ObjectStore implements RawStore, Configurable {
     return parts;
   }
 
+  /**
+   * Parse a partition filter. An empty filter gives an empty tree.
+   */
+  private ExpressionTree parseFilter(String filter) throws MetaException {
+    if (filter == null || filter.length() == 0) {
+      return new ExpressionTree();
+    }
+    CharStream cs = new ANTLRNoCaseStringStream(filter);
+    FilterLexer lexer = new FilterLexer(cs);
+
+    CommonTokenStream tokens = new CommonTokenStream();
+    tokens.setTokenSource (lexer);
+
+    FilterParser parser = new FilterParser(tokens);
+
+    try {
+      parser.filter();
+    } catch(RecognitionException re) {
+      throw new MetaException("Error parsing partition filter : " + re);
+    } catch (NumberFormatException e) {
+      // an integral literal out of the range of a long
+      throw new MetaException("Error parsing partition filter : " + e);
+    }
+    return parser.tree;
+  }
+
   private String makeQueryFilterString(MTable mtable, String filter,
       Map<String, String> params)
       throws MetaException {
@@ -1333,21 +1581,7 @@ public class ObjectStore implements RawStore, Configurable {
 
       Table table = convertToTable(mtable);
 
-      CharStream cs = new ANTLRNoCaseStringStream(filter);
-      FilterLexer lexer = new FilterLexer(cs);
-
-      CommonTokenStream tokens = new CommonTokenStream();
-      tokens.setTokenSource (lexer);
-
-      FilterParser parser = new FilterParser(tokens);
-
-      try {
-        parser.filter();
-      } catch(RecognitionException re) {
-        throw new MetaException("Error parsing partition filter : " + re);
-      }
-
-      String jdoFilter = parser.tree.generateJDOFilter(table, params);
+      String jdoFilter = parseFilter(filter).generateJDOFilter(table, params);
       LOG.debug("jdoFilter = " + jdoFilter);
 
       if( jdoFilter.trim().length() > 0 ) {
@@ -1478,6 +1712,91 @@ public class ObjectStore implements RawStore, Configurable {
     return partNames;
   }
 
+  @Override
+  public List<String> listPartitionNamesPs(String dbName, String tableName,
+      List<String> partVals, short maxParts) throws MetaException {
+    boolean success = false;
+    List<String> partNames = new ArrayList<String>();
+    try {
+      openTransaction();
+      LOG.debug("Executing listPartitionNamesPs");
+      dbName = dbName.toLowerCase().trim();
+      tableName = tableName.toLowerCase().trim();
+
+      MTable mtable = getMTable(dbName, tableName);
+      if (mtable == null || partVals.size() > mtable.getPartitionKeys().size()) {
+        // no partition matches, as when all the partitions are filtered
+        success = commitTransaction();
+        return partNames;
+      }
+
+      // The values up to the first unspecified one make a prefix of the
+      // names of the matching partitions, which selects them in the database.
+      // The values after it are matched on the names that are returned.
+      List<String> prefixCols = new ArrayList<String>();
+      List<String> prefixVals = new ArrayList<String>();
+      for (int i = 0; i < partVals.size() && partVals.get(i).length() != 0; i++) {
+        prefixCols.add(mtable.getPartitionKeys().get(i).getName());
+        prefixVals.add(partVals.get(i));
+      }
+      StringBuilder queryFilter = new StringBuilder(
+          "table.database.name == t1 && table.tableName == t2");
+      String prefix = null;
+      if (!prefixCols.isEmpty() && prefixCols.size() == mtable.getPartitionKeys().size()) {
+        queryFilter.append(" && partitionName == t3");
+        prefix = FileUtils.makePartName(prefixCols, prefixVals);
+      } else if (!prefixCols.isEmpty()) {
+        queryFilter.append(" && partitionName.startsWith(t3)");
+        prefix = FileUtils.makePartName(prefixCols, prefixVals) + Path.SEPARATOR;
+      }
+      boolean filterNames = prefixCols.size() < partVals.size();
+
+      Query query = pm.newQuery(
+          "select partitionName from org.apache.hadoop.hive.metastore.model.MPartition "
+          + "where " + queryFilter);
+      if (prefix == null) {
+        query.declareParameters("java.lang.String t1, java.lang.String t2");
+      } else {
+        query.declareParameters("java.lang.String t1, java.lang.String t2, java.lang.String t3");
+      }
+      if (maxParts >= 0 && !filterNames) {
+        query.setRange(0, maxParts);
+      }
+      query.setOrdering("partitionName ascending");
+      query.setResult("partitionName");
+      LOG.debug("JDOQL filter is " + queryFilter + ", prefix is " + prefix);
+
+      Collection names = (Collection) (prefix == null ? query.execute(dbName, tableName)
+          : query.execute(dbName, tableName, prefix));
+      for (Iterator i = names.iterator(); i.hasNext();) {
+        String name = (String) i.next();
+        if (filterNames && !MetaStoreUtils.pvalMatches(partVals,
+            Warehouse.getPartValuesFromPartName(name))) {
+          continue;
+        }
+        if (maxParts >= 0 && partNames.size() >= maxParts) {
+          break;
+        }
+        partNames.add(name);
+      }
+      query.closeAll();
+      success = commitTransaction();
+      LOG.debug("Done executing query for listPartitionNamesPs");
+    } finally {
+      if (!success) {
+        rollbackTransaction();
+      }
+    }
+    return partNames;
+  }
+
+  @Override
+  public List<Partition> listPartitionsPs(String dbName, String tableName,
+      List<String> partVals, short maxParts) throws MetaException {
+    return getPartitionsByNames(dbName, tableName,
+        listPartitionNamesPs(dbName, tableName, partVals, maxParts), true);
+  }
+
   public void alterTable(String dbname, String name, Table newTable)
       throws InvalidObjectException, MetaException {
     boolean success = false;
@@ -1499,12 +1818,24 @@ public class ObjectStore implements RawStore, Configurable {
       oldt.setTableName(newt.getTableName().toLowerCase());
       oldt.setParameters(newt.getParameters());
       oldt.setOwner(newt.getOwner());
+      // the partitions that still have the old columns keep sharing the old
+      // column descriptor
+      MStorageDescriptor oldSd = oldt.getSd();
+      if (oldSd != null && oldSd.getCD() != null && newt.getSd() != null
+          && sameCols(oldSd.getCD().getCols(), newt.getSd().getCD().getCols())) {
+        newt.getSd().setCD(oldSd.getCD());
+      }
       oldt.setSd(newt.getSd());
       oldt.setDatabase(newt.getDatabase());
       oldt.setRetention(newt.getRetention());
       oldt.setPartitionKeys(newt.getPartitionKeys());
       oldt.setTableType(newt.getTableType());
       oldt.setLastAccessTime(newt.getLastAccessTime());
+      // the replaced storage descriptor is not deleted by reachability
+      if (oldSd != null && oldSd != oldt.getSd()) {
+        preDropStorageDescriptor(oldSd);
+        pm.deletePersistent(oldSd);
+      }
 
       // commit the changes
       success = commitTransaction();
@@ -1553,7 +1884,7 @@ public class ObjectStore implements RawStore, Configurable {
       name = name.toLowerCase();
       dbname = dbname.toLowerCase();
       MPartition oldp = getMPartition(dbname, name, newPart.getValues());
-      MPartition newp = convertToMPart(newPart);
+      MPartition newp = convertToMPart(newPart, false);
       if (oldp == null || newp == null) {
         throw new InvalidObjectException("partition does not exist.");
       }
@@ -1576,7 +1907,14 @@ public class ObjectStore implements RawStore, Configurable {
 
   private void copyMSD(MStorageDescriptor newSd, MStorageDescriptor oldSd) {
     oldSd.setLocation(newSd.getLocation());
-    oldSd.setCols(newSd.getCols());
+    // the column descriptor is only replaced if the columns changed, since
+    // other storage descriptors may share it
+    MColumnDescriptor oldCD = oldSd.getCD();
+    if (oldCD == null || newSd.getCD() == null
+        || !sameCols(oldCD.getCols(), newSd.getCD().getCols())) {
+      oldSd.setCD(newSd.getCD());
+      removeUnusedColumnDescriptor(oldCD);
+    }
     oldSd.setBucketCols(newSd.getBucketCols());
     oldSd.setCompressed(newSd.isCompressed());
     oldSd.setInputFormat(newSd.getInputFormat());
@@ -1640,6 +1978,7 @@ public class ObjectStore implements RawStore, Configurable {
       openTransaction();
       MIndex index = getMIndex(dbName, origTableName, indexName);
       if (index != null) {
+        preDropStorageDescriptor(index.getSd());
         pm.deletePersistent(index);
       }
       success = commitTransaction();
@@ -99,6 +99,13 @@ public interface RawStore extends Configurable {
   public abstract boolean addPartition(Partition part)
       throws InvalidObjectException, MetaException;
 
+  /**
+   * Adds partitions of the same table in one transaction, looking the table
+   * up once and persisting the partitions together.
+   */
+  public abstract boolean addPartitions(String dbName, String tblName,
+      List<Partition> parts) throws InvalidObjectException, MetaException;
+
   public abstract Partition getPartition(String dbName, String tableName,
       List<String> part_vals) throws MetaException, NoSuchObjectException;
 
@@ -122,6 +129,21 @@ public interface RawStore extends Configurable {
   public abstract List<String> listPartitionNamesByFilter(String db_name,
       String tbl_name, String filter, short max_parts) throws MetaException;
 
+  /**
+   * Lists the names of the partitions whose values match a partial
+   * specification. Empty values in part_vals match any value, and part_vals
+   * may be shorter than the partition keys.
+   */
+  public abstract List<String> listPartitionNamesPs(String db_name,
+      String tbl_name, List<String> part_vals, short max_parts) throws MetaException;
+
+  /**
+   * Lists the partitions whose values match a partial specification, as
+   * {@link #listPartitionNamesPs} does.
+   */
+  public abstract List<Partition> listPartitionsPs(String db_name,
+      String tbl_name, List<String> part_vals, short max_parts) throws MetaException;
+
   public abstract void alterPartition(String db_name, String tbl_name,
       Partition new_part) throws InvalidObjectException, MetaException;
 
@@ -18,6 +18,7 @@
 package org.apache.hadoop.hive.metastore.parser;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Stack;
 
@@ -25,6 +26,7 @@ import org.antlr.runtime.ANTLRStringStream;
 import org.antlr.runtime.CharStream;
 import org.apache.hadoop.hive.common.FileUtils;
 import org.apache.hadoop.hive.metastore.Warehouse;
+import org.apache.hadoop.hive.metastore.api.FieldSchema;
 import org.apache.hadoop.hive.metastore.api.MetaException;
 import org.apache.hadoop.hive.metastore.api.Table;
 import org.apache.hadoop.hive.serde.Constants;
@@ -103,6 +105,18 @@ public class ExpressionTree {
       this.rhs = rhs;
     }
 
+    public TreeNode getLhs() {
+      return lhs;
+    }
+
+    public LogicalOperator getAndOr() {
+      return andOr;
+    }
+
+    public TreeNode getRhs() {
+      return rhs;
+    }
+
     public String generateJDOFilter(Table table, Map<String, String> params)
     throws MetaException {
       StringBuilder filterBuffer = new StringBuilder();
@@ -130,43 +144,48 @@ public class ExpressionTree {
 
   /**
    * The Class representing the leaf level nodes in the ExpressionTree.
+   * The value is a String, or a Long for an integral literal.
    */
   public static class LeafNode extends TreeNode {
     public String keyName;
     public Operator operator;
-    public String value;
+    public Object value;
     public boolean isReverseOrder = false;
     private static final String PARAM_PREFIX = "hive_filter_param_";
 
+    /**
+     * Get the position of the key among the partition keys of the table.
+     */
+    public int getPartitionKeyIndex(Table table) throws MetaException {
+      List<FieldSchema> partKeys = table.getPartitionKeys();
+      for (int i = 0; i < partKeys.size(); i++) {
+        if (partKeys.get(i).getName().equalsIgnoreCase(keyName)) {
+          return i;
+        }
+      }
+      throw new MetaException("Specified key <" + keyName +
+          "> is not a partitioning key for the table");
+    }
+
     @Override
     public String generateJDOFilter(Table table, Map<String, String> params)
     throws MetaException {
 
       int partitionColumnCount = table.getPartitionKeys().size();
-      int partitionColumnIndex;
-      for(partitionColumnIndex = 0;
-      partitionColumnIndex < partitionColumnCount;
-      partitionColumnIndex++ ) {
-        if( table.getPartitionKeys().get(partitionColumnIndex).getName().
-            equalsIgnoreCase(keyName)) {
-          break;
-        }
-      }
-      assert (table.getPartitionKeys().size() > 0);
-
-      if( partitionColumnIndex == table.getPartitionKeys().size() ) {
-        throw new MetaException("Specified key <" + keyName +
-            "> is not a partitioning key for the table");
-      }
+      int partitionColumnIndex = getPartitionKeyIndex(table);
 
       if( ! table.getPartitionKeys().get(partitionColumnIndex).
           getType().equals(Constants.STRING_TYPE_NAME) ) {
         throw new MetaException
         ("Filtering is supported only on partition keys of type string");
       }
+      if (!(value instanceof String)) {
+        throw new MetaException("Filtering on the string partition key <" +
+            keyName + "> requires a string value");
+      }
 
       String paramName = PARAM_PREFIX + params.size();
-      params.put(paramName, value);
+      params.put(paramName, (String) value);
       String filter;
 
       String keyEqual = FileUtils.escapePathName(keyName) + "=";
@@ -189,7 +208,7 @@ public class ExpressionTree {
               "Key <" + keyName + ">");
         }
         else if (operator == Operator.EQUALS) {
-          filter = makeFilterForEquals(keyName, value, paramName, params,
+          filter = makeFilterForEquals(keyName, (String) value, paramName, params,
               partitionColumnIndex, partitionColumnCount);
         } else {
           filter = paramName +
@@ -201,7 +220,7 @@ public class ExpressionTree {
           filter = " " + valString + "."
               + operator.getJdoOp() + "(" + paramName + ") ";
         } else if (operator == Operator.EQUALS) {
-          filter = makeFilterForEquals(keyName, value, paramName, params,
+          filter = makeFilterForEquals(keyName, (String) value, paramName, params,
               partitionColumnIndex, partitionColumnCount);
         } else {
           filter = " " + valString + " "
@@ -273,6 +292,13 @@ public class ExpressionTree {
    */
   private final Stack<TreeNode> nodeStack = new Stack<TreeNode>();
 
+  /**
+   * Get the root node of the tree, or null if the filter is empty.
+   */
+  public TreeNode getRoot() {
+    return root;
+  }
+
   /**
    * Adds a intermediate node of either type(AND/OR). Pops last two nodes from
    * the stack and sets them as children of the new node and pushes itself
@@ -66,19 +66,61 @@ operatorExpression
 }
     :
     (
-       (key = Identifier op = operator  value = StringLiteral)
+       (key = Identifier op = operator  value = literal)
        | 
-       (value = StringLiteral  op = operator key = Identifier) { isReverseOrder = true; }
+       (value = literal  op = operator key = Identifier) { isReverseOrder = true; }
     )
     {
         LeafNode node = new LeafNode();
         node.keyName = key.getText();
-        node.value = TrimQuotes(value.getText());
+        node.value = value;
         node.operator = op;
         node.isReverseOrder = isReverseOrder;
 
         tree.addLeafNode(node);
-    };
+    }
+    |
+    inExpression
+    ;
+
+// key IN (v1, v2, ...) is added as (key = v1) OR (key = v2) ...
+inExpression
+    :
+    key = Identifier KW_IN LPAREN value = literal
+    {
+        LeafNode node = new LeafNode();
+        node.keyName = key.getText();
+        node.value = value;
+        node.operator = Operator.EQUALS;
+        tree.addLeafNode(node);
+    }
+    (
+       COMMA value = literal
+       {
+           LeafNode next = new LeafNode();
+           next.keyName = key.getText();
+           next.value = value;
+           next.operator = Operator.EQUALS;
+           tree.addLeafNode(next);
+           tree.addIntermediateNode(LogicalOperator.OR);
+       }
+    )*
+    RPAREN
+    ;
+
+// a string value, or a Long for an integral literal
+literal returns [Object value]
+    :
+    t = StringLiteral
+    {
+        $value = TrimQuotes(t.getText());
+    }
+    |
+    t = IntLiteral
+    {
+        $value = Long.valueOf(t.getText());
+    }
+    ;
 
 operator returns [Operator op]
    :
@@ -91,10 +133,12 @@ operator returns [Operator op]
 KW_AND : 'AND';
 KW_OR : 'OR';
 KW_LIKE : 'LIKE';
+KW_IN : 'IN';
 
 // Operators
 LPAREN : '(' ;
 RPAREN : ')' ;
+COMMA : ',' ;
 EQUAL : '=';
 NOTEQUAL : '<>';
 LESSTHANOREQUALTO : '<=';
@@ -121,6 +165,11 @@ StringLiteral
     )
     ;
 
+IntLiteral
+    :
+    ('-')? (Digit)+
+    ;
+
 Identifier
     :
     (Letter | Digit) (Letter | Digit | '_')*
@@ -0,0 +1,164 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hive.metastore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.metastore.api.Database;
+import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hadoop.hive.metastore.api.NoSuchObjectException;
+import org.apache.hadoop.hive.metastore.api.Partition;
+import org.apache.hadoop.hive.metastore.api.SerDeInfo;
+import org.apache.hadoop.hive.metastore.api.StorageDescriptor;
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.apache.hadoop.hive.serde.Constants;
+
+/**
+ * PerformTestPartitionListing. Measures the time ObjectStore takes to list
+ * all the partitions of a table, by name and by filter, with JDO and with
+ * direct SQL, against the metastore database of the configuration (the
+ * embedded Derby database by default).
+ *
+ * Run with: PerformTestPartitionListing [-partitions n] [-columns n]
+ * [-iterations n]
+ */
+public class PerformTestPartitionListing {
+
+  private static final String DB_NAME = "perftestdb";
+  private static final String TBL_NAME = "perftesttbl";
+
+  private static void createTable(HiveMetaStoreClient client, int numPartitions,
+      int numColumns) throws Exception {
+    client.dropTable(DB_NAME, TBL_NAME);
+    try {
+      client.dropDatabase(DB_NAME);
+    } catch (NoSuchObjectException e) {
+      // not created yet
+    }
+    client.createDatabase(new Database(DB_NAME, "", null, null));
+
+    StorageDescriptor sd = new StorageDescriptor();
+    sd.setCols(new ArrayList<FieldSchema>());
+    for (int i = 0; i < numColumns; i++) {
+      sd.getCols().add(new FieldSchema("col" + i, Constants.STRING_TYPE_NAME, "column " + i));
+    }
+    sd.setBucketCols(new ArrayList<String>());
+    sd.setParameters(new HashMap<String, String>());
+    sd.setSerdeInfo(new SerDeInfo(TBL_NAME, "org.apache.hadoop.hive.serde2.lazy.LazySimpleSerDe",
+        new HashMap<String, String>()));
+    sd.getSerdeInfo().getParameters().put(Constants.SERIALIZATION_FORMAT, "1");
+    Table tbl = new Table();
+    tbl.setDbName(DB_NAME);
+    tbl.setTableName(TBL_NAME);
+    tbl.setSd(sd);
+    tbl.setPartitionKeys(new ArrayList<FieldSchema>(Arrays.asList(
+        new FieldSchema("ds", Constants.STRING_TYPE_NAME, ""),
+        new FieldSchema("hr", Constants.STRING_TYPE_NAME, ""))));
+    tbl.setParameters(new HashMap<String, String>());
+    client.createTable(tbl);
+    tbl = client.getTable(DB_NAME, TBL_NAME);
+
+    for (int i = 0; i < numPartitions; i++) {
+      String ds = String.format("2011-%02d-%02d", 1 + i / 24 / 28 % 12, 1 + i / 24 % 28);
+      String hr = String.format("%02d", i % 24);
+      Partition part = new Partition();
+      part.setDbName(DB_NAME);
+      part.setTableName(TBL_NAME);
+      part.setValues(Arrays.asList(ds, hr));
+      part.setParameters(new HashMap<String, String>());
+      part.getParameters().put("transient_lastDdlTime", String.valueOf(i));
+      part.setSd(new StorageDescriptor(tbl.getSd()));
+      part.getSd().setLocation(tbl.getSd().getLocation() + "/ds=" + ds + "/hr=" + hr);
+      client.add_partition(part);
+    }
+  }
+
+  private static ObjectStore createStore(HiveConf hiveConf, boolean tryDirectSql) {
+    HiveConf conf = new HiveConf(hiveConf);
+    conf.setBoolVar(HiveConf.ConfVars.METASTORE_TRY_DIRECT_SQL, tryDirectSql);
+    ObjectStore store = new ObjectStore();
+    store.setConf(conf);
+    return store;
+  }
+
+  private static long time(ObjectStore store, int iterations, int numPartitions)
+      throws Exception {
+    List<String> names = store.listPartitionNames(DB_NAME, TBL_NAME, (short) -1);
+    long start = System.currentTimeMillis();
+    for (int i = 0; i < iterations; i++) {
+      check(store.getPartitions(DB_NAME, TBL_NAME, -1), numPartitions);
+      check(store.getPartitionsByNames(DB_NAME, TBL_NAME, names), numPartitions);
+      check(store.getPartitionsByFilter(DB_NAME, TBL_NAME, "ds > \"2011\"", (short) -1),
+          numPartitions);
+    }
+    return System.currentTimeMillis() - start;
+  }
+
+  private static void check(List<Partition> parts, int numPartitions) {
+    if (parts.size() != numPartitions) {
+      throw new RuntimeException("Expected " + numPartitions + " partitions, got "
+          + parts.size());
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    int numPartitions = 2000;
+    int numColumns = 20;
+    int iterations = 5;
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("-partitions")) {
+        numPartitions = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-columns")) {
+        numColumns = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-iterations")) {
+        iterations = Integer.parseInt(args[++i]);
+      } else {
+        System.err.println("Usage: PerformTestPartitionListing [-partitions n]"
+            + " [-columns n] [-iterations n]");
+        System.exit(1);
+      }
+    }
+
+    HiveConf hiveConf = new HiveConf(PerformTestPartitionListing.class);
+    HiveMetaStoreClient client = new HiveMetaStoreClient(hiveConf, null);
+    System.out.println("Creating " + numPartitions + " partitions of " + numColumns
+        + " columns");
+    createTable(client, numPartitions, numColumns);
+
+    ObjectStore jdoStore = createStore(hiveConf, false);
+    ObjectStore directStore = createStore(hiveConf, true);
+    // warm up the caches and the JIT
+    time(jdoStore, 1, numPartitions);
+    time(directStore, 1, numPartitions);
+
+    long jdoTime = time(jdoStore, iterations, numPartitions);
+    long directTime = time(directStore, iterations, numPartitions);
+    System.out.println("JDO:        " + jdoTime + " ms");
+    System.out.println("Direct SQL: " + directTime + " ms");
+
+    jdoStore.shutdown();
+    directStore.shutdown();
+    client.dropTable(DB_NAME, TBL_NAME);
+    client.dropDatabase(DB_NAME);
+    client.close();
+  }
+}
@@ -19,6 +19,7 @@
 package org.apache.hadoop.hive.metastore;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -295,6 +296,42 @@ public abstract class TestHiveMetaStore extends TestCase {
       assertEquals("Should have returned 2 partition names", 2, partialNames.size());
       assertTrue("Not all part names returned", partialNames.containsAll(partNames));
 
+      // Test partition listing with a full spec, and with a limit
+      partial = client.listPartitions(dbName, tblName, vals2, (short) -1);
+      assertEquals("Should have returned 1 partition", 1, partial.size());
+      assertEquals(part2, partial.get(0));
+
+      partialVals.clear();
+      partialVals.add("");
+      partialVals.add(vals2.get(1));
+      partialNames = client.listPartitionNames(dbName, tblName, partialVals, (short) 1);
+      assertEquals("Should have returned 1 partition name", 1, partialNames.size());
+      assertEquals(part2Name, partialNames.get(0));
+
+      partialVals.clear();
+      partialVals.add(vals3.get(0));
+      partialVals.add("");
+      partialVals.add("");
+      assertTrue("Should have returned no partition",
+          client.listPartitions(dbName, tblName, partialVals, (short) -1).isEmpty());
+
+      // a missing table is an error, not an empty list
+      exceptionThrown = false;
+      try {
+        client.listPartitions(dbName, "no_such_table", partialVals, (short) -1);
+      } catch (MetaException e) {
+        exceptionThrown = true;
+      }
+      assertTrue("listPartitions() should have thrown for a missing table", exceptionThrown);
+      exceptionThrown = false;
+      try {
+        client.listPartitionNames(dbName, "no_such_table", partialVals, (short) -1);
+      } catch (MetaException e) {
+        exceptionThrown = true;
+      }
+      assertTrue("listPartitionNames() should have thrown for a missing table",
+          exceptionThrown);
+
       // Verify escaped partition names don't return partitions
       exceptionThrown = false;
       try {
@@ -1283,6 +1320,183 @@ public abstract class TestHiveMetaStore extends TestCase {
       client.dropDatabase(dbName);
   }
 
+  /**
+   * Test filtering on an integral partition key, with IN lists and LIKE
+   * @throws Exception
+   */
+  public void testFilterIntegralPartition() throws Exception {
+    String dbName = "filterdb";
+    String tblName = "filtertbl";
+
+    silentDropDatabase(dbName);
+    client.createDatabase(new Database(dbName, "", null, null));
+
+    Table tbl = new Table();
+    tbl.setDbName(dbName);
+    tbl.setTableName(tblName);
+    StorageDescriptor sd = new StorageDescriptor();
+    tbl.setSd(sd);
+    sd.setCols(new ArrayList<FieldSchema>(Arrays.asList(
+        new FieldSchema("c1", Constants.STRING_TYPE_NAME, ""))));
+    sd.setParameters(new HashMap<String, String>());
+    sd.setBucketCols(new ArrayList<String>());
+    sd.setSerdeInfo(new SerDeInfo(tblName, null, new HashMap<String, String>()));
+    sd.setSortCols(new ArrayList<Order>());
+    tbl.setPartitionKeys(new ArrayList<FieldSchema>(Arrays.asList(
+        new FieldSchema("ds", Constants.STRING_TYPE_NAME, ""),
+        new FieldSchema("hr", Constants.INT_TYPE_NAME, ""))));
+    client.createTable(tbl);
+    tbl = client.getTable(dbName, tblName);
+
+    String defaultPartName = HiveConf.getVar(hiveConf,
+        HiveConf.ConfVars.DEFAULTPARTITIONNAME);
+    String[][] values = {{"2011-01-01", "1"}, {"2011-01-01", "2"},
+        {"2011-01-02", "10"}, {"2011-01-02", defaultPartName},
+        {"2011-01-03", "-5"}, {"2011_01_03", "2"}};
+    for (String[] val : values) {
+      add_partition(client, tbl, Arrays.asList(val), "/ds=" + val[0] + "/hr=" + val[1]);
+    }
+
+    // the values of hr are compared as numbers
+    checkFilter(client, dbName, tblName, "hr = 2", 2);
+    checkFilter(client, dbName, tblName, "hr > 2", 1);
+    checkFilter(client, dbName, tblName, "hr <= 2", 4);
+    checkFilter(client, dbName, tblName, "2 < hr", 1);
+    checkFilter(client, dbName, tblName, "hr <> 10", 4);
+    checkFilter(client, dbName, tblName, "hr >= -5 and hr < 2", 2);
+    checkFilter(client, dbName, tblName, "ds = \"2011-01-02\" and hr > 1", 1);
+    checkFilter(client, dbName, tblName, "hr in (1, 10, 11)", 2);
+    checkFilter(client, dbName, tblName,
+        "ds in (\"2011-01-01\", \"2011-01-03\") or hr = 10", 4);
+    checkFilter(client, dbName, tblName, "ds like \"2011-01-0.*\"", 5);
+    checkFilter(client, dbName, tblName, "ds like \"2011.01.03\"", 2);
+    checkFilter(client, dbName, tblName, "ds like \"2011\\_01\\_03\"", 1);
+
+    Exception me = null;
+    try {
+      client.listPartitionsByFilter(dbName, tblName, "ds = 1", (short) -1);
+    } catch (MetaException e) {
+      me = e;
+    }
+    assertNotNull(me);
+    assertTrue("Integral value for string key", me.getMessage().contains(
+        "requires a string value"));
+
+    me = null;
+    try {
+      client.listPartitionsByFilter(dbName, tblName, "hr = 99999999999999999999",
+          (short) -1);
+    } catch (MetaException e) {
+      me = e;
+    }
+    assertNotNull(me);
+    assertTrue("Out of range integral value", me.getMessage().contains(
+        "Error parsing partition filter"));
+
+    client.dropTable(dbName, tblName);
+    client.dropDatabase(dbName);
+  }
+
+  /**
+   * Tests adding the partitions of a table together
+   * @throws Exception
+   */
+  public void testAddPartitions() throws Exception {
+    String dbName = "addpartsdb";
+    String tblName = "addpartstbl";
+
+    silentDropDatabase(dbName);
+
+    Database db = new Database();
+    db.setName(dbName);
+    client.createDatabase(db);
+
+    ArrayList<FieldSchema> cols = new ArrayList<FieldSchema>(2);
+    cols.add(new FieldSchema("c1", Constants.STRING_TYPE_NAME, ""));
+    cols.add(new FieldSchema("c2", Constants.INT_TYPE_NAME, ""));
+
+    ArrayList<FieldSchema> partCols = new ArrayList<FieldSchema>(2);
+    partCols.add(new FieldSchema("ds", Constants.STRING_TYPE_NAME, ""));
+    partCols.add(new FieldSchema("hr", Constants.STRING_TYPE_NAME, ""));
+
+    Table tbl = new Table();
+    tbl.setDbName(dbName);
+    tbl.setTableName(tblName);
+    StorageDescriptor sd = new StorageDescriptor();
+    tbl.setSd(sd);
+    sd.setCols(cols);
+    sd.setCompressed(false);
+    sd.setNumBuckets(1);
+    sd.setParameters(new HashMap<String, String>());
+    sd.setBucketCols(new ArrayList<String>());
+    sd.setSerdeInfo(new SerDeInfo());
+    sd.getSerdeInfo().setName(tbl.getTableName());
+    sd.getSerdeInfo().setParameters(new HashMap<String, String>());
+    sd.getSerdeInfo().getParameters()
+        .put(Constants.SERIALIZATION_FORMAT, "1");
+    sd.setSortCols(new ArrayList<Order>());
+
+    tbl.setPartitionKeys(partCols);
+    client.createTable(tbl);
+
+    tbl = client.getTable(dbName, tblName);
+
+    // the directory of the first partition exists already, the others are
+    // created with their partitions
+    Path tblPath = new Path(tbl.getSd().getLocation());
+    FileSystem fs = tblPath.getFileSystem(hiveConf);
+    fs.mkdirs(new Path(tblPath, "ds=2011-01-01/hr=00"));
+
+    List<Partition> parts = new ArrayList<Partition>();
+    String[][] vals = {{"2011-01-01", "00"}, {"2011-01-01", "01"}, {"2011-01-02", "00"}};
+    for (String[] val : vals) {
+      parts.add(makePartition(tbl, val[0], val[1]));
+    }
+    assertEquals(3, client.add_partitions(parts));
+
+    List<Partition> added = client.listPartitions(dbName, tblName, (short) -1);
+    assertEquals(3, added.size());
+    for (Partition part : added) {
+      Path partPath = new Path(tblPath, Warehouse.makePartName(partCols, part.getValues()));
+      assertEquals(partPath.toString(), part.getSd().getLocation());
+      assertTrue(fs.exists(partPath));
+      assertEquals(cols, part.getSd().getCols());
+    }
+
+    // the first partitions by name are returned up to the limit
+    List<Partition> limited = client.listPartitions(dbName, tblName, (short) 2);
+    assertEquals(2, limited.size());
+    assertEquals(Arrays.asList(vals[0]), limited.get(0).getValues());
+    assertEquals(Arrays.asList(vals[1]), limited.get(1).getValues());
+
+    // none of the partitions is added when one of them exists already
+    parts = new ArrayList<Partition>();
+    parts.add(makePartition(tbl, "2011-01-02", "00"));
+    parts.add(makePartition(tbl, "2011-01-03", "00"));
+    boolean exceptionThrown = false;
+    try {
+      client.add_partitions(parts);
+    } catch (AlreadyExistsException e) {
+      exceptionThrown = true;
+    }
+    assertTrue("Partitions that exist were added", exceptionThrown);
+    assertEquals(3, client.listPartitionNames(dbName, tblName, (short) -1).size());
+
+    client.dropTable(dbName, tblName);
+    client.dropDatabase(dbName);
+  }
+
+  private static Partition makePartition(Table table, String ds, String hr) {
+    Partition part = new Partition();
+    part.setDbName(table.getDbName());
+    part.setTableName(table.getTableName());
+    part.setValues(new ArrayList<String>(Arrays.asList(ds, hr)));
+    part.setParameters(new HashMap<String, String>());
+    part.setSd(new StorageDescriptor(table.getSd()));
+    part.getSd().setLocation(null);
+    return part;
+  }
+
   private void checkFilter(HiveMetaStoreClient client, String dbName,
         String tblName, String filter, int expectedCount)
         throws MetaException, NoSuchObjectException, TException {
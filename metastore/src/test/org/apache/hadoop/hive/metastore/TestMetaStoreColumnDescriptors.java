@@ -0,0 +1,162 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.metastore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import javax.jdo.Query;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.metastore.api.Database;
+import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hadoop.hive.metastore.api.NoSuchObjectException;
+import org.apache.hadoop.hive.metastore.api.Partition;
+import org.apache.hadoop.hive.metastore.api.SerDeInfo;
+import org.apache.hadoop.hive.metastore.api.StorageDescriptor;
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.apache.hadoop.hive.metastore.model.MColumnDescriptor;
+import org.apache.hadoop.hive.serde.Constants;
+
+/**
+ * Tests that the storage descriptors of a table and of its partitions share
+ * their column descriptor when they have the same columns, and that the
+ * column descriptors are deleted when they are not used anymore.
+ */
+public class TestMetaStoreColumnDescriptors extends TestCase {
+
+  private static final String DB_NAME = "cdsdb";
+  private static final String TBL_NAME = "cdstbl";
+
+  private HiveMetaStoreClient client;
+  private ObjectStore store;
+  private Table tbl;
+
+  @Override
+  protected void setUp() throws Exception {
+    HiveConf hiveConf = new HiveConf(this.getClass());
+    client = new HiveMetaStoreClient(hiveConf, null);
+    client.dropTable(DB_NAME, TBL_NAME);
+    try {
+      client.dropDatabase(DB_NAME);
+    } catch (NoSuchObjectException e) {
+      // not created yet
+    }
+    client.createDatabase(new Database(DB_NAME, "", null, null));
+    store = new ObjectStore();
+    store.setConf(hiveConf);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    store.shutdown();
+    client.dropTable(DB_NAME, TBL_NAME);
+    client.dropDatabase(DB_NAME);
+    client.close();
+  }
+
+  private long countColumnDescriptors() {
+    store.openTransaction();
+    Query query = store.getPersistenceManager().newQuery(MColumnDescriptor.class);
+    query.setResult("count(this)");
+    query.setUnique(true);
+    long count = ((Number) query.execute()).longValue();
+    query.closeAll();
+    store.commitTransaction();
+    return count;
+  }
+
+  private void createTable() throws Exception {
+    StorageDescriptor sd = new StorageDescriptor();
+    sd.setCols(new ArrayList<FieldSchema>(Arrays.asList(
+        new FieldSchema("key", Constants.INT_TYPE_NAME, "the key"),
+        new FieldSchema("value", Constants.STRING_TYPE_NAME, null))));
+    sd.setBucketCols(new ArrayList<String>());
+    sd.setParameters(new HashMap<String, String>());
+    sd.setSerdeInfo(new SerDeInfo(TBL_NAME, "org.apache.hadoop.hive.serde2.lazy.LazySimpleSerDe",
+        new HashMap<String, String>()));
+    tbl = new Table();
+    tbl.setDbName(DB_NAME);
+    tbl.setTableName(TBL_NAME);
+    tbl.setSd(sd);
+    tbl.setPartitionKeys(new ArrayList<FieldSchema>(Arrays.asList(
+        new FieldSchema("ds", Constants.STRING_TYPE_NAME, ""))));
+    tbl.setParameters(new HashMap<String, String>());
+    client.createTable(tbl);
+    tbl = client.getTable(DB_NAME, TBL_NAME);
+  }
+
+  private Partition addPartition(String ds, List<FieldSchema> cols) throws Exception {
+    Partition part = new Partition();
+    part.setDbName(DB_NAME);
+    part.setTableName(TBL_NAME);
+    part.setValues(Arrays.asList(ds));
+    part.setParameters(new HashMap<String, String>());
+    part.setSd(new StorageDescriptor(tbl.getSd()));
+    part.getSd().setCols(cols);
+    part.getSd().setLocation(tbl.getSd().getLocation() + "/ds=" + ds);
+    client.add_partition(part);
+    return client.getPartition(DB_NAME, TBL_NAME, Arrays.asList(ds));
+  }
+
+  public void testSharedColumnDescriptors() throws Exception {
+    long initial = countColumnDescriptors();
+    createTable();
+    assertEquals(initial + 1, countColumnDescriptors());
+
+    // the partitions with the columns of the table share its descriptor
+    List<FieldSchema> otherCols = new ArrayList<FieldSchema>(tbl.getSd().getCols());
+    otherCols.add(new FieldSchema("extra", Constants.DOUBLE_TYPE_NAME, null));
+    addPartition("2011-01-01", tbl.getSd().getCols());
+    addPartition("2011-01-02", tbl.getSd().getCols());
+    Partition other = addPartition("2011-01-03", otherCols);
+    assertEquals(initial + 2, countColumnDescriptors());
+    assertEquals(otherCols, other.getSd().getCols());
+    assertEquals(tbl.getSd().getCols(),
+        client.getPartition(DB_NAME, TBL_NAME, Arrays.asList("2011-01-01")).getSd().getCols());
+
+    // altering a partition without changing its columns keeps the descriptor
+    Partition part = client.getPartition(DB_NAME, TBL_NAME, Arrays.asList("2011-01-02"));
+    part.getParameters().put("key", "value");
+    client.alter_partition(DB_NAME, TBL_NAME, part);
+    assertEquals(initial + 2, countColumnDescriptors());
+
+    // the descriptor of the columns the partition had is deleted with it
+    other.getSd().setCols(tbl.getSd().getCols());
+    client.alter_partition(DB_NAME, TBL_NAME, other);
+    assertEquals(initial + 2, countColumnDescriptors());
+    client.dropPartition(DB_NAME, TBL_NAME, Arrays.asList("2011-01-03"), false);
+    assertEquals(initial + 1, countColumnDescriptors());
+
+    // the partitions keep the columns of the table before it is altered
+    tbl.getSd().setCols(otherCols);
+    client.alter_table(DB_NAME, TBL_NAME, tbl);
+    assertEquals(initial + 2, countColumnDescriptors());
+    assertEquals(otherCols, client.getTable(DB_NAME, TBL_NAME).getSd().getCols());
+    assertEquals(2,
+        client.getPartition(DB_NAME, TBL_NAME, Arrays.asList("2011-01-01")).getSd().getColsSize());
+
+    client.dropTable(DB_NAME, TBL_NAME);
+    assertEquals(initial, countColumnDescriptors());
+  }
+}
@@ -0,0 +1,184 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.metastore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.metastore.api.Database;
+import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hadoop.hive.metastore.api.NoSuchObjectException;
+import org.apache.hadoop.hive.metastore.api.Order;
+import org.apache.hadoop.hive.metastore.api.Partition;
+import org.apache.hadoop.hive.metastore.api.SerDeInfo;
+import org.apache.hadoop.hive.metastore.api.StorageDescriptor;
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.apache.hadoop.hive.serde.Constants;
+
+/**
+ * Tests that the partitions retrieved with direct SQL are the ones retrieved
+ * with JDO.
+ */
+public class TestMetaStoreDirectSql extends TestCase {
+
+  private static final String DB_NAME = "directsqldb";
+  private static final String TBL_NAME = "directsqltbl";
+
+  private HiveConf hiveConf;
+  private HiveMetaStoreClient client;
+  private ObjectStore jdoStore;
+  private ObjectStore directStore;
+
+  @Override
+  protected void setUp() throws Exception {
+    hiveConf = new HiveConf(this.getClass());
+    client = new HiveMetaStoreClient(hiveConf, null);
+    client.dropTable(DB_NAME, TBL_NAME);
+    try {
+      client.dropDatabase(DB_NAME);
+    } catch (NoSuchObjectException e) {
+      // not created yet
+    }
+    client.createDatabase(new Database(DB_NAME, "", null, null));
+
+    StorageDescriptor sd = new StorageDescriptor();
+    sd.setCols(new ArrayList<FieldSchema>(Arrays.asList(
+        new FieldSchema("key", Constants.INT_TYPE_NAME, "the key"),
+        new FieldSchema("value", Constants.STRING_TYPE_NAME, null))));
+    sd.setCompressed(true);
+    sd.setNumBuckets(4);
+    sd.setBucketCols(new ArrayList<String>(Arrays.asList("key")));
+    sd.setSortCols(new ArrayList<Order>(Arrays.asList(new Order("key", 1),
+        new Order("value", 0))));
+    sd.setParameters(new HashMap<String, String>());
+    sd.getParameters().put("sdparam", "sdvalue");
+    sd.setSerdeInfo(new SerDeInfo(TBL_NAME, "org.apache.hadoop.hive.serde2.lazy.LazySimpleSerDe",
+        new HashMap<String, String>()));
+    sd.getSerdeInfo().getParameters().put(Constants.SERIALIZATION_FORMAT, "1");
+    Table tbl = new Table();
+    tbl.setDbName(DB_NAME);
+    tbl.setTableName(TBL_NAME);
+    tbl.setSd(sd);
+    tbl.setPartitionKeys(new ArrayList<FieldSchema>(Arrays.asList(
+        new FieldSchema("ds", Constants.STRING_TYPE_NAME, ""),
+        new FieldSchema("hr", Constants.STRING_TYPE_NAME, ""))));
+    tbl.setParameters(new HashMap<String, String>());
+    client.createTable(tbl);
+    tbl = client.getTable(DB_NAME, TBL_NAME);
+
+    for (int day = 1; day <= 3; day++) {
+      for (int hour = 10; hour < 13; hour++) {
+        Partition part = new Partition();
+        part.setDbName(DB_NAME);
+        part.setTableName(TBL_NAME);
+        part.setValues(Arrays.asList("2011-01-0" + day, String.valueOf(hour)));
+        part.setParameters(new HashMap<String, String>());
+        if (hour == 11) {
+          part.getParameters().put("partparam", "partvalue" + day);
+        }
+        part.setSd(new StorageDescriptor(tbl.getSd()));
+        part.getSd().setLocation(tbl.getSd().getLocation() + "/ds=2011-01-0" + day
+            + "/hr=" + hour);
+        if (day == 2) {
+          part.getSd().getCols().add(new FieldSchema("extra", Constants.DOUBLE_TYPE_NAME, ""));
+          part.getSd().getSerdeInfo().getParameters().put("field.delim", ",");
+        }
+        client.add_partition(part);
+      }
+    }
+
+    jdoStore = createStore(false);
+    directStore = createStore(true);
+  }
+
+  private ObjectStore createStore(boolean tryDirectSql) {
+    HiveConf conf = new HiveConf(hiveConf);
+    conf.setBoolVar(HiveConf.ConfVars.METASTORE_TRY_DIRECT_SQL, tryDirectSql);
+    ObjectStore store = new ObjectStore();
+    store.setConf(conf);
+    return store;
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    jdoStore.shutdown();
+    directStore.shutdown();
+    client.dropTable(DB_NAME, TBL_NAME);
+    client.dropDatabase(DB_NAME);
+    client.close();
+  }
+
+  public void testGetPartitions() throws Exception {
+    List<Partition> expected = jdoStore.getPartitions(DB_NAME, TBL_NAME, -1);
+    assertEquals(9, expected.size());
+    assertEquals(expected, directStore.getPartitions(DB_NAME, TBL_NAME, -1));
+    assertEquals(expected.subList(0, 3), jdoStore.getPartitions(DB_NAME, TBL_NAME, 3));
+    assertEquals(expected.subList(0, 3), directStore.getPartitions(DB_NAME, TBL_NAME, 3));
+
+    // the store falls back to JDO, so check that direct SQL succeeds on its own
+    directStore.openTransaction();
+    MetaStoreDirectSql directSql = new MetaStoreDirectSql(directStore.getPersistenceManager());
+    assertEquals(expected, directSql.getPartitions(DB_NAME, TBL_NAME, -1));
+    assertEquals(expected.subList(0, 3), directSql.getPartitions(DB_NAME, TBL_NAME, 3));
+    assertEquals(expected.subList(2, 4), directSql.getPartitionsByNames(DB_NAME, TBL_NAME,
+        Arrays.asList("ds=2011-01-02/hr=10", "ds=2011-01-01/hr=12"), -1, true));
+    assertTrue(directStore.commitTransaction());
+
+    Partition part = directStore.getPartitions(DB_NAME, TBL_NAME, -1).get(4);
+    assertEquals(Arrays.asList("2011-01-02", "11"), part.getValues());
+    assertEquals("partvalue2", part.getParameters().get("partparam"));
+    assertEquals(3, part.getSd().getCols().size());
+    assertTrue(part.getSd().isCompressed());
+    assertEquals(",", part.getSd().getSerdeInfo().getParameters().get("field.delim"));
+
+    assertTrue(directStore.getPartitions(DB_NAME, "nosuchtable", -1).isEmpty());
+  }
+
+  public void testGetPartitionsByNames() throws Exception {
+    List<String> names = Arrays.asList("ds=2011-01-03/hr=10", "ds=2011-01-01/hr=12",
+        "ds=2011-01-09/hr=10");
+    List<Partition> expected = jdoStore.getPartitionsByNames(DB_NAME, TBL_NAME, names);
+    assertEquals(2, expected.size());
+    assertEquals(expected, directStore.getPartitionsByNames(DB_NAME, TBL_NAME, names));
+    assertEquals(Arrays.asList("2011-01-01", "12"), expected.get(0).getValues());
+  }
+
+  public void testGetPartitionsByFilter() throws Exception {
+    String filter = "ds > \"2011-01-01\" and hr <> \"11\"";
+    List<Partition> expected = jdoStore.getPartitionsByFilter(DB_NAME, TBL_NAME, filter,
+        (short) -1);
+    assertEquals(4, expected.size());
+    assertEquals(expected, directStore.getPartitionsByFilter(DB_NAME, TBL_NAME, filter,
+        (short) -1));
+    assertEquals(expected.subList(0, 3), directStore.getPartitionsByFilter(DB_NAME,
+        TBL_NAME, filter, (short) 3));
+
+    try {
+      directStore.getPartitionsByFilter(DB_NAME, "nosuchtable", filter, (short) -1);
+      fail("NoSuchObjectException expected");
+    } catch (NoSuchObjectException e) {
+      // expected
+    }
+  }
+}
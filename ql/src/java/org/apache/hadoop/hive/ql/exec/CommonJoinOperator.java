@@ -151,6 +151,10 @@ public abstract class CommonJoinOperator<T extends JoinDesc> extends
   transient Byte lastAlias = null;
 
   transient boolean handleSkewJoin = false;
+  // join the rows of the streamed table in larger batches for the keys whose
+  // rows of another table are spilled
+  transient boolean batchSpilledKeys = false;
+  transient boolean spilledKeyInCurrentGroup = false;
 
   protected transient int countAfterReport;
   protected transient int heartbeatInterval;
@@ -185,6 +189,7 @@ public abstract class CommonJoinOperator<T extends JoinDesc> extends
     this.forwardCache = clone.forwardCache;
     this.groupKeyObject = clone.groupKeyObject;
     this.handleSkewJoin = clone.handleSkewJoin;
+    this.batchSpilledKeys = clone.batchSpilledKeys;
     this.hconf = clone.hconf;
     this.id = clone.id;
     this.inputObjInspectors = clone.inputObjInspectors;
@@ -220,6 +225,8 @@ public abstract class CommonJoinOperator<T extends JoinDesc> extends
   @Override
   protected void initializeOp(Configuration hconf) throws HiveException {
     this.handleSkewJoin = conf.getHandleSkewJoin();
+    this.batchSpilledKeys = HiveConf.getBoolVar(hconf,
+        HiveConf.ConfVars.HIVEJOINBATCHSPILLEDKEYS);
     this.hconf = hconf;
 
     heartbeatInterval = HiveConf.getIntVar(hconf,
@@ -338,11 +345,40 @@ transient boolean newGroupStarted = false;
   public void startGroup() throws HiveException {
     LOG.trace("Join: Starting new group");
     newGroupStarted = true;
+    spilledKeyInCurrentGroup = false;
     for (AbstractRowContainer<ArrayList<Object>> alw : storage.values()) {
       alw.clear();
     }
   }
 
+  /**
+   * Check whether the rows of the current key in a table other than the
+   * streamed one no longer fit in the cache, and so are spilled to disk.
+   *
+   * @param sz
+   *          the number of rows of the key in the table
+   * @return true if the key has just been found to be spilled
+   */
+  protected boolean checkSpilledKey(int sz) {
+    if (batchSpilledKeys && !spilledKeyInCurrentGroup && sz >= joinCacheSize) {
+      spilledKeyInCurrentGroup = true;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * @return the number of rows of the streamed table joined at once. Each
+   *         batch reads all the rows of the other tables, so the batches of a
+   *         key with spilled rows are as large as the cache.
+   */
+  protected int getEmitInterval() {
+    if (spilledKeyInCurrentGroup) {
+      return Math.max(joinEmitInterval, joinCacheSize);
+    }
+    return joinEmitInterval;
+  }
+
   protected int getNextSize(int sz) {
     // A very simple counter to keep track of join entries for a key
     if (sz >= 100000) {
@@ -1489,10 +1489,26 @@ public class DDLTask extends Task<DDLWork> implements Serializable {
       checker.checkMetastore(t.getDbName(), t.getTableName(), msckDesc.getPartSpecs(), result);
       if (msckDesc.isRepairPartitions()) {
         Table table = db.getTable(msckDesc.getTableName());
-        for (CheckResult.PartitionResult part : result.getPartitionsNotInMs()) {
+        List<CheckResult.PartitionResult> partsNotInMs = result.getPartitionsNotInMs();
+        // add the partitions together, and one by one only if that fails, so
+        // that the partitions that can be added still are
+        boolean repaired = false;
+        try {
+          List<Map<String, String>> partSpecs = new ArrayList<Map<String, String>>();
+          for (CheckResult.PartitionResult part : partsNotInMs) {
+            partSpecs.add(Warehouse.makeSpecFromName(part.getPartitionName()));
+          }
+          db.createPartitions(table, partSpecs);
+          repaired = true;
+        } catch (Exception e) {
+          LOG.warn("Repair error, could not add partitions to metastore together: ", e);
+        }
+        for (CheckResult.PartitionResult part : partsNotInMs) {
           try {
-            db.createPartition(table, Warehouse.makeSpecFromName(part
-                .getPartitionName()));
+            if (!repaired) {
+              db.createPartition(table, Warehouse.makeSpecFromName(part
+                  .getPartitionName()));
+            }
             repairOutput.add("Repair: Added partition to metastore "
                 + msckDesc.getTableName() + ':' + part.getPartitionName());
           } catch (Exception e) {
@@ -52,6 +52,7 @@ import org.apache.hadoop.hive.ql.Context;
 import org.apache.hadoop.hive.ql.DriverContext;
 import org.apache.hadoop.hive.ql.QueryPlan;
 import org.apache.hadoop.hive.ql.exec.FileSinkOperator.RecordWriter;
+import org.apache.hadoop.hive.ql.io.HiveInputFormat;
 import org.apache.hadoop.hive.ql.io.HiveKey;
 import org.apache.hadoop.hive.ql.io.HiveOutputFormat;
 import org.apache.hadoop.hive.ql.io.IOPrepareCache;
@@ -246,6 +247,9 @@ public class ExecDriver extends Task<MapredWork> implements Serializable, Hadoop
 
     job.setMapOutputKeyClass(HiveKey.class);
     job.setMapOutputValueClass(BytesWritable.class);
+    if (HiveConf.getBoolVar(job, HiveConf.ConfVars.HIVE_SORT_KEY_PREFIX)) {
+      job.setOutputKeyComparatorClass(HiveKey.PrefixComparator.class);
+    }
 
     try {
       job.setPartitionerClass((Class<? extends Partitioner>) (Class.forName(HiveConf.getVar(job,
@@ -404,7 +408,9 @@ public class ExecDriver extends Task<MapredWork> implements Serializable, Hadoop
       }
 
       // Finally SUBMIT the JOB!
+      HiveInputFormat.takeSplitsTimes();
       rj = jc.submitJob(job);
+      updateSplitsCounters();
       // replace it back
       if (pwd != null) {
         HiveConf.setVar(job, HiveConf.ConfVars.METASTOREPWD, pwd);
@@ -922,6 +928,20 @@ public class ExecDriver extends Task<MapredWork> implements Serializable, Hadoop
     }
   }
 
+  /**
+   * Keep with the counters of the task the time the input format spent
+   * computing the splits of the job, which is done by the thread submitting
+   * it.
+   */
+  private void updateSplitsCounters() {
+    long[] splitsTimes = HiveInputFormat.takeSplitsTimes();
+    if (splitsTimes != null) {
+      taskCounters.put("CNTR_NAME_" + getId() + "_SPLITS_TIME", Long.valueOf(splitsTimes[0]));
+      taskCounters.put("CNTR_NAME_" + getId() + "_SPLITS_PATHS_TIME",
+          Long.valueOf(splitsTimes[1]));
+    }
+  }
+
   @Override
   public void updateCounters(Counters ctrs, RunningJob rj) throws IOException {
     for (Operator<? extends Serializable> op : work.getAliasToWork().values()) {
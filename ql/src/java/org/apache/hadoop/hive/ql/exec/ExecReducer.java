@@ -36,6 +36,7 @@ import org.apache.hadoop.hive.serde2.Deserializer;
 import org.apache.hadoop.hive.serde2.SerDe;
 import org.apache.hadoop.hive.serde2.SerDeException;
 import org.apache.hadoop.hive.serde2.SerDeUtils;
+import org.apache.hadoop.hive.serde2.binarysortable.KeyPrefix;
 import org.apache.hadoop.hive.serde2.io.ByteWritable;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
@@ -188,7 +189,7 @@ public class ExecReducer extends MapReduceBase implements Reducer {
         keyWritable.setSize(size);
       }
 
-      if (!keyWritable.equals(groupKey)) {
+      if (!isGroupKey(keyWritable)) {
         // If a operator wants to do some work at the beginning of a group
         if (groupKey == null) { // the first group
           groupKey = new BytesWritable();
@@ -270,6 +271,17 @@ public class ExecReducer extends MapReduceBase implements Reducer {
     }
   }
 
+  /**
+   * Whether a key is the key of the current group, compared in serialized
+   * form: the operators get the key deserialized once per group, and process
+   * the rows of a group knowing that they have the same key.
+   */
+  private boolean isGroupKey(BytesWritable keyWritable) {
+    return groupKey != null && keyWritable.getLength() == groupKey.getLength()
+        && KeyPrefix.compare(keyWritable.getBytes(), 0, keyWritable.getLength(),
+        groupKey.getBytes(), 0, groupKey.getLength()) == 0;
+  }
+
   private long getNextCntr(long cntr) {
     // A very simple counter to keep track of number of rows processed by the
     // reducer. It dumps
@@ -22,6 +22,10 @@ import java.io.Serializable;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizationContext;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatchCtx;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.VectorExpression;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.hive.ql.plan.FilterDesc;
 import org.apache.hadoop.hive.ql.plan.api.OperatorType;
@@ -51,6 +55,11 @@ public class FilterOperator extends Operator<FilterDesc> implements
   private transient int consecutiveFails;
   transient int heartbeatInterval;
 
+  // vectorized execution: the compiled predicate, or null if the predicate
+  // has to be evaluated row by row
+  private transient VectorExpression vectorPredicate;
+  private transient boolean vectorPredicateCompiled;
+
   public FilterOperator() {
     super();
     filtered_count = new LongWritable();
@@ -99,6 +108,55 @@ public class FilterOperator extends Operator<FilterDesc> implements
     }
   }
 
+  @Override
+  protected void processBatchOp(VectorizedRowBatch batch, int tag) throws HiveException {
+    VectorizedRowBatchCtx batchCtx = batch.getContext();
+    if (!vectorPredicateCompiled) {
+      vectorPredicate = new VectorizationContext(batchCtx)
+          .getFilterExpression(conf.getPredicate());
+      vectorPredicateCompiled = true;
+      LOG.info("Predicate " + conf.getPredicate().getExprString()
+          + (vectorPredicate == null ? " is evaluated row by row" : " is vectorized"));
+    }
+
+    int inputSize = batch.size;
+    if (vectorPredicate != null) {
+      vectorPredicate.evaluate(batch);
+    } else {
+      // row mode fallback: evaluate the predicate on each row, and keep the
+      // passing ones in the selection
+      if (conditionInspector == null) {
+        conditionInspector = (PrimitiveObjectInspector) conditionEvaluator
+            .initialize(inputObjInspectors[tag]);
+      }
+      int newSize = 0;
+      for (int j = 0; j < inputSize; j++) {
+        int i = batch.getRow(j);
+        Object condition = conditionEvaluator.evaluate(batchCtx.materializeRow(batch, i));
+        if (Boolean.TRUE.equals(conditionInspector.getPrimitiveJavaObject(condition))) {
+          batch.selected[newSize++] = i;
+        }
+      }
+      if (newSize < inputSize) {
+        batch.size = newSize;
+        batch.selectedInUse = true;
+      }
+    }
+
+    passed_count.set(passed_count.get() + batch.size);
+    filtered_count.set(filtered_count.get() + inputSize - batch.size);
+    if (batch.size > 0) {
+      consecutiveFails = 0;
+      forwardBatch(batch);
+    } else {
+      consecutiveFails += inputSize;
+      if (consecutiveFails >= heartbeatInterval && reporter != null) {
+        reporter.progress();
+        consecutiveFails = 0;
+      }
+    }
+  }
+
   /**
    * @return the name of the operator
    */
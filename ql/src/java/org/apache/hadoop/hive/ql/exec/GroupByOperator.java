@@ -35,17 +35,27 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.exec.persistence.RowContainer;
+import org.apache.hadoop.hive.ql.exec.vector.VectorHashAggregation;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatchCtx;
+import org.apache.hadoop.hive.ql.io.HiveSequenceFileOutputFormat;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.hive.ql.parse.OpParseContext;
+import org.apache.hadoop.hive.ql.parse.SemanticException;
 import org.apache.hadoop.hive.ql.plan.AggregationDesc;
 import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
 import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
 import org.apache.hadoop.hive.ql.plan.GroupByDesc;
+import org.apache.hadoop.hive.ql.plan.TableDesc;
 import org.apache.hadoop.hive.ql.plan.api.OperatorType;
 import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
 import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator.AggregationBuffer;
+import org.apache.hadoop.hive.serde2.SerDe;
+import org.apache.hadoop.hive.serde2.SerDeException;
 import org.apache.hadoop.hive.serde2.lazy.LazyPrimitive;
 import org.apache.hadoop.hive.serde2.lazy.objectinspector.primitive.LazyStringObjectInspector;
+import org.apache.hadoop.hive.serde2.lazybinary.LazyBinarySerDe;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
@@ -59,6 +69,7 @@ import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
 import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
 import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoUtils;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.SequenceFileInputFormat;
 
 /**
  * GroupBy operator implementation.
@@ -71,6 +82,8 @@ public class GroupByOperator extends Operator<GroupByDesc> implements
 
   private static final long serialVersionUID = 1L;
   private static final int NUMROWSESTIMATESIZE = 1000;
+  // number of spilled rows kept in memory by each spilled partition
+  private static final int SPILLBLOCKSIZE = 1000;
 
   protected transient ExprNodeEvaluator[] keyFields;
   protected transient ObjectInspector[] keyObjectInspectors;
@@ -109,6 +122,18 @@ public class GroupByOperator extends Operator<GroupByDesc> implements
 
   // Used by hash-based GroupBy: Mode = HASH, PARTIALS
   protected transient HashMap<KeyWrapper, AggregationBuffer[]> hashAggregations;
+  // Used instead of hashAggregations when all the keys are primitives
+  protected transient PrimitiveKeyHashTable primitiveHashAggregations;
+
+  // Used by hash aggregation with primitive keys when spilling is enabled: the
+  // partial aggregations of each hash partition which was spilled to disk
+  transient int numSpillPartitions;
+  transient RowContainer<List<Object>>[] spilledPartitions;
+  // number of groups created in each partition
+  transient long[] partitionGroups;
+  transient StandardStructObjectInspector spillRowInspector;
+  transient TableDesc spillTableDesc;
+  transient Configuration spillConf;
 
   // Used by hash distinct aggregations when hashGrpKeyNotRedKey is true
   protected transient HashSet<KeyWrapper> keysCurrentGroup;
@@ -124,6 +149,12 @@ public class GroupByOperator extends Operator<GroupByDesc> implements
   // The data is sprayed by 'b' and the reducer is grouping it by 'a'
   transient boolean groupKeyIsNotReduceKey;
   transient boolean firstRowInGroup;
+  // The operator is the root of the reducer, and the grouping keys are fields
+  // of the reduction key: the rows between startGroup and endGroup have the
+  // same serialized reduction key, so they have the same grouping keys.
+  transient boolean keysFromReduceKey;
+  // The previous row is in the group started by the last startGroup
+  transient boolean inReduceKeyGroup;
   transient long numRowsInput;
   transient long numRowsHashTbl;
   transient int groupbyMapAggrInterval;
@@ -170,6 +201,8 @@ public class GroupByOperator extends Operator<GroupByDesc> implements
   transient List<varLenFields> aggrPositions;
 
   transient int fixedRowSize;
+  // the part of fixedRowSize used by the aggregation buffers of an entry
+  transient int fixedAggrSize;
   transient long maxHashTblMemory;
   transient int totalVariableSize;
   transient int numEntriesVarSize;
@@ -177,6 +210,11 @@ public class GroupByOperator extends Operator<GroupByDesc> implements
   transient int countAfterReport;
   transient int heartbeatInterval;
 
+  // vectorized execution: the hash aggregation of the batches, if the keys
+  // and aggregations are supported, created with the first batch
+  private transient VectorHashAggregation batchAggregation;
+  private transient boolean batchAggregationCreated;
+
   @Override
   protected void initializeOp(Configuration hconf) throws HiveException {
     totalMemory = Runtime.getRuntime().totalMemory();
@@ -186,6 +224,8 @@ public class GroupByOperator extends Operator<GroupByDesc> implements
     heartbeatInterval = HiveConf.getIntVar(hconf,
         HiveConf.ConfVars.HIVESENDHEARTBEAT);
     countAfterReport = 0;
+    batchAggregation = null;
+    batchAggregationCreated = false;
 
     ObjectInspector rowInspector = inputObjInspectors[0];
 
@@ -343,9 +383,30 @@ public class GroupByOperator extends Operator<GroupByDesc> implements
       groupKeyIsNotReduceKey = conf.getGroupKeyNotReductionKey();
       if (groupKeyIsNotReduceKey) {
         keysCurrentGroup = new HashSet<KeyWrapper>();
+      } else if (keyFields.length > 0 && HiveConf.getBoolVar(hconf,
+          HiveConf.ConfVars.HIVEMAPAGGRHASHPRIMITIVEKEYS)) {
+        boolean primitiveKeys = true;
+        for (ObjectInspector keyOI : keyObjectInspectors) {
+          primitiveKeys = primitiveKeys && PrimitiveKeyHashTable.isSupported(keyOI);
+        }
+        if (primitiveKeys) {
+          hashAggregations = null;
+          primitiveHashAggregations = new PrimitiveKeyHashTable(keyObjectInspectors);
+          // the partial results of distinct aggregations cannot be merged
+          if (HiveConf.getBoolVar(hconf, HiveConf.ConfVars.HIVEMAPAGGRHASHSPILL)
+              && unionExprEval == null && !hasDistinctAggregation()) {
+            numSpillPartitions = HiveConf.getIntVar(hconf,
+                HiveConf.ConfVars.HIVEMAPAGGRHASHSPILLPARTITIONS);
+            spilledPartitions = new RowContainer[numSpillPartitions];
+            partitionGroups = new long[numSpillPartitions];
+            spillConf = hconf;
+          }
+        }
       }
     }
 
+    keysFromReduceKey = !hashAggr && isReduceKey(conf.getKeys());
+
     fieldNames = conf.getOutputColumnNames();
 
     for (int i = 0; i < keyFields.length; i++) {
@@ -518,16 +579,18 @@ public class GroupByOperator extends Operator<GroupByDesc> implements
     // Go over all the aggregation classes and and get the size of the fields of
     // fixed length. Keep track of the variable length
     // fields in these aggregation classes.
+    fixedAggrSize = 0;
     for (int i = 0; i < aggregationEvaluators.length; i++) {
 
-      fixedRowSize += javaObjectOverHead;
+      fixedAggrSize += javaObjectOverHead;
       Class<? extends AggregationBuffer> agg = aggregationEvaluators[i]
           .getNewAggregationBuffer().getClass();
       Field[] fArr = ObjectInspectorUtils.getDeclaredNonStaticFields(agg);
       for (Field f : fArr) {
-        fixedRowSize += getSize(i, f.getType(), f);
+        fixedAggrSize += getSize(i, f.getType(), f);
       }
     }
+    fixedRowSize += fixedAggrSize;
   }
 
   protected AggregationBuffer[] newAggregations() throws HiveException {
@@ -674,13 +737,33 @@ public class GroupByOperator extends Operator<GroupByDesc> implements
     }
   }
 
+  /**
+   * @return true if the operator is the root of the reducer and the keys are
+   *         fields of the reduction key
+   */
+  private boolean isReduceKey(List<ExprNodeDesc> keys) {
+    if (getParentOperators() != null && !getParentOperators().isEmpty()) {
+      return false;
+    }
+    String keyPrefix = Utilities.ReduceField.KEY.toString() + ".";
+    for (ExprNodeDesc key : keys) {
+      if (!(key instanceof ExprNodeColumnDesc)
+          || !((ExprNodeColumnDesc) key).getColumn().startsWith(keyPrefix)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   @Override
   public void startGroup() throws HiveException {
     firstRowInGroup = true;
+    inReduceKeyGroup = false;
   }
 
   @Override
   public void endGroup() throws HiveException {
+    inReduceKeyGroup = false;
     if (groupKeyIsNotReduceKey) {
       keysCurrentGroup.clear();
     }
@@ -697,17 +780,18 @@ public class GroupByOperator extends Operator<GroupByDesc> implements
       if (numRowsInput == numRowsCompareHashAggr) {
         numRowsCompareHashAggr += groupbyMapAggrInterval;
         // map-side aggregation should reduce the entries by at-least half
-        if (numRowsHashTbl > numRowsInput * minReductionHashAggr) {
-          LOG.warn("Disable Hash Aggr: #hash table = " + numRowsHashTbl
+        long numGroups = estimateNumGroups();
+        if (numGroups > numRowsInput * minReductionHashAggr) {
+          LOG.warn("Disable Hash Aggr: #hash table = " + numGroups
               + " #total = " + numRowsInput + " reduction = " + 1.0
-              * (numRowsHashTbl / numRowsInput) + " minReduction = "
+              * (numGroups / numRowsInput) + " minReduction = "
               + minReductionHashAggr);
           flush(true);
           hashAggr = false;
         } else {
-          LOG.trace("Hash Aggr Enabled: #hash table = " + numRowsHashTbl
+          LOG.trace("Hash Aggr Enabled: #hash table = " + numGroups
               + " #total = " + numRowsInput + " reduction = " + 1.0
-              * (numRowsHashTbl / numRowsInput) + " minReduction = "
+              * (numGroups / numRowsInput) + " minReduction = "
               + minReductionHashAggr);
         }
       }
@@ -716,14 +800,24 @@ public class GroupByOperator extends Operator<GroupByDesc> implements
     try {
       countAfterReport++;
 
-      newKeys.getNewKey(row, rowInspector);
-      if (hashAggr) {
-        newKeys.setHashKey();
-        processHashAggr(row, rowInspector, newKeys);
+      if (inReduceKeyGroup) {
+        // same serialized key as the previous row, so same group: the keys
+        // need not be evaluated and compared
+        updateAggregations(aggregations, row, rowInspector, false, false,
+            aggregationsParametersLastInvoke);
       } else {
-        processAggr(row, rowInspector, newKeys);
+        newKeys.getNewKey(row, rowInspector);
+        if (hashAggr && primitiveHashAggregations != null) {
+          processPrimitiveHashAggr(row, rowInspector, newKeys);
+        } else if (hashAggr) {
+          newKeys.setHashKey();
+          processHashAggr(row, rowInspector, newKeys);
+        } else {
+          processAggr(row, rowInspector, newKeys);
+        }
       }
 
+      inReduceKeyGroup = keysFromReduceKey && (firstRowInGroup || inReduceKeyGroup);
       firstRowInGroup = false;
 
       if (countAfterReport != 0 && (countAfterReport % heartbeatInterval) == 0
@@ -738,6 +832,84 @@ public class GroupByOperator extends Operator<GroupByDesc> implements
     }
   }
 
+  /**
+   * In vectorized execution mode, map-side hash aggregation of column keys
+   * with count, sum, min and max of columns is done a batch at a time by a
+   * VectorHashAggregation. The same reduction check as in processOp() falls
+   * back to sort-based aggregation of the rows if hashing does not pay off.
+   * Otherwise, the rows of the batch are fed to the aggregation evaluators.
+   */
+  @Override
+  protected void processBatchOp(VectorizedRowBatch batch, int tag) throws HiveException {
+    VectorizedRowBatchCtx batchCtx = batch.getContext();
+    if (!batchAggregationCreated) {
+      batchAggregationCreated = true;
+      if (hashAggr && !groupKeyIsNotReduceKey && unionExprEval == null
+          && !hasDistinctAggregation()) {
+        batchAggregation = VectorHashAggregation.create(batchCtx, conf.getKeys(),
+            conf.getAggregators(), objectInspectors, batch.getMaxSize());
+      }
+      LOG.info("Hash aggregation is " + (batchAggregation == null ? "not " : "")
+          + "vectorized");
+    }
+    inputRows += batch.size;
+    if (batchAggregation == null) {
+      for (int j = 0; j < batch.size; j++) {
+        processOp(batchCtx.materializeRow(batch, batch.getRow(j)), tag);
+      }
+      return;
+    }
+    if (batch.size == 0) {
+      return;
+    }
+
+    firstRow = false;
+    numRowsHashTbl += batchAggregation.aggregate(batch);
+    numRowsInput += batch.size;
+    if (numRowsInput >= numRowsCompareHashAggr) {
+      while (numRowsCompareHashAggr <= numRowsInput) {
+        numRowsCompareHashAggr += groupbyMapAggrInterval;
+      }
+      // map-side aggregation should reduce the entries by at-least half
+      long numGroups = estimateNumGroups();
+      if (numGroups > numRowsInput * minReductionHashAggr) {
+        LOG.warn("Disable Hash Aggr: #hash table = " + numGroups
+            + " #total = " + numRowsInput + " minReduction = "
+            + minReductionHashAggr);
+        flushBatchAggregation();
+        batchAggregation = null;
+        flush(true);
+        hashAggr = false;
+        return;
+      }
+    }
+
+    if (batchAggregation.getMemoryUsage() >= maxHashTblMemory
+        || (float) memoryMXBean.getHeapMemoryUsage().getUsed() / (float) maxMemory
+        > memoryThreshold) {
+      flushBatchAggregation();
+    }
+
+    countAfterReport += batch.size;
+    if (countAfterReport >= heartbeatInterval && reporter != null) {
+      reporter.progress();
+      countAfterReport = 0;
+    }
+  }
+
+  /**
+   * Forward all the groups of the vectorized hash aggregation, and empty it.
+   */
+  private void flushBatchAggregation() throws HiveException {
+    countAfterReport = 0;
+    LOG.warn("Vectorized Hash Tbl flush: #hash table = "
+        + batchAggregation.getNumGroups());
+    for (int group = 0; group < batchAggregation.getNumGroups(); group++) {
+      forward(batchAggregation.getGroup(group), outputObjInspector);
+    }
+    batchAggregation.clear();
+  }
+
   private void processHashAggr(Object row, ObjectInspector rowInspector,
       KeyWrapper newKeys) throws HiveException {
     // Prepare aggs for updating
@@ -780,6 +952,31 @@ public class GroupByOperator extends Operator<GroupByDesc> implements
     }
   }
 
+  // Hash aggregation with primitive keys
+  private void processPrimitiveHashAggr(Object row, ObjectInspector rowInspector,
+      KeyWrapper newKeys) throws HiveException {
+    primitiveHashAggregations.setProbeKey(newKeys.getKeyArray());
+    AggregationBuffer[] aggs = primitiveHashAggregations.get();
+    boolean newEntryForHashAggr = false;
+    if (aggs == null) {
+      aggs = newAggregations();
+      primitiveHashAggregations.put(aggs);
+      newEntryForHashAggr = true;
+      numRowsHashTbl++; // new entry in the hash table
+      if (partitionGroups != null) {
+        partitionGroups[primitiveHashAggregations.getPartition(
+            primitiveHashAggregations.size() - 1, numSpillPartitions)]++;
+      }
+    }
+
+    updateAggregations(aggs, row, rowInspector, true, newEntryForHashAggr, null);
+
+    // The table only grows when a new entry is added
+    if (newEntryForHashAggr && shouldBeFlushed(aggs)) {
+      flush(false);
+    }
+  }
+
   // Non-hash aggregation
   private void processAggr(Object row, ObjectInspector rowInspector,
       KeyWrapper newKeys) throws HiveException {
@@ -896,6 +1093,47 @@ public class GroupByOperator extends Operator<GroupByDesc> implements
     return false;
   }
 
+  /**
+   * Based on the memory used by the primitive key hash table, should it be
+   * flushed. Unlike the generic hash table, the size of the keys is known
+   * exactly; only the size of the aggregation buffers is estimated.
+   *
+   * @param aggs
+   *          aggregations of the row under consideration
+   **/
+  private boolean shouldBeFlushed(AggregationBuffer[] aggs) {
+    int numEntries = primitiveHashAggregations.size();
+
+    // Sample the variable portion of the aggregation buffers, and check the
+    // heap usage, every NUMROWSESTIMATESIZE entries
+    if ((numEntriesVarSize == 0) || ((numEntries % NUMROWSESTIMATESIZE) == 0)) {
+      long usedMemory = memoryMXBean.getHeapMemoryUsage().getUsed();
+      float rate = (float) usedMemory / (float) maxMemory;
+      if (rate > memoryThreshold) {
+        return true;
+      }
+
+      for (varLenFields v : aggrPositions) {
+        AggregationBuffer agg = aggs[v.getAggrPos()];
+        try {
+          for (Field f : v.getFields()) {
+            String value = (String) f.get(agg);
+            if (value != null) {
+              totalVariableSize += value.length();
+            }
+          }
+        } catch (IllegalAccessException e) {
+          assert false;
+        }
+      }
+      numEntriesVarSize++;
+    }
+
+    long aggrSize = fixedAggrSize + totalVariableSize / numEntriesVarSize;
+    return primitiveHashAggregations.getMemoryUsage() + numEntries * aggrSize
+        >= maxHashTblMemory;
+  }
+
   private void flush(boolean complete) throws HiveException {
 
     countAfterReport = 0;
@@ -903,6 +1141,11 @@ public class GroupByOperator extends Operator<GroupByDesc> implements
     // Currently, the algorithm flushes 10% of the entries - this can be
     // changed in the future
 
+    if (primitiveHashAggregations != null) {
+      flushPrimitive(complete);
+      return;
+    }
+
     if (complete) {
       Iterator<Map.Entry<KeyWrapper, AggregationBuffer[]>> iter = hashAggregations
           .entrySet().iterator();
@@ -933,6 +1176,283 @@ public class GroupByOperator extends Operator<GroupByDesc> implements
     }
   }
 
+  /**
+   * @return the number of groups seen so far. When partitions of the hash table
+   *         have been spilled, the groups of these partitions are counted again
+   *         each time they are re-created after a spill, so the number of groups
+   *         is extrapolated from the partitions which were never spilled.
+   */
+  private long estimateNumGroups() {
+    if (spilledPartitions == null) {
+      return numRowsHashTbl;
+    }
+    long groups = 0;
+    int numPartitions = 0;
+    for (int p = 0; p < numSpillPartitions; p++) {
+      if (spilledPartitions[p] == null) {
+        groups += partitionGroups[p];
+        numPartitions++;
+      }
+    }
+    return numPartitions == 0 ? numRowsHashTbl : groups * numSpillPartitions
+        / numPartitions;
+  }
+
+  private boolean hasDistinctAggregation() {
+    for (boolean distinct : aggregationIsDistinct) {
+      if (distinct) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void flushPrimitive(boolean complete) throws HiveException {
+    if (spilledPartitions != null) {
+      if (!complete) {
+        spillLargestPartition();
+        return;
+      }
+      mergeSpilledPartitions();
+      spilledPartitions = null;
+    }
+
+    int oldSize = primitiveHashAggregations.size();
+    int numFlush = complete ? oldSize : (oldSize + 9) / 10;
+    LOG.warn("Hash Tbl flush: #hash table = " + oldSize);
+    for (int i = 0; i < numFlush; i++) {
+      forward(primitiveHashAggregations.getKeys(i),
+          primitiveHashAggregations.getAggregations(i));
+    }
+    if (complete) {
+      primitiveHashAggregations.clear();
+      primitiveHashAggregations = null;
+      LOG.warn("Hash Table completed flushed");
+    } else {
+      primitiveHashAggregations.removeFirst(numFlush);
+      LOG.warn("Hash Table flushed: new size = "
+          + primitiveHashAggregations.size());
+    }
+  }
+
+  /**
+   * Instead of forwarding some of the groups when the hash table is full, the
+   * groups of a hash partition are written to local disk, as partial
+   * aggregation results. All the spilled partitions are merged back when the
+   * hash table is flushed at close, so each group is forwarded only once.
+   */
+  private void spillLargestPartition() throws HiveException {
+    int numEntries = primitiveHashAggregations.size();
+    int[] partitionSizes = new int[numSpillPartitions];
+    for (int i = 0; i < numEntries; i++) {
+      partitionSizes[primitiveHashAggregations.getPartition(i, numSpillPartitions)]++;
+    }
+    // Spill the largest partition, but prefer the partitions which are already
+    // on disk, so that the other partitions are kept in memory
+    int partition = -1;
+    int spilledPartition = -1;
+    for (int p = 0; p < numSpillPartitions; p++) {
+      if (partition < 0 || partitionSizes[p] > partitionSizes[partition]) {
+        partition = p;
+      }
+      if (spilledPartitions[p] != null && (spilledPartition < 0
+          || partitionSizes[p] > partitionSizes[spilledPartition])) {
+        spilledPartition = p;
+      }
+    }
+    if (spilledPartition >= 0
+        && partitionSizes[spilledPartition] * 2 * numSpillPartitions >= numEntries) {
+      partition = spilledPartition;
+    }
+    LOG.warn("Hash Tbl spill: #hash table = " + numEntries + " partition = "
+        + partition + " #spilled = " + partitionSizes[partition]);
+
+    RowContainer<List<Object>> rc = spilledPartitions[partition];
+    if (rc == null) {
+      rc = newSpillContainer();
+      spilledPartitions[partition] = rc;
+    }
+    for (int i = 0; i < numEntries; i++) {
+      if (primitiveHashAggregations.getPartition(i, numSpillPartitions) == partition) {
+        rc.add(newSpillRow(primitiveHashAggregations.getKeys(i),
+            primitiveHashAggregations.getAggregations(i)));
+      }
+    }
+    primitiveHashAggregations.removePartition(partition, numSpillPartitions);
+    LOG.warn("Hash Table spilled: new size = " + primitiveHashAggregations.size());
+  }
+
+  private RowContainer<List<Object>> newSpillContainer() throws HiveException {
+    if (spillTableDesc == null) {
+      // the spilled rows have the same layout as the output rows
+      spillRowInspector = (StandardStructObjectInspector) ObjectInspectorUtils
+          .getStandardObjectInspector(outputObjInspector,
+          ObjectInspectorCopyOption.WRITABLE);
+      StringBuilder colNames = new StringBuilder();
+      StringBuilder colTypes = new StringBuilder();
+      for (StructField field : spillRowInspector.getAllStructFieldRefs()) {
+        if (colNames.length() > 0) {
+          colNames.append(',');
+          colTypes.append(',');
+        }
+        colNames.append(field.getFieldName());
+        colTypes.append(TypeInfoUtils.getTypeInfoFromObjectInspector(
+            field.getFieldObjectInspector()).getTypeName());
+      }
+      spillTableDesc = new TableDesc(LazyBinarySerDe.class,
+          SequenceFileInputFormat.class, HiveSequenceFileOutputFormat.class,
+          Utilities.makeProperties(
+          org.apache.hadoop.hive.serde.Constants.SERIALIZATION_FORMAT, ""
+          + Utilities.ctrlaCode,
+          org.apache.hadoop.hive.serde.Constants.LIST_COLUMNS, colNames
+          .toString(),
+          org.apache.hadoop.hive.serde.Constants.LIST_COLUMN_TYPES,
+          colTypes.toString()));
+    }
+
+    SerDe serde;
+    try {
+      serde = new LazyBinarySerDe();
+      serde.initialize(null, spillTableDesc.getProperties());
+    } catch (SerDeException e) {
+      throw new HiveException(e);
+    }
+    RowContainer<List<Object>> rc = new RowContainer<List<Object>>(
+        SPILLBLOCKSIZE, spillConf);
+    rc.setSerDe(serde, spillRowInspector);
+    rc.setTableDesc(spillTableDesc);
+    return rc;
+  }
+
+  private List<Object> newSpillRow(Object[] keys, AggregationBuffer[] aggs)
+      throws HiveException {
+    List<Object> row = new ArrayList<Object>(keys.length + aggs.length);
+    for (int i = 0; i < keys.length; i++) {
+      row.add(ObjectInspectorUtils.copyToStandardObject(keys[i],
+          currentKeyObjectInspectors[i], ObjectInspectorCopyOption.WRITABLE));
+    }
+    for (int i = 0; i < aggs.length; i++) {
+      row.add(ObjectInspectorUtils.copyToStandardObject(aggregationEvaluators[i]
+          .evaluate(aggs[i]), objectInspectors.get(keys.length + i),
+          ObjectInspectorCopyOption.WRITABLE));
+    }
+    return row;
+  }
+
+  /**
+   * Merge each spilled partition with the groups of the same partition which
+   * are still in memory, and forward the merged groups.
+   */
+  private void mergeSpilledPartitions() throws HiveException {
+    GenericUDAFEvaluator[] mergeEvaluators = null;
+    int numKeys = keyFields.length;
+    Object[] keys = new Object[numKeys];
+    Object[] partials = new Object[aggregationEvaluators.length];
+
+    for (int p = 0; p < numSpillPartitions; p++) {
+      RowContainer<List<Object>> rc = spilledPartitions[p];
+      if (rc == null) {
+        continue;
+      }
+      if (mergeEvaluators == null) {
+        mergeEvaluators = getMergeEvaluators();
+      }
+      LOG.warn("Begin merge of spilled partition " + p + ": #spilled = "
+          + rc.size());
+      PrimitiveKeyHashTable mergeTable = new PrimitiveKeyHashTable(
+          currentKeyObjectInspectors);
+
+      for (int i = 0; i < primitiveHashAggregations.size(); i++) {
+        if (primitiveHashAggregations.getPartition(i, numSpillPartitions) == p) {
+          List<Object> row = newSpillRow(primitiveHashAggregations.getKeys(i),
+              primitiveHashAggregations.getAggregations(i));
+          mergeGroup(mergeTable, mergeEvaluators, row.subList(0, numKeys)
+              .toArray(keys), row.subList(numKeys, row.size()).toArray(partials));
+        }
+      }
+      primitiveHashAggregations.removePartition(p, numSpillPartitions);
+
+      for (List<Object> row = rc.first(); row != null; row = rc.next()) {
+        mergeGroup(mergeTable, mergeEvaluators, row.subList(0, numKeys)
+            .toArray(keys), row.subList(numKeys, row.size()).toArray(partials));
+      }
+      rc.clear();
+      spilledPartitions[p] = null;
+
+      forwardMerged(mergeTable, mergeEvaluators);
+      mergeTable.clear();
+    }
+  }
+
+  private void mergeGroup(PrimitiveKeyHashTable mergeTable,
+      GenericUDAFEvaluator[] mergeEvaluators, Object[] keys, Object[] partials)
+      throws HiveException {
+    mergeTable.setProbeKey(keys);
+    AggregationBuffer[] aggs = mergeTable.get();
+    if (aggs == null) {
+      // a partition which does not fit in memory is forwarded in pieces
+      if (mergeTable.getMemoryUsage() + (long) mergeTable.size() * fixedAggrSize
+          >= maxHashTblMemory) {
+        forwardMerged(mergeTable, mergeEvaluators);
+        mergeTable.clear();
+      }
+      aggs = new AggregationBuffer[mergeEvaluators.length];
+      for (int i = 0; i < mergeEvaluators.length; i++) {
+        aggs[i] = mergeEvaluators[i].getNewAggregationBuffer();
+      }
+      mergeTable.put(aggs);
+    }
+    for (int i = 0; i < mergeEvaluators.length; i++) {
+      mergeEvaluators[i].merge(aggs[i], partials[i]);
+    }
+  }
+
+  private void forwardMerged(PrimitiveKeyHashTable mergeTable,
+      GenericUDAFEvaluator[] mergeEvaluators) throws HiveException {
+    for (int i = 0; i < mergeTable.size(); i++) {
+      forward(mergeTable.getKeys(i), mergeTable.getAggregations(i),
+          mergeEvaluators);
+    }
+  }
+
+  /**
+   * @return evaluators which merge the partial results of the aggregations
+   */
+  private GenericUDAFEvaluator[] getMergeEvaluators() throws HiveException {
+    List<? extends StructField> fields = spillRowInspector.getAllStructFieldRefs();
+    GenericUDAFEvaluator[] evaluators =
+      new GenericUDAFEvaluator[aggregationEvaluators.length];
+    for (int i = 0; i < evaluators.length; i++) {
+      AggregationDesc agg = conf.getAggregators().get(i);
+      List<TypeInfo> parameterTypes = new ArrayList<TypeInfo>();
+      for (ExprNodeDesc parameter : agg.getParameters()) {
+        parameterTypes.add(parameter.getTypeInfo());
+      }
+      try {
+        evaluators[i] = FunctionRegistry.getGenericUDAFEvaluator(
+            agg.getGenericUDAFName(), parameterTypes, agg.getDistinct(),
+            parameterTypes.isEmpty());
+      } catch (SemanticException e) {
+        throw new HiveException(e);
+      }
+      evaluators[i].init(GenericUDAFEvaluator.Mode.PARTIAL2,
+          new ObjectInspector[] {fields.get(keyFields.length + i)
+          .getFieldObjectInspector()});
+    }
+    return evaluators;
+  }
+
+  private void clearSpilledPartitions() throws HiveException {
+    if (spilledPartitions != null) {
+      for (RowContainer<List<Object>> rc : spilledPartitions) {
+        if (rc != null) {
+          rc.clear();
+        }
+      }
+      spilledPartitions = null;
+    }
+  }
+
   transient Object[] forwardCache;
 
   /**
@@ -944,6 +1464,11 @@ public class GroupByOperator extends Operator<GroupByDesc> implements
    */
   protected void forward(Object[] keys, AggregationBuffer[] aggs)
       throws HiveException {
+    forward(keys, aggs, aggregationEvaluators);
+  }
+
+  private void forward(Object[] keys, AggregationBuffer[] aggs,
+      GenericUDAFEvaluator[] evaluators) throws HiveException {
     int totalFields = keys.length+ aggs.length;
     if (forwardCache == null) {
       forwardCache = new Object[totalFields];
@@ -952,8 +1477,7 @@ public class GroupByOperator extends Operator<GroupByDesc> implements
       forwardCache[i] = keys[i];
     }
     for (int i = 0; i < aggs.length; i++) {
-      forwardCache[keys.length + i] = aggregationEvaluators[i]
-          .evaluate(aggs[i]);
+      forwardCache[keys.length + i] = evaluators[i].evaluate(aggs[i]);
     }
 
     forward(forwardCache, outputObjInspector);
@@ -994,7 +1518,14 @@ public class GroupByOperator extends Operator<GroupByDesc> implements
           // create dummy keys - size 0
           forward(new Object[0], aggregations);
         } else {
-          if (hashAggregations != null) {
+          if (batchAggregation != null) {
+            flushBatchAggregation();
+          }
+          if (primitiveHashAggregations != null) {
+            LOG.warn("Begin Hash Table flush at close: size = "
+                + primitiveHashAggregations.size());
+            flushPrimitive(true);
+          } else if (hashAggregations != null) {
             LOG.warn("Begin Hash Table flush at close: size = "
                 + hashAggregations.size());
             Iterator iter = hashAggregations.entrySet().iterator();
@@ -1023,6 +1554,8 @@ public class GroupByOperator extends Operator<GroupByDesc> implements
         e.printStackTrace();
         throw new HiveException(e);
       }
+    } else {
+      clearSpilledPartitions();
     }
   }
 
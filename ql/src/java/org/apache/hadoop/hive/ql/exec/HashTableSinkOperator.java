@@ -18,9 +18,11 @@
 package org.apache.hadoop.hive.ql.exec;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -34,6 +36,7 @@ import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hadoop.hive.ql.exec.persistence.AbstractMapJoinKey;
 import org.apache.hadoop.hive.ql.exec.persistence.HashMapWrapper;
 import org.apache.hadoop.hive.ql.exec.persistence.MapJoinObjectValue;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinPartitionSpill;
 import org.apache.hadoop.hive.ql.exec.persistence.MapJoinRowContainer;
 import org.apache.hadoop.hive.ql.exec.persistence.RowContainer;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
@@ -118,6 +121,12 @@ public class HashTableSinkOperator extends TerminalOperator<HashTableSinkDesc> i
   private long hashTableScale;
   private boolean isAbort = false;
 
+  // grace hash join: the partitions of the keys moved to disk when the small
+  // tables do not fit in memory, with their (key, rows) pairs for each table
+  private transient int numGracePartitions;
+  private transient boolean[] spilledPartitions;
+  private transient Map<Byte, MapJoinPartitionSpill[]> partitionSpills;
+
   public static class HashTableSinkObjectCtx {
     ObjectInspector standardOI;
     SerDe serde;
@@ -255,6 +264,14 @@ public class HashTableSinkOperator extends TerminalOperator<HashTableSinkDesc> i
       hashTableScale = 1;
     }
 
+    numGracePartitions = 0;
+    if (HiveConf.getBoolVar(hconf, HiveConf.ConfVars.HIVEMAPJOINGRACEHASH)) {
+      numGracePartitions = HiveConf.getIntVar(hconf,
+          HiveConf.ConfVars.HIVEMAPJOINGRACEHASHPARTITIONS);
+    }
+    spilledPartitions = null;
+    partitionSpills = null;
+
     // initialize the hash tables for other tables
     for (Byte pos : order) {
       if (pos == posBigTableTag) {
@@ -323,6 +340,23 @@ public class HashTableSinkOperator extends TerminalOperator<HashTableSinkDesc> i
               .get(alias), noOuterJoin);
 
 
+      if (metadataValueTag[tag] == -1) {
+        metadataValueTag[tag] = order[tag];
+        setValueMetaData(tag);
+      }
+
+      // the rows of a partition moved to disk go to disk too
+      if (spilledPartitions != null) {
+        int partition = JoinUtil.getGraceHashPartition(keyMap, numGracePartitions);
+        if (spilledPartitions[partition]) {
+          MapJoinRowContainer<Object[]> res = new MapJoinRowContainer<Object[]>();
+          res.add(value);
+          partitionSpills.get((byte) tag)[partition].add(keyMap, new MapJoinObjectValue(
+              metadataValueTag[tag], res));
+          return;
+        }
+      }
+
       HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue> hashTable = mapJoinTables
           .get((byte) tag);
 
@@ -334,11 +368,6 @@ public class HashTableSinkOperator extends TerminalOperator<HashTableSinkDesc> i
         res = new MapJoinRowContainer<Object[]>();
         res.add(value);
 
-        if (metadataValueTag[tag] == -1) {
-          metadataValueTag[tag] = order[tag];
-          setValueMetaData(tag);
-        }
-
         // Construct externalizable objects for key and value
         if (needNewKey) {
           MapJoinObjectValue valueObj = new MapJoinObjectValue(metadataValueTag[tag], res);
@@ -346,11 +375,21 @@ public class HashTableSinkOperator extends TerminalOperator<HashTableSinkDesc> i
           rowNumber++;
           if (rowNumber > hashTableScale && rowNumber % hashTableScale == 0) {
             isAbort = hashTable.isAbort(rowNumber, console);
+            if (isAbort && numGracePartitions > 1) {
+              isAbort = !spillPartitions(hashTable);
+            }
             if (isAbort) {
               throw new HiveException("RunOutOfMeomoryUsage");
             }
           }
-          hashTable.put(keyMap, valueObj);
+          // the partition of the key may just have been moved to disk
+          int partition = spilledPartitions == null ? -1 : JoinUtil.getGraceHashPartition(
+              keyMap, numGracePartitions);
+          if (partition >= 0 && spilledPartitions[partition]) {
+            partitionSpills.get((byte) tag)[partition].add(keyMap, valueObj);
+          } else {
+            hashTable.put(keyMap, valueObj);
+          }
         }
 
       } else {
@@ -359,12 +398,79 @@ public class HashTableSinkOperator extends TerminalOperator<HashTableSinkDesc> i
       }
 
 
+    } catch (IOException e) {
+      throw new HiveException(e);
     } catch (SerDeException e) {
       throw new HiveException(e);
     }
 
   }
 
+  /**
+   * Move partitions of the keys of all the small tables to disk, the largest
+   * first, until the memory usage is below the limit again. One partition at
+   * least is kept in memory.
+   *
+   * @return false if the memory usage is still too high
+   */
+  private boolean spillPartitions(HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue> hashTable)
+      throws HiveException, IOException {
+    if (spilledPartitions == null) {
+      spilledPartitions = new boolean[numGracePartitions];
+      partitionSpills = new HashMap<Byte, MapJoinPartitionSpill[]>();
+      for (Byte pos : mapJoinTables.keySet()) {
+        partitionSpills.put(pos, new MapJoinPartitionSpill[numGracePartitions]);
+      }
+    }
+
+    while (true) {
+      long[] partitionSizes = new long[numGracePartitions];
+      int numInMemory = 0;
+      for (HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue> table : mapJoinTables.values()) {
+        for (Map.Entry<AbstractMapJoinKey, MapJoinObjectValue> entry : table.getMHash().entrySet()) {
+          partitionSizes[JoinUtil.getGraceHashPartition(entry.getKey(), numGracePartitions)] +=
+            entry.getValue().getObj().size();
+        }
+      }
+      int largest = -1;
+      for (int i = 0; i < numGracePartitions; i++) {
+        if (!spilledPartitions[i]) {
+          numInMemory++;
+          if (largest == -1 || partitionSizes[i] > partitionSizes[largest]) {
+            largest = i;
+          }
+        }
+      }
+      if (numInMemory <= 1) {
+        return false;
+      }
+
+      spilledPartitions[largest] = true;
+      for (Map.Entry<Byte, HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue>> tables : mapJoinTables
+          .entrySet()) {
+        MapJoinPartitionSpill spill = new MapJoinPartitionSpill("MapJoin-" + tables.getKey()
+            + "-p" + largest + "-");
+        partitionSpills.get(tables.getKey())[largest] = spill;
+        Iterator<Map.Entry<AbstractMapJoinKey, MapJoinObjectValue>> iter = tables.getValue()
+            .getMHash().entrySet().iterator();
+        while (iter.hasNext()) {
+          Map.Entry<AbstractMapJoinKey, MapJoinObjectValue> entry = iter.next();
+          if (JoinUtil.getGraceHashPartition(entry.getKey(), numGracePartitions) == largest) {
+            spill.add(entry.getKey(), entry.getValue());
+            iter.remove();
+          }
+        }
+      }
+      console.printInfo(Utilities.now() + "\tMove partition " + largest + " of "
+          + numGracePartitions + " of the hashtables to disk: " + partitionSizes[largest]
+          + " rows");
+
+      if (!hashTable.isAbort(rowNumber, console)) {
+        return true;
+      }
+    }
+  }
+
   private void setValueMetaData(int tag) throws SerDeException {
     TableDesc valueTableDesc = conf.getValueTblFilteredDescs().get(tag);
     SerDe valueSerDe = (SerDe) ReflectionUtils.newInstance(valueTableDesc.getDeserializerClass(),
@@ -419,16 +525,50 @@ public class HashTableSinkOperator extends TerminalOperator<HashTableSinkDesc> i
               + fileLength);
 
           hashTable.close();
+
+          // the partitions on disk are dumped one at a time into their own files
+          if (spilledPartitions != null) {
+            MapJoinPartitionSpill[] spills = partitionSpills.get(tag);
+            for (int i = 0; i < numGracePartitions; i++) {
+              if (spills[i] == null) {
+                continue;
+              }
+              spills[i].readInto(hashTable);
+              String partitionPath = Utilities.generatePartitionPath(tmpURI, tag,
+                  bigBucketFileName, i);
+              path = new Path(partitionPath);
+              fs.create(path);
+              fileLength = hashTable.flushMemoryCacheToPersistent(new File(path.toUri().getPath()));
+              console.printInfo(Utilities.now() + "\tUpload 1 File to: " + partitionPath
+                  + " File size: " + fileLength);
+              hashTable.close();
+              spills[i].close();
+            }
+          }
         }
       }
 
       super.closeOp(abort);
     } catch (Exception e) {
+      clearPartitionSpills();
       LOG.error("Generate Hashtable error");
       e.printStackTrace();
     }
   }
 
+  private void clearPartitionSpills() {
+    if (partitionSpills != null) {
+      for (MapJoinPartitionSpill[] spills : partitionSpills.values()) {
+        for (MapJoinPartitionSpill spill : spills) {
+          if (spill != null) {
+            spill.close();
+          }
+        }
+      }
+      partitionSpills = null;
+    }
+  }
+
   /**
    * Implements the getName function for the Node Interface.
    *
@@ -52,7 +52,24 @@ public class JoinOperator extends CommonJoinOperator<JoinDesc> implements
     SKEWJOINFOLLOWUPJOBS
   }
 
+  /**
+   * SpilledKeyCounter: the join keys whose rows of the streamed table were
+   * joined with a larger emit interval, as their other rows were spilled.
+   *
+   */
+  public static enum SpilledKeyCounter {
+    SPILLEDKEYS
+  }
+
   private final transient LongWritable skewjoin_followup_jobs = new LongWritable(0);
+  private final transient LongWritable spilled_keys = new LongWritable(0);
+
+  // the KEY fields of the rows, by tag
+  private transient StructField[] keyFields;
+  // whether the key of the current group has a null, checked on the first row
+  // of the group as all its rows have the same key
+  private transient boolean keyHasNull;
+  private transient boolean keyNullChecked;
 
   @Override
   protected void initializeOp(Configuration hconf) throws HiveException {
@@ -64,6 +81,8 @@ public class JoinOperator extends CommonJoinOperator<JoinDesc> implements
       skewJoinKeyContext.setSkewJoinJobCounter(skewjoin_followup_jobs);
     }
     statsMap.put(SkewkeyTableCounter.SKEWJOINFOLLOWUPJOBS, skewjoin_followup_jobs);
+    statsMap.put(SpilledKeyCounter.SPILLEDKEYS, spilled_keys);
+    keyFields = new StructField[inputObjInspectors.length];
   }
 
   @Override
@@ -91,13 +110,22 @@ public class JoinOperator extends CommonJoinOperator<JoinDesc> implements
       // number of rows for the key in the given table
       int sz = storage.get(alias).size();
       StructObjectInspector soi = (StructObjectInspector) inputObjInspectors[tag];
-      StructField sf = soi.getStructFieldRef(Utilities.ReduceField.KEY
-          .toString());
+      StructField sf = keyFields[tag];
+      if (sf == null) {
+        sf = soi.getStructFieldRef(Utilities.ReduceField.KEY.toString());
+        keyFields[tag] = sf;
+      }
       Object keyObject = soi.getStructFieldData(row, sf);
 
+      if (alias != numAliases - 1 && checkSpilledKey(sz)) {
+        LOG.info("table " + alias + " has spilled rows for join key " + keyObject
+            + ", emitting every " + getEmitInterval() + " rows");
+        spilled_keys.set(spilled_keys.get() + 1);
+      }
+
       // Are we consuming too much memory
       if (alias == numAliases - 1 && !(handleSkewJoin && skewJoinKeyContext.currBigKeyTag >= 0)) {
-        if (sz == joinEmitInterval) {
+        if (sz == getEmitInterval()) {
           // The input is sorted by alias, so if we are already in the last join
           // operand,
           // we can emit some results now.
@@ -122,7 +150,11 @@ public class JoinOperator extends CommonJoinOperator<JoinDesc> implements
       // Add the value to the vector
       storage.get(alias).add(nr);
       // if join-key is null, process each row in different group.
-      if (SerDeUtils.hasAnyNullObject(keyObject, sf.getFieldObjectInspector())) {
+      if (!keyNullChecked) {
+        keyHasNull = SerDeUtils.hasAnyNullObject(keyObject, sf.getFieldObjectInspector());
+        keyNullChecked = true;
+      }
+      if (keyHasNull) {
         endGroup();
         startGroup();
       }
@@ -243,6 +275,12 @@ public class JoinOperator extends CommonJoinOperator<JoinDesc> implements
     }
   }
 
+  @Override
+  public void startGroup() throws HiveException {
+    keyNullChecked = false;
+    super.startGroup();
+  }
+
   /**
    * Forward a record of join results.
    *
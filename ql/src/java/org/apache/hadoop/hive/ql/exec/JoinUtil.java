@@ -200,6 +200,14 @@ public class JoinUtil {
 
 
 
+  /**
+   * Return the partition of a map join key in a grace hash join. The small
+   * table side and the big table side must agree on it.
+   */
+  public static int getGraceHashPartition(AbstractMapJoinKey key, int numPartitions) {
+    return ((key.hashCode() * 0x9E3779B9) >>> 16) % numPartitions;
+  }
+
   /**
    * Return the value as a standard object. StandardObject can be inspected by a
    * standard ObjectInspector.
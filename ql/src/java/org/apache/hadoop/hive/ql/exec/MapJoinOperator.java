@@ -18,9 +18,13 @@
 
 package org.apache.hadoop.hive.ql.exec;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.logging.Log;
@@ -34,6 +38,7 @@ import org.apache.hadoop.hive.ql.exec.HashTableSinkOperator.HashTableSinkObjectC
 import org.apache.hadoop.hive.ql.exec.persistence.AbstractMapJoinKey;
 import org.apache.hadoop.hive.ql.exec.persistence.HashMapWrapper;
 import org.apache.hadoop.hive.ql.exec.persistence.MapJoinObjectValue;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinPartitionSpill;
 import org.apache.hadoop.hive.ql.exec.persistence.MapJoinRowContainer;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.hive.ql.plan.MapJoinDesc;
@@ -41,6 +46,7 @@ import org.apache.hadoop.hive.ql.plan.TableDesc;
 import org.apache.hadoop.hive.ql.plan.api.OperatorType;
 import org.apache.hadoop.hive.serde2.SerDe;
 import org.apache.hadoop.hive.serde2.SerDeException;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils.ObjectInspectorCopyOption;
 import org.apache.hadoop.util.ReflectionUtils;
@@ -61,10 +67,25 @@ public class MapJoinOperator extends AbstractMapJoinOperator<MapJoinDesc> implem
           + "Please increase that or remove the mapjoin hint."};
 
   protected transient Map<Byte, MapJoinRowContainer<ArrayList<Object>>> rowContainerMap;
+  // the values of the current key in the small tables, by position
+  transient MapJoinObjectValue[] smallTableMatches;
   transient int metadataKeyTag;
   transient int[] metadataValueTag;
   transient int maxMapJoinSize;
   transient boolean hashTblInitedOnce;
+  transient boolean mappedHashTables;
+  transient boolean cacheHashTables;
+
+  // grace hash join: the partitions of the keys which are in separate files
+  // for the small tables, and the rows of the big table kept on disk for them
+  transient int numGracePartitions;
+  transient boolean[] spilledPartitions;
+  transient MapJoinPartitionSpill[] deferredRows;
+  transient String graceBaseDir;
+  transient String graceFileName;
+  // the key of the big table row checked by its table scan against the bloom
+  // filters of the small tables, reused when the row reaches the join
+  transient AbstractMapJoinKey scanKey;
   private int bigTableAlias;
 
   public MapJoinOperator() {
@@ -80,6 +101,14 @@ public class MapJoinOperator extends AbstractMapJoinOperator<MapJoinDesc> implem
     super.initializeOp(hconf);
 
     maxMapJoinSize = HiveConf.getIntVar(hconf, HiveConf.ConfVars.HIVEMAXMAPJOINSIZE);
+    mappedHashTables = HiveConf.getBoolVar(hconf, HiveConf.ConfVars.HIVEMAPJOINMAPPEDTABLE);
+    numGracePartitions = 0;
+    if (HiveConf.getBoolVar(hconf, HiveConf.ConfVars.HIVEMAPJOINGRACEHASH)) {
+      numGracePartitions = HiveConf.getIntVar(hconf,
+          HiveConf.ConfVars.HIVEMAPJOINGRACEHASHPARTITIONS);
+    }
+    spilledPartitions = null;
+    deferredRows = null;
 
     metadataValueTag = new int[numAliases];
     for (int pos = 0; pos < numAliases; pos++) {
@@ -89,6 +118,7 @@ public class MapJoinOperator extends AbstractMapJoinOperator<MapJoinDesc> implem
     metadataKeyTag = -1;
     bigTableAlias = order[posBigTable];
 
+    smallTableMatches = new MapJoinObjectValue[numAliases];
     mapJoinTables = new HashMap<Byte, HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue>>();
     rowContainerMap = new HashMap<Byte, MapJoinRowContainer<ArrayList<Object>>>();
     // initialize the hash tables for other tables
@@ -105,6 +135,71 @@ public class MapJoinOperator extends AbstractMapJoinOperator<MapJoinDesc> implem
     }
 
     hashTblInitedOnce = false;
+
+    scanKey = null;
+    TableScanOperator scan = getBigTableScan();
+    if (scan != null) {
+      LOG.info("The rows of the big table are filtered by " + scan.getOperatorId()
+          + " with the bloom filters of the small tables");
+      scan.setMapJoinFilter(this);
+    }
+  }
+
+  /**
+   * With inner joins only, the rows of the big table whose keys are not in a
+   * small table produce nothing, so they can be dropped by the table scan
+   * before the filters are evaluated on them. This is possible when the row
+   * goes from the scan to the join unchanged, through filters only, and
+   * reaches no other operator.
+   *
+   * @return the table scan of the big table, or null if it cannot drop rows
+   */
+  private TableScanOperator getBigTableScan() {
+    if (!noOuterJoin || parentOperators == null || parentOperators.size() <= posBigTable) {
+      return null;
+    }
+    Operator<? extends Serializable> op = parentOperators.get(posBigTable);
+    while (op instanceof FilterOperator && op.getChildOperators().size() == 1
+        && op.getParentOperators().size() == 1) {
+      op = op.getParentOperators().get(0);
+    }
+    if (op instanceof TableScanOperator && op.getChildOperators().size() == 1
+        && op.outputObjInspector == inputObjInspectors[posBigTable]) {
+      return (TableScanOperator) op;
+    }
+    return null;
+  }
+
+  /**
+   * Called by the table scan of the big table for each of its rows.
+   *
+   * @return false if the key of the row is certainly not in one of the small
+   *         tables, as told by the bloom filters of their hashtable files
+   */
+  boolean mightJoin(Object row) throws HiveException {
+    scanKey = null;
+    if (firstRow) {
+      // the tables are not loaded yet
+      return true;
+    }
+    Byte bigAlias = Byte.valueOf((byte) bigTableAlias);
+    AbstractMapJoinKey key = JoinUtil.computeMapJoinKeys(row, joinKeys.get(bigAlias),
+        joinKeysObjectInspectors.get(bigAlias));
+    if (key.hasAnyNulls()) {
+      return false;
+    }
+    // the keys of the partitions on disk are not in the filters of the tables
+    if (spilledPartitions == null
+        || !spilledPartitions[JoinUtil.getGraceHashPartition(key, numGracePartitions)]) {
+      for (HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue> hashtable : mapJoinTables
+          .values()) {
+        if (!hashtable.mightContain(key)) {
+          return false;
+        }
+      }
+    }
+    scanKey = key;
+    return true;
   }
 
   @Override
@@ -142,6 +237,22 @@ public class MapJoinOperator extends AbstractMapJoinOperator<MapJoinDesc> implem
           .getStandardObjectInspector(valueSerDe.getObjectInspector(),
               ObjectInspectorCopyOption.WRITABLE), valueSerDe, valueTableDesc, hconf));
     }
+
+    // the rows of the big table kept on disk by a grace hash join are written
+    // with its spill SerDe
+    if (numGracePartitions > 0) {
+      Byte bigAlias = Byte.valueOf((byte) bigTableAlias);
+      TableDesc bigTableDesc = JoinUtil.getSpillTableDesc(bigAlias, spillTableDesc, conf,
+          noOuterJoin);
+      if (bigTableDesc != null) {
+        SerDe bigTableSerDe = JoinUtil.getSpillSerDe(bigAlias, spillTableDesc, conf, noOuterJoin);
+        List<String> colNames = Utilities.getColumnNames(bigTableDesc.getProperties());
+        MapJoinMetaData.put(Integer.valueOf(bigTableAlias), new HashTableSinkObjectCtx(
+            ObjectInspectorFactory.getStandardStructObjectInspector(colNames,
+            rowContainerStandardObjectInspectors.get(bigAlias)), bigTableSerDe, bigTableDesc,
+            hconf));
+      }
+    }
   }
 
   private void loadHashTable() throws HiveException {
@@ -156,6 +267,12 @@ public class MapJoinOperator extends AbstractMapJoinOperator<MapJoinDesc> implem
     
     boolean localMode = HiveConf.getVar(hconf, HiveConf.ConfVars.HADOOPJT).equals("local");
     String baseDir = null;
+    String stageID = this.getExecContext().getLocalWork().getStageID();
+
+    // the tables can be shared by the tasks of the stage run one after another
+    // in the JVM, unless they are loaded per bucket
+    cacheHashTables = HiveConf.getBoolVar(hconf, HiveConf.ConfVars.HIVEMAPJOINCACHEHASHTABLES)
+        && !localMode && !this.getExecContext().getLocalWork().getInputFileChangeSensitive();
 
     String currentInputFile = HiveConf.getVar(hconf, HiveConf.ConfVars.HADOOPMAPFILENAME);
     LOG.info("******* Load from HashTable File: input : " + currentInputFile);
@@ -173,7 +290,6 @@ public class MapJoinOperator extends AbstractMapJoinOperator<MapJoinDesc> implem
         baseDir = this.getExecContext().getLocalWork().getTmpFileURI();
       } else {
         Path[] localArchives;
-        String stageID = this.getExecContext().getLocalWork().getStageID();
         String suffix = Utilities.generateTarFileName(stageID);
         FileSystem localFs = FileSystem.getLocal(hconf);
         localArchives = DistributedCache.getLocalCacheArchives(this.hconf);
@@ -187,14 +303,38 @@ public class MapJoinOperator extends AbstractMapJoinOperator<MapJoinDesc> implem
           baseDir = archiveLocalLink.toUri().getPath();
         }
       }
+
+      spilledPartitions = getSpilledPartitions(baseDir, currentFileName);
+      if (spilledPartitions != null) {
+        LOG.info("\tThe small tables have partitions in separate hashtable files");
+        graceBaseDir = baseDir;
+        graceFileName = currentFileName;
+        cacheHashTables = false;
+      }
       for (Map.Entry<Byte, HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue>> entry : mapJoinTables
           .entrySet()) {
         Byte pos = entry.getKey();
         HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue> hashtable = entry.getValue();
         String filePath = Utilities.generatePath(baseDir, pos, currentFileName);
         Path path = new Path(filePath);
+        if (cacheHashTables) {
+          HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue> cached = MapJoinTableCache
+              .acquire(stageID, path.toUri().getPath());
+          if (cached != null) {
+            LOG.info("\tReuse the loaded hashtable of file:" + path.toString());
+            entry.setValue(cached);
+            continue;
+          }
+        }
         LOG.info("\tLoad back 1 hashtable file from tmp file uri:" + path.toString());
-        hashtable.initilizePersistentHash(path.toUri().getPath());
+        if (mappedHashTables) {
+          hashtable.initilizeMappedHash(path.toUri().getPath());
+        } else {
+          hashtable.initilizePersistentHash(path.toUri().getPath());
+        }
+        if (cacheHashTables) {
+          MapJoinTableCache.put(stageID, path.toUri().getPath(), hashtable);
+        }
       }
     } catch (Exception e) {
       LOG.error("Load Distributed Cache Error");
@@ -202,6 +342,26 @@ public class MapJoinOperator extends AbstractMapJoinOperator<MapJoinDesc> implem
     }
   }
 
+  /**
+   * @return the partitions of the keys which the local task has dumped into
+   *         separate files, or null if there are none
+   */
+  private boolean[] getSpilledPartitions(String baseDir, String currentFileName) {
+    boolean[] spilled = null;
+    for (int i = 0; i < numGracePartitions; i++) {
+      for (Byte pos : mapJoinTables.keySet()) {
+        String filePath = Utilities.generatePartitionPath(baseDir, pos, currentFileName, i);
+        if (new File(new Path(filePath).toUri().getPath()).exists()) {
+          if (spilled == null) {
+            spilled = new boolean[numGracePartitions];
+          }
+          spilled[i] = true;
+        }
+      }
+    }
+    return spilled;
+  }
+
   // Load the hash table
   @Override
   public void cleanUpInputFileChangedOp() throws HiveException {
@@ -212,6 +372,12 @@ public class MapJoinOperator extends AbstractMapJoinOperator<MapJoinDesc> implem
         firstRow = false;
       }
 
+      // finish the rows of the previous bucket before its tables are replaced.
+      // Otherwise the tables are loaded once and the rows kept on disk are
+      // joined at the end of the input, as joining them replaces the tables.
+      if (this.getExecContext().getLocalWork().getInputFileChangeSensitive()) {
+        joinDeferredRows();
+      }
       loadHashTable();
     } catch (SerDeException e) {
       e.printStackTrace();
@@ -238,54 +404,169 @@ public class MapJoinOperator extends AbstractMapJoinOperator<MapJoinDesc> implem
       }
 
       // compute keys and values as StandardObjects
-      AbstractMapJoinKey key = JoinUtil.computeMapJoinKeys(row, joinKeys.get(alias),
-          joinKeysObjectInspectors.get(alias));
-      ArrayList<Object> value = JoinUtil.computeValues(row, joinValues.get(alias),
-          joinValuesObjectInspectors.get(alias), joinFilters.get(alias), joinFilterObjectInspectors
-              .get(alias), noOuterJoin);
+      AbstractMapJoinKey key = scanKey;
+      scanKey = null;
+      if (key == null || tag != posBigTable) {
+        key = JoinUtil.computeMapJoinKeys(row, joinKeys.get(alias),
+            joinKeysObjectInspectors.get(alias));
+      }
 
+      // the rows of the partitions which are on disk for the small tables are
+      // joined at the end of the input
+      if (spilledPartitions != null && !(noOuterJoin && key.hasAnyNulls())) {
+        int partition = JoinUtil.getGraceHashPartition(key, numGracePartitions);
+        if (spilledPartitions[partition]) {
+          deferRow(partition, key, JoinUtil.computeValues(row, joinValues.get(alias),
+              joinValuesObjectInspectors.get(alias), joinFilters.get(alias),
+              joinFilterObjectInspectors.get(alias), noOuterJoin));
+          return;
+        }
+      }
 
-      // Add the value to the ArrayList
-      storage.get((byte) tag).add(value);
+      joinRow(key, row, null, tag);
+    } catch (SerDeException e) {
+      e.printStackTrace();
+      throw new HiveException(e);
+    }
+  }
+
+  /**
+   * Join a row of the big table with the rows of its key in the small tables.
+   *
+   * @param value
+   *          the values of the row, or null to compute them from the row
+   */
+  private void joinRow(AbstractMapJoinKey key, Object row, ArrayList<Object> value, int tag)
+      throws HiveException {
+    // look up the key in the small tables first: with inner joins only, a
+    // row without a match in one of them produces nothing, so it is dropped
+    // before its values are computed. A key with nulls never matches.
+    boolean hasNulls = key.hasAnyNulls();
+    for (Byte pos : order) {
+      if (pos.intValue() != tag) {
+        MapJoinObjectValue o = hasNulls ? null : mapJoinTables.get(pos).get(key);
+        if (o == null && noOuterJoin) {
+          return;
+        }
+        smallTableMatches[pos.intValue()] = o;
+      }
+    }
 
-      for (Byte pos : order) {
-        if (pos.intValue() != tag) {
+    if (value == null) {
+      value = JoinUtil.computeValues(row, joinValues.get(alias),
+          joinValuesObjectInspectors.get(alias), joinFilters.get(alias),
+          joinFilterObjectInspectors.get(alias), noOuterJoin);
+    }
 
-          MapJoinObjectValue o = mapJoinTables.get(pos).get(key);
-          MapJoinRowContainer<ArrayList<Object>> rowContainer = rowContainerMap.get(pos);
 
-          // there is no join-value or join-key has all null elements
-          if (o == null || key.hasAnyNulls()) {
-            if (noOuterJoin) {
-              storage.put(pos, emptyList);
-            } else {
-              storage.put(pos, dummyObjVectors[pos.intValue()]);
-            }
-          } else {
-            rowContainer.reset(o.getObj());
-            storage.put(pos, rowContainer);
-          }
+    // Add the value to the ArrayList
+    storage.get((byte) tag).add(value);
+
+    for (Byte pos : order) {
+      if (pos.intValue() != tag) {
+
+        MapJoinObjectValue o = smallTableMatches[pos.intValue()];
+        smallTableMatches[pos.intValue()] = null;
+        MapJoinRowContainer<ArrayList<Object>> rowContainer = rowContainerMap.get(pos);
+
+        // there is no join-value or join-key has all null elements
+        if (o == null) {
+          storage.put(pos, dummyObjVectors[pos.intValue()]);
+        } else {
+          rowContainer.reset(o.getObj());
+          storage.put(pos, rowContainer);
         }
       }
+    }
 
-      // generate the output records
-      checkAndGenObject();
+    // generate the output records
+    checkAndGenObject();
 
-      // done with the row
-      storage.get((byte) tag).clear();
+    // done with the row
+    storage.get((byte) tag).clear();
 
-      for (Byte pos : order) {
-        if (pos.intValue() != tag) {
-          storage.put(pos, null);
-        }
+    for (Byte pos : order) {
+      if (pos.intValue() != tag) {
+        storage.put(pos, null);
       }
+    }
+  }
 
-    } catch (SerDeException e) {
-      e.printStackTrace();
+  private void deferRow(int partition, AbstractMapJoinKey key, ArrayList<Object> value)
+      throws HiveException {
+    try {
+      if (deferredRows == null) {
+        deferredRows = new MapJoinPartitionSpill[numGracePartitions];
+      }
+      if (deferredRows[partition] == null) {
+        deferredRows[partition] = new MapJoinPartitionSpill("MapJoin-" + bigTableAlias + "-p"
+            + partition + "-");
+      }
+      MapJoinRowContainer<Object[]> rows = new MapJoinRowContainer<Object[]>();
+      rows.add(value.toArray());
+      deferredRows[partition].add(key, new MapJoinObjectValue(bigTableAlias, rows));
+    } catch (IOException e) {
       throw new HiveException(e);
     }
   }
 
+  /**
+   * Join the rows of the big table kept on disk, one partition at a time: the
+   * hash tables of the small tables are replaced by the ones of the partition.
+   */
+  private void joinDeferredRows() throws HiveException {
+    if (deferredRows == null) {
+      return;
+    }
+    try {
+      for (int i = 0; i < numGracePartitions; i++) {
+        MapJoinPartitionSpill rows = deferredRows[i];
+        if (rows == null) {
+          continue;
+        }
+        for (Map.Entry<Byte, HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue>> entry : mapJoinTables
+            .entrySet()) {
+          HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue> hashtable = entry.getValue();
+          String filePath = new Path(Utilities.generatePartitionPath(graceBaseDir,
+              entry.getKey(), graceFileName, i)).toUri().getPath();
+          LOG.info("\tLoad back 1 hashtable partition file: " + filePath);
+          if (!new File(filePath).exists()) {
+            // no row of the small table in the partition
+            hashtable.close();
+          } else if (mappedHashTables) {
+            hashtable.initilizeMappedHash(filePath);
+          } else {
+            hashtable.initilizePersistentHash(filePath);
+          }
+        }
+
+        alias = order[posBigTable];
+        rows.startReading();
+        while (rows.next()) {
+          Object[] value = rows.getValue().getObj().first();
+          joinRow(rows.getKey(), null, new ArrayList<Object>(Arrays.asList(value)), posBigTable);
+        }
+        rows.close();
+        deferredRows[i] = null;
+      }
+    } catch (IOException e) {
+      throw new HiveException(e);
+    } finally {
+      clearDeferredRows();
+    }
+  }
+
+  private void clearDeferredRows() {
+    if (deferredRows != null) {
+      for (MapJoinPartitionSpill rows : deferredRows) {
+        if (rows != null) {
+          rows.close();
+        }
+      }
+      deferredRows = null;
+    }
+  }
+
   private String getFileName(String path) {
     if (path == null || path.length() == 0) {
       return null;
@@ -300,9 +581,18 @@ public class MapJoinOperator extends AbstractMapJoinOperator<MapJoinDesc> implem
   @Override
   public void closeOp(boolean abort) throws HiveException {
 
+    if (abort) {
+      clearDeferredRows();
+    } else {
+      joinDeferredRows();
+    }
     if (mapJoinTables != null) {
-      for (HashMapWrapper<?, ?> hashTable : mapJoinTables.values()) {
-        hashTable.close();
+      for (HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue> hashTable : mapJoinTables
+          .values()) {
+        // the tables in the cache are kept for the next tasks
+        if (!cacheHashTables || !MapJoinTableCache.release(hashTable)) {
+          hashTable.close();
+        }
       }
     }
     super.closeOp(abort);
@@ -0,0 +1,131 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hive.ql.exec.persistence.AbstractMapJoinKey;
+import org.apache.hadoop.hive.ql.exec.persistence.HashMapWrapper;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinObjectValue;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+
+/**
+ * Process wide cache of the small table hash tables loaded by map join
+ * operators. When the JVM is reused, the following map tasks of the same
+ * stage find the tables already loaded instead of reading the hashtable files
+ * again.
+ *
+ * The tables are reference counted. A table which is not used by any
+ * operator stays in the cache until a task of another stage loads its tables,
+ * so only the tables of one stage are kept at a time.
+ */
+public final class MapJoinTableCache {
+
+  private static final Log LOG = LogFactory.getLog(MapJoinTableCache.class.getName());
+
+  private static class Entry {
+    String stageID;
+    HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue> table;
+    int refCount;
+  }
+
+  private static final Map<String, Entry> tables = new HashMap<String, Entry>();
+
+  private MapJoinTableCache() {
+  }
+
+  private static String getKey(String stageID, String fileName) {
+    return stageID + ":" + fileName;
+  }
+
+  /**
+   * @return the table loaded from the file by the stage, or null if it is not
+   *         in the cache. A table returned must be released.
+   */
+  public static synchronized HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue> acquire(
+      String stageID, String fileName) throws HiveException {
+    evictOtherStages(stageID);
+    Entry entry = tables.get(getKey(stageID, fileName));
+    if (entry == null) {
+      return null;
+    }
+    entry.refCount++;
+    return entry.table;
+  }
+
+  /**
+   * Add a table just loaded from the file by the stage. The table is acquired
+   * by the caller.
+   */
+  public static synchronized void put(String stageID, String fileName,
+      HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue> table) throws HiveException {
+    evictOtherStages(stageID);
+    Entry entry = new Entry();
+    entry.stageID = stageID;
+    entry.table = table;
+    entry.refCount = 1;
+    Entry old = tables.put(getKey(stageID, fileName), entry);
+    if (old != null && old.refCount == 0) {
+      old.table.close();
+    }
+  }
+
+  /**
+   * Release a table returned by acquire() or added by put().
+   *
+   * @return true if the table is in the cache, false if the caller owns it
+   */
+  public static synchronized boolean release(
+      HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue> table) {
+    for (Entry entry : tables.values()) {
+      if (entry.table == table) {
+        entry.refCount--;
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static void evictOtherStages(String stageID) throws HiveException {
+    Iterator<Map.Entry<String, Entry>> iter = tables.entrySet().iterator();
+    while (iter.hasNext()) {
+      Entry entry = iter.next().getValue();
+      if (entry.refCount <= 0 && !entry.stageID.equals(stageID)) {
+        LOG.info("Evict the hash tables of " + entry.stageID);
+        entry.table.close();
+        iter.remove();
+      }
+    }
+  }
+
+  public static synchronized int size() {
+    return tables.size();
+  }
+
+  public static synchronized void clear() throws HiveException {
+    for (Entry entry : tables.values()) {
+      entry.table.close();
+    }
+    tables.clear();
+  }
+}
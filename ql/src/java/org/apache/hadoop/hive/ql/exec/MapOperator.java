@@ -33,6 +33,7 @@ import java.util.Set;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
 import org.apache.hadoop.hive.ql.io.IOContext;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.hive.ql.metadata.VirtualColumn;
@@ -498,6 +499,14 @@ public class MapOperator extends Operator<MapredWork> implements Serializable {
       cleanUpInputFileChanged();
     }
 
+    if (value instanceof VectorizedRowBatch) {
+      // the rows of a row group read by a VectorizedRCFileRecordReader, which
+      // is only used when all the table scans of the file run in vectorized
+      // mode and no virtual column is needed
+      forwardBatch((VectorizedRowBatch) value);
+      return;
+    }
+
     Object row = null;
     try {
       if (this.hasVC) {
@@ -29,6 +29,8 @@ import java.util.Map;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatchCtx;
 import org.apache.hadoop.hive.ql.lib.Node;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.hive.ql.parse.SemanticException;
@@ -472,6 +474,38 @@ public abstract class Operator<T extends Serializable> implements Serializable,
     postProcessCounter();
   }
 
+  /**
+   * Process a batch of rows in vectorized execution mode.
+   *
+   * @param batch
+   *          The rows, stored column by column.
+   * @param tag
+   *          The tag of the batch usually means which parent this batch comes
+   *          from.
+   */
+  public void processBatch(VectorizedRowBatch batch, int tag) throws HiveException {
+    if (fatalError) {
+      return;
+    }
+    processBatchOp(batch, tag);
+  }
+
+  /**
+   * Operator specific processing of a batch. Operators which do not support
+   * vectorized execution fall back to processing the rows of the batch one
+   * at a time; the rows are inspected by the ObjectInspector of the batch
+   * context, which the parent passed down as our input ObjectInspector.
+   */
+  protected void processBatchOp(VectorizedRowBatch batch, int tag) throws HiveException {
+    VectorizedRowBatchCtx batchCtx = batch.getContext();
+    for (int j = 0; j < batch.size; j++) {
+      if (getDone()) {
+        return;
+      }
+      process(batchCtx.materializeRow(batch, batch.getRow(j)), tag);
+    }
+  }
+
   // If a operator wants to do some work at the beginning of a group
   public void startGroup() throws HiveException {
     LOG.debug("Starting group");
@@ -751,6 +785,66 @@ public abstract class Operator<T extends Serializable> implements Serializable,
     }
   }
 
+  private transient int[] savedSelected;
+
+  /**
+   * Forward a batch of rows to the children, in vectorized execution mode.
+   * The children must have been initialized with the row ObjectInspector of
+   * the batch context.
+   */
+  protected void forwardBatch(VectorizedRowBatch batch) throws HiveException {
+    if (batch.size == 0) {
+      return;
+    }
+    outputRows += batch.size;
+    if (counterNameToEnum != null && outputRows >= 1000) {
+      incrCounter(numOutputRowsCntr, outputRows);
+      outputRows = 0;
+    }
+
+    if (childOperatorsArray == null && childOperators != null) {
+      throw new HiveException(
+          "Internal Hive error during operator initialization.");
+    }
+
+    if ((childOperatorsArray == null) || (getDone())) {
+      return;
+    }
+
+    // children like filters shrink the batch in place, so every child after
+    // the first one needs the selection to be restored
+    int size = batch.size;
+    boolean selectedInUse = batch.selectedInUse;
+    if (childOperatorsArray.length > 1 && selectedInUse) {
+      if (savedSelected == null || savedSelected.length < size) {
+        savedSelected = new int[batch.getMaxSize()];
+      }
+      System.arraycopy(batch.selected, 0, savedSelected, 0, size);
+    }
+
+    int childrenDone = 0;
+    for (int i = 0; i < childOperatorsArray.length; i++) {
+      Operator<? extends Serializable> o = childOperatorsArray[i];
+      if (o.getDone()) {
+        childrenDone++;
+      } else {
+        if (i > 0) {
+          batch.size = size;
+          batch.selectedInUse = selectedInUse;
+          if (selectedInUse) {
+            System.arraycopy(savedSelected, 0, batch.selected, 0, size);
+          }
+        }
+        o.processBatch(batch, childOperatorsTag[i]);
+      }
+    }
+
+    // if all children are done, this operator is also done
+    if (childrenDone == childOperatorsArray.length) {
+      setDone(true);
+    }
+  }
+
   public void resetStats() {
     for (Enum<?> e : statsMap.keySet()) {
       statsMap.get(e).set(0L);
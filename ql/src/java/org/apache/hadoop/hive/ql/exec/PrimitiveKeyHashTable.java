@@ -0,0 +1,550 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec;
+
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator.AggregationBuffer;
+import org.apache.hadoop.hive.serde2.io.ByteWritable;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.hive.serde2.io.ShortWritable;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector.PrimitiveCategory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.BooleanObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.ByteObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.DoubleObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.FloatObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.IntObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.LongObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.ShortObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.StringObjectInspector;
+import org.apache.hadoop.io.BooleanWritable;
+import org.apache.hadoop.io.FloatWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+
+/**
+ * Hash table used by map-side hash aggregation when all the grouping keys are
+ * primitives (boolean, byte, short, int, long, float, double or string).
+ *
+ * Instead of one KeyWrapper copy and one HashMap entry per group, the keys of
+ * all groups are encoded into a single contiguous byte array, and the table
+ * itself is an open addressing (linear probing) array of entry indexes. Entries
+ * are kept in insertion order, so that the oldest groups can be flushed first.
+ * Since all the storage is made of a few flat arrays, the memory used by the
+ * table is known exactly rather than estimated.
+ */
+public class PrimitiveKeyHashTable {
+
+  private static final float LOAD_FACTOR = 0.5f;
+  private static final int INITIAL_CAPACITY = 1024;
+
+  // approximate size of an array header, and of an object reference
+  private static final int ARRAY_OVERHEAD = 16;
+  private static final int REFERENCE_SIZE = 8;
+
+  private final ObjectInspector[] keyInspectors;
+  private final PrimitiveCategory[] keyCategories;
+
+  // slot -> entry index + 1, 0 meaning an empty slot
+  private int[] slots;
+  private int slotMask;
+
+  // per-entry storage, in insertion order
+  private int[] entryHashes;
+  private int[] entryOffsets;
+  private int[] entryLengths;
+  private AggregationBuffer[][] entryValues;
+  private int numEntries;
+
+  // contiguous storage for the encoded keys of all entries
+  private byte[] keyBytes;
+  private int keyBytesUsed;
+
+  // the key of the last probed row
+  private byte[] probe = new byte[64];
+  private int probeLength;
+  private int probeHash;
+
+  // reused objects returned by getKeys()
+  private final Object[] keyWritables;
+  private final Object[] keyObjects;
+
+  /**
+   * @param keyInspectors
+   *          the ObjectInspectors of the grouping keys. All of them must be
+   *          supported, see {@link #isSupported(ObjectInspector)}.
+   */
+  public PrimitiveKeyHashTable(ObjectInspector[] keyInspectors) {
+    this.keyInspectors = keyInspectors;
+    keyCategories = new PrimitiveCategory[keyInspectors.length];
+    keyWritables = new Object[keyInspectors.length];
+    keyObjects = new Object[keyInspectors.length];
+    for (int i = 0; i < keyInspectors.length; i++) {
+      keyCategories[i] = ((PrimitiveObjectInspector) keyInspectors[i])
+          .getPrimitiveCategory();
+      keyWritables[i] = newWritable(keyCategories[i]);
+    }
+    allocate(INITIAL_CAPACITY);
+  }
+
+  /**
+   * Whether a grouping key with the given ObjectInspector can be stored in
+   * this table.
+   */
+  public static boolean isSupported(ObjectInspector oi) {
+    if (oi.getCategory() != ObjectInspector.Category.PRIMITIVE) {
+      return false;
+    }
+    switch (((PrimitiveObjectInspector) oi).getPrimitiveCategory()) {
+    case BOOLEAN:
+    case BYTE:
+    case SHORT:
+    case INT:
+    case LONG:
+    case FLOAT:
+    case DOUBLE:
+    case STRING:
+      return true;
+    default:
+      return false;
+    }
+  }
+
+  private void allocate(int capacity) {
+    slots = new int[capacity];
+    slotMask = capacity - 1;
+    int entryCapacity = (int) (capacity * LOAD_FACTOR);
+    entryHashes = new int[entryCapacity];
+    entryOffsets = new int[entryCapacity];
+    entryLengths = new int[entryCapacity];
+    entryValues = new AggregationBuffer[entryCapacity][];
+    keyBytes = new byte[entryCapacity * 8];
+    numEntries = 0;
+    keyBytesUsed = 0;
+  }
+
+  /**
+   * Encode the key of the current row, so that it can be looked up with
+   * {@link #get()} and inserted with {@link #put(AggregationBuffer[])}.
+   *
+   * @param keys
+   *          the grouping keys, as evaluated from the row
+   */
+  public void setProbeKey(Object[] keys) {
+    probeLength = 0;
+    for (int i = 0; i < keys.length; i++) {
+      Object o = keys[i];
+      if (o == null) {
+        ensureProbe(1);
+        probe[probeLength++] = 0;
+        continue;
+      }
+      ObjectInspector oi = keyInspectors[i];
+      switch (keyCategories[i]) {
+      case BOOLEAN:
+        ensureProbe(2);
+        probe[probeLength++] = 1;
+        probe[probeLength++] = (byte) (((BooleanObjectInspector) oi).get(o) ? 1 : 0);
+        break;
+      case BYTE:
+        ensureProbe(2);
+        probe[probeLength++] = 1;
+        probe[probeLength++] = ((ByteObjectInspector) oi).get(o);
+        break;
+      case SHORT:
+        ensureProbe(3);
+        probe[probeLength++] = 1;
+        writeShort(((ShortObjectInspector) oi).get(o));
+        break;
+      case INT:
+        ensureProbe(5);
+        probe[probeLength++] = 1;
+        writeInt(((IntObjectInspector) oi).get(o));
+        break;
+      case LONG:
+        ensureProbe(9);
+        probe[probeLength++] = 1;
+        writeLong(((LongObjectInspector) oi).get(o));
+        break;
+      case FLOAT: {
+        ensureProbe(5);
+        probe[probeLength++] = 1;
+        float f = ((FloatObjectInspector) oi).get(o);
+        // -0.0 and 0.0 are equal keys
+        writeInt(Float.floatToIntBits(f == 0.0f ? 0.0f : f));
+        break;
+      }
+      case DOUBLE: {
+        ensureProbe(9);
+        probe[probeLength++] = 1;
+        double d = ((DoubleObjectInspector) oi).get(o);
+        writeLong(Double.doubleToLongBits(d == 0.0d ? 0.0d : d));
+        break;
+      }
+      case STRING: {
+        Text t = ((StringObjectInspector) oi).getPrimitiveWritableObject(o);
+        int len = t.getLength();
+        ensureProbe(5 + len);
+        probe[probeLength++] = 1;
+        writeInt(len);
+        System.arraycopy(t.getBytes(), 0, probe, probeLength, len);
+        probeLength += len;
+        break;
+      }
+      default:
+        throw new RuntimeException("Unsupported key type " + keyCategories[i]);
+      }
+    }
+    probeHash = hash(probe, probeLength);
+  }
+
+  /**
+   * @return the aggregations of the probe key, or null if the key is not in
+   *         the table
+   */
+  public AggregationBuffer[] get() {
+    int slot = probeHash & slotMask;
+    while (true) {
+      int entry = slots[slot] - 1;
+      if (entry < 0) {
+        return null;
+      }
+      if (entryHashes[entry] == probeHash && entryLengths[entry] == probeLength
+          && equals(entryOffsets[entry], probeLength)) {
+        return entryValues[entry];
+      }
+      slot = (slot + 1) & slotMask;
+    }
+  }
+
+  /**
+   * Add the probe key to the table. The probe key must not be in the table
+   * already.
+   */
+  public void put(AggregationBuffer[] aggs) {
+    if (numEntries == entryHashes.length) {
+      rehash(slots.length * 2);
+    }
+    if (keyBytesUsed + probeLength > keyBytes.length) {
+      byte[] newKeyBytes = new byte[Math.max(keyBytes.length * 2, keyBytesUsed
+          + probeLength)];
+      System.arraycopy(keyBytes, 0, newKeyBytes, 0, keyBytesUsed);
+      keyBytes = newKeyBytes;
+    }
+    System.arraycopy(probe, 0, keyBytes, keyBytesUsed, probeLength);
+    int entry = numEntries++;
+    entryHashes[entry] = probeHash;
+    entryOffsets[entry] = keyBytesUsed;
+    entryLengths[entry] = probeLength;
+    entryValues[entry] = aggs;
+    keyBytesUsed += probeLength;
+    insertSlot(entry);
+  }
+
+  private void insertSlot(int entry) {
+    int slot = entryHashes[entry] & slotMask;
+    while (slots[slot] != 0) {
+      slot = (slot + 1) & slotMask;
+    }
+    slots[slot] = entry + 1;
+  }
+
+  private void rehash(int capacity) {
+    int entryCapacity = (int) (capacity * LOAD_FACTOR);
+    int[] newHashes = new int[entryCapacity];
+    int[] newOffsets = new int[entryCapacity];
+    int[] newLengths = new int[entryCapacity];
+    AggregationBuffer[][] newValues = new AggregationBuffer[entryCapacity][];
+    System.arraycopy(entryHashes, 0, newHashes, 0, numEntries);
+    System.arraycopy(entryOffsets, 0, newOffsets, 0, numEntries);
+    System.arraycopy(entryLengths, 0, newLengths, 0, numEntries);
+    System.arraycopy(entryValues, 0, newValues, 0, numEntries);
+    entryHashes = newHashes;
+    entryOffsets = newOffsets;
+    entryLengths = newLengths;
+    entryValues = newValues;
+
+    slots = new int[capacity];
+    slotMask = capacity - 1;
+    for (int i = 0; i < numEntries; i++) {
+      insertSlot(i);
+    }
+  }
+
+  /**
+   * Remove the first (oldest) entries of the table. The storage of the
+   * remaining keys is compacted.
+   *
+   * @param num
+   *          the number of entries to remove
+   */
+  public void removeFirst(int num) {
+    compact(Math.min(num, numEntries), -1, 0);
+  }
+
+  /**
+   * Remove all the entries of a partition, see
+   * {@link #getPartition(int, int)}. The storage of the remaining keys is
+   * compacted.
+   */
+  public void removePartition(int partition, int numPartitions) {
+    compact(0, partition, numPartitions);
+  }
+
+  /**
+   * The partition of an entry is derived from the hash of its key, so all the
+   * entries with the same key fall in the same partition, whatever table they
+   * are in.
+   *
+   * @return the partition of the i-th entry, between 0 and numPartitions - 1
+   */
+  public int getPartition(int entry, int numPartitions) {
+    return partitionOf(entryHashes[entry], numPartitions);
+  }
+
+  private static int partitionOf(int hash, int numPartitions) {
+    // use the high bits, since the low bits select the slot
+    return ((hash * 0x9E3779B9) >>> 16) % numPartitions;
+  }
+
+  /**
+   * Keep the entries from firstKept on, except those of the given partition
+   * (if any).
+   */
+  private void compact(int firstKept, int removedPartition, int numPartitions) {
+    int[] oldHashes = entryHashes;
+    int[] oldOffsets = entryOffsets;
+    int[] oldLengths = entryLengths;
+    AggregationBuffer[][] oldValues = entryValues;
+    byte[] oldKeyBytes = keyBytes;
+    int oldEntries = numEntries;
+
+    int remaining = 0;
+    int remainingBytes = 0;
+    for (int i = firstKept; i < oldEntries; i++) {
+      if (removedPartition < 0 || partitionOf(oldHashes[i], numPartitions) != removedPartition) {
+        remaining++;
+        remainingBytes += oldLengths[i];
+      }
+    }
+
+    // shrink the table to the smallest capacity holding the remaining entries,
+    // so that the memory reported by getMemoryUsage() goes down as well
+    int capacity = INITIAL_CAPACITY;
+    while (capacity * LOAD_FACTOR <= remaining) {
+      capacity <<= 1;
+    }
+    allocate(capacity);
+    if (keyBytes.length < remainingBytes) {
+      keyBytes = new byte[remainingBytes];
+    }
+
+    for (int i = firstKept; i < oldEntries; i++) {
+      if (removedPartition >= 0
+          && partitionOf(oldHashes[i], numPartitions) == removedPartition) {
+        continue;
+      }
+      int entry = numEntries++;
+      System.arraycopy(oldKeyBytes, oldOffsets[i], keyBytes, keyBytesUsed, oldLengths[i]);
+      entryHashes[entry] = oldHashes[i];
+      entryOffsets[entry] = keyBytesUsed;
+      entryLengths[entry] = oldLengths[i];
+      entryValues[entry] = oldValues[i];
+      keyBytesUsed += oldLengths[i];
+      insertSlot(entry);
+    }
+  }
+
+  /**
+   * Remove all the entries, and release the memory of the table.
+   */
+  public void clear() {
+    allocate(INITIAL_CAPACITY);
+  }
+
+  public int size() {
+    return numEntries;
+  }
+
+  /**
+   * @return the aggregations of the i-th entry, in insertion order
+   */
+  public AggregationBuffer[] getAggregations(int entry) {
+    return entryValues[entry];
+  }
+
+  /**
+   * Decode the key of the i-th entry. The returned array and the writables in
+   * it are reused by the next call.
+   *
+   * @return the keys, as standard writable objects
+   */
+  public Object[] getKeys(int entry) {
+    int pos = entryOffsets[entry];
+    for (int i = 0; i < keyCategories.length; i++) {
+      if (keyBytes[pos++] == 0) {
+        keyObjects[i] = null;
+        continue;
+      }
+      Object w = keyWritables[i];
+      switch (keyCategories[i]) {
+      case BOOLEAN:
+        ((BooleanWritable) w).set(keyBytes[pos++] != 0);
+        break;
+      case BYTE:
+        ((ByteWritable) w).set(keyBytes[pos++]);
+        break;
+      case SHORT:
+        ((ShortWritable) w).set((short) readShort(pos));
+        pos += 2;
+        break;
+      case INT:
+        ((IntWritable) w).set(readInt(pos));
+        pos += 4;
+        break;
+      case LONG:
+        ((LongWritable) w).set(readLong(pos));
+        pos += 8;
+        break;
+      case FLOAT:
+        ((FloatWritable) w).set(Float.intBitsToFloat(readInt(pos)));
+        pos += 4;
+        break;
+      case DOUBLE:
+        ((DoubleWritable) w).set(Double.longBitsToDouble(readLong(pos)));
+        pos += 8;
+        break;
+      case STRING: {
+        int len = readInt(pos);
+        pos += 4;
+        ((Text) w).set(keyBytes, pos, len);
+        pos += len;
+        break;
+      }
+      default:
+        throw new RuntimeException("Unsupported key type " + keyCategories[i]);
+      }
+      keyObjects[i] = w;
+    }
+    return keyObjects;
+  }
+
+  /**
+   * @return the number of bytes used by the table and the encoded keys. This
+   *         does not include the aggregation buffers themselves.
+   */
+  public long getMemoryUsage() {
+    int entryCapacity = entryHashes.length;
+    return (ARRAY_OVERHEAD + 4L * slots.length)
+        + 3 * (ARRAY_OVERHEAD + 4L * entryCapacity)
+        + (ARRAY_OVERHEAD + (long) REFERENCE_SIZE * entryCapacity)
+        + (ARRAY_OVERHEAD + keyBytes.length)
+        + (ARRAY_OVERHEAD + probe.length);
+  }
+
+  /**
+   * @return the total number of bytes of the encoded keys currently stored
+   */
+  public long getKeyBytes() {
+    return keyBytesUsed;
+  }
+
+  private static Object newWritable(PrimitiveCategory category) {
+    switch (category) {
+    case BOOLEAN:
+      return new BooleanWritable();
+    case BYTE:
+      return new ByteWritable();
+    case SHORT:
+      return new ShortWritable();
+    case INT:
+      return new IntWritable();
+    case LONG:
+      return new LongWritable();
+    case FLOAT:
+      return new FloatWritable();
+    case DOUBLE:
+      return new DoubleWritable();
+    case STRING:
+      return new Text();
+    default:
+      throw new RuntimeException("Unsupported key type " + category);
+    }
+  }
+
+  private boolean equals(int offset, int length) {
+    byte[] k = keyBytes;
+    byte[] p = probe;
+    for (int i = 0; i < length; i++) {
+      if (k[offset + i] != p[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int hash(byte[] bytes, int length) {
+    int h = 0;
+    for (int i = 0; i < length; i++) {
+      h = 31 * h + bytes[i];
+    }
+    // spread the bits, since the low bits select the slot
+    h ^= (h >>> 20) ^ (h >>> 12);
+    return h ^ (h >>> 7) ^ (h >>> 4);
+  }
+
+  private void ensureProbe(int len) {
+    if (probeLength + len > probe.length) {
+      byte[] newProbe = new byte[Math.max(probe.length * 2, probeLength + len)];
+      System.arraycopy(probe, 0, newProbe, 0, probeLength);
+      probe = newProbe;
+    }
+  }
+
+  private void writeShort(int v) {
+    probe[probeLength++] = (byte) (v >> 8);
+    probe[probeLength++] = (byte) v;
+  }
+
+  private void writeInt(int v) {
+    probe[probeLength++] = (byte) (v >> 24);
+    probe[probeLength++] = (byte) (v >> 16);
+    probe[probeLength++] = (byte) (v >> 8);
+    probe[probeLength++] = (byte) v;
+  }
+
+  private void writeLong(long v) {
+    writeInt((int) (v >> 32));
+    writeInt((int) v);
+  }
+
+  private int readShort(int pos) {
+    return (short) (((keyBytes[pos] & 0xff) << 8) | (keyBytes[pos + 1] & 0xff));
+  }
+
+  private int readInt(int pos) {
+    return ((keyBytes[pos] & 0xff) << 24) | ((keyBytes[pos + 1] & 0xff) << 16)
+        | ((keyBytes[pos + 2] & 0xff) << 8) | (keyBytes[pos + 3] & 0xff);
+  }
+
+  private long readLong(int pos) {
+    return ((long) readInt(pos) << 32) | (readInt(pos + 4) & 0xffffffffL);
+  }
+}
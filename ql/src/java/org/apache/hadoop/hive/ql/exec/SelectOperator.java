@@ -20,13 +20,23 @@ package org.apache.hadoop.hive.ql.exec;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizationContext;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatchCtx;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.VectorExpression;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
 import org.apache.hadoop.hive.ql.plan.SelectDesc;
 import org.apache.hadoop.hive.ql.plan.api.OperatorType;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector.PrimitiveCategory;
+import org.apache.hadoop.hive.serde2.objectinspector.StructField;
 import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
 
 /**
  * Select operator implementation.
@@ -39,6 +49,12 @@ public class SelectOperator extends Operator<SelectDesc> implements
 
   transient Object[] output;
 
+  // vectorized execution: the compiled select list and the batch it fills,
+  // or null if the select list has to be evaluated row by row
+  private transient VectorExpression[] vectorExprs;
+  private transient VectorizedRowBatch outputBatch;
+  private transient boolean vectorExprsCompiled;
+
   @Override
   protected void initializeOp(Configuration hconf) throws HiveException {
     // Just forward the row as is
@@ -84,6 +100,76 @@ public class SelectOperator extends Operator<SelectDesc> implements
     forward(output, outputObjInspector);
   }
 
+  @Override
+  protected void processBatchOp(VectorizedRowBatch batch, int tag) throws HiveException {
+    // Just forward the batch as is
+    if (conf.isSelStarNoCompute()) {
+      forwardBatch(batch);
+      return;
+    }
+
+    if (!vectorExprsCompiled) {
+      compileVectorExprs(batch);
+      vectorExprsCompiled = true;
+    }
+    if (vectorExprs == null) {
+      super.processBatchOp(batch, tag);
+      return;
+    }
+
+    for (int i = 0; i < vectorExprs.length; i++) {
+      vectorExprs[i].evaluate(batch);
+      outputBatch.cols[i] = batch.cols[vectorExprs[i].getOutputColumn()];
+    }
+    outputBatch.size = batch.size;
+    outputBatch.selectedInUse = batch.selectedInUse;
+    if (batch.selectedInUse) {
+      System.arraycopy(batch.selected, 0, outputBatch.selected, 0, batch.size);
+    }
+    forwardBatch(outputBatch);
+  }
+
+  /**
+   * Compile the select list into vectorized expressions. The output batch
+   * is only usable if the children can read its rows with the
+   * ObjectInspector they were initialized with, i.e. if all the output
+   * columns are writable primitives.
+   */
+  private void compileVectorExprs(VectorizedRowBatch batch) {
+    List<? extends StructField> fields =
+        ((StructObjectInspector) outputObjInspector).getAllStructFieldRefs();
+    List<PrimitiveCategory> types = new ArrayList<PrimitiveCategory>(fields.size());
+    for (StructField field : fields) {
+      ObjectInspector oi = field.getFieldObjectInspector();
+      PrimitiveCategory type = oi.getCategory() == ObjectInspector.Category.PRIMITIVE
+          ? ((PrimitiveObjectInspector) oi).getPrimitiveCategory() : null;
+      if (type == null || !VectorizedRowBatchCtx.isVectorizable(type)
+          || oi != PrimitiveObjectInspectorFactory.getPrimitiveWritableObjectInspector(type)) {
+        LOG.info("Select list is evaluated row by row: "
+            + field.getFieldName() + " is not a writable primitive");
+        return;
+      }
+      types.add(type);
+    }
+
+    VectorizationContext vContext = new VectorizationContext(batch.getContext());
+    ArrayList<ExprNodeDesc> colList = conf.getColList();
+    VectorExpression[] exprs = new VectorExpression[colList.size()];
+    for (int i = 0; i < exprs.length; i++) {
+      exprs[i] = vContext.getVectorExpression(colList.get(i));
+      if (exprs[i] == null) {
+        LOG.info("Select list is evaluated row by row: "
+            + colList.get(i).getExprString() + " cannot be vectorized");
+        return;
+      }
+    }
+    VectorizedRowBatchCtx outputCtx = new VectorizedRowBatchCtx(
+        conf.getOutputColumnNames(), types);
+    outputBatch = new VectorizedRowBatch(outputCtx, exprs.length, batch.getMaxSize());
+    vectorExprs = exprs;
+    LOG.info("Select list is vectorized");
+  }
+
   /**
    * @return the name of the operator
    */
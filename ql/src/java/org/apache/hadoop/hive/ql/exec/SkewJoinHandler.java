@@ -169,6 +169,8 @@ public class SkewJoinHandler {
         rc.setSerDe(tblSerializers.get((byte) i), skewKeysTableObjectInspector
             .get((byte) i));
         rc.setTableDesc(tblDesc.get(alias));
+        // the spilled rows are copied to the skew key table
+        rc.setCompactSpill(false);
       }
     }
   }
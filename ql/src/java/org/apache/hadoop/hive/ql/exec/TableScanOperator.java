@@ -27,6 +27,9 @@ import java.util.Map;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hive.common.FileUtils;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatchCtx;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.hive.ql.metadata.VirtualColumn;
 import org.apache.hadoop.hive.ql.plan.TableDesc;
@@ -60,6 +63,13 @@ public class TableScanOperator extends Operator<TableScanDesc> implements
   private transient Stat currentStat;
   private transient Map<String, Stat> stats;
 
+  // used in vectorized execution mode only
+  private transient VectorizedRowBatchCtx batchCtx;
+  private transient VectorizedRowBatch batch;
+
+  // the map join of the rows, which tells the rows that it would drop
+  private transient MapJoinOperator mapJoinFilter;
+
   public TableDesc getTableDesc() {
     return tableDesc;
   }
@@ -80,13 +90,99 @@ public class TableScanOperator extends Operator<TableScanDesc> implements
     if (conf != null && conf.isGatherStats()) {
       gatherStats(row);
     }
+    if (mapJoinFilter != null && !mapJoinFilter.mightJoin(row)) {
+      return;
+    }
+    if (batch != null) {
+      batchCtx.addRow(batch, row);
+      if (batch.isFull()) {
+        flushBatch();
+      }
+      return;
+    }
     forward(row, inputObjInspectors[tag]);
   }
 
+  /**
+   * Drop the rows which the given map join, fed by this scan through filters
+   * only, would drop because their keys are not in its small tables.
+   */
+  void setMapJoinFilter(MapJoinOperator mapJoinFilter) {
+    this.mapJoinFilter = mapJoinFilter;
+  }
+
+  /**
+   * Forward the batches of a VectorizedRCFileRecordReader, which reads the
+   * rows of a whole row group into the columns of our input rows.
+   */
+  @Override
+  protected void processBatchOp(VectorizedRowBatch rowGroupBatch, int tag)
+      throws HiveException {
+    if (batch == null) {
+      throw new HiveException("Batches are read for " + id + " " + getName()
+          + " which is not running in vectorized mode");
+    }
+    forwardBatch(rowGroupBatch);
+  }
+
+  private void flushBatch() throws HiveException {
+    forwardBatch(batch);
+    batch.reset();
+  }
+
   // Change the table partition for collecting stats
   @Override
   public void cleanUpInputFileChangedOp() throws HiveException {
     inputFileChanged = true;
+    // do not let a batch span several input files
+    if (batch != null && batch.size > 0) {
+      flushBatch();
+    }
+  }
+
+  /**
+   * Vectorized execution is only used for table scans of the map-reduce
+   * framework (not for local work, where rows are pulled one at a time by
+   * the consumer), when all the rows are made of primitive columns, and when
+   * all the operators of the map-side pipeline are able to consume batches.
+   */
+  private boolean shouldVectorize(Configuration hconf) {
+    if (parentOperators == null || parentOperators.size() != 1
+        || !(parentOperators.get(0) instanceof MapOperator)) {
+      return false;
+    }
+    return VectorizedRowBatchCtx.isVectorizable(inputObjInspectors[0])
+        && acceptsBatches(hconf);
+  }
+
+  /**
+   * Whether this scan runs in vectorized mode when it is fed by the
+   * map-reduce framework with rows of primitive columns. HiveInputFormat
+   * checks it before it reads a file in batches rather than rows.
+   */
+  public boolean acceptsBatches(Configuration hconf) {
+    if (!HiveConf.getBoolVar(hconf, HiveConf.ConfVars.HIVE_VECTORIZATION_ENABLED)
+        || (conf != null && conf.isGatherStats())) {
+      return false;
+    }
+    return supportsBatches(this);
+  }
+
+  private static boolean supportsBatches(Operator<? extends Serializable> op) {
+    if (op.getChildOperators() == null) {
+      return true;
+    }
+    for (Operator<? extends Serializable> child : op.getChildOperators()) {
+      if (!(child instanceof FilterOperator || child instanceof SelectOperator
+          || child instanceof GroupByOperator || child instanceof ReduceSinkOperator
+          || child instanceof FileSinkOperator || child instanceof LimitOperator)) {
+        return false;
+      }
+      if (child.getParentOperators().size() != 1 || !supportsBatches(child)) {
+        return false;
+      }
+    }
+    return true;
   }
 
   private void gatherStats(Object row) {
@@ -163,6 +259,17 @@ public class TableScanOperator extends Operator<TableScanDesc> implements
 
   @Override
   protected void initializeOp(Configuration hconf) throws HiveException {
+    // set again by the map join when it is initialized
+    mapJoinFilter = null;
+    batchCtx = null;
+    batch = null;
+    if (shouldVectorize(hconf)) {
+      batchCtx = new VectorizedRowBatchCtx((StructObjectInspector) inputObjInspectors[0]);
+      batch = batchCtx.createBatch(HiveConf.getIntVar(hconf,
+          HiveConf.ConfVars.HIVE_VECTORIZATION_BATCH_SIZE));
+      outputObjInspector = batchCtx.getRowObjectInspector();
+      LOG.info("Vectorized execution enabled for " + id + " " + getName());
+    }
     initializeChildren(hconf);
     inputFileChanged = false;
 
@@ -193,6 +300,9 @@ public class TableScanOperator extends Operator<TableScanDesc> implements
 
   @Override
   public void closeOp(boolean abort) throws HiveException {
+    if (batch != null && !abort && batch.size > 0) {
+      flushBatch();
+    }
     if (conf != null) {
       if (conf.isGatherStats() && stats.size() != 0) {
         publishStats();
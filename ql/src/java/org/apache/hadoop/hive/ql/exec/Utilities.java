@@ -95,6 +95,7 @@ import org.apache.hadoop.hive.ql.Context;
 import org.apache.hadoop.hive.ql.QueryPlan;
 import org.apache.hadoop.hive.ql.exec.FileSinkOperator.RecordWriter;
 import org.apache.hadoop.hive.ql.io.ContentSummaryInputFormat;
+import org.apache.hadoop.hive.ql.io.InputPathCache;
 import org.apache.hadoop.hive.ql.io.HiveFileFormatUtils;
 import org.apache.hadoop.hive.ql.io.HiveInputFormat;
 import org.apache.hadoop.hive.ql.io.HiveOutputFormat;
@@ -121,15 +122,22 @@ import org.apache.hadoop.hive.ql.plan.PlanUtils.ExpressionTypes;
 import org.apache.hadoop.hive.ql.plan.TableDesc;
 import org.apache.hadoop.hive.ql.stats.StatsFactory;
 import org.apache.hadoop.hive.ql.stats.StatsPublisher;
+import org.apache.hadoop.hive.ql.udf.UDFLike;
 import org.apache.hadoop.hive.ql.udf.generic.GenericUDF;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFBridge;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFIn;
 import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPAnd;
 import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqual;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqualOrGreaterThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqualOrLessThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPGreaterThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPLessThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPNotEqual;
 import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPOr;
 import org.apache.hadoop.hive.serde.Constants;
 import org.apache.hadoop.hive.serde2.SerDeException;
 import org.apache.hadoop.hive.serde2.Serializer;
 import org.apache.hadoop.hive.serde2.lazy.LazySimpleSerDe;
-import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
 import org.apache.hadoop.hive.shims.ShimLoader;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.io.SequenceFile;
@@ -1668,6 +1676,9 @@ public final class Utilities {
                 if (inputFormatObj instanceof ContentSummaryInputFormat) {
                   resultCs = ((ContentSummaryInputFormat) inputFormatObj).getContentSummary(p,
                       myJobConf);
+                } else if (InputPathCache.isEnabled(myConf)) {
+                  resultCs = InputPathCache.getContentSummary(p.getFileSystem(myConf), p,
+                      myConf);
                 } else {
                   FileSystem fs = p.getFileSystem(myConf);
                   resultCs = fs.getContentSummary(p);
@@ -1857,6 +1868,16 @@ public final class Utilities {
     return path;
   }
 
+  /**
+   * Path of the hashtable file of one partition of a grace hash map join.
+   */
+  public static String generatePartitionPath(String baseURI, Byte tag, String bigBucketFileName,
+      int partition) {
+    String path = new String(baseURI + Path.SEPARATOR + "MapJoin-" + tag + "-" + bigBucketFileName
+        + "-p" + partition + suffix);
+    return path;
+  }
+
   public static String generateFileName(Byte tag, String bigBucketFileName) {
     String fileName = new String("MapJoin-" + tag + "-" + bigBucketFileName + suffix);
     return fileName;
@@ -1915,63 +1936,174 @@ public final class Utilities {
   }
 
   /**
-   * Check if a function can be pushed down to JDO.
-   * Now only {=, AND, OR} are supported.
+   * Get the metastore filter operator of a comparison.
    * @param func a generic function.
-   * @return true if this function can be pushed down to JDO filter.
+   * @return the operator, or null if the function is not a comparison that
+   *         can be pushed down to JDO filter.
    */
-  private static boolean supportedJDOFuncs(GenericUDF func) {
-    return func instanceof GenericUDFOPEqual ||
-           func instanceof GenericUDFOPAnd ||
-           func instanceof GenericUDFOPOr;
+  private static String getJDOOperator(GenericUDF func) {
+    if (func instanceof GenericUDFOPEqual) {
+      return "=";
+    } else if (func instanceof GenericUDFOPNotEqual) {
+      return "<>";
+    } else if (func instanceof GenericUDFOPLessThan) {
+      return "<";
+    } else if (func instanceof GenericUDFOPEqualOrLessThan) {
+      return "<=";
+    } else if (func instanceof GenericUDFOPGreaterThan) {
+      return ">";
+    } else if (func instanceof GenericUDFOPEqualOrGreaterThan) {
+      return ">=";
+    }
+    return null;
   }
 
+  private static final Set<String> JDO_INTEGRAL_TYPES = new HashSet<String>(Arrays.asList(
+      Constants.TINYINT_TYPE_NAME, Constants.SMALLINT_TYPE_NAME,
+      Constants.INT_TYPE_NAME, Constants.BIGINT_TYPE_NAME));
+
   /**
    * Check if the partition pruning expression can be pushed down to JDO filtering.
-   * The partition expression contains only partition columns.
-   * The criteria that an expression can be pushed down are that:
-   *  1) the expression only contains function specified in supportedJDOFuncs().
-   *     Now only {=, AND, OR} can be pushed down.
-   *  2) the partition column type and the constant type have to be String. This is
-   *     restriction by the current JDO filtering implementation.
    * @param tab The table that contains the partition columns.
    * @param expr the partition pruning expression
    * @return true if the partition pruning expression can be pushed down to JDO filtering.
+   * @see #generateJDOFilter(Table, ExprNodeDesc)
    */
   public static boolean checkJDOPushDown(Table tab, ExprNodeDesc expr) {
-    if (expr instanceof ExprNodeConstantDesc) {
-      // JDO filter now only support String typed literal -- see Filter.g and ExpressionTree.java
-      Object value = ((ExprNodeConstantDesc)expr).getValue();
-      return (value instanceof String);
-    } else if (expr instanceof ExprNodeColumnDesc) {
-      // JDO filter now only support String typed literal -- see Filter.g and ExpressionTree.java
-      TypeInfo type = expr.getTypeInfo();
-      if (type.getTypeName().equals(Constants.STRING_TYPE_NAME)) {
-        String colName = ((ExprNodeColumnDesc)expr).getColumn();
-        for (FieldSchema fs: tab.getPartCols()) {
-          if (fs.getName().equals(colName)) {
-            return fs.getType().equals(Constants.STRING_TYPE_NAME);
-          }
+    return generateJDOFilter(tab, expr) != null;
+  }
+
+  /**
+   * Generate the metastore filter (see Filter.g and ExpressionTree.java) of a
+   * partition pruning expression. The partition expression contains only
+   * partition columns. The criteria that an expression can be pushed down are that:
+   *  1) the expression only contains AND, OR, comparisons, IN and LIKE, each
+   *     comparing a partition column to constants.
+   *  2) the partition column is a string and the constants are strings, or the
+   *     partition column is integral (tinyint to bigint) and the constants are
+   *     integral. The integral columns are compared as numbers by the
+   *     metastore.
+   * @param tab The table that contains the partition columns.
+   * @param expr the partition pruning expression
+   * @return the filter, or null if the expression cannot be pushed down.
+   */
+  public static String generateJDOFilter(Table tab, ExprNodeDesc expr) {
+    if (!(expr instanceof ExprNodeGenericFuncDesc)) {
+      return null;
+    }
+    ExprNodeGenericFuncDesc funcDesc = (ExprNodeGenericFuncDesc) expr;
+    GenericUDF func = funcDesc.getGenericUDF();
+    List<ExprNodeDesc> children = funcDesc.getChildExprs();
+
+    if (func instanceof GenericUDFOPAnd || func instanceof GenericUDFOPOr) {
+      StringBuilder filter = new StringBuilder("(");
+      for (ExprNodeDesc child : children) {
+        String childFilter = generateJDOFilter(tab, child);
+        if (childFilter == null) {
+          return null;
         }
-        assert(false); // cannot find the partition column!
-     } else {
-       return false;
-     }
-    } else if (expr instanceof ExprNodeGenericFuncDesc) {
-      ExprNodeGenericFuncDesc funcDesc = (ExprNodeGenericFuncDesc) expr;
-      GenericUDF func = funcDesc.getGenericUDF();
-      if (!supportedJDOFuncs(func)) {
-        return false;
+        if (filter.length() > 1) {
+          filter.append(func instanceof GenericUDFOPAnd ? " and " : " or ");
+        }
+        filter.append(childFilter);
       }
-      List<ExprNodeDesc> children = funcDesc.getChildExprs();
-      for (ExprNodeDesc child: children) {
-        if (!checkJDOPushDown(tab, child)) {
-          return false;
+      return filter.append(")").toString();
+    }
+
+    if (func instanceof GenericUDFIn) {
+      FieldSchema col = getJDOPartitionColumn(tab, children.get(0));
+      if (col == null) {
+        return null;
+      }
+      StringBuilder filter = new StringBuilder("(").append(col.getName()).append(" in (");
+      for (int i = 1; i < children.size(); i++) {
+        String value = getJDOLiteral(col, children.get(i));
+        if (value == null) {
+          return null;
         }
+        filter.append(i > 1 ? ", " : "").append(value);
       }
-      return true;
+      return filter.append("))").toString();
     }
-    return false;
+
+    if (func instanceof GenericUDFBridge
+        && ((GenericUDFBridge) func).getUdfClass() == UDFLike.class) {
+      // the metastore matches a regular expression, which is the one of
+      // UDFLike as long as the pattern has none of the characters it does
+      // not escape
+      FieldSchema col = getJDOPartitionColumn(tab, children.get(0));
+      if (col == null || !col.getType().equals(Constants.STRING_TYPE_NAME)
+          || !(children.get(1) instanceof ExprNodeConstantDesc)) {
+        return null;
+      }
+      Object pattern = ((ExprNodeConstantDesc) children.get(1)).getValue();
+      if (!(pattern instanceof String) || StringUtils.containsAny((String) pattern, "+?|\"")) {
+        return null;
+      }
+      return "(" + col.getName() + " like \""
+          + UDFLike.likePatternToRegExp((String) pattern) + "\")";
+    }
+
+    String op = getJDOOperator(func);
+    if (op == null || children.size() != 2) {
+      return null;
+    }
+    FieldSchema col = getJDOPartitionColumn(tab, children.get(0));
+    if (col != null) {
+      String value = getJDOLiteral(col, children.get(1));
+      return value == null ? null : "(" + col.getName() + " " + op + " " + value + ")";
+    }
+    col = getJDOPartitionColumn(tab, children.get(1));
+    if (col != null) {
+      String value = getJDOLiteral(col, children.get(0));
+      return value == null ? null : "(" + value + " " + op + " " + col.getName() + ")";
+    }
+    return null;
+  }
+
+  /**
+   * @return the partition column of the expression if it is a string or
+   *         integral partition column, null otherwise.
+   */
+  private static FieldSchema getJDOPartitionColumn(Table tab, ExprNodeDesc expr) {
+    if (!(expr instanceof ExprNodeColumnDesc)) {
+      return null;
+    }
+    String colName = ((ExprNodeColumnDesc) expr).getColumn();
+    String typeName = expr.getTypeInfo().getTypeName();
+    for (FieldSchema fs : tab.getPartCols()) {
+      if (fs.getName().equals(colName)) {
+        if (fs.getType().equals(typeName) && (typeName.equals(Constants.STRING_TYPE_NAME)
+            || JDO_INTEGRAL_TYPES.contains(typeName))) {
+          return fs;
+        }
+        return null;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return the filter literal of a constant compared to the partition column,
+   *         or null if its type does not match the type of the column or it
+   *         cannot be quoted.
+   */
+  private static String getJDOLiteral(FieldSchema col, ExprNodeDesc expr) {
+    if (!(expr instanceof ExprNodeConstantDesc)) {
+      return null;
+    }
+    Object value = ((ExprNodeConstantDesc) expr).getValue();
+    if (col.getType().equals(Constants.STRING_TYPE_NAME)) {
+      if (!(value instanceof String) || StringUtils.containsAny((String) value, "\"\\")) {
+        return null;
+      }
+      return "\"" + value + "\"";
+    }
+    if (value instanceof Byte || value instanceof Short || value instanceof Integer
+        || value instanceof Long) {
+      return value.toString();
+    }
+    return null;
   }
 
   private static ThreadLocal<Map<String, Long>> perfKeyMaps = new ThreadLocal<Map<String, Long>>();
@@ -18,6 +18,8 @@
 
 package org.apache.hadoop.hive.ql.exec.persistence;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
@@ -39,9 +41,23 @@ public abstract class AbstractMapJoinKey implements Externalizable {
   @Override
   public abstract int hashCode();
 
-  public abstract void readExternal(ObjectInput in) throws IOException, ClassNotFoundException;
+  /**
+   * Read the key, serialized with the key SerDe of the map join.
+   */
+  public abstract void readFields(DataInput in) throws IOException;
 
-  public abstract void writeExternal(ObjectOutput out) throws IOException;
+  /**
+   * Write the key with the key SerDe of the map join.
+   */
+  public abstract void write(DataOutput out) throws IOException;
+
+  public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+    readFields(in);
+  }
+
+  public void writeExternal(ObjectOutput out) throws IOException {
+    write(out);
+  }
 
   public abstract boolean hasAnyNulls();
 
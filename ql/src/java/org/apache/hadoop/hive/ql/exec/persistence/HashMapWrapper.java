@@ -19,16 +19,13 @@
 package org.apache.hadoop.hive.ql.exec.persistence;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.lang.management.ManagementFactory;
 import java.lang.management.MemoryMXBean;
 import java.text.NumberFormat;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.commons.logging.Log;
@@ -36,6 +33,7 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.hive.ql.exec.Utilities;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.hive.ql.session.SessionState.LogHelper;
+import org.apache.hadoop.io.DataOutputBuffer;
 
 
 /**
@@ -58,6 +56,9 @@ public class HashMapWrapper<K, V> implements Serializable {
 
   private float maxMemoryUsage;
   private HashMap<K, V> mHash; // main memory HashMap
+  private transient MapJoinMappedHashTable mappedHash; // memory-mapped table, read only
+  private transient MapJoinBloomFilter bloomFilter; // of the keys of the loaded file
+  private transient DataOutputBuffer keyBuffer;
   protected transient LogHelper console;
 
   private File dumpFile;
@@ -90,12 +91,45 @@ public class HashMapWrapper<K, V> implements Serializable {
     this(THRESHOLD, LOADFACTOR, MEMORYUSAGE);
   }
 
-  public V get(K key) {
+  @SuppressWarnings("unchecked")
+  public V get(K key) throws HiveException {
+    if (mappedHash != null) {
+      try {
+        return (V) mappedHash.get((AbstractMapJoinKey) key);
+      } catch (IOException e) {
+        throw new HiveException(e);
+      }
+    }
     return mHash.get(key);
   }
 
+  /**
+   * @return false if the key is certainly not in the table, as told by the
+   *         bloom filter of the hashtable file the table was loaded from. A
+   *         table built in memory has no filter, so any key might be in it.
+   */
+  public boolean mightContain(AbstractMapJoinKey key) throws HiveException {
+    try {
+      if (mappedHash != null) {
+        return mappedHash.mightContain(key);
+      }
+      if (bloomFilter == null) {
+        return true;
+      }
+      if (keyBuffer == null) {
+        keyBuffer = new DataOutputBuffer();
+      }
+      keyBuffer.reset();
+      key.write(keyBuffer);
+      return bloomFilter.mightContain(keyBuffer.getData(), 0, keyBuffer.getLength());
+    } catch (IOException e) {
+      throw new HiveException(e);
+    }
+  }
+
   public boolean put(K key, V value) throws HiveException {
     // isAbort();
+    bloomFilter = null;
     mHash.put(key, value);
     return false;
   }
@@ -106,30 +140,49 @@ public class HashMapWrapper<K, V> implements Serializable {
   }
 
   /**
-   * Flush the main memory hash table into the persistent cache file
+   * Flush the main memory hash table into the persistent cache file, using the
+   * layout of {@link MapJoinHashTableFile}.
    *
    * @return persistent cache file
    */
+  @SuppressWarnings("unchecked")
   public long flushMemoryCacheToPersistent(File file) throws IOException {
-    ObjectOutputStream outputStream = null;
-    outputStream = new ObjectOutputStream(new FileOutputStream(file));
-    outputStream.writeObject(mHash);
-    outputStream.flush();
-    outputStream.close();
+    return MapJoinHashTableFile.write(
+        (Map<AbstractMapJoinKey, MapJoinObjectValue>) mHash, file);
+  }
 
-    return file.length();
+  @SuppressWarnings("unchecked")
+  public void initilizePersistentHash(String fileName) throws IOException {
+    MapJoinHashTableFile.Contents contents = MapJoinHashTableFile.read(new File(fileName));
+    if (mappedHash != null) {
+      mappedHash.close();
+      mappedHash = null;
+    }
+    this.setMHash((HashMap<K, V>) contents.table);
+    bloomFilter = contents.bloomFilter;
   }
 
-  public void initilizePersistentHash(String fileName) throws IOException, ClassNotFoundException {
-    ObjectInputStream inputStream = null;
-    inputStream = new ObjectInputStream(new FileInputStream(fileName));
-    HashMap<K, V> hashtable = (HashMap<K, V>) inputStream.readObject();
-    this.setMHash(hashtable);
+  /**
+   * Probe the persistent cache file in place through a memory mapping instead
+   * of loading it on the heap. The table is read only afterwards.
+   */
+  public void initilizeMappedHash(String fileName) throws IOException {
+    mHash.clear();
+    bloomFilter = null;
+    if (mappedHash != null) {
+      mappedHash.close();
+    }
+    mappedHash = new MapJoinMappedHashTable(new File(fileName));
+  }
 
-    inputStream.close();
+  public boolean isMapped() {
+    return mappedHash != null;
   }
 
   public int size() {
+    if (mappedHash != null) {
+      return mappedHash.size();
+    }
     return mHash.size();
   }
 
@@ -145,10 +198,16 @@ public class HashMapWrapper<K, V> implements Serializable {
    */
   public void close() throws HiveException {
     mHash.clear();
+    bloomFilter = null;
+    if (mappedHash != null) {
+      mappedHash.close();
+      mappedHash = null;
+    }
   }
 
   public void clear() throws HiveException {
     mHash.clear();
+    bloomFilter = null;
   }
 
   public int getKeySize() {
@@ -179,6 +238,7 @@ public class HashMapWrapper<K, V> implements Serializable {
 
   public void setMHash(HashMap<K, V> hash) {
     mHash = hash;
+    bloomFilter = null;
   }
 
   public LogHelper getConsole() {
@@ -0,0 +1,121 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.persistence;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Bloom filter of the serialized keys of a map join hash table. It is
+ * written in the hashtable file, so the big table side can drop the rows
+ * whose keys are not in the small table before looking them up.
+ *
+ * The filter has a power of two number of bits, about 16 per key, and
+ * NUM_HASHES bit positions per key derived from one 64 bit hash of the key
+ * bytes. That gives a false positive rate around 0.1%.
+ */
+public final class MapJoinBloomFilter {
+
+  private static final int NUM_HASHES = 5;
+  private static final int BITS_PER_KEY = 16;
+
+  private final long[] words;
+
+  /**
+   * Create an empty filter for the given number of keys.
+   */
+  public MapJoinBloomFilter(int numKeys) {
+    long numBits = 64;
+    while (numBits < (long) numKeys * BITS_PER_KEY && numBits < (1L << 30)) {
+      numBits <<= 1;
+    }
+    words = new long[(int) (numBits >>> 6)];
+  }
+
+  public MapJoinBloomFilter(long[] words) {
+    this.words = words;
+  }
+
+  public void add(byte[] key, int offset, int length) {
+    long hash = hash64(key, offset, length);
+    int h1 = (int) hash;
+    int h2 = (int) (hash >>> 32);
+    long mask = ((long) words.length << 6) - 1;
+    for (int i = 1; i <= NUM_HASHES; i++) {
+      long bit = (h1 + (long) i * h2) & mask;
+      words[(int) (bit >>> 6)] |= 1L << bit;
+    }
+  }
+
+  public boolean mightContain(byte[] key, int offset, int length) {
+    long hash = hash64(key, offset, length);
+    int h1 = (int) hash;
+    int h2 = (int) (hash >>> 32);
+    long mask = ((long) words.length << 6) - 1;
+    for (int i = 1; i <= NUM_HASHES; i++) {
+      long bit = (h1 + (long) i * h2) & mask;
+      if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Probe a filter stored in a buffer, as in a mapped hashtable file.
+   *
+   * @param pos
+   *          position of the first word of the filter in the buffer
+   * @param numWords
+   *          number of words of the filter
+   */
+  public static boolean mightContain(ByteBuffer buffer, int pos, int numWords,
+      byte[] key, int offset, int length) {
+    long hash = hash64(key, offset, length);
+    int h1 = (int) hash;
+    int h2 = (int) (hash >>> 32);
+    long mask = ((long) numWords << 6) - 1;
+    for (int i = 1; i <= NUM_HASHES; i++) {
+      long bit = (h1 + (long) i * h2) & mask;
+      if ((buffer.getLong(pos + (int) (bit >>> 6) * 8) & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public long[] getWords() {
+    return words;
+  }
+
+  /**
+   * 64 bit FNV-1a hash of the bytes, with a final mix of the high bits into
+   * the low ones.
+   */
+  static long hash64(byte[] bytes, int offset, int length) {
+    long h = 0xcbf29ce484222325L;
+    for (int i = offset; i < offset + length; i++) {
+      h ^= bytes[i] & 0xff;
+      h *= 0x100000001b3L;
+    }
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    return h;
+  }
+}
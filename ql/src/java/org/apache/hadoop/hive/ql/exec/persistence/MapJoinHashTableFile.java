@@ -0,0 +1,239 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.persistence;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.hive.ql.exec.MapJoinMetaData;
+import org.apache.hadoop.hive.ql.exec.HashTableSinkOperator.HashTableSinkObjectCtx;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+
+/**
+ * On-disk layout of a map join hash table, as dumped by the local task and
+ * loaded back by the map join operator.
+ *
+ * <pre>
+ * header:  magic (int), number of entries (int), number of index slots (int),
+ *          number of words of the bloom filter (int)
+ * bloom:   the words of the bloom filter of the key bytes (long)
+ * index:   for each slot, hash of the key bytes (int), offset of the entry in
+ *          the data section + 1 (int), 0 meaning an empty slot
+ * data:    for each entry, length of the key (int), key bytes, length of the
+ *          value (int), value bytes
+ * </pre>
+ *
+ * The keys and the rows are written with the key and value SerDes of the map
+ * join, the same way they were written with Java serialization. The index is
+ * an open addressing (linear probing) table, so an entry can be found from the
+ * serialized bytes of a key without loading the whole file.
+ */
+public final class MapJoinHashTableFile {
+
+  public static final int MAGIC = 0x484A5432;
+
+  public static final int HEADER_SIZE = 16;
+  public static final int SLOT_SIZE = 8;
+
+  private static final float LOAD_FACTOR = 0.5f;
+
+  private MapJoinHashTableFile() {
+  }
+
+  /**
+   * Write the hash table to a local file.
+   *
+   * @return the length of the file
+   */
+  public static long write(Map<AbstractMapJoinKey, MapJoinObjectValue> table,
+      File file) throws IOException {
+    int numSlots = 1;
+    while (numSlots * LOAD_FACTOR < table.size()) {
+      numSlots <<= 1;
+    }
+    int[] index = new int[numSlots * 2];
+    int mask = numSlots - 1;
+    MapJoinBloomFilter bloomFilter = new MapJoinBloomFilter(table.size());
+
+    DataOutputBuffer data = new DataOutputBuffer();
+    DataOutputBuffer buffer = new DataOutputBuffer();
+    for (Map.Entry<AbstractMapJoinKey, MapJoinObjectValue> entry : table.entrySet()) {
+      int offset = data.getLength();
+
+      buffer.reset();
+      entry.getKey().write(buffer);
+      int hash = hash(buffer.getData(), 0, buffer.getLength());
+      bloomFilter.add(buffer.getData(), 0, buffer.getLength());
+      data.writeInt(buffer.getLength());
+      data.write(buffer.getData(), 0, buffer.getLength());
+
+      buffer.reset();
+      entry.getValue().write(buffer);
+      data.writeInt(buffer.getLength());
+      data.write(buffer.getData(), 0, buffer.getLength());
+
+      int slot = hash & mask;
+      while (index[slot * 2 + 1] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      index[slot * 2] = hash;
+      index[slot * 2 + 1] = offset + 1;
+    }
+
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(file), 65536));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(table.size());
+      out.writeInt(numSlots);
+      long[] bloomWords = bloomFilter.getWords();
+      out.writeInt(bloomWords.length);
+      for (int i = 0; i < bloomWords.length; i++) {
+        out.writeLong(bloomWords[i]);
+      }
+      for (int i = 0; i < index.length; i++) {
+        out.writeInt(index[i]);
+      }
+      out.write(data.getData(), 0, data.getLength());
+    } finally {
+      out.close();
+    }
+    return file.length();
+  }
+
+  /**
+   * A hash table loaded from a file, with the bloom filter of its keys.
+   */
+  public static class Contents {
+    public final HashMap<AbstractMapJoinKey, MapJoinObjectValue> table;
+    public final MapJoinBloomFilter bloomFilter;
+
+    Contents(HashMap<AbstractMapJoinKey, MapJoinObjectValue> table,
+        MapJoinBloomFilter bloomFilter) {
+      this.table = table;
+      this.bloomFilter = bloomFilter;
+    }
+  }
+
+  /**
+   * Load a hash table written by {@link #write(Map, File)}, with its bloom
+   * filter. The file is read with a single bulk read, and the entries are
+   * deserialized from memory. The SerDes of the map join must have been
+   * registered in MapJoinMetaData.
+   */
+  public static Contents read(File file) throws IOException {
+    byte[] bytes = new byte[(int) file.length()];
+    DataInputStream in = new DataInputStream(new FileInputStream(file));
+    try {
+      in.readFully(bytes);
+    } finally {
+      in.close();
+    }
+
+    if (bytes.length < HEADER_SIZE || readInt(bytes, 0) != MAGIC) {
+      throw new IOException("Not a map join hash table file: " + file);
+    }
+    int numEntries = readInt(bytes, 4);
+    int numSlots = readInt(bytes, 8);
+    int numBloomWords = readInt(bytes, 12);
+    int numKeys = getNumKeyColumns();
+
+    long[] bloomWords = new long[numBloomWords];
+    for (int i = 0; i < numBloomWords; i++) {
+      bloomWords[i] = ((long) readInt(bytes, HEADER_SIZE + i * 8) << 32)
+          | (readInt(bytes, HEADER_SIZE + i * 8 + 4) & 0xffffffffL);
+    }
+
+    HashMap<AbstractMapJoinKey, MapJoinObjectValue> table =
+      new HashMap<AbstractMapJoinKey, MapJoinObjectValue>((int) (numEntries / 0.75f) + 1);
+    DataInputBuffer buffer = new DataInputBuffer();
+    int pos = getIndexStart(numBloomWords) + numSlots * SLOT_SIZE;
+    for (int i = 0; i < numEntries; i++) {
+      int keyLength = readInt(bytes, pos);
+      buffer.reset(bytes, pos + 4, keyLength);
+      AbstractMapJoinKey key = newKey(numKeys);
+      key.readFields(buffer);
+      pos += 4 + keyLength;
+
+      int valueLength = readInt(bytes, pos);
+      buffer.reset(bytes, pos + 4, valueLength);
+      MapJoinObjectValue value = new MapJoinObjectValue();
+      value.readFields(buffer);
+      pos += 4 + valueLength;
+
+      table.put(key, value);
+    }
+    return new Contents(table, new MapJoinBloomFilter(bloomWords));
+  }
+
+  /**
+   * @return the position of the index, after the bloom filter
+   */
+  public static int getIndexStart(int numBloomWords) {
+    return HEADER_SIZE + numBloomWords * 8;
+  }
+
+  /**
+   * @return the number of columns of the join key, from the key SerDe
+   *         registered in MapJoinMetaData
+   */
+  static int getNumKeyColumns() {
+    HashTableSinkObjectCtx ctx = MapJoinMetaData.get(Integer
+        .valueOf(AbstractMapJoinKey.metadataTag));
+    return ((StructObjectInspector) ctx.getStandardOI()).getAllStructFieldRefs().size();
+  }
+
+  /**
+   * @return an empty key of the class used for the given number of key
+   *         columns, as in JoinUtil.computeMapJoinKeys()
+   */
+  static AbstractMapJoinKey newKey(int numKeys) {
+    switch (numKeys) {
+    case 1:
+      return new MapJoinSingleKey();
+    case 2:
+      return new MapJoinDoubleKeys();
+    default:
+      return new MapJoinObjectKey();
+    }
+  }
+
+  public static int hash(byte[] bytes, int offset, int length) {
+    int h = 1;
+    for (int i = offset; i < offset + length; i++) {
+      h = 31 * h + bytes[i];
+    }
+    h ^= (h >>> 20) ^ (h >>> 12);
+    return h ^ (h >>> 7) ^ (h >>> 4);
+  }
+
+  public static int readInt(byte[] bytes, int pos) {
+    return ((bytes[pos] & 0xff) << 24) | ((bytes[pos + 1] & 0xff) << 16)
+        | ((bytes[pos + 2] & 0xff) << 8) | (bytes[pos + 3] & 0xff);
+  }
+}
@@ -0,0 +1,198 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+
+/**
+ * Read-only map join hash table probed directly in a memory-mapped file
+ * written by {@link MapJoinHashTableFile}. Nothing but the mapping is kept
+ * for the table: a probe serializes the key with the key SerDe, looks up the
+ * key bytes in the index of the file, and deserializes the matching rows
+ * only.
+ */
+public class MapJoinMappedHashTable {
+
+  private final File file;
+  private MappedByteBuffer buffer;
+  private final int numEntries;
+  private final int mask;
+  private final int numBloomWords;
+  private final int indexStart;
+  private final int dataStart;
+
+  private final DataOutputBuffer keyBuffer = new DataOutputBuffer();
+  private final DataInputBuffer valueBuffer = new DataInputBuffer();
+  private byte[] valueBytes = new byte[1024];
+
+  // the last probed key, consecutive rows of the big table often share keys
+  private byte[] lastKey = new byte[0];
+  private int lastKeyLength = -1;
+  private MapJoinObjectValue lastValue;
+
+  public MapJoinMappedHashTable(File file) throws IOException {
+    this.file = file;
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      long length = raf.length();
+      if (length > Integer.MAX_VALUE) {
+        throw new IOException("Map join hash table file is too large to be mapped: " + file);
+      }
+      buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+    } finally {
+      // the mapping stays valid after the channel is closed
+      raf.close();
+    }
+
+    if (buffer.limit() < MapJoinHashTableFile.HEADER_SIZE
+        || buffer.getInt(0) != MapJoinHashTableFile.MAGIC) {
+      throw new IOException("Not a map join hash table file: " + file);
+    }
+    numEntries = buffer.getInt(4);
+    int numSlots = buffer.getInt(8);
+    numBloomWords = buffer.getInt(12);
+    mask = numSlots - 1;
+    indexStart = MapJoinHashTableFile.getIndexStart(numBloomWords);
+    dataStart = indexStart + numSlots * MapJoinHashTableFile.SLOT_SIZE;
+  }
+
+  /**
+   * @return the rows of the key, or null if the key is not in the table
+   */
+  public MapJoinObjectValue get(AbstractMapJoinKey key) throws IOException {
+    if (buffer == null) {
+      throw new IOException("Map join hash table is closed: " + file);
+    }
+    keyBuffer.reset();
+    key.write(keyBuffer);
+    byte[] keyBytes = keyBuffer.getData();
+    int keyLength = keyBuffer.getLength();
+
+    if (keyLength == lastKeyLength && equals(lastKey, keyBytes, keyLength)) {
+      return lastValue;
+    }
+
+    MapJoinObjectValue value = null;
+    // most of the keys not in the table are rejected by the bloom filter,
+    // without touching the pages of the index
+    if (!MapJoinBloomFilter.mightContain(buffer, MapJoinHashTableFile.HEADER_SIZE,
+        numBloomWords, keyBytes, 0, keyLength)) {
+      return null;
+    }
+    int hash = MapJoinHashTableFile.hash(keyBytes, 0, keyLength);
+    int slot = hash & mask;
+    while (true) {
+      int pos = indexStart + slot * MapJoinHashTableFile.SLOT_SIZE;
+      int offset = buffer.getInt(pos + 4) - 1;
+      if (offset < 0) {
+        break;
+      }
+      int entry = dataStart + offset;
+      if (buffer.getInt(pos) == hash && buffer.getInt(entry) == keyLength
+          && equals(buffer, entry + 4, keyBytes, keyLength)) {
+        value = readValue(entry + 4 + keyLength);
+        break;
+      }
+      slot = (slot + 1) & mask;
+    }
+
+    if (lastKey.length < keyLength) {
+      lastKey = new byte[keyLength];
+    }
+    System.arraycopy(keyBytes, 0, lastKey, 0, keyLength);
+    lastKeyLength = keyLength;
+    lastValue = value;
+    return value;
+  }
+
+  /**
+   * @return false if the key is certainly not in the table, from the bloom
+   *         filter alone
+   */
+  public boolean mightContain(AbstractMapJoinKey key) throws IOException {
+    if (buffer == null) {
+      throw new IOException("Map join hash table is closed: " + file);
+    }
+    keyBuffer.reset();
+    key.write(keyBuffer);
+    return MapJoinBloomFilter.mightContain(buffer, MapJoinHashTableFile.HEADER_SIZE,
+        numBloomWords, keyBuffer.getData(), 0, keyBuffer.getLength());
+  }
+
+  private MapJoinObjectValue readValue(int pos) throws IOException {
+    int length = buffer.getInt(pos);
+    if (valueBytes.length < length) {
+      valueBytes = new byte[Math.max(length, valueBytes.length * 2)];
+    }
+    ByteBuffer source = buffer.duplicate();
+    source.position(pos + 4);
+    source.get(valueBytes, 0, length);
+    valueBuffer.reset(valueBytes, length);
+    MapJoinObjectValue value = new MapJoinObjectValue();
+    value.readFields(valueBuffer);
+    return value;
+  }
+
+  private static boolean equals(byte[] a, byte[] b, int length) {
+    for (int i = 0; i < length; i++) {
+      if (a[i] != b[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean equals(ByteBuffer a, int pos, byte[] b, int length) {
+    for (int i = 0; i < length; i++) {
+      if (a.get(pos + i) != b[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public int size() {
+    return numEntries;
+  }
+
+  /**
+   * @return the number of bytes mapped for the table
+   */
+  public long getMappedSize() {
+    return buffer == null ? 0 : buffer.limit();
+  }
+
+  /**
+   * Release the mapping. The pages are unmapped once the buffer is
+   * garbage collected.
+   */
+  public void close() {
+    buffer = null;
+    lastValue = null;
+    lastKeyLength = -1;
+  }
+}
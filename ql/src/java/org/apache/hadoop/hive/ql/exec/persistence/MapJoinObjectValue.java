@@ -18,6 +18,8 @@
 
 package org.apache.hadoop.hive.ql.exec.persistence;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
@@ -79,6 +81,18 @@ public class MapJoinObjectValue implements Externalizable {
 
   @Override
   public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+    readFields(in);
+  }
+
+  @Override
+  public void writeExternal(ObjectOutput out) throws IOException {
+    write(out);
+  }
+
+  /**
+   * Read the rows, serialized with the value SerDe of the map join.
+   */
+  public void readFields(DataInput in) throws IOException {
     try {
 
       metadataTag = in.readInt();
@@ -117,8 +131,10 @@ public class MapJoinObjectValue implements Externalizable {
     }
   }
 
-  @Override
-  public void writeExternal(ObjectOutput out) throws IOException {
+  /**
+   * Write the rows with the value SerDe of the map join.
+   */
+  public void write(DataOutput out) throws IOException {
     try {
 
       out.writeInt(metadataTag);
@@ -0,0 +1,139 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.persistence;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+
+/**
+ * Local file of the (key, rows) pairs of one partition of a grace hash map
+ * join. The pairs are written with the key and value SerDes registered in
+ * MapJoinMetaData, and read back in the order they were added.
+ */
+public class MapJoinPartitionSpill {
+
+  private final File file;
+  private DataOutputStream out;
+  private DataInputStream in;
+  private int numRecords;
+  private int numRead;
+
+  private AbstractMapJoinKey key;
+  private MapJoinObjectValue value;
+
+  public MapJoinPartitionSpill(String prefix) throws IOException {
+    file = File.createTempFile(prefix, ".spill");
+    out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 65536));
+  }
+
+  public void add(AbstractMapJoinKey k, MapJoinObjectValue v) throws IOException {
+    k.write(out);
+    v.write(out);
+    numRecords++;
+  }
+
+  public int size() {
+    return numRecords;
+  }
+
+  /**
+   * Stop adding pairs and read them from the first one.
+   */
+  public void startReading() throws IOException {
+    if (out != null) {
+      out.close();
+      out = null;
+    }
+    if (in != null) {
+      in.close();
+    }
+    in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536));
+    numRead = 0;
+  }
+
+  /**
+   * Read the next pair, available from getKey() and getValue().
+   *
+   * @return false if all the pairs have been read
+   */
+  public boolean next() throws IOException {
+    if (numRead == numRecords) {
+      return false;
+    }
+    key = MapJoinHashTableFile.newKey(MapJoinHashTableFile.getNumKeyColumns());
+    key.readFields(in);
+    value = new MapJoinObjectValue();
+    value.readFields(in);
+    numRead++;
+    return true;
+  }
+
+  public AbstractMapJoinKey getKey() {
+    return key;
+  }
+
+  public MapJoinObjectValue getValue() {
+    return value;
+  }
+
+  /**
+   * Read all the pairs into a hash table, the rows of equal keys being
+   * appended to each other.
+   */
+  public void readInto(HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue> table)
+      throws IOException, HiveException {
+    startReading();
+    while (next()) {
+      MapJoinObjectValue o = table.get(key);
+      if (o == null) {
+        table.put(key, value);
+      } else {
+        MapJoinRowContainer<Object[]> rows = value.getObj();
+        for (Object[] row = rows.first(); row != null; row = rows.next()) {
+          o.getObj().add(row);
+        }
+      }
+    }
+  }
+
+  public void close() {
+    try {
+      if (out != null) {
+        out.close();
+      }
+      if (in != null) {
+        in.close();
+      }
+    } catch (IOException e) {
+      // the file is deleted anyway
+    } finally {
+      out = null;
+      in = null;
+      file.delete();
+    }
+  }
+}
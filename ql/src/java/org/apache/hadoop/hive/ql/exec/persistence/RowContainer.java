@@ -18,10 +18,23 @@
 
 package org.apache.hadoop.hive.ql.exec.persistence;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -40,8 +53,11 @@ import org.apache.hadoop.hive.serde2.SerDe;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils.ObjectInspectorCopyOption;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.compress.CompressionCodec;
 import org.apache.hadoop.mapred.InputFormat;
 import org.apache.hadoop.mapred.InputSplit;
 import org.apache.hadoop.mapred.JobConf;
@@ -70,6 +86,11 @@ import org.apache.hadoop.util.ReflectionUtils;
  * after read. It can be read multiple times, but it does not support multiple reader interleaving
  * reading.
  *
+ * Unless the rows are to be copied to a table (skew join), the spilled blocks are written to a
+ * plain local file as [number of rows (int)][number of bytes (int)][the rows serialized with the
+ * serde], optionally compressed. While a block is iterated, the bytes of the next one are read by
+ * a background thread.
+ *
  */
 public class RowContainer<Row extends List<Object>> extends AbstractRowContainer<Row> {
 
@@ -77,6 +98,10 @@ public class RowContainer<Row extends List<Object>> extends AbstractRowContainer
 
   // max # of rows can be put into one block
   private static final int BLOCKSIZE = 25000;
+  // min # of rows of a block when its size is adapted to the size of the rows
+  private static final int MIN_BLOCKSIZE = 100;
+
+  private static ExecutorService prefetchExecutor;
 
   private Row[] currentWriteBlock; // the last block that add() should append to
   private Row[] currentReadBlock; // the current block where the cursor is in
@@ -116,6 +141,28 @@ public class RowContainer<Row extends List<Object>> extends AbstractRowContainer
   JobConf jobCloneUsingLocalFs = null;
   private LocalFileSystem localFs;
 
+  // compact spill file
+  private boolean compactSpill;
+  private CompressionCodec spillCodec;
+  private long spillBlockBytes; // target # of serialized bytes of a block
+  private boolean prefetch;
+  private DataOutputStream spillOut;
+  private DataInputStream spillIn;
+  private DataOutputBuffer spillBuffer;
+  private final DataInputBuffer spillRowBuffer = new DataInputBuffer();
+  private int numReadBlocks;
+  private SpillBlock spillBlock;
+  private Future<SpillBlock> prefetchedBlock;
+
+  /**
+   * The serialized rows of a block read from the compact spill file.
+   */
+  private static class SpillBlock {
+    int numRows;
+    int length;
+    byte[] bytes = new byte[0];
+  }
+
   public RowContainer(Configuration jc) throws HiveException {
     this(BLOCKSIZE, jc);
   }
@@ -134,6 +181,28 @@ public class RowContainer<Row extends List<Object>> extends AbstractRowContainer
     this.serde = null;
     this.standardOI = null;
     this.jc = jc;
+    if (jc != null) {
+      compactSpill = HiveConf.getBoolVar(jc, HiveConf.ConfVars.HIVEJOINSPILLCOMPACT);
+      spillBlockBytes = HiveConf.getLongVar(jc, HiveConf.ConfVars.HIVEJOINSPILLBLOCKBYTES);
+      prefetch = HiveConf.getBoolVar(jc, HiveConf.ConfVars.HIVEJOINSPILLPREFETCH);
+      if (HiveConf.getBoolVar(jc, HiveConf.ConfVars.HIVEJOINSPILLCOMPRESS)) {
+        String codec = HiveConf.getVar(jc, HiveConf.ConfVars.HIVEJOINSPILLCOMPRESSCODEC);
+        try {
+          spillCodec = (CompressionCodec) ReflectionUtils.newInstance(Class.forName(codec), jc);
+        } catch (ClassNotFoundException e) {
+          throw new HiveException("Cannot find the spill compression codec " + codec, e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Whether the spilled blocks may be written in the compact format rather
+   * than with the output format of the table descriptor. It must be false if
+   * the rows are to be copied to a table with copyToDFSDirecory().
+   */
+  public void setCompactSpill(boolean compactSpill) {
+    this.compactSpill = compactSpill;
   }
   
   private JobConf getLocalFSJobConfClone(Configuration jc) {
@@ -196,6 +265,10 @@ public class RowContainer<Row extends List<Object>> extends AbstractRowContainer
       if (this.numFlushedBlocks == 0) {
         this.readBlockSize = this.addCursor;
         this.currentReadBlock = this.currentWriteBlock;
+      } else if (spillBuffer != null) {
+        spillIn = new DataInputStream(openSpillInput());
+        numReadBlocks = 0;
+        nextBlock();
       } else {
         JobConf localJc = getLocalFSJobConfClone(jc);
         if (inputSplits == null) {
@@ -278,30 +351,14 @@ public class RowContainer<Row extends List<Object>> extends AbstractRowContainer
   ArrayList<Object> row = new ArrayList<Object>(2);
 
   private void spillBlock(Row[] block, int length) throws HiveException {
+    if (spillBuffer != null || (tmpFile == null && compactSpill && keyObject == null)) {
+      spillCompactBlock(block, length);
+      return;
+    }
     try {
       if (tmpFile == null) {
 
-        String suffix = ".tmp";
-        if (this.keyObject != null) {
-          suffix = "." + this.keyObject.toString() + suffix;
-        }
-
-        while (true) {
-          parentFile = File.createTempFile("hive-rowcontainer", "");
-          boolean success = parentFile.delete() && parentFile.mkdir();
-          if (success) {
-            break;
-          }
-          LOG.debug("retry creating tmp row-container directory...");
-        }
-
-        tmpFile = File.createTempFile("RowContainer", suffix, parentFile);
-        LOG.info("RowContainer created temp file " + tmpFile.getAbsolutePath());
-        // Delete the temp file if the JVM terminate normally through Hadoop job
-        // kill command.
-        // Caveat: it won't be deleted if JVM is killed by 'kill -9'.
-        parentFile.deleteOnExit();
-        tmpFile.deleteOnExit();
+        createTmpFile();
 
         // rFile = new RandomAccessFile(tmpFile, "rw");
         HiveOutputFormat<?, ?> hiveOutputFormat = tblDesc.getOutputFileFormatClass().newInstance();
@@ -345,6 +402,151 @@ public class RowContainer<Row extends List<Object>> extends AbstractRowContainer
     }
   }
 
+  private void createTmpFile() throws IOException {
+    String suffix = ".tmp";
+    if (this.keyObject != null) {
+      suffix = "." + this.keyObject.toString() + suffix;
+    }
+
+    while (true) {
+      parentFile = File.createTempFile("hive-rowcontainer", "");
+      boolean success = parentFile.delete() && parentFile.mkdir();
+      if (success) {
+        break;
+      }
+      LOG.debug("retry creating tmp row-container directory...");
+    }
+
+    tmpFile = File.createTempFile("RowContainer", suffix, parentFile);
+    LOG.info("RowContainer created temp file " + tmpFile.getAbsolutePath());
+    // Delete the temp file if the JVM terminate normally through Hadoop job
+    // kill command.
+    // Caveat: it won't be deleted if JVM is killed by 'kill -9'.
+    parentFile.deleteOnExit();
+    tmpFile.deleteOnExit();
+  }
+
+  private void spillCompactBlock(Row[] block, int length) throws HiveException {
+    try {
+      if (tmpFile == null) {
+        createTmpFile();
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(tmpFile), 65536);
+        if (spillCodec != null) {
+          out = spillCodec.createOutputStream(out);
+        }
+        spillOut = new DataOutputStream(out);
+        spillBuffer = new DataOutputBuffer();
+      } else if (spillOut == null) {
+        throw new HiveException("RowContainer has already been closed for writing.");
+      }
+
+      spillBuffer.reset();
+      for (int i = 0; i < length; ++i) {
+        Writable outVal = serde.serialize(block[i], standardOI);
+        outVal.write(spillBuffer);
+      }
+      spillOut.writeInt(length);
+      spillOut.writeInt(spillBuffer.getLength());
+      spillOut.write(spillBuffer.getData(), 0, spillBuffer.getLength());
+
+      // size the next blocks from the size of the rows of the first one
+      if (numFlushedBlocks == 0 && spillBlockBytes > 0 && length > 0) {
+        long rowBytes = spillBuffer.getLength() / length + 1;
+        int adapted = (int) Math.max(MIN_BLOCKSIZE, Math.min(blockSize, spillBlockBytes / rowBytes));
+        if (adapted < blockSize) {
+          LOG.info("RowContainer block size lowered from " + blockSize + " to " + adapted
+              + " rows of " + rowBytes + " bytes");
+          blockSize = adapted;
+        }
+      }
+
+      if (block == this.currentWriteBlock) {
+        this.addCursor = 0;
+      }
+
+      this.numFlushedBlocks++;
+    } catch (Exception e) {
+      clear();
+      LOG.error(e.toString(), e);
+      throw new HiveException(e);
+    }
+  }
+
+  private InputStream openSpillInput() throws IOException {
+    InputStream in = new BufferedInputStream(new FileInputStream(tmpFile), 65536);
+    if (spillCodec != null) {
+      in = spillCodec.createInputStream(in);
+    }
+    return in;
+  }
+
+  private static SpillBlock readSpillBlock(DataInputStream in, SpillBlock block)
+      throws IOException {
+    block.numRows = in.readInt();
+    block.length = in.readInt();
+    if (block.bytes.length < block.length) {
+      block.bytes = new byte[block.length];
+    }
+    in.readFully(block.bytes, 0, block.length);
+    return block;
+  }
+
+  private static synchronized ExecutorService getPrefetchExecutor() {
+    if (prefetchExecutor == null) {
+      prefetchExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+          Thread t = new Thread(r, "RowContainer-prefetch");
+          t.setDaemon(true);
+          return t;
+        }
+      });
+    }
+    return prefetchExecutor;
+  }
+
+  /**
+   * Read the next block of the compact spill file, and start reading the one
+   * after it in the background.
+   */
+  private void nextCompactBlock() throws Exception {
+    if (numReadBlocks >= numFlushedBlocks) {
+      return;
+    }
+    SpillBlock block;
+    if (prefetchedBlock != null) {
+      block = prefetchedBlock.get();
+      prefetchedBlock = null;
+    } else {
+      if (spillBlock == null) {
+        spillBlock = new SpillBlock();
+      }
+      block = readSpillBlock(spillIn, spillBlock);
+    }
+    numReadBlocks++;
+
+    if (val == null) {
+      val = serde.getSerializedClass().newInstance();
+    }
+    spillRowBuffer.reset(block.bytes, block.length);
+    for (int i = 0; i < block.numRows; i++) {
+      val.readFields(spillRowBuffer);
+      this.currentReadBlock[i] = (Row) ObjectInspectorUtils.copyToStandardObject(serde
+          .deserialize(val), serde.getObjectInspector(), ObjectInspectorCopyOption.WRITABLE);
+    }
+    this.readBlockSize = block.numRows;
+
+    // the rows are copied, so the buffer can be filled with the next block
+    if (prefetch && numReadBlocks < numFlushedBlocks) {
+      final DataInputStream in = spillIn;
+      final SpillBlock next = block;
+      prefetchedBlock = getPrefetchExecutor().submit(new Callable<SpillBlock>() {
+        public SpillBlock call() throws IOException {
+          return readSpillBlock(in, next);
+        }
+      });
+    }
+  }
+
   /**
    * Get the number of elements in the RowContainer.
    *
@@ -363,6 +565,10 @@ public class RowContainer<Row extends List<Object>> extends AbstractRowContainer
     }
 
     try {
+      if (spillBuffer != null) {
+        nextCompactBlock();
+        return this.readBlockSize > 0;
+      }
       if (val == null) {
         val = serde.getSerializedClass().newInstance();
       }
@@ -401,6 +607,9 @@ public class RowContainer<Row extends List<Object>> extends AbstractRowContainer
   }
 
   public void copyToDFSDirecory(FileSystem destFs, Path destPath) throws IOException, HiveException {
+    if (spillBuffer != null) {
+      throw new HiveException("The rows of the RowContainer have been spilled in the compact format");
+    }
     if (addCursor > 0) {
       this.spillBlock(this.currentWriteBlock, addCursor);
     }
@@ -439,12 +648,17 @@ public class RowContainer<Row extends List<Object>> extends AbstractRowContainer
       if (rr != null) {
         rr.close();
       }
+      closeWriter();
+      closeReader();
     } catch (Exception e) {
       LOG.error(e.toString());
       throw new HiveException(e);
     } finally {
       rw = null;
       rr = null;
+      spillOut = null;
+      spillIn = null;
+      spillBuffer = null;
       tmpFile = null;
       deleteLocalFile(parentFile, true);
       parentFile = null;
@@ -478,6 +692,10 @@ public class RowContainer<Row extends List<Object>> extends AbstractRowContainer
       this.rw.close(false);
       this.rw = null;
     }
+    if (this.spillOut != null) {
+      this.spillOut.close();
+      this.spillOut = null;
+    }
   }
 
   private void closeReader() throws IOException {
@@ -485,6 +703,19 @@ public class RowContainer<Row extends List<Object>> extends AbstractRowContainer
       this.rr.close();
       this.rr = null;
     }
+    if (this.prefetchedBlock != null) {
+      // let the background read finish before the stream is closed
+      try {
+        this.prefetchedBlock.get();
+      } catch (Exception e) {
+        LOG.debug("Ignore the failed read of a prefetched block", e);
+      }
+      this.prefetchedBlock = null;
+    }
+    if (this.spillIn != null) {
+      this.spillIn.close();
+      this.spillIn = null;
+    }
   }
 
   public void setKeyObject(List<Object> dummyKey) {
@@ -0,0 +1,72 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector;
+
+/**
+ * BytesColumnVector stores string columns. The bytes of all the values are
+ * copied into a single buffer owned by the column, and each value is
+ * described by a start offset and a length into that buffer.
+ */
+public class BytesColumnVector extends ColumnVector {
+
+  private static final int DEFAULT_BUFFER_SIZE = 16 * 1024;
+
+  public byte[] buffer;
+  public int[] start;
+  public int[] length;
+
+  private int nextFree;
+
+  public BytesColumnVector() {
+    this(VectorizedRowBatch.DEFAULT_SIZE);
+  }
+
+  public BytesColumnVector(int size) {
+    super(size);
+    buffer = new byte[DEFAULT_BUFFER_SIZE];
+    start = new int[size];
+    length = new int[size];
+    nextFree = 0;
+  }
+
+  @Override
+  public void reset() {
+    super.reset();
+    nextFree = 0;
+  }
+
+  /**
+   * Copy len bytes of src starting at off as the value at position i.
+   */
+  public void setVal(int i, byte[] src, int off, int len) {
+    if (nextFree + len > buffer.length) {
+      int newLength = buffer.length * 2;
+      while (nextFree + len > newLength) {
+        newLength *= 2;
+      }
+      byte[] newBuffer = new byte[newLength];
+      System.arraycopy(buffer, 0, newBuffer, 0, nextFree);
+      buffer = newBuffer;
+    }
+    System.arraycopy(src, off, buffer, nextFree, len);
+    start[i] = nextFree;
+    length[i] = len;
+    nextFree += len;
+  }
+}
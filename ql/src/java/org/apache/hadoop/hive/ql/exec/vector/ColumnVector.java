@@ -0,0 +1,64 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector;
+
+import java.util.Arrays;
+
+/**
+ * ColumnVector holds the values of a single column for all the rows of a
+ * VectorizedRowBatch. Subclasses store the values in a primitive array so
+ * that vectorized expressions can loop over them without object allocation.
+ */
+public abstract class ColumnVector {
+
+  /**
+   * If noNulls is false, isNull[i] is true when the value at position i is
+   * null. If noNulls is true, isNull must be ignored.
+   */
+  public boolean[] isNull;
+
+  /**
+   * True if none of the values in this column are null.
+   */
+  public boolean noNulls;
+
+  public ColumnVector(int size) {
+    isNull = new boolean[size];
+    noNulls = true;
+  }
+
+  /**
+   * Reset the column to the state of an empty column, ready for the next
+   * batch of rows.
+   */
+  public void reset() {
+    if (!noNulls) {
+      Arrays.fill(isNull, false);
+    }
+    noNulls = true;
+  }
+
+  /**
+   * Mark the value at position i as null.
+   */
+  public void setNull(int i) {
+    isNull[i] = true;
+    noNulls = false;
+  }
+}
@@ -0,0 +1,792 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hive.ql.plan.AggregationDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFCount;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFMax;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFMin;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFSum;
+import org.apache.hadoop.hive.serde2.io.ByteWritable;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.hive.serde2.io.ShortWritable;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorConverters;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorConverters.Converter;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector.PrimitiveCategory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.io.BooleanWritable;
+import org.apache.hadoop.io.FloatWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+
+/**
+ * VectorHashAggregation is the map-side hash aggregation of a GroupByOperator
+ * in vectorized execution mode. The group of every row of a batch is looked
+ * up in an open addressing hash table keyed on the values of the key column
+ * vectors, and each aggregation is then updated for the whole batch from its
+ * parameter column vector into primitive arrays indexed by group. Neither
+ * the rows nor the aggregation buffers of the GenericUDAFEvaluators are
+ * created.
+ *
+ * Only keys and parameters which are column references are supported, and
+ * only count, and sum, min and max of numeric columns. For anything else
+ * create() returns null and the caller is expected to aggregate the rows of
+ * the batch one at a time.
+ */
+public class VectorHashAggregation {
+
+  private static final Log LOG = LogFactory.getLog(VectorHashAggregation.class.getName());
+
+  // estimated size of an array element holding a string key, on top of its
+  // bytes
+  private static final int BYTES_KEY_OVERHEAD = 16;
+
+  private final int[] keyColumns;
+  private final PrimitiveCategory[] keyTypes;
+  private final Aggregation[] aggregations;
+
+  // the keys of the groups, a long[], double[] or byte[][] by key column
+  private final Object[] groupKeys;
+  private final boolean[][] groupKeyIsNull;
+  private int[] groupHashes;
+  private int numGroups;
+  private long keyBytes;
+
+  // the groups + 1 by hash slot, 0 for an empty slot
+  private int[] slots;
+
+  // the hash and group of each row of the current batch
+  private final int[] rowHashes;
+  private final int[] rowGroups;
+
+  // the output row: the keys followed by the aggregation results
+  private final Writable[] keyWritables;
+  private final Converter[] converters;
+  private final Object[] outputRow;
+
+  private VectorHashAggregation(VectorizedRowBatchCtx batchCtx, int[] keyColumns,
+      Aggregation[] aggregations, List<ObjectInspector> outputObjectInspectors,
+      int maxBatchSize) {
+    this.keyColumns = keyColumns;
+    this.aggregations = aggregations;
+    keyTypes = new PrimitiveCategory[keyColumns.length];
+    groupKeys = new Object[keyColumns.length];
+    groupKeyIsNull = new boolean[keyColumns.length][];
+    keyWritables = new Writable[keyColumns.length];
+    converters = new Converter[keyColumns.length + aggregations.length];
+    for (int k = 0; k < keyColumns.length; k++) {
+      keyTypes[k] = batchCtx.getColumnType(keyColumns[k]);
+      keyWritables[k] = VectorizedRowBatchCtx.newWritable(keyTypes[k]);
+      converters[k] = ObjectInspectorConverters.getConverter(
+          PrimitiveObjectInspectorFactory.getPrimitiveWritableObjectInspector(keyTypes[k]),
+          outputObjectInspectors.get(k));
+    }
+    for (int a = 0; a < aggregations.length; a++) {
+      converters[keyColumns.length + a] = ObjectInspectorConverters.getConverter(
+          PrimitiveObjectInspectorFactory.getPrimitiveWritableObjectInspector(
+          aggregations[a].resultType),
+          outputObjectInspectors.get(keyColumns.length + a));
+    }
+    outputRow = new Object[converters.length];
+    rowHashes = new int[maxBatchSize];
+    rowGroups = new int[maxBatchSize];
+    allocate(256);
+  }
+
+  /**
+   * Create the hash aggregation of the given keys and aggregations over the
+   * batches described by batchCtx.
+   *
+   * @param outputObjectInspectors
+   *          the ObjectInspectors of the keys followed by those returned by
+   *          the aggregation evaluators, which the groups are converted to
+   * @return the aggregation, or null if some of the keys or aggregations are
+   *         not supported
+   */
+  public static VectorHashAggregation create(VectorizedRowBatchCtx batchCtx,
+      List<ExprNodeDesc> keys, List<AggregationDesc> aggrs,
+      List<ObjectInspector> outputObjectInspectors, int maxBatchSize) {
+    int[] keyColumns = new int[keys.size()];
+    for (int k = 0; k < keyColumns.length; k++) {
+      keyColumns[k] = getColumn(batchCtx, keys.get(k));
+      if (keyColumns[k] < 0) {
+        LOG.info("Key " + keys.get(k).getExprString() + " is not a column of the batch");
+        return null;
+      }
+    }
+    Aggregation[] aggregations = new Aggregation[aggrs.size()];
+    for (int a = 0; a < aggregations.length; a++) {
+      aggregations[a] = getAggregation(batchCtx, aggrs.get(a));
+      if (aggregations[a] == null) {
+        LOG.info("Aggregation " + aggrs.get(a).getExprString() + " cannot be vectorized");
+        return null;
+      }
+    }
+    return new VectorHashAggregation(batchCtx, keyColumns, aggregations,
+        outputObjectInspectors, maxBatchSize);
+  }
+
+  private static int getColumn(VectorizedRowBatchCtx batchCtx, ExprNodeDesc expr) {
+    if (!(expr instanceof ExprNodeColumnDesc)) {
+      return -1;
+    }
+    return batchCtx.getColumnIndex(((ExprNodeColumnDesc) expr).getColumn());
+  }
+
+  private static Aggregation getAggregation(VectorizedRowBatchCtx batchCtx,
+      AggregationDesc aggr) {
+    GenericUDAFEvaluator evaluator = aggr.getGenericUDAFEvaluator();
+    List<ExprNodeDesc> parameters = aggr.getParameters();
+    if (aggr.getDistinct() || (aggr.getMode() != GenericUDAFEvaluator.Mode.PARTIAL1
+        && aggr.getMode() != GenericUDAFEvaluator.Mode.COMPLETE)) {
+      return null;
+    }
+    if (evaluator instanceof GenericUDAFCount.GenericUDAFCountEvaluator) {
+      if (parameters.isEmpty()) {
+        return new Count(-1);
+      }
+      int column = getColumn(batchCtx, parameters.get(0));
+      return parameters.size() == 1 && column >= 0 ? new Count(column) : null;
+    }
+    if (parameters.size() != 1) {
+      return null;
+    }
+    int column = getColumn(batchCtx, parameters.get(0));
+    if (column < 0) {
+      return null;
+    }
+    PrimitiveCategory type = batchCtx.getColumnType(column);
+    Class<?> columnClass = VectorizedRowBatchCtx.getColumnVectorClass(type);
+    boolean longColumn = columnClass == LongColumnVector.class;
+    if (columnClass == BytesColumnVector.class) {
+      return null;
+    }
+    if (evaluator instanceof GenericUDAFSum.GenericUDAFSumLong) {
+      return longColumn && type != PrimitiveCategory.BOOLEAN ? new LongSum(column) : null;
+    }
+    if (evaluator instanceof GenericUDAFSum.GenericUDAFSumDouble) {
+      return longColumn ? null : new DoubleSum(column);
+    }
+    boolean max = evaluator instanceof GenericUDAFMax.GenericUDAFMaxEvaluator;
+    if (max || evaluator instanceof GenericUDAFMin.GenericUDAFMinEvaluator) {
+      return longColumn ? new LongMinMax(column, type, max)
+          : new DoubleMinMax(column, type, max);
+    }
+    return null;
+  }
+
+  /**
+   * Aggregate the rows of the batch.
+   *
+   * @return the number of new groups
+   */
+  public int aggregate(VectorizedRowBatch batch) {
+    int oldNumGroups = numGroups;
+    if (2 * (numGroups + batch.size) > slots.length) {
+      allocate(2 * (numGroups + batch.size));
+    }
+    hashKeys(batch);
+    findGroups(batch);
+    for (Aggregation aggregation : aggregations) {
+      aggregation.aggregate(batch, rowGroups);
+    }
+    return numGroups - oldNumGroups;
+  }
+
+  private void hashKeys(VectorizedRowBatch batch) {
+    int size = batch.size;
+    int[] selected = batch.selected;
+    boolean selectedInUse = batch.selectedInUse;
+    Arrays.fill(rowHashes, 0, size, 0);
+    for (int k = 0; k < keyColumns.length; k++) {
+      ColumnVector col = batch.cols[keyColumns[k]];
+      boolean noNulls = col.noNulls;
+      boolean[] isNull = col.isNull;
+      if (col instanceof LongColumnVector) {
+        long[] vector = ((LongColumnVector) col).vector;
+        for (int j = 0; j < size; j++) {
+          int r = selectedInUse ? selected[j] : j;
+          int h = !noNulls && isNull[r] ? 0 : hash(vector[r]);
+          rowHashes[j] = 31 * rowHashes[j] + h;
+        }
+      } else if (col instanceof DoubleColumnVector) {
+        double[] vector = ((DoubleColumnVector) col).vector;
+        for (int j = 0; j < size; j++) {
+          int r = selectedInUse ? selected[j] : j;
+          int h = !noNulls && isNull[r] ? 0 : hash(vector[r]);
+          rowHashes[j] = 31 * rowHashes[j] + h;
+        }
+      } else {
+        BytesColumnVector bcol = (BytesColumnVector) col;
+        for (int j = 0; j < size; j++) {
+          int r = selectedInUse ? selected[j] : j;
+          int h = !noNulls && isNull[r] ? 0
+              : hash(bcol.buffer, bcol.start[r], bcol.length[r]);
+          rowHashes[j] = 31 * rowHashes[j] + h;
+        }
+      }
+    }
+  }
+
+  private static int hash(long value) {
+    return (int) (value ^ (value >>> 32));
+  }
+
+  private static int hash(double value) {
+    // 0.0 and -0.0 are the same key
+    return value == 0.0 ? 0 : hash(Double.doubleToLongBits(value));
+  }
+
+  private static int hash(byte[] bytes, int start, int length) {
+    int h = 1;
+    for (int i = start; i < start + length; i++) {
+      h = 31 * h + bytes[i];
+    }
+    return h;
+  }
+
+  private void findGroups(VectorizedRowBatch batch) {
+    int mask = slots.length - 1;
+    for (int j = 0; j < batch.size; j++) {
+      int r = batch.getRow(j);
+      int h = rowHashes[j];
+      int slot = (h ^ (h >>> 16)) & mask;
+      int group;
+      while (true) {
+        group = slots[slot] - 1;
+        if (group < 0) {
+          group = addGroup(batch, r, h);
+          slots[slot] = group + 1;
+          break;
+        }
+        if (groupHashes[group] == h && keysEqual(group, batch, r)) {
+          break;
+        }
+        slot = (slot + 1) & mask;
+      }
+      rowGroups[j] = group;
+    }
+  }
+
+  private boolean keysEqual(int group, VectorizedRowBatch batch, int r) {
+    for (int k = 0; k < keyColumns.length; k++) {
+      ColumnVector col = batch.cols[keyColumns[k]];
+      boolean isNull = !col.noNulls && col.isNull[r];
+      if (isNull || groupKeyIsNull[k][group]) {
+        if (isNull != groupKeyIsNull[k][group]) {
+          return false;
+        }
+      } else if (col instanceof LongColumnVector) {
+        if (((long[]) groupKeys[k])[group] != ((LongColumnVector) col).vector[r]) {
+          return false;
+        }
+      } else if (col instanceof DoubleColumnVector) {
+        double key = ((double[]) groupKeys[k])[group];
+        double value = ((DoubleColumnVector) col).vector[r];
+        // NaN is a single key
+        if (key != value && !(key != key && value != value)) {
+          return false;
+        }
+      } else {
+        BytesColumnVector bcol = (BytesColumnVector) col;
+        byte[] key = ((byte[][]) groupKeys[k])[group];
+        if (key.length != bcol.length[r]) {
+          return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+          if (key[i] != bcol.buffer[bcol.start[r] + i]) {
+            return false;
+          }
+        }
+      }
+    }
+    return true;
+  }
+
+  private int addGroup(VectorizedRowBatch batch, int r, int h) {
+    int group = numGroups++;
+    groupHashes[group] = h;
+    for (int k = 0; k < keyColumns.length; k++) {
+      ColumnVector col = batch.cols[keyColumns[k]];
+      groupKeyIsNull[k][group] = !col.noNulls && col.isNull[r];
+      if (groupKeyIsNull[k][group]) {
+        continue;
+      }
+      if (col instanceof LongColumnVector) {
+        ((long[]) groupKeys[k])[group] = ((LongColumnVector) col).vector[r];
+      } else if (col instanceof DoubleColumnVector) {
+        ((double[]) groupKeys[k])[group] = ((DoubleColumnVector) col).vector[r];
+      } else {
+        BytesColumnVector bcol = (BytesColumnVector) col;
+        ((byte[][]) groupKeys[k])[group] = Arrays.copyOfRange(bcol.buffer, bcol.start[r],
+            bcol.start[r] + bcol.length[r]);
+        keyBytes += bcol.length[r] + BYTES_KEY_OVERHEAD;
+      }
+    }
+    for (Aggregation aggregation : aggregations) {
+      aggregation.reset(group);
+    }
+    return group;
+  }
+
+  /**
+   * Grow the hash table to at least minSlots slots, and the groups to half
+   * of it, so that the table is never more than half full.
+   */
+  private void allocate(int minSlots) {
+    int numSlots = slots == null ? 1 : slots.length;
+    while (numSlots < minSlots) {
+      numSlots *= 2;
+    }
+    int capacity = numSlots / 2;
+    groupHashes = groupHashes == null ? new int[capacity]
+        : Arrays.copyOf(groupHashes, capacity);
+    for (int k = 0; k < keyColumns.length; k++) {
+      Object keys = groupKeys[k];
+      Class<?> columnClass = VectorizedRowBatchCtx.getColumnVectorClass(keyTypes[k]);
+      if (columnClass == LongColumnVector.class) {
+        groupKeys[k] = keys == null ? new long[capacity] : Arrays.copyOf((long[]) keys, capacity);
+      } else if (columnClass == DoubleColumnVector.class) {
+        groupKeys[k] = keys == null ? new double[capacity]
+            : Arrays.copyOf((double[]) keys, capacity);
+      } else {
+        groupKeys[k] = keys == null ? new byte[capacity][]
+            : Arrays.copyOf((byte[][]) keys, capacity);
+      }
+      groupKeyIsNull[k] = groupKeyIsNull[k] == null ? new boolean[capacity]
+          : Arrays.copyOf(groupKeyIsNull[k], capacity);
+    }
+    for (Aggregation aggregation : aggregations) {
+      aggregation.allocate(capacity);
+    }
+
+    // rehash the groups
+    slots = new int[numSlots];
+    int mask = numSlots - 1;
+    for (int group = 0; group < numGroups; group++) {
+      int h = groupHashes[group];
+      int slot = (h ^ (h >>> 16)) & mask;
+      while (slots[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      slots[slot] = group + 1;
+    }
+  }
+
+  public int getNumGroups() {
+    return numGroups;
+  }
+
+  /**
+   * @return the estimated number of bytes used by the hash table
+   */
+  public long getMemoryUsage() {
+    // the slot and the hash of each group
+    long groupSize = 3 * 4;
+    for (int k = 0; k < keyColumns.length; k++) {
+      groupSize += 8 + 1;
+    }
+    for (Aggregation aggregation : aggregations) {
+      groupSize += aggregation.getSize();
+    }
+    return groupHashes.length * groupSize + keyBytes;
+  }
+
+  /**
+   * Return the keys and aggregation results of a group, as inspected by the
+   * outputObjectInspectors given to create(). The returned array and the
+   * objects in it are reused by the next call.
+   */
+  public Object[] getGroup(int group) {
+    for (int k = 0; k < keyColumns.length; k++) {
+      if (groupKeyIsNull[k][group]) {
+        outputRow[k] = null;
+        continue;
+      }
+      Writable w = keyWritables[k];
+      Object keys = groupKeys[k];
+      if (keys instanceof long[]) {
+        setLong(w, ((long[]) keys)[group]);
+      } else if (keys instanceof double[]) {
+        setDouble(w, ((double[]) keys)[group]);
+      } else {
+        ((Text) w).set(((byte[][]) keys)[group]);
+      }
+      outputRow[k] = converters[k].convert(w);
+    }
+    for (int a = 0; a < aggregations.length; a++) {
+      Writable result = aggregations[a].getResult(group);
+      outputRow[keyColumns.length + a] = result == null ? null
+          : converters[keyColumns.length + a].convert(result);
+    }
+    return outputRow;
+  }
+
+  /**
+   * Remove all the groups.
+   */
+  public void clear() {
+    Arrays.fill(slots, 0);
+    for (Object keys : groupKeys) {
+      if (keys instanceof byte[][]) {
+        Arrays.fill((byte[][]) keys, 0, numGroups, null);
+      }
+    }
+    numGroups = 0;
+    keyBytes = 0;
+  }
+
+  private static void setLong(Writable w, long value) {
+    if (w instanceof LongWritable) {
+      ((LongWritable) w).set(value);
+    } else if (w instanceof IntWritable) {
+      ((IntWritable) w).set((int) value);
+    } else if (w instanceof ShortWritable) {
+      ((ShortWritable) w).set((short) value);
+    } else if (w instanceof ByteWritable) {
+      ((ByteWritable) w).set((byte) value);
+    } else {
+      ((BooleanWritable) w).set(value != 0);
+    }
+  }
+
+  private static void setDouble(Writable w, double value) {
+    if (w instanceof DoubleWritable) {
+      ((DoubleWritable) w).set(value);
+    } else {
+      ((FloatWritable) w).set((float) value);
+    }
+  }
+
+  /**
+   * The state of an aggregation for all the groups, updated a batch at a
+   * time.
+   */
+  private abstract static class Aggregation {
+
+    // the column of the parameter, -1 for count(*)
+    protected final int column;
+    // the type of the results returned by getResult
+    protected final PrimitiveCategory resultType;
+
+    protected Aggregation(int column, PrimitiveCategory resultType) {
+      this.column = column;
+      this.resultType = resultType;
+    }
+
+    /**
+     * Grow the state to hold capacity groups.
+     */
+    abstract void allocate(int capacity);
+
+    /**
+     * Reset the state of a new group.
+     */
+    abstract void reset(int group);
+
+    /**
+     * Update the groups of the rows of the batch, given by position in the
+     * batch in rowGroups.
+     */
+    abstract void aggregate(VectorizedRowBatch batch, int[] rowGroups);
+
+    /**
+     * @return the result of the group as a writable of resultType, reused by
+     *         the next call, or null
+     */
+    abstract Writable getResult(int group);
+
+    /**
+     * @return the number of bytes of the state of a group
+     */
+    abstract int getSize();
+  }
+
+  private static class Count extends Aggregation {
+
+    private long[] counts;
+    private final LongWritable result = new LongWritable();
+
+    Count(int column) {
+      super(column, PrimitiveCategory.LONG);
+    }
+
+    @Override
+    void allocate(int capacity) {
+      counts = counts == null ? new long[capacity] : Arrays.copyOf(counts, capacity);
+    }
+
+    @Override
+    void reset(int group) {
+      counts[group] = 0;
+    }
+
+    @Override
+    void aggregate(VectorizedRowBatch batch, int[] rowGroups) {
+      ColumnVector col = column < 0 ? null : batch.cols[column];
+      if (col == null || col.noNulls) {
+        for (int j = 0; j < batch.size; j++) {
+          counts[rowGroups[j]]++;
+        }
+        return;
+      }
+      for (int j = 0; j < batch.size; j++) {
+        if (!col.isNull[batch.getRow(j)]) {
+          counts[rowGroups[j]]++;
+        }
+      }
+    }
+
+    @Override
+    Writable getResult(int group) {
+      result.set(counts[group]);
+      return result;
+    }
+
+    @Override
+    int getSize() {
+      return 8;
+    }
+  }
+
+  private static class LongSum extends Aggregation {
+
+    private long[] sums;
+    private boolean[] isSet;
+    private final LongWritable result = new LongWritable();
+
+    LongSum(int column) {
+      super(column, PrimitiveCategory.LONG);
+    }
+
+    @Override
+    void allocate(int capacity) {
+      sums = sums == null ? new long[capacity] : Arrays.copyOf(sums, capacity);
+      isSet = isSet == null ? new boolean[capacity] : Arrays.copyOf(isSet, capacity);
+    }
+
+    @Override
+    void reset(int group) {
+      sums[group] = 0;
+      isSet[group] = false;
+    }
+
+    @Override
+    void aggregate(VectorizedRowBatch batch, int[] rowGroups) {
+      LongColumnVector col = (LongColumnVector) batch.cols[column];
+      long[] vector = col.vector;
+      for (int j = 0; j < batch.size; j++) {
+        int r = batch.getRow(j);
+        if (col.noNulls || !col.isNull[r]) {
+          sums[rowGroups[j]] += vector[r];
+          isSet[rowGroups[j]] = true;
+        }
+      }
+    }
+
+    @Override
+    Writable getResult(int group) {
+      if (!isSet[group]) {
+        return null;
+      }
+      result.set(sums[group]);
+      return result;
+    }
+
+    @Override
+    int getSize() {
+      return 8 + 1;
+    }
+  }
+
+  private static class DoubleSum extends Aggregation {
+
+    private double[] sums;
+    private boolean[] isSet;
+    private final DoubleWritable result = new DoubleWritable();
+
+    DoubleSum(int column) {
+      super(column, PrimitiveCategory.DOUBLE);
+    }
+
+    @Override
+    void allocate(int capacity) {
+      sums = sums == null ? new double[capacity] : Arrays.copyOf(sums, capacity);
+      isSet = isSet == null ? new boolean[capacity] : Arrays.copyOf(isSet, capacity);
+    }
+
+    @Override
+    void reset(int group) {
+      sums[group] = 0;
+      isSet[group] = false;
+    }
+
+    @Override
+    void aggregate(VectorizedRowBatch batch, int[] rowGroups) {
+      DoubleColumnVector col = (DoubleColumnVector) batch.cols[column];
+      double[] vector = col.vector;
+      for (int j = 0; j < batch.size; j++) {
+        int r = batch.getRow(j);
+        if (col.noNulls || !col.isNull[r]) {
+          sums[rowGroups[j]] += vector[r];
+          isSet[rowGroups[j]] = true;
+        }
+      }
+    }
+
+    @Override
+    Writable getResult(int group) {
+      if (!isSet[group]) {
+        return null;
+      }
+      result.set(sums[group]);
+      return result;
+    }
+
+    @Override
+    int getSize() {
+      return 8 + 1;
+    }
+  }
+
+  private static class LongMinMax extends Aggregation {
+
+    private final boolean max;
+    private long[] values;
+    private boolean[] isSet;
+    private final Writable result;
+
+    LongMinMax(int column, PrimitiveCategory type, boolean max) {
+      super(column, type);
+      this.max = max;
+      result = VectorizedRowBatchCtx.newWritable(type);
+    }
+
+    @Override
+    void allocate(int capacity) {
+      values = values == null ? new long[capacity] : Arrays.copyOf(values, capacity);
+      isSet = isSet == null ? new boolean[capacity] : Arrays.copyOf(isSet, capacity);
+    }
+
+    @Override
+    void reset(int group) {
+      isSet[group] = false;
+    }
+
+    @Override
+    void aggregate(VectorizedRowBatch batch, int[] rowGroups) {
+      LongColumnVector col = (LongColumnVector) batch.cols[column];
+      long[] vector = col.vector;
+      for (int j = 0; j < batch.size; j++) {
+        int r = batch.getRow(j);
+        if (!col.noNulls && col.isNull[r]) {
+          continue;
+        }
+        int group = rowGroups[j];
+        long value = vector[r];
+        if (!isSet[group] || (max ? value > values[group] : value < values[group])) {
+          values[group] = value;
+          isSet[group] = true;
+        }
+      }
+    }
+
+    @Override
+    Writable getResult(int group) {
+      if (!isSet[group]) {
+        return null;
+      }
+      setLong(result, values[group]);
+      return result;
+    }
+
+    @Override
+    int getSize() {
+      return 8 + 1;
+    }
+  }
+
+  private static class DoubleMinMax extends Aggregation {
+
+    private final boolean max;
+    private double[] values;
+    private boolean[] isSet;
+    private final Writable result;
+
+    DoubleMinMax(int column, PrimitiveCategory type, boolean max) {
+      super(column, type);
+      this.max = max;
+      result = VectorizedRowBatchCtx.newWritable(type);
+    }
+
+    @Override
+    void allocate(int capacity) {
+      values = values == null ? new double[capacity] : Arrays.copyOf(values, capacity);
+      isSet = isSet == null ? new boolean[capacity] : Arrays.copyOf(isSet, capacity);
+    }
+
+    @Override
+    void reset(int group) {
+      isSet[group] = false;
+    }
+
+    @Override
+    void aggregate(VectorizedRowBatch batch, int[] rowGroups) {
+      DoubleColumnVector col = (DoubleColumnVector) batch.cols[column];
+      double[] vector = col.vector;
+      for (int j = 0; j < batch.size; j++) {
+        int r = batch.getRow(j);
+        if (!col.noNulls && col.isNull[r]) {
+          continue;
+        }
+        int group = rowGroups[j];
+        double value = vector[r];
+        if (!isSet[group] || (max ? value > values[group] : value < values[group])) {
+          values[group] = value;
+          isSet[group] = true;
+        }
+      }
+    }
+
+    @Override
+    Writable getResult(int group) {
+      if (!isSet[group]) {
+        return null;
+      }
+      setDouble(result, values[group]);
+      return result;
+    }
+
+    @Override
+    int getSize() {
+      return 8 + 1;
+    }
+  }
+}
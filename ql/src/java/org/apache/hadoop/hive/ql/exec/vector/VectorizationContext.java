@@ -0,0 +1,272 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector;
+
+import java.util.List;
+
+import org.apache.hadoop.hive.ql.exec.UDF;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.Arithmetic;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.ColumnArithmetic;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.Comparison;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.FilterColumnCompareColumn;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.FilterColumnCompareScalar;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.FilterColumnIsNull;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.FilterExprAnd;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.FilterExprOr;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.IdentityExpression;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.VectorExpression;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeConstantDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeGenericFuncDesc;
+import org.apache.hadoop.hive.ql.udf.UDFOPDivide;
+import org.apache.hadoop.hive.ql.udf.UDFOPMinus;
+import org.apache.hadoop.hive.ql.udf.UDFOPMultiply;
+import org.apache.hadoop.hive.ql.udf.UDFOPPlus;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFBridge;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPAnd;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqual;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqualOrGreaterThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqualOrLessThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPGreaterThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPLessThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPNotEqual;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPNotNull;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPNull;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPOr;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector.PrimitiveCategory;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+
+/**
+ * VectorizationContext compiles expression trees into vectorized
+ * expressions operating on the batches described by a VectorizedRowBatchCtx.
+ *
+ * Only column references, the comparison operators, AND/OR, IS [NOT] NULL
+ * and the +, -, *, / operators on numeric types are supported for now. For
+ * anything else null is returned and the caller is expected to fall back to
+ * evaluating the expression row by row.
+ */
+public class VectorizationContext {
+
+  private final VectorizedRowBatchCtx batchContext;
+  private int nextScratchColumn;
+
+  public VectorizationContext(VectorizedRowBatchCtx batchContext) {
+    this.batchContext = batchContext;
+    nextScratchColumn = batchContext.getNumColumns();
+  }
+
+  /**
+   * Compile a boolean expression into a filter.
+   *
+   * @return the filter, or null if the expression cannot be vectorized
+   */
+  public VectorExpression getFilterExpression(ExprNodeDesc expr) {
+    if (!(expr instanceof ExprNodeGenericFuncDesc)) {
+      return null;
+    }
+    GenericUDF udf = ((ExprNodeGenericFuncDesc) expr).getGenericUDF();
+    List<ExprNodeDesc> children = expr.getChildren();
+
+    if (udf instanceof GenericUDFOPAnd || udf instanceof GenericUDFOPOr) {
+      VectorExpression[] filters = new VectorExpression[children.size()];
+      for (int i = 0; i < filters.length; i++) {
+        filters[i] = getFilterExpression(children.get(i));
+        if (filters[i] == null) {
+          return null;
+        }
+      }
+      if (udf instanceof GenericUDFOPAnd) {
+        return new FilterExprAnd(filters);
+      }
+      return new FilterExprOr(filters);
+    }
+
+    if (udf instanceof GenericUDFOPNull || udf instanceof GenericUDFOPNotNull) {
+      VectorExpression child = getVectorExpression(children.get(0));
+      if (child == null) {
+        return null;
+      }
+      VectorExpression filter = new FilterColumnIsNull(child.getOutputColumn(),
+          udf instanceof GenericUDFOPNull);
+      filter.setChildExpressions(new VectorExpression[] {child});
+      return filter;
+    }
+
+    Comparison op = getComparison(udf);
+    if (op == null || children.size() != 2
+        || !isNumeric(children.get(0).getTypeInfo())
+        || !isNumeric(children.get(1).getTypeInfo())) {
+      return null;
+    }
+    ExprNodeDesc left = children.get(0);
+    ExprNodeDesc right = children.get(1);
+    if (left instanceof ExprNodeConstantDesc) {
+      // put the constant on the right side
+      ExprNodeDesc tmp = left;
+      left = right;
+      right = tmp;
+      op = op.flip();
+    }
+    VectorExpression leftExpr = getVectorExpression(left);
+    if (leftExpr == null) {
+      return null;
+    }
+    VectorExpression filter;
+    if (right instanceof ExprNodeConstantDesc) {
+      Object value = ((ExprNodeConstantDesc) right).getValue();
+      if (!(value instanceof Number)) {
+        return null;
+      }
+      if (isIntegral(value)) {
+        filter = new FilterColumnCompareScalar(leftExpr.getOutputColumn(), op,
+            ((Number) value).longValue());
+      } else {
+        filter = new FilterColumnCompareScalar(leftExpr.getOutputColumn(), op,
+            ((Number) value).doubleValue());
+      }
+      filter.setChildExpressions(new VectorExpression[] {leftExpr});
+    } else {
+      VectorExpression rightExpr = getVectorExpression(right);
+      if (rightExpr == null) {
+        return null;
+      }
+      filter = new FilterColumnCompareColumn(leftExpr.getOutputColumn(), op,
+          rightExpr.getOutputColumn());
+      filter.setChildExpressions(new VectorExpression[] {leftExpr, rightExpr});
+    }
+    return filter;
+  }
+
+  /**
+   * Compile an expression producing a value.
+   *
+   * @return the expression, or null if the expression cannot be vectorized
+   */
+  public VectorExpression getVectorExpression(ExprNodeDesc expr) {
+    if (expr instanceof ExprNodeColumnDesc) {
+      int column = batchContext.getColumnIndex(((ExprNodeColumnDesc) expr).getColumn());
+      if (column < 0) {
+        return null;
+      }
+      return new IdentityExpression(column);
+    }
+    if (!(expr instanceof ExprNodeGenericFuncDesc)) {
+      return null;
+    }
+    GenericUDF udf = ((ExprNodeGenericFuncDesc) expr).getGenericUDF();
+    Arithmetic op = getArithmetic(udf);
+    List<ExprNodeDesc> children = expr.getChildren();
+    if (op == null || children.size() != 2 || !isNumeric(expr.getTypeInfo())
+        || !isNumeric(children.get(0).getTypeInfo())
+        || !isNumeric(children.get(1).getTypeInfo())) {
+      return null;
+    }
+    PrimitiveCategory outputType = ((PrimitiveTypeInfo) expr.getTypeInfo())
+        .getPrimitiveCategory();
+
+    int[] columns = new int[2];
+    Number scalar = null;
+    VectorExpression[] childExprs = new VectorExpression[2];
+    int numChildExprs = 0;
+    for (int i = 0; i < 2; i++) {
+      ExprNodeDesc child = children.get(i);
+      if (child instanceof ExprNodeConstantDesc) {
+        Object value = ((ExprNodeConstantDesc) child).getValue();
+        if (scalar != null || !(value instanceof Number)) {
+          return null;
+        }
+        scalar = (Number) value;
+        columns[i] = -1;
+      } else {
+        VectorExpression childExpr = getVectorExpression(child);
+        if (childExpr == null) {
+          return null;
+        }
+        childExprs[numChildExprs++] = childExpr;
+        columns[i] = childExpr.getOutputColumn();
+      }
+    }
+    VectorExpression result = new ColumnArithmetic(op, columns[0], columns[1],
+        scalar, nextScratchColumn++, outputType);
+    VectorExpression[] evaluated = new VectorExpression[numChildExprs];
+    System.arraycopy(childExprs, 0, evaluated, 0, numChildExprs);
+    result.setChildExpressions(evaluated);
+    return result;
+  }
+
+  private static Comparison getComparison(GenericUDF udf) {
+    if (udf instanceof GenericUDFOPEqual) {
+      return Comparison.EQUAL;
+    } else if (udf instanceof GenericUDFOPNotEqual) {
+      return Comparison.NOT_EQUAL;
+    } else if (udf instanceof GenericUDFOPLessThan) {
+      return Comparison.LESS;
+    } else if (udf instanceof GenericUDFOPEqualOrLessThan) {
+      return Comparison.LESS_EQUAL;
+    } else if (udf instanceof GenericUDFOPGreaterThan) {
+      return Comparison.GREATER;
+    } else if (udf instanceof GenericUDFOPEqualOrGreaterThan) {
+      return Comparison.GREATER_EQUAL;
+    }
+    return null;
+  }
+
+  private static Arithmetic getArithmetic(GenericUDF udf) {
+    if (!(udf instanceof GenericUDFBridge)) {
+      return null;
+    }
+    Class<? extends UDF> udfClass = ((GenericUDFBridge) udf).getUdfClass();
+    if (udfClass == UDFOPPlus.class) {
+      return Arithmetic.ADD;
+    } else if (udfClass == UDFOPMinus.class) {
+      return Arithmetic.SUBTRACT;
+    } else if (udfClass == UDFOPMultiply.class) {
+      return Arithmetic.MULTIPLY;
+    } else if (udfClass == UDFOPDivide.class) {
+      return Arithmetic.DIVIDE;
+    }
+    return null;
+  }
+
+  private static boolean isIntegral(Object value) {
+    return value instanceof Byte || value instanceof Short
+        || value instanceof Integer || value instanceof Long;
+  }
+
+  private static boolean isNumeric(TypeInfo typeInfo) {
+    if (typeInfo.getCategory() != ObjectInspector.Category.PRIMITIVE) {
+      return false;
+    }
+    switch (((PrimitiveTypeInfo) typeInfo).getPrimitiveCategory()) {
+    case BYTE:
+    case SHORT:
+    case INT:
+    case LONG:
+    case FLOAT:
+    case DOUBLE:
+      return true;
+    default:
+      return false;
+    }
+  }
+}
@@ -0,0 +1,145 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.Writable;
+
+/**
+ * VectorizedRowBatch is the unit of data exchanged between operators in
+ * vectorized execution mode. It holds a fixed number of rows laid out column
+ * by column. Filters do not move data around; they shrink the batch by
+ * recording the positions of the surviving rows in the selected array.
+ * Batches are also the values of the record readers which read a row group
+ * at a time, which is why they are Writable; they are never serialized.
+ */
+public class VectorizedRowBatch implements Writable {
+
+  /**
+   * Default number of rows in a batch. Small enough for the column vectors
+   * of a typical scan to stay in the processor cache.
+   */
+  public static final int DEFAULT_SIZE = 1024;
+
+  /**
+   * The columns of the batch. Positions at or beyond the number of columns
+   * of the row schema are scratch columns used by vectorized expressions to
+   * hold intermediate results.
+   */
+  public ColumnVector[] cols;
+
+  /**
+   * Number of rows in the batch, after filtering.
+   */
+  public int size;
+
+  /**
+   * If selectedInUse is true, the first size entries of selected are the
+   * positions of the rows that are still part of the batch.
+   */
+  public int[] selected;
+  public boolean selectedInUse;
+
+  private final int maxSize;
+  private final VectorizedRowBatchCtx context;
+
+  public VectorizedRowBatch(VectorizedRowBatchCtx context, int numCols,
+      int maxSize) {
+    this.context = context;
+    this.maxSize = maxSize;
+    cols = new ColumnVector[numCols];
+    selected = new int[maxSize];
+    size = 0;
+    selectedInUse = false;
+  }
+
+  /**
+   * @return the context that describes the row schema of this batch
+   */
+  public VectorizedRowBatchCtx getContext() {
+    return context;
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  public boolean isFull() {
+    return size == maxSize;
+  }
+
+  /**
+   * Returns the position of the i-th row still part of the batch.
+   */
+  public int getRow(int i) {
+    return selectedInUse ? selected[i] : i;
+  }
+
+  /**
+   * Make sure that a column of the given class exists at position index,
+   * growing the column array if needed. Used by vectorized expressions to
+   * allocate their scratch output columns.
+   */
+  public ColumnVector ensureColumn(int index,
+      Class<? extends ColumnVector> columnClass) {
+    if (index >= cols.length) {
+      ColumnVector[] newCols = new ColumnVector[index + 1];
+      System.arraycopy(cols, 0, newCols, 0, cols.length);
+      cols = newCols;
+    }
+    ColumnVector col = cols[index];
+    if (col == null || col.getClass() != columnClass) {
+      if (columnClass == LongColumnVector.class) {
+        col = new LongColumnVector(maxSize);
+      } else if (columnClass == DoubleColumnVector.class) {
+        col = new DoubleColumnVector(maxSize);
+      } else {
+        col = new BytesColumnVector(maxSize);
+      }
+      cols[index] = col;
+    }
+    return col;
+  }
+
+  /**
+   * Reset the batch so that it can be filled with a new set of rows.
+   */
+  public void reset() {
+    size = 0;
+    selectedInUse = false;
+    for (ColumnVector col : cols) {
+      if (col != null) {
+        col.reset();
+      }
+    }
+  }
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    throw new UnsupportedOperationException("Batches are not serialized");
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    throw new UnsupportedOperationException("Batches are not serialized");
+  }
+}
@@ -0,0 +1,566 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.hive.serde2.SerDeException;
+import org.apache.hadoop.hive.serde2.columnar.BytesRefArrayWritable;
+import org.apache.hadoop.hive.serde2.columnar.BytesRefWritable;
+import org.apache.hadoop.hive.serde2.columnar.ColumnarSerDe;
+import org.apache.hadoop.hive.serde2.io.ByteWritable;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.hive.serde2.io.ShortWritable;
+import org.apache.hadoop.hive.serde2.lazy.LazyDouble;
+import org.apache.hadoop.hive.serde2.lazy.LazyLong;
+import org.apache.hadoop.hive.serde2.lazy.LazyUtils;
+import org.apache.hadoop.hive.serde2.lazy.LazySimpleSerDe.SerDeParameters;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector.PrimitiveCategory;
+import org.apache.hadoop.hive.serde2.objectinspector.StructField;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.BooleanObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.ByteObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.DoubleObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.FloatObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.IntObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.LongObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.ShortObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.StringObjectInspector;
+import org.apache.hadoop.io.BooleanWritable;
+import org.apache.hadoop.io.FloatWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+
+/**
+ * VectorizedRowBatchCtx describes the row schema of the batches produced by
+ * an operator. It knows how to append a row to a batch, and how to turn a
+ * row of a batch back into a row object for operators and expressions that
+ * only support row mode. A context created for a ColumnarSerDe can also
+ * decode the columns of an RCFile row group straight into a batch, which is
+ * how VectorizedRCFileRecordReader reads RCFiles.
+ */
+public class VectorizedRowBatchCtx {
+
+  private final List<String> columnNames;
+  private final PrimitiveCategory[] columnTypes;
+  private final StructObjectInspector rowObjectInspector;
+
+  // used when batches are built from rows of another format
+  private final StructObjectInspector inputObjectInspector;
+  private final List<? extends StructField> inputFields;
+
+  // reused by materializeRow
+  private final Object[] row;
+  private final Writable[] writables;
+
+  // the encoding of the cells of RCFile columns, when created for a
+  // ColumnarSerDe
+  private final Text nullSequence;
+  private final boolean escaped;
+  private final byte escapeChar;
+
+  // the values of the partition columns following the columns of the
+  // ColumnarSerDe, set by addRowGroup on all the rows
+  private final Text[] partitionValues;
+
+  // reused by addRowGroup
+  private final LongWritable longResult = new LongWritable();
+  private final DoubleWritable doubleResult = new DoubleWritable();
+  private byte[] unescaped = new byte[0];
+
+  /**
+   * Create a context for batches built from rows inspected by inputOI. The
+   * caller should check isVectorizable(inputOI) first.
+   */
+  public VectorizedRowBatchCtx(StructObjectInspector inputOI) {
+    this(inputOI, null, false, (byte) 0, new Text[0]);
+  }
+
+  /**
+   * Create a context for batches built from the rows of an RCFile read by
+   * serde, either row by row with addRow or a row group at a time with
+   * addRowGroup. The caller should check isVectorizable on the
+   * ObjectInspector of serde first.
+   */
+  public VectorizedRowBatchCtx(ColumnarSerDe serde) throws SerDeException {
+    this(serde, new ArrayList<String>(), new ArrayList<String>());
+  }
+
+  /**
+   * Create a context for batches built from the rows of an RCFile read by
+   * serde, followed by the string partition columns of the file. The rows
+   * are those the MapOperator makes of the file; addRowGroup sets the
+   * partition values on all of them.
+   */
+  public VectorizedRowBatchCtx(ColumnarSerDe serde, List<String> partitionColumns,
+      List<String> partitionValues) throws SerDeException {
+    this(getRowWithPartObjectInspector(serde, partitionColumns),
+        serde.getSerdeParams().getNullSequence(), serde.getSerdeParams().isEscaped(),
+        serde.getSerdeParams().getEscapeChar(), toText(partitionValues));
+  }
+
+  private static StructObjectInspector getRowWithPartObjectInspector(ColumnarSerDe serde,
+      List<String> partitionColumns) throws SerDeException {
+    StructObjectInspector rawOI = (StructObjectInspector) serde.getObjectInspector();
+    if (partitionColumns.isEmpty()) {
+      return rawOI;
+    }
+    List<ObjectInspector> partOIs = new ArrayList<ObjectInspector>(partitionColumns.size());
+    for (int i = 0; i < partitionColumns.size(); i++) {
+      partOIs.add(PrimitiveObjectInspectorFactory.writableStringObjectInspector);
+    }
+    StructObjectInspector partOI = ObjectInspectorFactory.getStandardStructObjectInspector(
+        partitionColumns, partOIs);
+    return ObjectInspectorFactory.getUnionStructObjectInspector(
+        Arrays.asList(new StructObjectInspector[] {rawOI, partOI}));
+  }
+
+  private static Text[] toText(List<String> values) {
+    Text[] result = new Text[values.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = new Text(values.get(i));
+    }
+    return result;
+  }
+
+  private VectorizedRowBatchCtx(StructObjectInspector inputOI, Text nullSequence,
+      boolean escaped, byte escapeChar, Text[] partitionValues) {
+    inputObjectInspector = inputOI;
+    inputFields = inputOI.getAllStructFieldRefs();
+    columnNames = new ArrayList<String>(inputFields.size());
+    List<PrimitiveCategory> types = new ArrayList<PrimitiveCategory>(inputFields.size());
+    for (StructField field : inputFields) {
+      columnNames.add(field.getFieldName());
+      types.add(((PrimitiveObjectInspector) field.getFieldObjectInspector())
+          .getPrimitiveCategory());
+    }
+    columnTypes = types.toArray(new PrimitiveCategory[types.size()]);
+    rowObjectInspector = createRowObjectInspector();
+    row = new Object[columnTypes.length];
+    writables = createWritables();
+    this.nullSequence = nullSequence;
+    this.escaped = escaped;
+    this.escapeChar = escapeChar;
+    this.partitionValues = partitionValues;
+  }
+
+  /**
+   * Create a context for batches whose columns are computed by vectorized
+   * expressions rather than copied from rows.
+   */
+  public VectorizedRowBatchCtx(List<String> columnNames,
+      List<PrimitiveCategory> columnTypes) {
+    inputObjectInspector = null;
+    inputFields = null;
+    this.columnNames = new ArrayList<String>(columnNames);
+    this.columnTypes = columnTypes.toArray(new PrimitiveCategory[columnTypes.size()]);
+    rowObjectInspector = createRowObjectInspector();
+    row = new Object[this.columnTypes.length];
+    writables = createWritables();
+    nullSequence = null;
+    escaped = false;
+    escapeChar = 0;
+    partitionValues = new Text[0];
+  }
+
+  /**
+   * Whether values of the given category can be stored in a column vector.
+   */
+  public static boolean isVectorizable(PrimitiveCategory category) {
+    return getColumnVectorClass(category) != null;
+  }
+
+  /**
+   * Whether rows inspected by oi can be copied into batches: every top-level
+   * field has to be a primitive of a supported category.
+   */
+  public static boolean isVectorizable(ObjectInspector oi) {
+    if (oi.getCategory() != ObjectInspector.Category.STRUCT) {
+      return false;
+    }
+    for (StructField field : ((StructObjectInspector) oi).getAllStructFieldRefs()) {
+      ObjectInspector fieldOI = field.getFieldObjectInspector();
+      if (fieldOI.getCategory() != ObjectInspector.Category.PRIMITIVE
+          || !isVectorizable(((PrimitiveObjectInspector) fieldOI).getPrimitiveCategory())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return the column vector class holding values of the category, or null
+   *         if the category is not supported in vectorized mode
+   */
+  public static Class<? extends ColumnVector> getColumnVectorClass(
+      PrimitiveCategory category) {
+    switch (category) {
+    case BOOLEAN:
+    case BYTE:
+    case SHORT:
+    case INT:
+    case LONG:
+      return LongColumnVector.class;
+    case FLOAT:
+    case DOUBLE:
+      return DoubleColumnVector.class;
+    case STRING:
+      return BytesColumnVector.class;
+    default:
+      return null;
+    }
+  }
+
+  private StructObjectInspector createRowObjectInspector() {
+    List<ObjectInspector> ois = new ArrayList<ObjectInspector>(columnTypes.length);
+    for (PrimitiveCategory type : columnTypes) {
+      ois.add(PrimitiveObjectInspectorFactory.getPrimitiveWritableObjectInspector(type));
+    }
+    return ObjectInspectorFactory.getStandardStructObjectInspector(columnNames, ois);
+  }
+
+  private Writable[] createWritables() {
+    Writable[] result = new Writable[columnTypes.length];
+    for (int i = 0; i < columnTypes.length; i++) {
+      result[i] = newWritable(columnTypes[i]);
+    }
+    return result;
+  }
+
+  /**
+   * @return a new writable of the class holding values of the category in
+   *         the rows returned by materializeRow
+   */
+  static Writable newWritable(PrimitiveCategory category) {
+    switch (category) {
+    case BOOLEAN:
+      return new BooleanWritable();
+    case BYTE:
+      return new ByteWritable();
+    case SHORT:
+      return new ShortWritable();
+    case INT:
+      return new IntWritable();
+    case LONG:
+      return new LongWritable();
+    case FLOAT:
+      return new FloatWritable();
+    case DOUBLE:
+      return new DoubleWritable();
+    default:
+      return new Text();
+    }
+  }
+
+  public int getNumColumns() {
+    return columnTypes.length;
+  }
+
+  public List<String> getColumnNames() {
+    return columnNames;
+  }
+
+  public PrimitiveCategory getColumnType(int column) {
+    return columnTypes[column];
+  }
+
+  /**
+   * @return the position of the column, or -1 if there is no such column
+   */
+  public int getColumnIndex(String columnName) {
+    return columnNames.indexOf(columnName);
+  }
+
+  /**
+   * @return the ObjectInspector of the rows returned by materializeRow
+   */
+  public StructObjectInspector getRowObjectInspector() {
+    return rowObjectInspector;
+  }
+
+  /**
+   * Create an empty batch holding up to maxSize rows of this schema.
+   */
+  public VectorizedRowBatch createBatch(int maxSize) {
+    VectorizedRowBatch batch = new VectorizedRowBatch(this, columnTypes.length, maxSize);
+    for (int i = 0; i < columnTypes.length; i++) {
+      batch.ensureColumn(i, getColumnVectorClass(columnTypes[i]));
+    }
+    return batch;
+  }
+
+  /**
+   * Append a row to the batch. The values are copied, so the row object can
+   * be reused by the caller afterwards.
+   */
+  public void addRow(VectorizedRowBatch batch, Object rowObject) {
+    int r = batch.size;
+    for (int i = 0; i < columnTypes.length; i++) {
+      StructField field = inputFields.get(i);
+      Object value = inputObjectInspector.getStructFieldData(rowObject, field);
+      ColumnVector col = batch.cols[i];
+      if (value == null) {
+        col.setNull(r);
+        continue;
+      }
+      ObjectInspector oi = field.getFieldObjectInspector();
+      switch (columnTypes[i]) {
+      case BOOLEAN:
+        ((LongColumnVector) col).vector[r] =
+            ((BooleanObjectInspector) oi).get(value) ? 1 : 0;
+        break;
+      case BYTE:
+        ((LongColumnVector) col).vector[r] = ((ByteObjectInspector) oi).get(value);
+        break;
+      case SHORT:
+        ((LongColumnVector) col).vector[r] = ((ShortObjectInspector) oi).get(value);
+        break;
+      case INT:
+        ((LongColumnVector) col).vector[r] = ((IntObjectInspector) oi).get(value);
+        break;
+      case LONG:
+        ((LongColumnVector) col).vector[r] = ((LongObjectInspector) oi).get(value);
+        break;
+      case FLOAT:
+        ((DoubleColumnVector) col).vector[r] = ((FloatObjectInspector) oi).get(value);
+        break;
+      case DOUBLE:
+        ((DoubleColumnVector) col).vector[r] = ((DoubleObjectInspector) oi).get(value);
+        break;
+      default:
+        Text t = ((StringObjectInspector) oi).getPrimitiveWritableObject(value);
+        ((BytesColumnVector) col).setVal(r, t.getBytes(), 0, t.getLength());
+        break;
+      }
+    }
+    batch.size++;
+  }
+
+  /**
+   * Append rows of an RCFile row group to the batch, decoding each column from
+   * the cells returned by RCFile.Reader.getColumn() rather than initializing
+   * a lazy struct per row. The values decode as the lazy objects of the
+   * ColumnarSerDe decode them: the null sequence and the values which do not
+   * parse or are out of range are nulls. Only for a context created for a
+   * ColumnarSerDe.
+   *
+   * @param columns
+   *          the cells of each column of the ColumnarSerDe in the row group,
+   *          or null for a column which is not read or not in the file, whose
+   *          values are nulls
+   * @param firstRow
+   *          the position in the row group of the first row to append
+   * @param numRows
+   *          the number of rows to append
+   * @return the number of rows appended, up to the room left in the batch
+   */
+  public int addRowGroup(VectorizedRowBatch batch, BytesRefArrayWritable[] columns,
+      int firstRow, int numRows) throws IOException {
+    if (nullSequence == null) {
+      throw new IllegalStateException("Not a context of RCFile rows");
+    }
+    int n = Math.min(numRows, batch.getMaxSize() - batch.size);
+    int numDataColumns = columnTypes.length - partitionValues.length;
+    for (int i = 0; i < numDataColumns; i++) {
+      ColumnVector col = batch.cols[i];
+      if (columns[i] == null) {
+        for (int r = batch.size; r < batch.size + n; r++) {
+          col.setNull(r);
+        }
+      } else {
+        decodeColumn(columnTypes[i], columns[i], firstRow, col, batch.size, n);
+      }
+    }
+    for (int i = 0; i < partitionValues.length; i++) {
+      BytesColumnVector col = (BytesColumnVector) batch.cols[numDataColumns + i];
+      Text value = partitionValues[i];
+      for (int r = batch.size; r < batch.size + n; r++) {
+        col.setVal(r, value.getBytes(), 0, value.getLength());
+      }
+    }
+    batch.size += n;
+    return n;
+  }
+
+  private void decodeColumn(PrimitiveCategory category, BytesRefArrayWritable column,
+      int firstRow, ColumnVector col, int firstPosition, int n) throws IOException {
+    byte[] nullBytes = nullSequence.getBytes();
+    int nullLength = nullSequence.getLength();
+    for (int j = 0; j < n; j++) {
+      BytesRefWritable cell = column.unCheckedGet(firstRow + j);
+      int r = firstPosition + j;
+      byte[] bytes = cell.getData();
+      int start = cell.getStart();
+      int length = cell.getLength();
+      boolean valid;
+      if (length == nullLength
+          && LazyUtils.compare(bytes, start, length, nullBytes, 0, nullLength) == 0) {
+        valid = false;
+      } else {
+        switch (category) {
+        case BOOLEAN:
+          valid = parseBoolean(bytes, start, length, (LongColumnVector) col, r);
+          break;
+        case BYTE:
+          valid = parseLong(bytes, start, length, (LongColumnVector) col, r,
+              Byte.MIN_VALUE, Byte.MAX_VALUE);
+          break;
+        case SHORT:
+          valid = parseLong(bytes, start, length, (LongColumnVector) col, r,
+              Short.MIN_VALUE, Short.MAX_VALUE);
+          break;
+        case INT:
+          valid = parseLong(bytes, start, length, (LongColumnVector) col, r,
+              Integer.MIN_VALUE, Integer.MAX_VALUE);
+          break;
+        case LONG:
+          valid = parseLong(bytes, start, length, (LongColumnVector) col, r,
+              Long.MIN_VALUE, Long.MAX_VALUE);
+          break;
+        case FLOAT:
+        case DOUBLE:
+          valid = LazyDouble.parse(bytes, start, length,
+              category == PrimitiveCategory.FLOAT, doubleResult);
+          ((DoubleColumnVector) col).vector[r] = doubleResult.get();
+          break;
+        default:
+          valid = true;
+          if (escaped) {
+            length = unescape(bytes, start, length);
+            bytes = unescaped;
+            start = 0;
+          }
+          ((BytesColumnVector) col).setVal(r, bytes, start, length);
+          break;
+        }
+      }
+      if (!valid) {
+        col.setNull(r);
+      }
+    }
+  }
+
+  private boolean parseLong(byte[] bytes, int start, int length,
+      LongColumnVector col, int r, long min, long max) {
+    if (!LazyLong.parse(bytes, start, length, 10, longResult)) {
+      return false;
+    }
+    long value = longResult.get();
+    col.vector[r] = value;
+    return value >= min && value <= max;
+  }
+
+  // as LazyBoolean
+  private static boolean parseBoolean(byte[] bytes, int start, int length,
+      LongColumnVector col, int r) {
+    if (length == 4 && Character.toUpperCase(bytes[start]) == 'T'
+        && Character.toUpperCase(bytes[start + 1]) == 'R'
+        && Character.toUpperCase(bytes[start + 2]) == 'U'
+        && Character.toUpperCase(bytes[start + 3]) == 'E') {
+      col.vector[r] = 1;
+      return true;
+    }
+    if (length == 5 && Character.toUpperCase(bytes[start]) == 'F'
+        && Character.toUpperCase(bytes[start + 1]) == 'A'
+        && Character.toUpperCase(bytes[start + 2]) == 'L'
+        && Character.toUpperCase(bytes[start + 3]) == 'S'
+        && Character.toUpperCase(bytes[start + 4]) == 'E') {
+      col.vector[r] = 0;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Unescape a string into the unescaped buffer, as LazyString does.
+   *
+   * @return the length of the unescaped string
+   */
+  private int unescape(byte[] bytes, int start, int length) {
+    if (unescaped.length < length) {
+      unescaped = new byte[Math.max(unescaped.length * 2, length)];
+    }
+    int k = 0;
+    for (int i = 0; i < length; i++) {
+      byte b = bytes[start + i];
+      if (b != escapeChar || i == length - 1) {
+        unescaped[k++] = b;
+      } else {
+        // get the next byte
+        i++;
+        unescaped[k++] = bytes[start + i];
+      }
+    }
+    return k;
+  }
+
+  /**
+   * Turn the row at position r of the batch into a row object inspected by
+   * getRowObjectInspector(). The returned array and the writables in it are
+   * reused by the next call.
+   */
+  public Object[] materializeRow(VectorizedRowBatch batch, int r) {
+    for (int i = 0; i < columnTypes.length; i++) {
+      ColumnVector col = batch.cols[i];
+      if (!col.noNulls && col.isNull[r]) {
+        row[i] = null;
+        continue;
+      }
+      Writable w = writables[i];
+      switch (columnTypes[i]) {
+      case BOOLEAN:
+        ((BooleanWritable) w).set(((LongColumnVector) col).vector[r] != 0);
+        break;
+      case BYTE:
+        ((ByteWritable) w).set((byte) ((LongColumnVector) col).vector[r]);
+        break;
+      case SHORT:
+        ((ShortWritable) w).set((short) ((LongColumnVector) col).vector[r]);
+        break;
+      case INT:
+        ((IntWritable) w).set((int) ((LongColumnVector) col).vector[r]);
+        break;
+      case LONG:
+        ((LongWritable) w).set(((LongColumnVector) col).vector[r]);
+        break;
+      case FLOAT:
+        ((FloatWritable) w).set((float) ((DoubleColumnVector) col).vector[r]);
+        break;
+      case DOUBLE:
+        ((DoubleWritable) w).set(((DoubleColumnVector) col).vector[r]);
+        break;
+      default:
+        BytesColumnVector bcol = (BytesColumnVector) col;
+        ((Text) w).set(bcol.buffer, bcol.start[r], bcol.length[r]);
+        break;
+      }
+      row[i] = w;
+    }
+    return row;
+  }
+}
@@ -0,0 +1,79 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector.expressions;
+
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector.PrimitiveCategory;
+
+/**
+ * Arithmetic operators supported by the vectorized expressions.
+ */
+public enum Arithmetic {
+  ADD, SUBTRACT, MULTIPLY, DIVIDE;
+
+  public static long apply(Arithmetic op, long a, long b) {
+    switch (op) {
+    case ADD:
+      return a + b;
+    case SUBTRACT:
+      return a - b;
+    default:
+      return a * b;
+    }
+  }
+
+  public static double apply(Arithmetic op, double a, double b) {
+    switch (op) {
+    case ADD:
+      return a + b;
+    case SUBTRACT:
+      return a - b;
+    case MULTIPLY:
+      return a * b;
+    default:
+      return a / b;
+    }
+  }
+
+  /**
+   * Narrow a long result to the width of the output type, so that overflows
+   * wrap around exactly like the row mode UDFs operating on IntWritable etc.
+   */
+  public static long narrow(PrimitiveCategory outputType, long value) {
+    switch (outputType) {
+    case BYTE:
+      return (byte) value;
+    case SHORT:
+      return (short) value;
+    case INT:
+      return (int) value;
+    default:
+      return value;
+    }
+  }
+
+  /**
+   * Round a double result to float precision if the output type is float.
+   */
+  public static double narrow(PrimitiveCategory outputType, double value) {
+    if (outputType == PrimitiveCategory.FLOAT) {
+      return (float) value;
+    }
+    return value;
+  }
+}
@@ -0,0 +1,133 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector.expressions;
+
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.DoubleColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector.PrimitiveCategory;
+
+/**
+ * Computes "left op right" into a scratch column, where each operand is
+ * either a column of the batch or a scalar. The result is null when an
+ * operand is null. Integral output types are computed on longs, floating
+ * point output types on doubles.
+ */
+public class ColumnArithmetic extends VectorExpression {
+
+  private final Arithmetic op;
+  private final int leftColumn;
+  private final int rightColumn;
+  private final long longScalar;
+  private final double doubleScalar;
+  private final int outputColumn;
+  private final PrimitiveCategory outputType;
+  private final boolean longOutput;
+
+  /**
+   * @param leftColumn
+   *          column of the left operand, or -1 if the left operand is scalar
+   * @param rightColumn
+   *          column of the right operand, or -1 if the right operand is
+   *          scalar
+   * @param scalar
+   *          value of the scalar operand, null if both operands are columns
+   */
+  public ColumnArithmetic(Arithmetic op, int leftColumn, int rightColumn,
+      Number scalar, int outputColumn, PrimitiveCategory outputType) {
+    this.op = op;
+    this.leftColumn = leftColumn;
+    this.rightColumn = rightColumn;
+    longScalar = scalar == null ? 0 : scalar.longValue();
+    doubleScalar = scalar == null ? 0 : scalar.doubleValue();
+    this.outputColumn = outputColumn;
+    this.outputType = outputType;
+    longOutput = outputType != PrimitiveCategory.FLOAT
+        && outputType != PrimitiveCategory.DOUBLE;
+  }
+
+  private long getLong(ColumnVector col, int i) {
+    if (col == null) {
+      return longScalar;
+    }
+    return ((LongColumnVector) col).vector[i];
+  }
+
+  private double getDouble(ColumnVector col, int i) {
+    if (col == null) {
+      return doubleScalar;
+    }
+    if (col instanceof LongColumnVector) {
+      return ((LongColumnVector) col).vector[i];
+    }
+    return ((DoubleColumnVector) col).vector[i];
+  }
+
+  @Override
+  public void evaluate(VectorizedRowBatch batch) {
+    evaluateChildren(batch);
+
+    ColumnVector out = batch.ensureColumn(outputColumn, longOutput
+        ? LongColumnVector.class : DoubleColumnVector.class);
+    int n = batch.size;
+    if (n == 0) {
+      return;
+    }
+    ColumnVector left = leftColumn < 0 ? null : batch.cols[leftColumn];
+    ColumnVector right = rightColumn < 0 ? null : batch.cols[rightColumn];
+    boolean noNulls = (left == null || left.noNulls) && (right == null || right.noNulls);
+
+    out.reset();
+    if (!noNulls) {
+      out.noNulls = false;
+    }
+    int[] sel = batch.selected;
+    if (longOutput) {
+      long[] result = ((LongColumnVector) out).vector;
+      for (int j = 0; j < n; j++) {
+        int i = batch.selectedInUse ? sel[j] : j;
+        if (!noNulls && ((left != null && left.isNull[i])
+            || (right != null && right.isNull[i]))) {
+          out.isNull[i] = true;
+          continue;
+        }
+        result[i] = Arithmetic.narrow(outputType,
+            Arithmetic.apply(op, getLong(left, i), getLong(right, i)));
+      }
+    } else {
+      double[] result = ((DoubleColumnVector) out).vector;
+      for (int j = 0; j < n; j++) {
+        int i = batch.selectedInUse ? sel[j] : j;
+        if (!noNulls && ((left != null && left.isNull[i])
+            || (right != null && right.isNull[i]))) {
+          out.isNull[i] = true;
+          continue;
+        }
+        result[i] = Arithmetic.narrow(outputType,
+            Arithmetic.apply(op, getDouble(left, i), getDouble(right, i)));
+      }
+    }
+  }
+
+  @Override
+  public int getOutputColumn() {
+    return outputColumn;
+  }
+}
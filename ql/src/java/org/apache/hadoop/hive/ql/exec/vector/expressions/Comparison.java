@@ -0,0 +1,79 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector.expressions;
+
+/**
+ * Comparison operators supported by the vectorized filters.
+ */
+public enum Comparison {
+  EQUAL, NOT_EQUAL, LESS, LESS_EQUAL, GREATER, GREATER_EQUAL;
+
+  /**
+   * @return the operator to use when the operands are swapped, e.g. GREATER
+   *         for LESS since (a &lt; b) == (b &gt; a)
+   */
+  public Comparison flip() {
+    switch (this) {
+    case LESS:
+      return GREATER;
+    case LESS_EQUAL:
+      return GREATER_EQUAL;
+    case GREATER:
+      return LESS;
+    case GREATER_EQUAL:
+      return LESS_EQUAL;
+    default:
+      return this;
+    }
+  }
+
+  public static boolean test(Comparison op, long a, long b) {
+    switch (op) {
+    case EQUAL:
+      return a == b;
+    case NOT_EQUAL:
+      return a != b;
+    case LESS:
+      return a < b;
+    case LESS_EQUAL:
+      return a <= b;
+    case GREATER:
+      return a > b;
+    default:
+      return a >= b;
+    }
+  }
+
+  public static boolean test(Comparison op, double a, double b) {
+    switch (op) {
+    case EQUAL:
+      return a == b;
+    case NOT_EQUAL:
+      return a != b;
+    case LESS:
+      return a < b;
+    case LESS_EQUAL:
+      return a <= b;
+    case GREATER:
+      return a > b;
+    default:
+      return a >= b;
+    }
+  }
+}
@@ -0,0 +1,104 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector.expressions;
+
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.DoubleColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+
+/**
+ * Filter keeping the rows for which "left op right" is true, where both
+ * operands are columns of the batch. Two long columns are compared as longs,
+ * any other combination is compared as doubles.
+ */
+public class FilterColumnCompareColumn extends VectorExpression {
+
+  private final int leftColumn;
+  private final Comparison op;
+  private final int rightColumn;
+
+  public FilterColumnCompareColumn(int leftColumn, Comparison op, int rightColumn) {
+    this.leftColumn = leftColumn;
+    this.op = op;
+    this.rightColumn = rightColumn;
+  }
+
+  private static double getDouble(ColumnVector col, int i) {
+    if (col instanceof LongColumnVector) {
+      return ((LongColumnVector) col).vector[i];
+    }
+    return ((DoubleColumnVector) col).vector[i];
+  }
+
+  @Override
+  public void evaluate(VectorizedRowBatch batch) {
+    evaluateChildren(batch);
+
+    int n = batch.size;
+    if (n == 0) {
+      return;
+    }
+    ColumnVector left = batch.cols[leftColumn];
+    ColumnVector right = batch.cols[rightColumn];
+    boolean noNulls = left.noNulls && right.noNulls;
+    int[] sel = batch.selected;
+    int newSize = 0;
+
+    if (left instanceof LongColumnVector && right instanceof LongColumnVector) {
+      long[] l = ((LongColumnVector) left).vector;
+      long[] r = ((LongColumnVector) right).vector;
+      for (int j = 0; j < n; j++) {
+        int i = batch.selectedInUse ? sel[j] : j;
+        if ((noNulls || !(left.isNull[i] || right.isNull[i]))
+            && Comparison.test(op, l[i], r[i])) {
+          sel[newSize++] = i;
+        }
+      }
+    } else if (left instanceof DoubleColumnVector && right instanceof DoubleColumnVector) {
+      double[] l = ((DoubleColumnVector) left).vector;
+      double[] r = ((DoubleColumnVector) right).vector;
+      for (int j = 0; j < n; j++) {
+        int i = batch.selectedInUse ? sel[j] : j;
+        if ((noNulls || !(left.isNull[i] || right.isNull[i]))
+            && Comparison.test(op, l[i], r[i])) {
+          sel[newSize++] = i;
+        }
+      }
+    } else {
+      for (int j = 0; j < n; j++) {
+        int i = batch.selectedInUse ? sel[j] : j;
+        if ((noNulls || !(left.isNull[i] || right.isNull[i]))
+            && Comparison.test(op, getDouble(left, i), getDouble(right, i))) {
+          sel[newSize++] = i;
+        }
+      }
+    }
+
+    if (newSize < n) {
+      batch.size = newSize;
+      batch.selectedInUse = true;
+    }
+  }
+
+  @Override
+  public int getOutputColumn() {
+    return -1;
+  }
+}
@@ -0,0 +1,129 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector.expressions;
+
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.DoubleColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+
+/**
+ * Filter keeping the rows for which "column op scalar" is true. Nulls never
+ * satisfy the comparison. Long columns are compared as longs when the scalar
+ * is integral, and as doubles otherwise, like the row mode comparison UDFs.
+ */
+public class FilterColumnCompareScalar extends VectorExpression {
+
+  private final int column;
+  private final Comparison op;
+  private final boolean integralScalar;
+  private final long longScalar;
+  private final double doubleScalar;
+
+  public FilterColumnCompareScalar(int column, Comparison op, long scalar) {
+    this.column = column;
+    this.op = op;
+    integralScalar = true;
+    longScalar = scalar;
+    doubleScalar = scalar;
+  }
+
+  public FilterColumnCompareScalar(int column, Comparison op, double scalar) {
+    this.column = column;
+    this.op = op;
+    integralScalar = false;
+    longScalar = (long) scalar;
+    doubleScalar = scalar;
+  }
+
+  @Override
+  public void evaluate(VectorizedRowBatch batch) {
+    evaluateChildren(batch);
+
+    int n = batch.size;
+    if (n == 0) {
+      return;
+    }
+    ColumnVector col = batch.cols[column];
+    boolean[] isNull = col.isNull;
+    boolean noNulls = col.noNulls;
+    int[] sel = batch.selected;
+    int newSize = 0;
+
+    if (col instanceof LongColumnVector && integralScalar) {
+      long[] vector = ((LongColumnVector) col).vector;
+      if (batch.selectedInUse) {
+        for (int j = 0; j < n; j++) {
+          int i = sel[j];
+          if ((noNulls || !isNull[i]) && Comparison.test(op, vector[i], longScalar)) {
+            sel[newSize++] = i;
+          }
+        }
+      } else {
+        for (int i = 0; i < n; i++) {
+          if ((noNulls || !isNull[i]) && Comparison.test(op, vector[i], longScalar)) {
+            sel[newSize++] = i;
+          }
+        }
+      }
+    } else if (col instanceof LongColumnVector) {
+      long[] vector = ((LongColumnVector) col).vector;
+      if (batch.selectedInUse) {
+        for (int j = 0; j < n; j++) {
+          int i = sel[j];
+          if ((noNulls || !isNull[i]) && Comparison.test(op, (double) vector[i], doubleScalar)) {
+            sel[newSize++] = i;
+          }
+        }
+      } else {
+        for (int i = 0; i < n; i++) {
+          if ((noNulls || !isNull[i]) && Comparison.test(op, (double) vector[i], doubleScalar)) {
+            sel[newSize++] = i;
+          }
+        }
+      }
+    } else {
+      double[] vector = ((DoubleColumnVector) col).vector;
+      if (batch.selectedInUse) {
+        for (int j = 0; j < n; j++) {
+          int i = sel[j];
+          if ((noNulls || !isNull[i]) && Comparison.test(op, vector[i], doubleScalar)) {
+            sel[newSize++] = i;
+          }
+        }
+      } else {
+        for (int i = 0; i < n; i++) {
+          if ((noNulls || !isNull[i]) && Comparison.test(op, vector[i], doubleScalar)) {
+            sel[newSize++] = i;
+          }
+        }
+      }
+    }
+
+    if (newSize < n) {
+      batch.size = newSize;
+      batch.selectedInUse = true;
+    }
+  }
+
+  @Override
+  public int getOutputColumn() {
+    return -1;
+  }
+}
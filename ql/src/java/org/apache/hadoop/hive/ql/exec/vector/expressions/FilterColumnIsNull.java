@@ -0,0 +1,74 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector.expressions;
+
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+
+/**
+ * Filter implementing IS NULL and IS NOT NULL on a column of the batch.
+ */
+public class FilterColumnIsNull extends VectorExpression {
+
+  private final int column;
+  private final boolean keepNulls;
+
+  /**
+   * @param keepNulls
+   *          true for IS NULL, false for IS NOT NULL
+   */
+  public FilterColumnIsNull(int column, boolean keepNulls) {
+    this.column = column;
+    this.keepNulls = keepNulls;
+  }
+
+  @Override
+  public void evaluate(VectorizedRowBatch batch) {
+    evaluateChildren(batch);
+
+    int n = batch.size;
+    if (n == 0) {
+      return;
+    }
+    ColumnVector col = batch.cols[column];
+    if (col.noNulls) {
+      if (keepNulls) {
+        batch.size = 0;
+      }
+      return;
+    }
+    int[] sel = batch.selected;
+    int newSize = 0;
+    for (int j = 0; j < n; j++) {
+      int i = batch.selectedInUse ? sel[j] : j;
+      if (col.isNull[i] == keepNulls) {
+        sel[newSize++] = i;
+      }
+    }
+    if (newSize < n) {
+      batch.size = newSize;
+      batch.selectedInUse = true;
+    }
+  }
+
+  @Override
+  public int getOutputColumn() {
+    return -1;
+  }
+}
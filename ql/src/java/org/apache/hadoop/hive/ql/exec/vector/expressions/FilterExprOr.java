@@ -0,0 +1,79 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector.expressions;
+
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+
+/**
+ * Disjunction of filters. Every child is evaluated on the rows selected on
+ * entry, and the rows accepted by at least one child are kept, in their
+ * original order.
+ */
+public class FilterExprOr extends VectorExpression {
+
+  private int[] initialSelected;
+  private boolean[] accepted;
+
+  public FilterExprOr(VectorExpression[] children) {
+    childExpressions = children;
+  }
+
+  @Override
+  public void evaluate(VectorizedRowBatch batch) {
+    int n = batch.size;
+    if (n == 0) {
+      return;
+    }
+    if (initialSelected == null || initialSelected.length < batch.getMaxSize()) {
+      initialSelected = new int[batch.getMaxSize()];
+      accepted = new boolean[batch.getMaxSize()];
+    }
+    boolean initialSelectedInUse = batch.selectedInUse;
+    for (int j = 0; j < n; j++) {
+      int i = initialSelectedInUse ? batch.selected[j] : j;
+      initialSelected[j] = i;
+      accepted[i] = false;
+    }
+
+    for (VectorExpression child : childExpressions) {
+      System.arraycopy(initialSelected, 0, batch.selected, 0, n);
+      batch.size = n;
+      batch.selectedInUse = true;
+      child.evaluate(batch);
+      for (int j = 0; j < batch.size; j++) {
+        accepted[batch.selected[j]] = true;
+      }
+    }
+
+    int newSize = 0;
+    for (int j = 0; j < n; j++) {
+      int i = initialSelected[j];
+      if (accepted[i]) {
+        batch.selected[newSize++] = i;
+      }
+    }
+    batch.size = newSize;
+    batch.selectedInUse = initialSelectedInUse || newSize < n;
+  }
+
+  @Override
+  public int getOutputColumn() {
+    return -1;
+  }
+}
@@ -0,0 +1,65 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector.expressions;
+
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+
+/**
+ * VectorExpression is the vectorized counterpart of ExprNodeEvaluator: it
+ * evaluates an expression for all the rows of a batch at once.
+ *
+ * Filter expressions do not produce a column, they shrink the batch to the
+ * rows satisfying the condition. Other expressions write their result into
+ * the column returned by getOutputColumn().
+ */
+public abstract class VectorExpression {
+
+  protected VectorExpression[] childExpressions;
+
+  /**
+   * Evaluate the expression on the rows still selected in the batch.
+   */
+  public abstract void evaluate(VectorizedRowBatch batch);
+
+  /**
+   * @return the position of the column holding the result, or -1 for
+   *         filter expressions
+   */
+  public abstract int getOutputColumn();
+
+  public VectorExpression[] getChildExpressions() {
+    return childExpressions;
+  }
+
+  public void setChildExpressions(VectorExpression[] childExpressions) {
+    this.childExpressions = childExpressions;
+  }
+
+  /**
+   * Evaluate the child expressions, so that their output columns are ready
+   * to be consumed by this expression.
+   */
+  protected void evaluateChildren(VectorizedRowBatch batch) {
+    if (childExpressions != null) {
+      for (VectorExpression child : childExpressions) {
+        child.evaluate(batch);
+      }
+    }
+  }
+}
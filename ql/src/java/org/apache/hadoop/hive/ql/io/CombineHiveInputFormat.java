@@ -31,6 +31,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -254,7 +255,8 @@ public class CombineHiveInputFormat<K extends WritableComparable, V extends Writ
    * Create Hive splits based on CombineFileSplit.
    */
   @Override
-  public InputSplit[] getSplits(JobConf job, int numSplits) throws IOException {
+  public InputSplit[] getSplits(final JobConf job, int numSplits) throws IOException {
+    long startTime = System.currentTimeMillis();
     init(job);
     Map<String, ArrayList<String>> pathToAliases = mrwork.getPathToAliases();
     Map<String, Operator<? extends Serializable>> aliasToWork =
@@ -278,7 +280,15 @@ public class CombineHiveInputFormat<K extends WritableComparable, V extends Writ
       new HashMap<CombinePathInputFormat, CombineFilter>();
     Set<Path> poolSet = new HashSet<Path>();
 
-    for (Path path : paths) {
+    // Check the paths, then look at their files in parallel: the files
+    // decide whether the paths can be combined, and which path filters them.
+    final boolean checkCompressed = this.mrwork != null
+        && !this.mrwork.getHadoopSupportsSplittable();
+    final boolean filterByParent = mrwork.isMapperCannotSpanPartns();
+    String[] inputFormatClassNames = new String[paths.length];
+    List<Callable<Path>> tasks = new ArrayList<Callable<Path>>(paths.length);
+    for (int i = 0; i < paths.length; i++) {
+      final Path path = paths[i];
 
       PartitionDesc part = HiveFileFormatUtils.getPartitionDescFromPathRecursively(
           pathToPartitionInfo, path, IOPrepareCache.get().allocatePartitionDescMap());
@@ -289,59 +299,31 @@ public class CombineHiveInputFormat<K extends WritableComparable, V extends Writ
 
       // Use HiveInputFormat if any of the paths is not splittable
       Class inputFormatClass = part.getInputFileFormatClass();
-      String inputFormatClassName = inputFormatClass.getName();
-      InputFormat inputFormat = getInputFormatFromCache(inputFormatClass, job);
-
-      // Since there is no easy way of knowing whether MAPREDUCE-1597 is present in the tree or not,
-      // we use a configuration variable for the same
-      if (this.mrwork != null && !this.mrwork.getHadoopSupportsSplittable()) {
-        // The following code should be removed, once
-        // https://issues.apache.org/jira/browse/MAPREDUCE-1597 is fixed.
-        // Hadoop does not handle non-splittable files correctly for CombineFileInputFormat,
-        // so don't use CombineFileInputFormat for non-splittable files
-        FileSystem inpFs = path.getFileSystem(job);
-
-        if (inputFormat instanceof TextInputFormat) {
-          Queue<Path> dirs = new LinkedList<Path>();
-          FileStatus fStats = inpFs.getFileStatus(path);
-
-          // If path is a directory
-          if (fStats.isDir()) {
-            dirs.offer(path);
-          }
-          else if ((new CompressionCodecFactory(job)).getCodec(path) != null) {
-            return super.getSplits(job, numSplits);
-          }
-
-          while (dirs.peek() != null) {
-            Path tstPath = dirs.remove();
-            FileStatus[] fStatus = inpFs.listStatus(tstPath);
-            for (int idx = 0; idx < fStatus.length; idx++) {
-              if (fStatus[idx].isDir()) {
-                dirs.offer(fStatus[idx].getPath());
-              }
-              else if ((new CompressionCodecFactory(job)).getCodec(fStatus[idx].getPath()) != null) {
-                return super.getSplits(job, numSplits);
-              }
-            }
-          }
-        }
-      }
+      inputFormatClassNames[i] = inputFormatClass.getName();
+      final InputFormat inputFormat = getInputFormatFromCache(inputFormatClass, job);
 
       if (inputFormat instanceof SymlinkTextInputFormat) {
         return super.getSplits(job, numSplits);
       }
 
-      Path filterPath = path;
+      tasks.add(new Callable<Path>() {
+        public Path call() throws IOException {
+          if (checkCompressed && inputFormat instanceof TextInputFormat
+              && hasCompressedFiles(path, job)) {
+            return null;
+          }
+          return getFilterPath(path, filterByParent, job);
+        }
+      });
+    }
+    List<Path> filterPaths = runSplitTasks(job, tasks);
 
-      // In the case of tablesample, the input paths are pointing to files rather than directories.
-      // We need to get the parent directory as the filtering path so that all files in the same
-      // parent directory will be grouped into one pool but not files from different parent
-      // directories. This guarantees that a split will combine all files in the same partition
-      // but won't cross multiple partitions if the user has asked so.
-      if (mrwork.isMapperCannotSpanPartns() &&
-          !path.getFileSystem(job).getFileStatus(path).isDir()) { // path is not directory
-        filterPath = path.getParent();
+    for (int i = 0; i < paths.length; i++) {
+      Path path = paths[i];
+      Path filterPath = filterPaths.get(i);
+      String inputFormatClassName = inputFormatClassNames[i];
+      if (filterPath == null) {
+        return super.getSplits(job, numSplits);
       }
 
       // Does a pool exist for this path already
@@ -392,9 +374,71 @@ public class CombineHiveInputFormat<K extends WritableComparable, V extends Writ
     }
 
     LOG.info("number of splits " + result.size());
+    setSplitsTime(job, startTime);
     return result.toArray(new CombineHiveInputSplit[result.size()]);
   }
 
+  /**
+   * Since there is no easy way of knowing whether MAPREDUCE-1597 is present
+   * in the tree or not, we use a configuration variable for the same. The
+   * following code should be removed, once
+   * https://issues.apache.org/jira/browse/MAPREDUCE-1597 is fixed. Hadoop does
+   * not handle non-splittable files correctly for CombineFileInputFormat, so
+   * don't use CombineFileInputFormat for non-splittable files.
+   *
+   * @return true if the path is, or is a directory containing, a compressed
+   *         file
+   */
+  private static boolean hasCompressedFiles(Path path, JobConf job) throws IOException {
+    FileSystem inpFs = path.getFileSystem(job);
+    CompressionCodecFactory codecs = new CompressionCodecFactory(job);
+    boolean useCache = InputPathCache.isEnabled(job);
+    Queue<FileStatus> dirs = new LinkedList<FileStatus>();
+    FileStatus fStats = inpFs.getFileStatus(path);
+
+    // If path is a directory
+    if (fStats.isDir()) {
+      dirs.offer(fStats);
+    } else if (codecs.getCodec(path) != null) {
+      return true;
+    }
+
+    while (dirs.peek() != null) {
+      FileStatus tstStatus = dirs.remove();
+      FileStatus[] fStatus = useCache
+          ? InputPathCache.listStatus(inpFs, tstStatus, job)
+          : inpFs.listStatus(tstStatus.getPath());
+      if (fStatus == null) {
+        continue;
+      }
+      for (int idx = 0; idx < fStatus.length; idx++) {
+        if (fStatus[idx].isDir()) {
+          dirs.offer(fStatus[idx]);
+        } else if (codecs.getCodec(fStatus[idx].getPath()) != null) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * In the case of tablesample, the input paths are pointing to files rather
+   * than directories. We need to get the parent directory as the filtering
+   * path so that all files in the same parent directory will be grouped into
+   * one pool but not files from different parent directories. This guarantees
+   * that a split will combine all files in the same partition but won't cross
+   * multiple partitions if the user has asked so.
+   */
+  private static Path getFilterPath(Path path, boolean filterByParent, JobConf job)
+      throws IOException {
+    if (filterByParent && !path.getFileSystem(job).getFileStatus(path).isDir()) {
+      // path is not directory
+      return path.getParent();
+    }
+    return path;
+  }
+
   /**
    * This function is used to sample inputs for clauses like "TABLESAMPLE(1 PERCENT)"
    *
@@ -134,6 +134,9 @@ public abstract class HiveContextAwareRecordReader<K, V> implements RecordReader
     } else if (recordReader instanceof RCFileRecordReader) {
       blockPointer = true;
       blockStart = ((RCFileRecordReader) recordReader).getStart();
+    } else if (recordReader instanceof VectorizedRCFileRecordReader) {
+      blockPointer = true;
+      blockStart = ((VectorizedRCFileRecordReader) recordReader).getStart();
     } else if (inputFormatClass.getName().contains("RCFile")) {
       blockPointer = true;
       RCFile.Reader in = new RCFile.Reader(fs, path, job);
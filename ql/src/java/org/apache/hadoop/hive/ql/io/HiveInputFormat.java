@@ -25,14 +25,26 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configurable;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.common.HiveInterruptCallback;
+import org.apache.hadoop.hive.common.HiveInterruptUtils;
+import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hadoop.hive.io.HiveIOExceptionHandler;
 import org.apache.hadoop.hive.io.HiveIOExceptionHandlerChain;
 import org.apache.hadoop.hive.io.HiveIOExceptionHandlerUtil;
@@ -69,6 +81,19 @@ public class HiveInputFormat<K extends WritableComparable, V extends Writable>
   public static final Log LOG = LogFactory
       .getLog("org.apache.hadoop.hive.ql.io.HiveInputFormat");
 
+  /**
+   * Set by getSplits in the job configuration: the time spent computing the
+   * splits of the job, and the sum of the times spent on each input path,
+   * which is larger when the paths are processed in parallel.
+   */
+  public static final String SPLITS_TIME_CONF_STR = "hive.input.splits.time.ms";
+  public static final String SPLITS_PATHS_TIME_CONF_STR = "hive.input.splits.paths.time.ms";
+
+  // the times of the last splits computed by the thread. The job configuration
+  // the splits are computed with may be a copy of the one the job was
+  // submitted with, so the submitter cannot read them from its own.
+  private static final ThreadLocal<long[]> lastSplitsTimes = new ThreadLocal<long[]>();
+
   /**
    * HiveInputSplit encapsulates an InputSplit with its corresponding
    * inputFormatClass. The reason that it derives from FileSplit is to make sure
@@ -184,25 +209,29 @@ public class HiveInputFormat<K extends WritableComparable, V extends Writable>
    */
   protected static Map<Class, InputFormat<WritableComparable, Writable>> inputFormats;
 
-  public static InputFormat<WritableComparable, Writable> getInputFormatFromCache(
+  public static synchronized InputFormat<WritableComparable, Writable> getInputFormatFromCache(
     Class inputFormatClass, JobConf job) throws IOException {
 
     if (inputFormats == null) {
       inputFormats = new HashMap<Class, InputFormat<WritableComparable, Writable>>();
     }
     if (!inputFormats.containsKey(inputFormatClass)) {
-      try {
-        InputFormat<WritableComparable, Writable> newInstance = (InputFormat<WritableComparable, Writable>) ReflectionUtils
-            .newInstance(inputFormatClass, job);
-        inputFormats.put(inputFormatClass, newInstance);
-      } catch (Exception e) {
-        throw new IOException("Cannot create an instance of InputFormat class "
-            + inputFormatClass.getName() + " as specified in mapredWork!", e);
-      }
+      inputFormats.put(inputFormatClass, createInputFormat(inputFormatClass, job));
     }
     return inputFormats.get(inputFormatClass);
   }
 
+  private static InputFormat<WritableComparable, Writable> createInputFormat(
+      Class inputFormatClass, JobConf job) throws IOException {
+    try {
+      return (InputFormat<WritableComparable, Writable>) ReflectionUtils
+          .newInstance(inputFormatClass, job);
+    } catch (Exception e) {
+      throw new IOException("Cannot create an instance of InputFormat class "
+          + inputFormatClass.getName() + " as specified in mapredWork!", e);
+    }
+  }
+
   public RecordReader getRecordReader(InputSplit split, JobConf job,
       Reporter reporter) throws IOException {
 
@@ -239,8 +268,12 @@ public class HiveInputFormat<K extends WritableComparable, V extends Writable>
         cloneJobConf);
     RecordReader innerReader = null;
     try {
-      innerReader = inputFormat.getRecordReader(inputSplit,
-        cloneJobConf, reporter);
+      innerReader = getVectorizedRecordReader(inputSplit, cloneJobConf,
+          inputFormatClass, hsplit.getPath(), nonNative);
+      if (innerReader == null) {
+        innerReader = inputFormat.getRecordReader(inputSplit,
+          cloneJobConf, reporter);
+      }
     } catch (Exception e) {
       innerReader = HiveIOExceptionHandlerUtil
           .handleRecordReaderCreationException(e, cloneJobConf);
@@ -250,6 +283,41 @@ public class HiveInputFormat<K extends WritableComparable, V extends Writable>
     return rr;
   }
   
+  /**
+   * Read an RCFile a row group at a time into VectorizedRowBatch values when
+   * all the table scans of the file run in vectorized mode, and none of them
+   * needs virtual columns, which are only set on rows.
+   *
+   * @return the reader, or null if the rows are read one at a time
+   */
+  private RecordReader getVectorizedRecordReader(InputSplit split, JobConf job,
+      Class inputFormatClass, Path splitPath, boolean nonNative) throws IOException {
+    if (!HiveConf.getBoolVar(job, HiveConf.ConfVars.HIVE_VECTORIZATION_ENABLED)
+        || inputFormatClass != RCFileInputFormat.class || !(split instanceof FileSplit)) {
+      return null;
+    }
+    List<String> aliases = getAliases(splitPath.toString(),
+        splitPath.toUri().getPath(), nonNative);
+    if (aliases.isEmpty()) {
+      return null;
+    }
+    for (String alias : aliases) {
+      Operator<? extends Serializable> op = mrwork.getAliasToWork().get(alias);
+      if (!(op instanceof TableScanOperator)
+          || !((TableScanOperator) op).acceptsBatches(job)) {
+        return null;
+      }
+      TableScanDesc scanDesc = ((TableScanOperator) op).getConf();
+      if (scanDesc != null && scanDesc.getVirtualCols() != null
+          && !scanDesc.getVirtualCols().isEmpty()) {
+        return null;
+      }
+    }
+    PartitionDesc part = HiveFileFormatUtils.getPartitionDescFromPathRecursively(
+        pathToPartitionInfo, splitPath, IOPrepareCache.get().getPartitionDescMap());
+    return VectorizedRCFileRecordReader.create(job, (FileSplit) split, part);
+  }
+
   protected Map<String, PartitionDesc> pathToPartitionInfo;
   MapredWork mrwork = null;
 
@@ -258,50 +326,217 @@ public class HiveInputFormat<K extends WritableComparable, V extends Writable>
     pathToPartitionInfo = mrwork.getPathToPartitionInfo();
   }
 
-  public InputSplit[] getSplits(JobConf job, int numSplits) throws IOException {
+  public InputSplit[] getSplits(final JobConf job, int numSplits) throws IOException {
 
+    long startTime = System.currentTimeMillis();
     init(job);
 
     Path[] dirs = FileInputFormat.getInputPaths(job);
     if (dirs.length == 0) {
       throw new IOException("No input paths specified in job");
     }
-    JobConf newjob = new JobConf(job);
-    ArrayList<InputSplit> result = new ArrayList<InputSplit>();
+    final int dirSplits = numSplits / dirs.length;
+    final boolean parallel = getSplitThreads(job, dirs.length) > 1;
 
     // for each dir, get the InputFormat, and do getSplits.
-    for (Path dir : dirs) {
-      PartitionDesc part = getPartitionDescFromPath(pathToPartitionInfo, dir);
-      // create a new InputFormat instance if this is the first time to see this
-      // class
-      Class inputFormatClass = part.getInputFileFormatClass();
-      InputFormat inputFormat = getInputFormatFromCache(inputFormatClass, job);
-      Utilities.copyTableJobPropertiesToConf(part.getTableDesc(), newjob);
-
-      // Make filter pushdown information available to getSplits.
-      ArrayList<String> aliases =
-        mrwork.getPathToAliases().get(dir.toUri().toString());
-      if ((aliases != null) && (aliases.size() == 1)) {
-        Operator op = mrwork.getAliasToWork().get(aliases.get(0));
-        if ((op != null) && (op instanceof TableScanOperator)) {
-          TableScanOperator tableScan = (TableScanOperator) op;
-          pushFilters(newjob, tableScan);
+    List<Callable<InputSplit[]>> tasks = new ArrayList<Callable<InputSplit[]>>(dirs.length);
+    for (final Path dir : dirs) {
+      tasks.add(new Callable<InputSplit[]>() {
+        public InputSplit[] call() throws IOException {
+          return getPathSplits(job, dir, dirSplits, parallel);
         }
-      }
-
-      FileInputFormat.setInputPaths(newjob, dir);
-      newjob.setInputFormat(inputFormat.getClass());
-      InputSplit[] iss = inputFormat.getSplits(newjob, numSplits / dirs.length);
+      });
+    }
+    ArrayList<InputSplit> result = new ArrayList<InputSplit>();
+    for (InputSplit[] iss : runSplitTasks(job, tasks)) {
       for (InputSplit is : iss) {
-        result.add(new HiveInputSplit(is, inputFormatClass.getName()));
+        result.add(is);
       }
     }
 
     LOG.info("number of splits " + result.size());
+    setSplitsTime(job, startTime);
 
     return result.toArray(new HiveInputSplit[result.size()]);
   }
 
+  private InputSplit[] getPathSplits(JobConf job, Path dir, int numSplits,
+      boolean parallel) throws IOException {
+    PartitionDesc part = getPartitionDescFromPath(pathToPartitionInfo, dir);
+    Class inputFormatClass = part.getInputFileFormatClass();
+    JobConf newjob = new JobConf(job);
+    Utilities.copyTableJobPropertiesToConf(part.getTableDesc(), newjob);
+
+    // Make filter pushdown information available to getSplits.
+    ArrayList<String> aliases =
+      mrwork.getPathToAliases().get(dir.toUri().toString());
+    if ((aliases != null) && (aliases.size() == 1)) {
+      Operator op = mrwork.getAliasToWork().get(aliases.get(0));
+      if ((op != null) && (op instanceof TableScanOperator)) {
+        TableScanOperator tableScan = (TableScanOperator) op;
+        pushFilters(newjob, tableScan);
+      }
+    }
+
+    // create a new InputFormat instance if this is the first time to see this
+    // class. The instances computing splits in parallel are not shared, as
+    // some input formats keep state in getSplits.
+    InputFormat inputFormat = parallel
+        ? createInputFormat(inputFormatClass, newjob)
+        : getInputFormatFromCache(inputFormatClass, job);
+
+    FileInputFormat.setInputPaths(newjob, dir);
+    newjob.setInputFormat(inputFormat.getClass());
+    InputSplit[] iss;
+    if (InputPathCache.isEnabled(job) && inputFormat instanceof FileInputFormat
+        && !part.getTableDesc().isNonNative()) {
+      iss = getCachedSplits(newjob, dir, inputFormat, numSplits);
+    } else {
+      iss = inputFormat.getSplits(newjob, numSplits);
+    }
+    InputSplit[] result = new InputSplit[iss.length];
+    for (int i = 0; i < iss.length; i++) {
+      result[i] = new HiveInputSplit(iss[i], inputFormatClass.getName());
+    }
+    return result;
+  }
+
+  /**
+   * Get the splits of a directory from InputPathCache, or compute them and
+   * cache them.
+   */
+  private static InputSplit[] getCachedSplits(JobConf job, Path dir,
+      InputFormat inputFormat, int numSplits) throws IOException {
+    FileSystem fs = dir.getFileSystem(job);
+    FileStatus status = fs.getFileStatus(dir);
+    if (!status.isDir()) {
+      return inputFormat.getSplits(job, numSplits);
+    }
+    // what FileInputFormat computes the splits from, besides the files
+    String splitKey = inputFormat.getClass().getName() + ":" + numSplits
+        + ":" + job.get("mapred.min.split.size") + ":" + job.get("mapred.input.pathFilter.class");
+    InputSplit[] splits = InputPathCache.getSplits(fs, dir, status.getModificationTime(),
+        splitKey);
+    if (splits == null) {
+      splits = inputFormat.getSplits(job, numSplits);
+      InputPathCache.putSplits(fs, dir, status.getModificationTime(), splitKey, splits,
+          job);
+    } else if (LOG.isDebugEnabled()) {
+      LOG.debug("Using the cached splits of " + dir);
+    }
+    return splits;
+  }
+
+  /**
+   * @return the number of threads computing the splits of the input paths
+   */
+  protected static int getSplitThreads(JobConf job, int numPaths) {
+    return Math.min(numPaths, HiveConf.getIntVar(job, HiveConf.ConfVars.HIVE_INPUT_SPLIT_THREADS));
+  }
+
+  /**
+   * Run the tasks computing the splits of the input paths, in parallel if
+   * hive.input.split.threads allows it, and record the sum of their times in
+   * the job.
+   *
+   * @return the results of the tasks, in the order of the tasks
+   */
+  protected static <T> List<T> runSplitTasks(JobConf job, List<Callable<T>> tasks)
+      throws IOException {
+    int numThreads = getSplitThreads(job, tasks.size());
+    final AtomicLong pathsTime = new AtomicLong();
+    List<Callable<T>> timedTasks = new ArrayList<Callable<T>>(tasks.size());
+    for (final Callable<T> task : tasks) {
+      timedTasks.add(new Callable<T>() {
+        public T call() throws Exception {
+          long start = System.currentTimeMillis();
+          try {
+            return task.call();
+          } finally {
+            pathsTime.addAndGet(System.currentTimeMillis() - start);
+          }
+        }
+      });
+    }
+
+    List<T> results = new ArrayList<T>(tasks.size());
+    if (numThreads <= 1) {
+      for (Callable<T> task : timedTasks) {
+        try {
+          results.add(task.call());
+        } catch (Exception e) {
+          throw splitTaskException(e);
+        }
+      }
+    } else {
+      LOG.info("Using " + numThreads + " threads to compute the splits of "
+          + tasks.size() + " paths");
+      final ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+      HiveInterruptCallback interrupt = HiveInterruptUtils.add(new HiveInterruptCallback() {
+        @Override
+        public void interrupt() {
+          executor.shutdownNow();
+        }
+      });
+      try {
+        List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+        for (Callable<T> task : timedTasks) {
+          futures.add(executor.submit(task));
+        }
+        for (Future<T> future : futures) {
+          results.add(future.get());
+        }
+      } catch (InterruptedException e) {
+        throw new IOException("Interrupted while computing the splits", e);
+      } catch (ExecutionException e) {
+        throw splitTaskException(e.getCause());
+      } finally {
+        executor.shutdownNow();
+        HiveInterruptUtils.remove(interrupt);
+      }
+    }
+    job.setLong(SPLITS_PATHS_TIME_CONF_STR, pathsTime.get());
+    return results;
+  }
+
+  private static IOException splitTaskException(Throwable e) {
+    if (e instanceof IOException) {
+      return (IOException) e;
+    }
+    if (e instanceof RuntimeException) {
+      throw (RuntimeException) e;
+    }
+    if (e instanceof Error) {
+      throw (Error) e;
+    }
+    return new IOException(e);
+  }
+
+  /**
+   * Record in the job the time spent computing its splits, so that it is
+   * kept with the configuration of the job.
+   */
+  protected static void setSplitsTime(JobConf job, long startTime) {
+    long time = System.currentTimeMillis() - startTime;
+    job.setLong(SPLITS_TIME_CONF_STR, time);
+    lastSplitsTimes.set(new long[] {time, job.getLong(SPLITS_PATHS_TIME_CONF_STR, 0)});
+    LOG.info("Computed the splits in " + time + " ms, "
+        + job.getLong(SPLITS_PATHS_TIME_CONF_STR, 0) + " ms over all the paths");
+  }
+
+  /**
+   * Get and forget the times of the last splits computed by the current
+   * thread, as stored in SPLITS_TIME_CONF_STR and SPLITS_PATHS_TIME_CONF_STR.
+   *
+   * @return the two times, or null if no splits were computed since the last
+   *         call
+   */
+  public static long[] takeSplitsTimes() {
+    long[] times = lastSplitsTimes.get();
+    lastSplitsTimes.remove();
+    return times;
+  }
+
   public void validateInput(JobConf job) throws IOException {
 
     init(job);
@@ -386,8 +621,40 @@ public class HiveInputFormat<K extends WritableComparable, V extends Writable>
     if(this.mrwork.getPathToAliases() == null) {
       return;
     }
-    
+
+    ArrayList<String> aliases = getAliases(splitPath, splitPathWithNoSchema, nonNative);
+    for (String alias : aliases) {
+      Operator<? extends Serializable> op = this.mrwork.getAliasToWork().get(
+          alias);
+      if (op != null && op instanceof TableScanOperator) {
+        TableScanOperator tableScan = (TableScanOperator) op;
+
+        // push down projections
+        ArrayList<Integer> list = tableScan.getNeededColumnIDs();
+        if (list != null) {
+          ColumnProjectionUtils.appendReadColumnIDs(jobConf, list);
+        } else {
+          ColumnProjectionUtils.setFullyReadColumns(jobConf);
+        }
+
+        // the filter of one alias of a native table would skip the rows of
+        // the other aliases reading the same files
+        if (nonNative || aliases.size() == 1) {
+          pushFilters(jobConf, tableScan);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the aliases of the operators reading the split
+   */
+  private ArrayList<String> getAliases(String splitPath, String splitPathWithNoSchema,
+      boolean nonNative) {
     ArrayList<String> aliases = new ArrayList<String>();
+    if (this.mrwork.getPathToAliases() == null) {
+      return aliases;
+    }
     Iterator<Entry<String, ArrayList<String>>> iterator = this.mrwork
         .getPathToAliases().entrySet().iterator();
 
@@ -416,23 +683,6 @@ public class HiveInputFormat<K extends WritableComparable, V extends Writable>
         }
       }
     }
-
-    for (String alias : aliases) {
-      Operator<? extends Serializable> op = this.mrwork.getAliasToWork().get(
-          alias);
-      if (op != null && op instanceof TableScanOperator) {
-        TableScanOperator tableScan = (TableScanOperator) op;
-
-        // push down projections
-        ArrayList<Integer> list = tableScan.getNeededColumnIDs();
-        if (list != null) {
-          ColumnProjectionUtils.appendReadColumnIDs(jobConf, list);
-        } else {
-          ColumnProjectionUtils.setFullyReadColumns(jobConf);
-        }
-
-        pushFilters(jobConf, tableScan);
-      }
-    }
+    return aliases;
   }
 }
@@ -18,6 +18,7 @@
 
 package org.apache.hadoop.hive.ql.io;
 
+import org.apache.hadoop.hive.serde2.binarysortable.KeyPrefix;
 import org.apache.hadoop.io.BytesWritable;
 import org.apache.hadoop.io.WritableComparator;
 
@@ -67,6 +68,23 @@ public class HiveKey extends BytesWritable {
     }
   }
 
+  /**
+   * A Comparator for the keys serialized by BinarySortableSerDe, which
+   * resolves most comparisons on the fixed-width prefix of the keys, see
+   * {@link KeyPrefix}. It orders the keys as {@link Comparator} does.
+   */
+  public static class PrefixComparator extends WritableComparator {
+    public PrefixComparator() {
+      super(HiveKey.class);
+    }
+
+    @Override
+    public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+      return KeyPrefix.compare(b1, s1 + LENGTH_BYTES, l1 - LENGTH_BYTES, b2, s2
+          + LENGTH_BYTES, l2 - LENGTH_BYTES);
+    }
+  }
+
   static {
     WritableComparator.define(HiveKey.class, new Comparator());
   }
@@ -0,0 +1,219 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.io;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.ContentSummary;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.mapred.InputSplit;
+
+/**
+ * InputPathCache keeps, across the queries of a process, what was learned
+ * by listing the input paths of the queries: the listings of the
+ * directories, their content summaries and the splits computed on them.
+ *
+ * An entry is valid for the modification time the directory had when the
+ * entry was made, so a directory whose files were added, removed or renamed
+ * is listed again. Changes below the direct children of a directory, or
+ * files rewritten in place, do not change its modification time, so the
+ * cache is meant for partitions which are written once, and is enabled by
+ * hive.input.path.cache. The loads into a table or a partition invalidate
+ * the entries of its location.
+ *
+ * IOPrepareCache is cleared for each query; this cache is not.
+ */
+public final class InputPathCache {
+
+  private static final Log LOG = LogFactory.getLog(InputPathCache.class.getName());
+
+  /**
+   * What is known about a directory with a given modification time.
+   */
+  private static class Entry {
+    final long modificationTime;
+    FileStatus[] listing;
+    ContentSummary summary;
+    final Map<String, InputSplit[]> splits = new HashMap<String, InputSplit[]>();
+
+    Entry(long modificationTime) {
+      this.modificationTime = modificationTime;
+    }
+  }
+
+  // the entries by the path of their directory, least recently used first
+  private static final LinkedHashMap<String, Entry> entries =
+      new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+  private InputPathCache() {
+  }
+
+  public static boolean isEnabled(Configuration conf) {
+    return HiveConf.getBoolVar(conf, HiveConf.ConfVars.HIVE_INPUT_PATH_CACHE);
+  }
+
+  /**
+   * @return the fully qualified path of the directory, as the same path can
+   *         be on several file systems
+   */
+  private static String getKey(FileSystem fs, Path dir) {
+    return fs.makeQualified(dir).toString();
+  }
+
+  // the callers of getEntry and putEntry hold the lock of the class
+  private static Entry getEntry(String key, long modificationTime) {
+    Entry entry = entries.get(key);
+    if (entry == null || entry.modificationTime != modificationTime) {
+      return null;
+    }
+    return entry;
+  }
+
+  private static Entry putEntry(String key, long modificationTime,
+      Configuration conf) {
+    Entry entry = entries.get(key);
+    if (entry == null || entry.modificationTime != modificationTime) {
+      entry = new Entry(modificationTime);
+      entries.put(key, entry);
+      int maxSize = HiveConf.getIntVar(conf, HiveConf.ConfVars.HIVE_INPUT_PATH_CACHE_SIZE);
+      Iterator<Entry> it = entries.values().iterator();
+      while (entries.size() > maxSize && it.hasNext()) {
+        it.next();
+        it.remove();
+      }
+    }
+    return entry;
+  }
+
+  /**
+   * List a directory, or get its listing from the cache.
+   *
+   * @param status
+   *          the status of the directory, giving its modification time
+   */
+  public static FileStatus[] listStatus(FileSystem fs, FileStatus status,
+      Configuration conf) throws IOException {
+    Path dir = status.getPath();
+    String key = getKey(fs, dir);
+    synchronized (InputPathCache.class) {
+      Entry entry = getEntry(key, status.getModificationTime());
+      if (entry != null && entry.listing != null) {
+        return entry.listing;
+      }
+    }
+    FileStatus[] listing = fs.listStatus(dir);
+    if (listing != null) {
+      synchronized (InputPathCache.class) {
+        putEntry(key, status.getModificationTime(), conf).listing = listing;
+      }
+    }
+    return listing;
+  }
+
+  /**
+   * Get the content summary of a path, from the cache if it is a directory
+   * which did not change.
+   */
+  public static ContentSummary getContentSummary(FileSystem fs, Path path,
+      Configuration conf) throws IOException {
+    FileStatus status = fs.getFileStatus(path);
+    if (!status.isDir()) {
+      return fs.getContentSummary(path);
+    }
+    String key = getKey(fs, path);
+    synchronized (InputPathCache.class) {
+      Entry entry = getEntry(key, status.getModificationTime());
+      if (entry != null && entry.summary != null) {
+        return entry.summary;
+      }
+    }
+    ContentSummary summary = fs.getContentSummary(path);
+    synchronized (InputPathCache.class) {
+      putEntry(key, status.getModificationTime(), conf).summary = summary;
+    }
+    return summary;
+  }
+
+  /**
+   * @param splitKey
+   *          identifies the way the splits were computed: input format,
+   *          requested number of splits, ...
+   * @return the splits computed on the directory with this modification
+   *         time, or null
+   */
+  public static synchronized InputSplit[] getSplits(FileSystem fs, Path dir,
+      long modificationTime, String splitKey) {
+    Entry entry = getEntry(getKey(fs, dir), modificationTime);
+    return entry == null ? null : entry.splits.get(splitKey);
+  }
+
+  public static synchronized void putSplits(FileSystem fs, Path dir, long modificationTime,
+      String splitKey, InputSplit[] splits, Configuration conf) {
+    putEntry(getKey(fs, dir), modificationTime, conf).splits.put(splitKey, splits);
+  }
+
+  /**
+   * Forget what is cached about a location and the directories below it,
+   * after it was written. Everything is forgotten if the file system of the
+   * location cannot be found.
+   */
+  public static synchronized void invalidate(Path location, Configuration conf) {
+    if (entries.isEmpty()) {
+      return;
+    }
+    String prefix;
+    try {
+      prefix = getKey(location.getFileSystem(conf), location);
+    } catch (IOException e) {
+      LOG.warn("Invalidated all the cached input paths, for " + location, e);
+      entries.clear();
+      return;
+    }
+    String dirPrefix = prefix.endsWith(Path.SEPARATOR) ? prefix : prefix + Path.SEPARATOR;
+    int removed = 0;
+    Iterator<String> it = entries.keySet().iterator();
+    while (it.hasNext()) {
+      String key = it.next();
+      if (key.equals(prefix) || key.startsWith(dirPrefix)) {
+        it.remove();
+        removed++;
+      }
+    }
+    if (removed > 0) {
+      LOG.info("Invalidated " + removed + " cached input paths under " + location);
+    }
+  }
+
+  /**
+   * Forget everything.
+   */
+  public static synchronized void clear() {
+    entries.clear();
+  }
+}
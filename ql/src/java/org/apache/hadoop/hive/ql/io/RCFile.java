@@ -28,6 +28,10 @@ import java.io.IOException;
 import java.rmi.server.UID;
 import java.security.MessageDigest;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -41,6 +45,9 @@ import org.apache.hadoop.hive.serde2.ColumnProjectionUtils;
 import org.apache.hadoop.hive.serde2.columnar.BytesRefArrayWritable;
 import org.apache.hadoop.hive.serde2.columnar.BytesRefWritable;
 import org.apache.hadoop.hive.serde2.columnar.LazyDecompressionCallback;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector.Category;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoUtils;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
@@ -131,6 +138,7 @@ import org.apache.hadoop.util.ReflectionUtils;
  * <li>Column_2_row_1_value_plain_length</li>
  * <li>Column_2_row_2_value_plain_length</li>
  * <li>...</li>
+ * <li>Column_1_statistics, Column_2_statistics, ... (version 7 only)</li>
  * </ul>
  * </li>
  * </li>
@@ -143,6 +151,21 @@ import org.apache.hadoop.util.ReflectionUtils;
  * </ul>
  * </li>
  * </ul>
+ *
+ * <p>
+ * Files written with <tt>hive.io.rcfile.column.stats</tt> are of version 7.
+ * The key part of each record ends with the {@link RCFileColumnStats} of each
+ * column, so a reader can skip the row groups which can not match a pushed
+ * down predicate without reading their values.
+ * </p>
+ *
+ * <p>
+ * Files written with <tt>hive.io.rcfile.column.encoding</tt> are of version
+ * 8. The key part of each record has the column statistics (unknown if they
+ * are not collected), then the {@link RCFileColumnEncoding} of each column:
+ * the values of a column are dictionary or delta encoded before they are
+ * compressed when this makes them smaller, and decoded by the reader.
+ * </p>
  * 
  */
 public class RCFile {
@@ -155,6 +178,18 @@ public class RCFile {
 
   public static final String COLUMN_NUMBER_CONF_STR = "hive.io.rcfile.column.number.conf";
 
+  public static final String COLUMN_STATS_CONF_STR = "hive.io.rcfile.column.stats";
+
+  public static final String COLUMN_TYPES_CONF_STR = "hive.io.rcfile.column.types";
+
+  public static final String NULL_SEQUENCE_CONF_STR = "hive.io.rcfile.null.sequence";
+
+  public static final String COLUMN_ENCODING_CONF_STR = "hive.io.rcfile.column.encoding";
+
+  public static final String READ_AHEAD_CONF_STR = "hive.io.rcfile.readahead.blocks";
+
+  public static final String READ_AHEAD_DECOMPRESS_CONF_STR = "hive.io.rcfile.readahead.decompress";
+
   /*
    * these header and Sync are kept from SequenceFile, for compatible of
    * SequenceFile's format.
@@ -163,6 +198,10 @@ public class RCFile {
   private static final byte[] VERSION = new byte[] {
       (byte) 'S', (byte) 'E', (byte) 'Q', VERSION_WITH_METADATA
       };
+  // the key buffers end with the statistics of the columns
+  private static final byte VERSION_WITH_COLUMN_STATS = (byte) 7;
+  // the key buffers end with the statistics then the encodings of the columns
+  private static final byte VERSION_WITH_COLUMN_ENCODINGS = (byte) 8;
 
   private static final int SYNC_ESCAPE = -1; // "length" of sync entries
   private static final int SYNC_HASH_SIZE = 16; // number of bytes in hash
@@ -171,6 +210,26 @@ public class RCFile {
   /** The number of bytes between sync points. */
   public static final int SYNC_INTERVAL = 100 * SYNC_SIZE;
 
+  /**
+   * @return true if the file is an RCFile of a version whose blocks may have
+   *         encoded columns, from its header only
+   */
+  public static boolean hasColumnEncodings(FileSystem fs, Path file) throws IOException {
+    FSDataInputStream in = fs.open(file);
+    try {
+      byte[] versionBlock = new byte[VERSION.length];
+      in.readFully(versionBlock);
+      return versionBlock[0] == VERSION[0] && versionBlock[1] == VERSION[1]
+          && versionBlock[2] == VERSION[2]
+          && versionBlock[3] >= VERSION_WITH_COLUMN_ENCODINGS;
+    } catch (EOFException e) {
+      // an empty file
+      return false;
+    } finally {
+      in.close();
+    }
+  }
+
   /**
    * KeyBuffer is the key of each record in RCFile. Its on-disk layout is as
    * below:
@@ -188,6 +247,10 @@ public class RCFile {
    * <li>column_2_row_1_value_plain_length,</li>
    * <li>column_2_row_2_value_plain_length,</li>
    * <li>.... .</li>
+   * <li>column_1_statistics, column_2_statistics, ... (version 7 and
+   * later)</li>
+   * <li>column_1_encoding, column_2_encoding, ... (byte, version 8 and
+   * later)</li>
    * <li>{the end of the key part}</li>
    * </ul>
    */
@@ -201,6 +264,13 @@ public class RCFile {
     private int numberRows = 0;
     // how many columns
     private int columnNumber = 0;
+    // whether the statistics of the columns are stored, and their values
+    private boolean hasColumnStats = false;
+    private RCFileColumnStats[] columnStats = null;
+    private NonSyncDataOutputBuffer columnStatsSizeBuffer = null;
+    // whether the encodings of the columns are stored, and their values
+    private boolean hasColumnEncodings = false;
+    private byte[] columnEncodings = null;
     
     // return the number of columns recorded in this file's header
     public int getColumnNumber() {
@@ -256,6 +326,23 @@ public class RCFile {
         }
         allCellValLenBuffer[i].write(in, bufLen);
       }
+      if (hasColumnStats) {
+        if (columnStats == null) {
+          columnStats = new RCFileColumnStats[columnNumber];
+          for (int i = 0; i < columnNumber; i++) {
+            columnStats[i] = new RCFileColumnStats();
+          }
+        }
+        for (int i = 0; i < columnNumber; i++) {
+          columnStats[i].readFields(in);
+        }
+      }
+      if (hasColumnEncodings) {
+        if (columnEncodings == null) {
+          columnEncodings = new byte[columnNumber];
+        }
+        in.readFully(columnEncodings, 0, columnNumber);
+      }
     }
 
     @Override
@@ -270,6 +357,58 @@ public class RCFile {
         WritableUtils.writeVLong(out, bufLen);
         out.write(colRowsLenBuf.getData(), 0, bufLen);
       }
+      if (hasColumnStats) {
+        writeColumnStats(out);
+      }
+      if (hasColumnEncodings) {
+        for (int i = 0; i < eachColumnValueLen.length; i++) {
+          out.writeByte(getColumnEncoding(i));
+        }
+      }
+    }
+
+    private void writeColumnStats(DataOutput out) throws IOException {
+      for (int i = 0; i < eachColumnValueLen.length; i++) {
+        if (columnStats == null) {
+          RCFileColumnStats.writeUnknown(out);
+        } else {
+          columnStats[i].write(out);
+        }
+      }
+    }
+
+    /**
+     * @return the statistics of the columns in this split, or null if the
+     *         file has no statistics
+     */
+    public RCFileColumnStats[] getColumnStats() {
+      return hasColumnStats ? columnStats : null;
+    }
+
+    /**
+     * @return whether the file stores the encodings of the columns
+     */
+    public boolean hasColumnEncodings() {
+      return hasColumnEncodings;
+    }
+
+    /**
+     * @return the {@link RCFileColumnEncoding} of the values of a column
+     */
+    byte getColumnEncoding(int columnIndex) {
+      if (!hasColumnEncodings || columnEncodings == null) {
+        return RCFileColumnEncoding.PLAIN;
+      }
+      return columnEncodings[columnIndex];
+    }
+
+    private boolean hasEncodedColumns() {
+      for (int i = 0; i < eachColumnValueLen.length; i++) {
+        if (getColumnEncoding(i) != RCFileColumnEncoding.PLAIN) {
+          return true;
+        }
+      }
+      return false;
     }
 
     /**
@@ -287,6 +426,17 @@ public class RCFile {
         ret += WritableUtils.getVIntSize(allCellValLenBuffer[i].getLength());
         ret += allCellValLenBuffer[i].getLength();
       }
+      if (hasColumnStats) {
+        if (columnStatsSizeBuffer == null) {
+          columnStatsSizeBuffer = new NonSyncDataOutputBuffer();
+        }
+        columnStatsSizeBuffer.reset();
+        writeColumnStats(columnStatsSizeBuffer);
+        ret += columnStatsSizeBuffer.getLength();
+      }
+      if (hasColumnEncodings) {
+        ret += eachColumnValueLen.length;
+      }
 
       return ret;
     }
@@ -307,6 +457,7 @@ public class RCFile {
    * <li>Compressed or plain data of [column_2_row_1_value,
    * column_2_row_2_value,....]</li>
    * </ul>
+   * The data of a column is encoded as in the key before it is compressed.
    */
   public static class ValueBuffer implements WritableComparable {
 
@@ -324,22 +475,34 @@ public class RCFile {
       @Override
       public byte[] decompress() throws IOException {
 
-        if (decompressedFlag[index] || codec == null) {
+        if (decompressedFlag[index]) {
           return loadedColumnsValueBuffer[index].getData();
         }
 
-        NonSyncDataOutputBuffer compressedData = loadedColumnsValueBuffer[index];
-        NonSyncDataOutputBuffer decompressedData = new NonSyncDataOutputBuffer();
-        decompressBuffer.reset();
-        DataInputStream valueIn = new DataInputStream(deflatFilter);
-        deflatFilter.resetState();
-        decompressBuffer.reset(compressedData.getData(),
-            keyBuffer.eachColumnValueLen[colIndex]);
-        decompressedData.write(valueIn,
-            keyBuffer.eachColumnUncompressedValueLen[colIndex]);
-        loadedColumnsValueBuffer[index] = decompressedData;
+        NonSyncDataOutputBuffer data = loadedColumnsValueBuffer[index];
+        int length = keyBuffer.eachColumnValueLen[colIndex];
+        if (codec != null) {
+          NonSyncDataOutputBuffer decompressedData = new NonSyncDataOutputBuffer();
+          decompressBuffer.reset();
+          DataInputStream valueIn = new DataInputStream(deflatFilter);
+          deflatFilter.resetState();
+          decompressBuffer.reset(data.getData(), length);
+          length = keyBuffer.eachColumnUncompressedValueLen[colIndex];
+          decompressedData.write(valueIn, length);
+          data = decompressedData;
+        }
+        byte encoding = keyBuffer.getColumnEncoding(colIndex);
+        if (encoding != RCFileColumnEncoding.PLAIN) {
+          if (columnDecoder == null) {
+            columnDecoder = new RCFileColumnEncoding();
+          }
+          NonSyncDataOutputBuffer decodedData = new NonSyncDataOutputBuffer();
+          columnDecoder.decode(encoding, data.getData(), length, decodedData);
+          data = decodedData;
+        }
+        loadedColumnsValueBuffer[index] = data;
         decompressedFlag[index] = true;
-        return decompressedData.getData();
+        return data.getData();
       }
     }
 
@@ -347,6 +510,7 @@ public class RCFile {
     private NonSyncDataOutputBuffer[] loadedColumnsValueBuffer = null;
     private boolean[] decompressedFlag = null;
     private LazyDecompressionCallbackImpl[] lazyDecompressCallbackObjs = null;
+    private RCFileColumnEncoding columnDecoder = null;
 
     boolean inited = false;
 
@@ -415,13 +579,10 @@ public class RCFile {
           continue;
         }
         loadedColumnsValueBuffer[readIndex] = new NonSyncDataOutputBuffer();
-        if (codec != null) {
-          decompressedFlag[readIndex] = false;
-          lazyDecompressCallbackObjs[readIndex] = new LazyDecompressionCallbackImpl(
-              readIndex, k);
-        } else {
-          decompressedFlag[readIndex] = true;
-        }
+        // encoded columns are decoded lazily even without a codec
+        decompressedFlag[readIndex] = codec == null;
+        lazyDecompressCallbackObjs[readIndex] = new LazyDecompressionCallbackImpl(
+            readIndex, k);
         readIndex++;
       }
     }
@@ -451,9 +612,8 @@ public class RCFile {
         NonSyncDataOutputBuffer valBuf = loadedColumnsValueBuffer[addIndex];
         valBuf.reset();
         valBuf.write(in, vaRowsLen);
-        if (codec != null) {
-          decompressedFlag[addIndex] = false;
-        }
+        decompressedFlag[addIndex] = codec == null
+            && keyBuffer.getColumnEncoding(i) == RCFileColumnEncoding.PLAIN;
         addIndex++;
       }
 
@@ -473,6 +633,18 @@ public class RCFile {
       decompressBuffer.reset();
     }
 
+    /**
+     * Decompress and decode the loaded columns now rather than when their
+     * values are first accessed.
+     */
+    void decompressColumns() throws IOException {
+      for (int i = 0; i < loadedColumnsValueBuffer.length; i++) {
+        if (!decompressedFlag[i]) {
+          lazyDecompressCallbackObjs[i].decompress();
+        }
+      }
+    }
+
     public void close() {
       for (NonSyncDataOutputBuffer element : loadedColumnsValueBuffer) {
         IOUtils.closeStream(element);
@@ -544,6 +716,14 @@ public class RCFile {
 
     private final int[] columnValuePlainLength;
 
+    // statistics of the columns in the buffered records, null if not stored
+    private RCFileColumnStats[] columnStats = null;
+    private static final byte[] EMPTY_BYTES = new byte[0];
+
+    // encoder of the columns and its output, null if they are not encoded
+    private RCFileColumnEncoding columnEncoder = null;
+    private NonSyncDataOutputBuffer[] encodingBuffer = null;
+
     KeyBuffer key = null;
     ValueBuffer value = null;
 
@@ -697,18 +877,66 @@ public class RCFile {
         columnBuffers[i] = new ColumnBuffer();
       }
 
+      if (conf.getBoolean(COLUMN_STATS_CONF_STR, false)) {
+        initColumnStats(conf);
+      }
+      if (conf.getBoolean(COLUMN_ENCODING_CONF_STR, false)) {
+        columnEncoder = new RCFileColumnEncoding();
+        encodingBuffer = new NonSyncDataOutputBuffer[columnNumber];
+        for (int i = 0; i < columnNumber; i++) {
+          encodingBuffer[i] = new NonSyncDataOutputBuffer();
+        }
+      }
+
       init(name, conf, fs.create(name, true, bufferSize, replication,
           blockSize, progress), codec, metadata);
       initializeFileHeader();
       writeFileHeader();
       finalizeFileHeader();
       key = new KeyBuffer(columnNumber);
+      key.hasColumnStats = columnStats != null || columnEncoder != null;
+      key.columnStats = columnStats;
+      key.hasColumnEncodings = columnEncoder != null;
+      key.columnEncodings = new byte[columnNumber];
       value = new ValueBuffer(key);
     }
 
+    /**
+     * Create the collectors of the column statistics, from the types of the
+     * columns if they are known.
+     */
+    private void initColumnStats(Configuration conf) throws IOException {
+      List<TypeInfo> types = null;
+      String typeString = conf.get(COLUMN_TYPES_CONF_STR, "");
+      if (typeString.length() > 0) {
+        types = TypeInfoUtils.getTypeInfosFromTypeString(typeString);
+        if (types.size() != columnNumber) {
+          types = null;
+        }
+      }
+      byte[] nullSequence = conf.get(NULL_SEQUENCE_CONF_STR, "\\N").getBytes("UTF-8");
+
+      columnStats = new RCFileColumnStats[columnNumber];
+      for (int i = 0; i < columnNumber; i++) {
+        String typeName = null;
+        if (types != null && types.get(i).getCategory() == Category.PRIMITIVE) {
+          typeName = types.get(i).getTypeName();
+        }
+        columnStats[i] = new RCFileColumnStats(typeName, nullSequence);
+      }
+    }
+
     /** Write the initial part of file header. */
     void initializeFileHeader() throws IOException {
-      out.write(VERSION);
+      if (columnEncoder != null) {
+        out.write(VERSION, 0, VERSION.length - 1);
+        out.write(VERSION_WITH_COLUMN_ENCODINGS);
+      } else if (columnStats != null) {
+        out.write(VERSION, 0, VERSION.length - 1);
+        out.write(VERSION_WITH_COLUMN_STATS);
+      } else {
+        out.write(VERSION);
+      }
     }
 
     /** Write the final part of file header. */
@@ -816,11 +1044,17 @@ public class RCFile {
         columnBufferSize += plainLen;
         columnValuePlainLength[i] += plainLen;
         columnBuffers[i].append(cu);
+        if (columnStats != null) {
+          columnStats[i].update(cu.getData(), cu.getStart(), plainLen);
+        }
       }
 
       if (size < columnNumber) {
         for (int i = columns.size(); i < columnNumber; i++) {
           columnBuffers[i].append(BytesRefWritable.ZeroBytesRefWritable);
+          if (columnStats != null) {
+            columnStats[i].update(EMPTY_BYTES, 0, 0);
+          }
         }
       }
 
@@ -842,6 +1076,15 @@ public class RCFile {
         currentBuf.flushGroup();
 
         NonSyncDataOutputBuffer columnValue = currentBuf.columnValBuffer;
+        if (columnEncoder != null) {
+          byte encoding = columnEncoder.encode(columnValue,
+              currentBuf.valLenBuffer, bufferedRecords,
+              encodingBuffer[columnIndex]);
+          key.columnEncodings[columnIndex] = encoding;
+          if (encoding != RCFileColumnEncoding.PLAIN) {
+            columnValue = encodingBuffer[columnIndex];
+          }
+        }
 
         if (isCompressed()) {
           compressionBuffer[columnIndex].reset();
@@ -852,12 +1095,12 @@ public class RCFile {
           deflateFilter[columnIndex].finish();
           int colLen = compressionBuffer[columnIndex].getLength();
           key.setColumnLenInfo(colLen, currentBuf.valLenBuffer,
-              columnValuePlainLength[columnIndex], columnIndex);
+              columnValue.getLength(), columnIndex);
           value.setColumnValueBuffer(compressionBuffer[columnIndex],
               columnIndex);
           valueLength += colLen;
         } else {
-          int colLen = columnValuePlainLength[columnIndex];
+          int colLen = columnValue.getLength();
           key.setColumnLenInfo(colLen, currentBuf.valLenBuffer, colLen,
               columnIndex);
           value.setColumnValueBuffer(columnValue, columnIndex);
@@ -892,6 +1135,11 @@ public class RCFile {
 
       // clear the columnBuffers
       clearColumnBuffers();
+      if (columnStats != null) {
+        for (RCFileColumnStats stats : columnStats) {
+          stats.reset();
+        }
+      }
 
       bufferedRecords = 0;
       columnBufferSize = 0;
@@ -902,6 +1150,35 @@ public class RCFile {
      */
     public void flushBlock(KeyBuffer keyBuffer, ValueBuffer valueBuffer,
         int recordLen, int keyLength, int compressedKeyLen) throws IOException {
+      // the key of a file with another setting of the column statistics or
+      // encodings is written with the layout of this file (unknown statistics
+      // and plain encodings if the key has none)
+      boolean keyHasColumnStats = keyBuffer.hasColumnStats;
+      boolean keyHasColumnEncodings = keyBuffer.hasColumnEncodings;
+      if (keyHasColumnEncodings && !key.hasColumnEncodings
+          && keyBuffer.hasEncodedColumns()) {
+        throw new IOException(
+            "Can not write encoded columns to a file without column encodings");
+      }
+      if (keyHasColumnStats != key.hasColumnStats
+          || keyHasColumnEncodings != key.hasColumnEncodings) {
+        keyBuffer.hasColumnStats = key.hasColumnStats;
+        keyBuffer.hasColumnEncodings = key.hasColumnEncodings;
+        int newKeyLength = keyBuffer.getSize();
+        recordLen += newKeyLength - keyLength;
+        keyLength = newKeyLength;
+        compressedKeyLen = newKeyLength;
+      }
+      try {
+        flushBlockInternal(keyBuffer, valueBuffer, recordLen, keyLength, compressedKeyLen);
+      } finally {
+        keyBuffer.hasColumnStats = keyHasColumnStats;
+        keyBuffer.hasColumnEncodings = keyHasColumnEncodings;
+      }
+    }
+
+    private void flushBlockInternal(KeyBuffer keyBuffer, ValueBuffer valueBuffer,
+        int recordLen, int keyLength, int compressedKeyLen) throws IOException {
       checkAndWriteSync(); // sync
       out.writeInt(recordLen); // total record length
       out.writeInt(keyLength); // key portion length
@@ -985,7 +1262,7 @@ public class RCFile {
 
     private final Configuration conf;
 
-    private final ValueBuffer currentValue;
+    private ValueBuffer currentValue;
 
     private boolean[] skippedColIDs = null;
 
@@ -1005,11 +1282,23 @@ public class RCFile {
     private final int[] columnPrvLength;
     private boolean decompress = false;
 
-    private Decompressor keyDecompressor;
-    NonSyncDataOutputBuffer keyDecompressedData = new NonSyncDataOutputBuffer();
+    private KeyReader keyReader;
 
     int[] prjColIDs = null; // selected column IDs
 
+    // row groups which can not match the filter are skipped up to the
+    // sync mark at filterEnd
+    private RCFileStatsFilter statsFilter = null;
+    private long statsFilterEnd;
+    private int skippedRowGroups = 0;
+
+    // row groups are read by a background thread when readAheadBlocks > 0;
+    // it is started on the first read, and stopped by a seek
+    private int readAheadBlocks = 0;
+    private boolean readAheadDecompress;
+    private long readAheadEnd;
+    private ReadAhead readAhead = null;
+
     /** Create a new RCFile reader. */
     public Reader(FileSystem fs, Path file, Configuration conf) throws IOException {
       this(fs, file, conf.getInt("io.file.buffer.size", 4096), conf, 0, fs
@@ -1126,8 +1415,8 @@ public class RCFile {
 
       // Set 'version'
       version = versionBlock[3];
-      if (version > VERSION[3]) {
-        throw new VersionMismatchException(VERSION[3], version);
+      if (version > VERSION_WITH_COLUMN_ENCODINGS) {
+        throw new VersionMismatchException(VERSION_WITH_COLUMN_ENCODINGS, version);
       }
 
       try {
@@ -1165,8 +1454,8 @@ public class RCFile {
           throw new IllegalArgumentException(
               "Unknown codec: " + codecClassname, cnfe);
         }
-        keyDecompressor = CodecPool.getDecompressor(codec);
       }
+      keyReader = new KeyReader(decompress ? codec : null);
 
       metadata = new Metadata();
       if (version >= VERSION_WITH_METADATA) { // if version >= 6
@@ -1181,6 +1470,9 @@ public class RCFile {
 
     /** Return the current byte position in the input file. */
     public synchronized long getPosition() throws IOException {
+      if (readAhead != null) {
+        return readAhead.position;
+      }
       return in.getPos();
     }
 
@@ -1195,11 +1487,13 @@ public class RCFile {
      * positions, use {@link RCFile.Reader#sync(long)}.
      */
     public synchronized void seek(long position) throws IOException {
+      stopReadAhead();
       in.seek(position);
     }
 
     /** Seek to the next sync mark past a given position. */
     public synchronized void sync(long position) throws IOException {
+      stopReadAhead();
       if (position + SYNC_SIZE >= end) {
         seek(end);
         return;
@@ -1247,7 +1541,10 @@ public class RCFile {
     }
 
     private KeyBuffer createKeyBuffer() {
-      return new KeyBuffer(columnNumber);
+      KeyBuffer keyBuffer = new KeyBuffer(columnNumber);
+      keyBuffer.hasColumnStats = version >= VERSION_WITH_COLUMN_STATS;
+      keyBuffer.hasColumnEncodings = version >= VERSION_WITH_COLUMN_ENCODINGS;
+      return keyBuffer;
     }
 
     @SuppressWarnings("unused")
@@ -1296,14 +1593,301 @@ public class RCFile {
     }
 
     private int compressedKeyLen = 0;
-    NonSyncDataInputBuffer keyDataIn = new NonSyncDataInputBuffer();
-    NonSyncDataInputBuffer keyDecompressBuffer = new NonSyncDataInputBuffer();
-    NonSyncDataOutputBuffer keyTempBuffer = new NonSyncDataOutputBuffer();
 
     KeyBuffer currentKey = null;
     boolean keyInit = false;
 
+    /**
+     * Reads the key buffers, decompressing them with its own decompressor.
+     */
+    private static class KeyReader {
+      private final CompressionCodec codec;
+      private final Decompressor decompressor;
+      private final NonSyncDataOutputBuffer compressedData = new NonSyncDataOutputBuffer();
+      private final NonSyncDataInputBuffer compressedIn = new NonSyncDataInputBuffer();
+      private final NonSyncDataOutputBuffer decompressedData = new NonSyncDataOutputBuffer();
+      private final NonSyncDataInputBuffer decompressedIn = new NonSyncDataInputBuffer();
+
+      KeyReader(CompressionCodec codec) {
+        this.codec = codec;
+        decompressor = codec == null ? null : CodecPool.getDecompressor(codec);
+      }
+
+      void read(DataInput in, KeyBuffer key, int keyLength,
+          int compressedKeyLength) throws IOException {
+        if (codec == null) {
+          key.readFields(in);
+          return;
+        }
+        compressedData.reset();
+        compressedData.write(in, compressedKeyLength);
+        compressedIn.reset(compressedData.getData(), compressedKeyLength);
+        CompressionInputStream deflatFilter = codec.createInputStream(
+            compressedIn, decompressor);
+        DataInputStream keyIn = new DataInputStream(deflatFilter);
+        deflatFilter.resetState();
+        decompressedData.reset();
+        decompressedData.write(keyIn, keyLength);
+        decompressedIn.reset(decompressedData.getData(), keyLength);
+        key.readFields(decompressedIn);
+      }
+
+      void close() {
+        if (codec != null) {
+          IOUtils.closeStream(decompressedData);
+          CodecPool.returnDecompressor(decompressor);
+        }
+      }
+    }
+
+    /**
+     * A row group read ahead: its key, the values of the projected columns,
+     * and the state of the stream after it.
+     */
+    private static class RowGroup {
+      KeyBuffer key;
+      ValueBuffer value;
+      int recordLength;
+      int keyLength;
+      int compressedKeyLength;
+      boolean syncSeen;
+      long lastSeenSyncPos;
+      long endPosition;
+      // the values were not read, as the stats filter skips the row group
+      boolean skipped;
+      // no more row groups, or the error which ended the reading
+      boolean last;
+      IOException error;
+    }
+
+    /**
+     * Reads the next row groups in a background thread, so that the reads
+     * and the decompression of the values overlap with the processing of the
+     * rows. The thread owns the input stream until it is stopped. The row
+     * groups are recycled through a bounded pool, the consumer keeping the
+     * current one.
+     */
+    private class ReadAhead implements Runnable {
+      private final BlockingQueue<RowGroup> free;
+      private final BlockingQueue<RowGroup> ready;
+      private final KeyReader reader = new KeyReader(decompress ? codec : null);
+      private final Thread thread;
+      private volatile boolean stopped = false;
+      private RowGroup current = null;
+      // the position of the consumer in the file
+      long position;
+      // state of the stream, owned by the thread
+      private long lastSyncPos;
+
+      ReadAhead(int numBlocks) throws IOException {
+        free = new ArrayBlockingQueue<RowGroup>(numBlocks + 1);
+        ready = new ArrayBlockingQueue<RowGroup>(numBlocks + 1);
+        // the buffers of the reader are in the pool too
+        RowGroup first = new RowGroup();
+        first.key = currentKey;
+        first.value = currentValue;
+        free.add(first);
+        for (int i = 0; i < numBlocks; i++) {
+          RowGroup group = new RowGroup();
+          group.key = createKeyBuffer();
+          group.value = new ValueBuffer(group.key, columnNumber, skippedColIDs, codec);
+          free.add(group);
+        }
+        position = in.getPos();
+        lastSyncPos = lastSeenSyncPos;
+        thread = new Thread(this, "RCFile read-ahead " + file);
+        thread.setDaemon(true);
+        thread.start();
+      }
+
+      public void run() {
+        try {
+          while (!stopped) {
+            RowGroup group = free.poll(100, TimeUnit.MILLISECONDS);
+            if (group == null) {
+              continue;
+            }
+            try {
+              readRowGroup(group);
+            } catch (IOException e) {
+              group.last = true;
+              group.error = e;
+            } catch (RuntimeException e) {
+              group.last = true;
+              group.error = new IOException(e);
+            }
+            while (!stopped && !ready.offer(group, 100, TimeUnit.MILLISECONDS)) {
+              // wait for the consumer
+            }
+            if (group.last) {
+              return;
+            }
+          }
+        } catch (InterruptedException e) {
+          // stopped
+        }
+      }
+
+      private void readRowGroup(RowGroup group) throws IOException {
+        group.last = false;
+        group.error = null;
+        group.skipped = false;
+        group.syncSeen = false;
+        // stop after the row group following the first sync mark at or
+        // after the end, which the consumer does not read anyway
+        if (in.getPos() >= end || lastSyncPos >= readAheadEnd) {
+          group.last = true;
+          return;
+        }
+        int length = in.readInt();
+        if (version > 1 && length == SYNC_ESCAPE) {
+          lastSyncPos = in.getPos() - 4;
+          in.readFully(syncCheck);
+          if (!Arrays.equals(sync, syncCheck)) {
+            throw new IOException("File is corrupt!");
+          }
+          group.syncSeen = true;
+          if (in.getPos() >= end) {
+            group.last = true;
+            return;
+          }
+          length = in.readInt();
+        }
+        group.recordLength = length;
+        group.lastSeenSyncPos = lastSyncPos;
+        group.keyLength = in.readInt();
+        group.compressedKeyLength = in.readInt();
+        reader.read(in, group.key, group.keyLength, group.compressedKeyLength);
+
+        if (statsFilter != null && lastSyncPos < statsFilterEnd
+            && !statsFilter.mayMatch(group.key.columnStats, group.key.numberRows)) {
+          group.skipped = true;
+          in.skip(group.recordLength - group.keyLength);
+        } else {
+          group.value.keyBuffer = group.key;
+          group.value.clearColumnBuffer();
+          group.value.readFields(in);
+          if (readAheadDecompress) {
+            group.value.decompressColumns();
+          }
+        }
+        group.endPosition = in.getPos();
+      }
+
+      /**
+       * @return the next row group, or null if there are no more
+       */
+      RowGroup next() throws IOException {
+        if (current != null) {
+          free.add(current);
+          current = null;
+        }
+        RowGroup group;
+        try {
+          group = ready.take();
+        } catch (InterruptedException e) {
+          throw new IOException(e);
+        }
+        if (group.last) {
+          // keep the end of stream for the next calls
+          ready.add(group);
+          if (group.error != null) {
+            throw group.error;
+          }
+          return null;
+        }
+        current = group;
+        position = group.endPosition;
+        return group;
+      }
+
+      /**
+       * Stop the thread, and release the row groups but the one whose
+       * buffers are still used by the reader.
+       */
+      void stop(ValueBuffer used) {
+        stopped = true;
+        try {
+          thread.join();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        reader.close();
+        for (RowGroup group : free) {
+          if (group.value != used) {
+            group.value.close();
+          }
+        }
+        for (RowGroup group : ready) {
+          if (group.value != used) {
+            group.value.close();
+          }
+        }
+      }
+    }
+
+    /**
+     * Read the row groups in a background thread, ahead of their use.
+     *
+     * @param numBlocks
+     *          the number of row groups read ahead, 0 to read them on demand
+     * @param decompressValues
+     *          whether the thread also decompresses the values
+     * @param end
+     *          the row groups after the first sync mark at or after end are
+     *          not read ahead
+     */
+    public synchronized void setReadAhead(int numBlocks, boolean decompressValues,
+        long end) throws IOException {
+      stopReadAhead();
+      readAheadBlocks = numBlocks;
+      readAheadDecompress = decompressValues;
+      readAheadEnd = end;
+    }
+
+    private void stopReadAhead() throws IOException {
+      if (readAhead != null) {
+        readAhead.stop(currentValue);
+        // the stream continues after the current row group, whose values
+        // are already read
+        in.seek(readAhead.position);
+        readAhead = null;
+      }
+    }
+
+    private int nextReadAheadKeyBuffer() throws IOException {
+      if (readAhead == null) {
+        readAhead = new ReadAhead(readAheadBlocks);
+      }
+      RowGroup group = readAhead.next();
+      while (group != null && group.skipped) {
+        syncSeen = group.syncSeen;
+        lastSeenSyncPos = group.lastSeenSyncPos;
+        passedRowsNum += group.key.numberRows;
+        skippedRowGroups++;
+        group = readAhead.next();
+      }
+      if (group == null) {
+        keyInit = false;
+        return -1;
+      }
+      currentRecordLength = group.recordLength;
+      currentKeyLength = group.keyLength;
+      compressedKeyLen = group.compressedKeyLength;
+      syncSeen = group.syncSeen;
+      lastSeenSyncPos = group.lastSeenSyncPos;
+      currentKey = group.key;
+      currentValue = group.value;
+      currentValue.inited = true;
+      resetValidColumns = true;
+      initKeyBuffer();
+      return currentKeyLength;
+    }
+
     protected int nextKeyBuffer() throws IOException {
+      if (readAheadBlocks > 0) {
+        return nextReadAheadKeyBuffer();
+      }
       seekToNextKeyBuffer();
       currentRecordLength = readRecordLength();
       if (currentRecordLength == -1) {
@@ -1312,24 +1896,14 @@ public class RCFile {
       }
       currentKeyLength = in.readInt();
       compressedKeyLen = in.readInt();
-      if (decompress) {
-        keyTempBuffer.reset();
-        keyTempBuffer.write(in, compressedKeyLen);
-        keyDecompressBuffer.reset(keyTempBuffer.getData(), compressedKeyLen);
-        CompressionInputStream deflatFilter = codec.createInputStream(
-            keyDecompressBuffer, keyDecompressor);
-        DataInputStream compressedIn = new DataInputStream(deflatFilter);
-        deflatFilter.resetState();
-        keyDecompressedData.reset();
-        keyDecompressedData.write(compressedIn, currentKeyLength);
-        keyDataIn.reset(keyDecompressedData.getData(), currentKeyLength);
-        currentKey.readFields(keyDataIn);
-      } else {
-        currentKey.readFields(in);
-      }
+      keyReader.read(in, currentKey, currentKeyLength, compressedKeyLen);
+      currentValue.inited = false;
+      initKeyBuffer();
+      return currentKeyLength;
+    }
 
+    private void initKeyBuffer() {
       keyInit = true;
-      currentValue.inited = false;
 
       readRowsIndexInBuffer = 0;
       recordsNumInValBuffer = currentKey.numberRows;
@@ -1342,8 +1916,6 @@ public class RCFile {
         columnRunLength[i] = 0;
         columnPrvLength[i] = -1;
       }
-
-      return currentKeyLength;
     }
 
     protected void currentValueBuffer() throws IOException {
@@ -1366,6 +1938,9 @@ public class RCFile {
     }
 
     private boolean rowFetched = false;
+    // the values of a row group read ahead are initialized without
+    // getCurrentRow()
+    private boolean resetValidColumns = false;
 
     // use this buffer to hold column's cells value length for usages in
     // getColumn(), instead of using colValLenBufferReadIn directly.
@@ -1399,18 +1974,43 @@ public class RCFile {
         currentValueBuffer();
       }
 
+      // the value buffers only hold the columns which are read
+      int readIndex = 0;
+      for (int i = 0; i < columnID; i++) {
+        if (!skippedColIDs[i]) {
+          readIndex++;
+        }
+      }
+
+      // the lengths are read from fetchColumnTempBuf, so that the state of
+      // the current row is not changed
       int columnNextRowStart = 0;
+      int runLength = 0;
+      int prvLength = -1;
       fetchColumnTempBuf.reset(currentKey.allCellValLenBuffer[columnID]
           .getData(), currentKey.allCellValLenBuffer[columnID].getLength());
       for (int i = 0; i < recordsNumInValBuffer; i++) {
-        int length = getColumnNextValueLength(columnID);
+        int length;
+        if (runLength > 0) {
+          runLength--;
+          length = prvLength;
+        } else {
+          length = (int) WritableUtils.readVLong(fetchColumnTempBuf);
+          if (length < 0) {
+            // a run length of the previous length
+            runLength = ~length - 1;
+            length = prvLength;
+          } else {
+            prvLength = length;
+          }
+        }
 
         BytesRefWritable currentCell = rest.get(i);
-        if (currentValue.decompressedFlag[columnID]) {
-          currentCell.set(currentValue.loadedColumnsValueBuffer[columnID]
+        if (currentValue.decompressedFlag[readIndex]) {
+          currentCell.set(currentValue.loadedColumnsValueBuffer[readIndex]
               .getData(), columnNextRowStart, length);
         } else {
-          currentCell.set(currentValue.lazyDecompressCallbackObjs[columnID],
+          currentCell.set(currentValue.lazyDecompressCallbackObjs[readIndex],
               columnNextRowStart, length);
         }
         columnNextRowStart = columnNextRowStart + length;
@@ -1420,7 +2020,8 @@ public class RCFile {
 
     /**
      * Read in next key buffer and throw any data in current key buffer and
-     * current value buffer. It will influence the result of
+     * current value buffer. The row groups skipped by the stats filter are
+     * passed over. It will influence the result of
      * {@link #next(LongWritable)} and
      * {@link #getCurrentRow(BytesRefArrayWritable)}
      * 
@@ -1429,7 +2030,25 @@ public class RCFile {
      */
     public synchronized boolean nextColumnsBatch() throws IOException {
       passedRowsNum += (recordsNumInValBuffer - readRowsIndexInBuffer);
-      return nextKeyBuffer() > 0;
+      int ret = nextKeyBuffer();
+      while (ret > 0 && skipRowGroup()) {
+        ret = nextKeyBuffer();
+      }
+      return ret > 0;
+    }
+
+    /**
+     * @return the number of rows of the current row group
+     */
+    public int getRowGroupSize() {
+      return recordsNumInValBuffer;
+    }
+
+    /**
+     * @return the number of columns of the file
+     */
+    public int getColumnNumber() {
+      return columnNumber;
     }
 
     /**
@@ -1456,6 +2075,9 @@ public class RCFile {
       int ret = -1;
       try {
         ret = nextKeyBuffer();
+        while (ret > 0 && skipRowGroup()) {
+          ret = nextKeyBuffer();
+        }
       } catch (EOFException eof) {
         eof.printStackTrace();
       }
@@ -1465,6 +2087,45 @@ public class RCFile {
       return false;
     }
 
+    /**
+     * Skip the row groups whose column statistics show that none of their
+     * rows satisfies a predicate.
+     *
+     * @param filter
+     *          the predicate
+     * @param end
+     *          the row groups after the first sync mark at or after end are
+     *          not checked
+     */
+    public void setStatsFilter(RCFileStatsFilter filter, long end) {
+      if (version >= VERSION_WITH_COLUMN_STATS) {
+        statsFilter = filter;
+        statsFilterEnd = end;
+      }
+    }
+
+    /**
+     * @return the number of row groups skipped by the stats filter
+     */
+    public int getSkippedRowGroups() {
+      return skippedRowGroups;
+    }
+
+    /**
+     * Check the current key buffer against the stats filter. The values of a
+     * skipped row group are not read.
+     */
+    private boolean skipRowGroup() {
+      if (statsFilter == null || lastSeenSyncPos >= statsFilterEnd
+          || statsFilter.mayMatch(currentKey.columnStats, recordsNumInValBuffer)) {
+        return false;
+      }
+      passedRowsNum += recordsNumInValBuffer;
+      readRowsIndexInBuffer = recordsNumInValBuffer;
+      skippedRowGroups++;
+      return true;
+    }
+
     public boolean hasRecordsInBuffer() {
       return readRowsIndexInBuffer < recordsNumInValBuffer;
     }
@@ -1483,9 +2144,13 @@ public class RCFile {
 
       if (!currentValue.inited) {
         currentValueBuffer();
+        resetValidColumns = true;
+      }
+      if (resetValidColumns) {
         // do this only when not initialized, but we may need to find a way to
         // tell the caller how to initialize the valid size
         ret.resetValid(columnNumber);
+        resetValidColumns = false;
       }
 
       // we do not use BytesWritable here to avoid the byte-copy from
@@ -1553,12 +2218,17 @@ public class RCFile {
 
     /** Close the reader. */
     public void close() {
+      if (readAhead != null) {
+        readAhead.stop(currentValue);
+        readAhead = null;
+      }
+      if (skippedRowGroups > 0) {
+        LOG.info("Skipped " + skippedRowGroups + " row groups of " + file
+            + " using the column statistics");
+      }
       IOUtils.closeStream(in);
       currentValue.close();
-      if (decompress) {
-        IOUtils.closeStream(keyDecompressedData);
-        CodecPool.returnDecompressor(keyDecompressor);
-      }
+      keyReader.close();
     }
 
     /**
@@ -0,0 +1,356 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.io;
+
+import java.io.IOException;
+
+import org.apache.hadoop.hive.serde2.lazy.LazyUtils;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * Lightweight encodings of the values of a column in a row group of an
+ * RCFile, applied before the compression of the column.
+ *
+ * <ul>
+ * <li>PLAIN: the values are concatenated.</li>
+ * <li>DICTIONARY: the number of rows (vint), the number of distinct values
+ * (vint), each distinct value (vint length and bytes), then the index of the
+ * value of each row (vint). Used for columns with few distinct values.</li>
+ * <li>DELTA: the number of rows (vint), then runs of values in arithmetic
+ * progression, each as its first value (vlong), the difference between its
+ * values (vlong) and its number of values (vint). Used for columns whose
+ * values are all integers in canonical decimal form, e.g. counters or
+ * sorted keys.</li>
+ * </ul>
+ *
+ * Both encodings decode to the exact bytes of the values, so the readers of
+ * the column see the same data whichever encoding the writer chose.
+ */
+public final class RCFileColumnEncoding {
+
+  public static final byte PLAIN = 0;
+  public static final byte DICTIONARY = 1;
+  public static final byte DELTA = 2;
+
+  // a dictionary of more distinct values than this is not worth building
+  private static final int MAX_DICTIONARY_SIZE = 1 << 16;
+
+  // the longest decimal form of a long, "-9223372036854775808"
+  private static final int MAX_LONG_DIGITS = 20;
+
+  private int[] cellStarts = new int[0];
+  private int[] cellLengths = new int[0];
+  private long[] longs = new long[0];
+  private int[] dictionaryIndex = new int[0];
+  // the rows where each distinct value first occurs
+  private int[] entryRows = new int[0];
+  private int[] hashTable = new int[0];
+  private final NonSyncDataInputBuffer lengthsIn = new NonSyncDataInputBuffer();
+  private final NonSyncDataOutputBuffer dictionaryOut = new NonSyncDataOutputBuffer();
+  private final NonSyncDataOutputBuffer deltaOut = new NonSyncDataOutputBuffer();
+  private final byte[] digits = new byte[MAX_LONG_DIGITS];
+
+  /**
+   * Encode the values of a column with the encoding giving the fewest bytes.
+   *
+   * @param values
+   *          the concatenated values
+   * @param valueLengths
+   *          the run-length encoded lengths of the values, as in the key of a
+   *          row group
+   * @param numRows
+   *          the number of values
+   * @param out
+   *          receives the encoded values, unless the encoding is PLAIN
+   * @return the encoding of the values in out
+   */
+  public byte encode(NonSyncDataOutputBuffer values,
+      NonSyncDataOutputBuffer valueLengths, int numRows,
+      NonSyncDataOutputBuffer out) throws IOException {
+    if (numRows <= 1) {
+      return PLAIN;
+    }
+    readCellLengths(valueLengths, numRows);
+    byte[] data = values.getData();
+
+    int best = values.getLength();
+    byte encoding = PLAIN;
+    if (encodeDelta(data, numRows) && deltaOut.getLength() < best) {
+      best = deltaOut.getLength();
+      encoding = DELTA;
+    }
+    if (encodeDictionary(data, numRows, best) && dictionaryOut.getLength() < best) {
+      encoding = DICTIONARY;
+    }
+
+    out.reset();
+    if (encoding == DELTA) {
+      out.write(deltaOut.getData(), 0, deltaOut.getLength());
+    } else if (encoding == DICTIONARY) {
+      out.write(dictionaryOut.getData(), 0, dictionaryOut.getLength());
+    }
+    return encoding;
+  }
+
+  private void readCellLengths(NonSyncDataOutputBuffer valueLengths,
+      int numRows) throws IOException {
+    if (cellLengths.length < numRows) {
+      cellStarts = new int[numRows];
+      cellLengths = new int[numRows];
+    }
+    lengthsIn.reset(valueLengths.getData(), valueLengths.getLength());
+    int row = 0;
+    int start = 0;
+    int prevLength = 0;
+    while (row < numRows) {
+      int length = WritableUtils.readVInt(lengthsIn);
+      int runLength = 1;
+      if (length < 0) {
+        // the previous length repeats ~length more times
+        runLength = ~length;
+        length = prevLength;
+      }
+      for (int i = 0; i < runLength && row < numRows; i++, row++) {
+        cellStarts[row] = start;
+        cellLengths[row] = length;
+        start += length;
+      }
+      prevLength = length;
+    }
+  }
+
+  private boolean encodeDelta(byte[] data, int numRows) throws IOException {
+    if (longs.length < numRows) {
+      longs = new long[numRows];
+    }
+    for (int row = 0; row < numRows; row++) {
+      if (!parseCanonicalLong(data, cellStarts[row], cellLengths[row], row)) {
+        return false;
+      }
+    }
+
+    deltaOut.reset();
+    WritableUtils.writeVInt(deltaOut, numRows);
+    int runStart = 0;
+    while (runStart < numRows) {
+      long first = longs[runStart];
+      long delta = runStart + 1 < numRows ? longs[runStart + 1] - first : 0;
+      int runEnd = runStart + 1;
+      while (runEnd < numRows && longs[runEnd] - longs[runEnd - 1] == delta) {
+        runEnd++;
+      }
+      WritableUtils.writeVLong(deltaOut, first);
+      WritableUtils.writeVLong(deltaOut, delta);
+      WritableUtils.writeVInt(deltaOut, runEnd - runStart);
+      runStart = runEnd;
+    }
+    return true;
+  }
+
+  /**
+   * Parse a value which is the output of Long.toString, the only form
+   * decoded back to the same bytes.
+   */
+  private boolean parseCanonicalLong(byte[] data, int start, int length, int row) {
+    if (length == 0 || length > MAX_LONG_DIGITS) {
+      return false;
+    }
+    int i = start;
+    int end = start + length;
+    boolean negative = data[i] == '-';
+    if (negative) {
+      i++;
+      if (i == end || data[i] == '0') {
+        return false;
+      }
+    } else if (data[i] == '0' && length > 1) {
+      return false;
+    }
+    // accumulate negatively so that Long.MIN_VALUE fits
+    long limit = Long.MIN_VALUE / 10;
+    long result = 0;
+    for (; i < end; i++) {
+      int digit = data[i] - '0';
+      if (digit < 0 || digit > 9 || result < limit) {
+        return false;
+      }
+      result *= 10;
+      if (result < Long.MIN_VALUE + digit) {
+        return false;
+      }
+      result -= digit;
+    }
+    if (!negative) {
+      if (result == Long.MIN_VALUE) {
+        return false;
+      }
+      result = -result;
+    }
+    longs[row] = result;
+    return true;
+  }
+
+  private boolean encodeDictionary(byte[] data, int numRows, int limit)
+      throws IOException {
+    int maxEntries = Math.min(numRows / 2, MAX_DICTIONARY_SIZE);
+    int tableSize = Integer.highestOneBit(Math.max(maxEntries, 1)) * 4;
+    if (hashTable.length < tableSize) {
+      hashTable = new int[tableSize];
+    }
+    if (dictionaryIndex.length < numRows) {
+      dictionaryIndex = new int[numRows];
+    }
+    int mask = tableSize - 1;
+    for (int i = 0; i < tableSize; i++) {
+      hashTable[i] = -1;
+    }
+
+    if (entryRows.length < maxEntries) {
+      entryRows = new int[maxEntries];
+    }
+    int numEntries = 0;
+    int entryBytes = 0;
+    for (int row = 0; row < numRows; row++) {
+      int start = cellStarts[row];
+      int length = cellLengths[row];
+      int slot = LazyUtils.hashBytes(data, start, length) & mask;
+      int entry;
+      while (true) {
+        entry = hashTable[slot];
+        if (entry < 0) {
+          if (numEntries == maxEntries) {
+            return false;
+          }
+          entry = numEntries++;
+          entryRows[entry] = row;
+          hashTable[slot] = entry;
+          entryBytes += WritableUtils.getVIntSize(length) + length;
+          if (entryBytes >= limit) {
+            return false;
+          }
+          break;
+        }
+        int entryRow = entryRows[entry];
+        if (WritableComparator.compareBytes(data, start, length, data,
+            cellStarts[entryRow], cellLengths[entryRow]) == 0) {
+          break;
+        }
+        slot = (slot + 1) & mask;
+      }
+      dictionaryIndex[row] = entry;
+    }
+
+    dictionaryOut.reset();
+    WritableUtils.writeVInt(dictionaryOut, numRows);
+    WritableUtils.writeVInt(dictionaryOut, numEntries);
+    for (int i = 0; i < numEntries; i++) {
+      int row = entryRows[i];
+      WritableUtils.writeVInt(dictionaryOut, cellLengths[row]);
+      dictionaryOut.write(data, cellStarts[row], cellLengths[row]);
+    }
+    for (int row = 0; row < numRows; row++) {
+      WritableUtils.writeVInt(dictionaryOut, dictionaryIndex[row]);
+    }
+    return true;
+  }
+
+  /**
+   * Decode the values of a column.
+   *
+   * @param encoding
+   *          the encoding of the values
+   * @param data
+   *          the encoded values
+   * @param length
+   *          the number of bytes of the encoded values
+   * @param out
+   *          receives the concatenated values
+   */
+  public void decode(byte encoding, byte[] data, int length,
+      NonSyncDataOutputBuffer out) throws IOException {
+    NonSyncDataInputBuffer in = lengthsIn;
+    in.reset(data, length);
+    out.reset();
+    switch (encoding) {
+    case PLAIN:
+      out.write(data, 0, length);
+      break;
+    case DICTIONARY: {
+      int numRows = WritableUtils.readVInt(in);
+      int numEntries = WritableUtils.readVInt(in);
+      if (cellStarts.length < numEntries) {
+        cellStarts = new int[numEntries];
+        cellLengths = new int[numEntries];
+      }
+      for (int i = 0; i < numEntries; i++) {
+        cellLengths[i] = WritableUtils.readVInt(in);
+        cellStarts[i] = in.getPosition();
+        in.skipBytes(cellLengths[i]);
+      }
+      for (int row = 0; row < numRows; row++) {
+        int entry = WritableUtils.readVInt(in);
+        out.write(data, cellStarts[entry], cellLengths[entry]);
+      }
+      break;
+    }
+    case DELTA: {
+      int numRows = WritableUtils.readVInt(in);
+      int row = 0;
+      while (row < numRows) {
+        long value = WritableUtils.readVLong(in);
+        long delta = WritableUtils.readVLong(in);
+        int runLength = WritableUtils.readVInt(in);
+        for (int i = 0; i < runLength; i++, row++) {
+          writeLong(value, out);
+          value += delta;
+        }
+      }
+      break;
+    }
+    default:
+      throw new IOException("Unknown RCFile column encoding: " + encoding);
+    }
+  }
+
+  // Long.MIN_VALUE cannot be negated, so its digits are written as they are
+  private static final byte[] MIN_LONG_BYTES = Long.toString(Long.MIN_VALUE).getBytes();
+
+  /**
+   * Write the bytes of Long.toString(value), without creating the string.
+   */
+  private void writeLong(long value, NonSyncDataOutputBuffer out)
+      throws IOException {
+    if (value == Long.MIN_VALUE) {
+      out.write(MIN_LONG_BYTES, 0, MIN_LONG_BYTES.length);
+      return;
+    }
+    int pos = MAX_LONG_DIGITS;
+    boolean negative = value < 0;
+    long v = negative ? -value : value;
+    do {
+      digits[--pos] = (byte) ('0' + v % 10);
+      v /= 10;
+    } while (v != 0);
+    if (negative) {
+      digits[--pos] = '-';
+    }
+    out.write(digits, pos, MAX_LONG_DIGITS - pos);
+  }
+}
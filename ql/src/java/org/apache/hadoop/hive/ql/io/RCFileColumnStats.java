@@ -0,0 +1,351 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.io;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.CharacterCodingException;
+
+import org.apache.hadoop.hive.serde.Constants;
+import org.apache.hadoop.hive.serde2.lazy.LazyByte;
+import org.apache.hadoop.hive.serde2.lazy.LazyInteger;
+import org.apache.hadoop.hive.serde2.lazy.LazyLong;
+import org.apache.hadoop.hive.serde2.lazy.LazyShort;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * Statistics of one column in a row group of an RCFile: the number of nulls,
+ * and the minimum and maximum of the other values.
+ *
+ * The statistics are collected from the text encoding of ColumnarSerDe, the
+ * values being parsed as the lazy objects parse them, so the bounds compare
+ * as the deserialized values do. A value which does not parse is a null. The
+ * number of nulls is -1 if it is unknown, e.g. for the types which are not
+ * parsed.
+ *
+ * The statistics created by {@link #forValues()} are collected from values
+ * which are already typed, by the update methods of each kind.
+ */
+public class RCFileColumnStats {
+
+  // kind of the bounds
+  public static final byte NONE = 0;
+  public static final byte LONG = 1;
+  public static final byte DOUBLE = 2;
+  public static final byte BYTES = 3;
+
+  // how the values are parsed
+  private static final int UNKNOWN_TYPE = 0;
+  private static final int STRING_TYPE = 1;
+  private static final int TINYINT_TYPE = 2;
+  private static final int SMALLINT_TYPE = 3;
+  private static final int INT_TYPE = 4;
+  private static final int BIGINT_TYPE = 5;
+  private static final int FLOAT_TYPE = 6;
+  private static final int DOUBLE_TYPE = 7;
+
+  // the values are given typed
+  private static final int VALUES_TYPE = 8;
+
+  private final int type;
+  private final byte[] nullSequence;
+
+  private long numNulls;
+  private byte kind;
+  private long longMin;
+  private long longMax;
+  private double doubleMin;
+  private double doubleMax;
+  private byte[] bytesMin = new byte[0];
+  private int bytesMinLength;
+  private byte[] bytesMax = new byte[0];
+  private int bytesMaxLength;
+  // the bounds can not be kept, e.g. after a NaN
+  private boolean noBounds;
+
+  /**
+   * Create statistics to be read.
+   */
+  public RCFileColumnStats() {
+    this(null, null);
+  }
+
+  /**
+   * Create statistics collecting the values of a column.
+   *
+   * @param typeName
+   *          name of the primitive type of the column, null if unknown
+   * @param nullSequence
+   *          the encoding of the nulls
+   */
+  public RCFileColumnStats(String typeName, byte[] nullSequence) {
+    this.nullSequence = nullSequence;
+    if (typeName == null || nullSequence == null) {
+      type = UNKNOWN_TYPE;
+    } else if (typeName.equals(Constants.STRING_TYPE_NAME)) {
+      type = STRING_TYPE;
+    } else if (typeName.equals(Constants.TINYINT_TYPE_NAME)) {
+      type = TINYINT_TYPE;
+    } else if (typeName.equals(Constants.SMALLINT_TYPE_NAME)) {
+      type = SMALLINT_TYPE;
+    } else if (typeName.equals(Constants.INT_TYPE_NAME)) {
+      type = INT_TYPE;
+    } else if (typeName.equals(Constants.BIGINT_TYPE_NAME)) {
+      type = BIGINT_TYPE;
+    } else if (typeName.equals(Constants.FLOAT_TYPE_NAME)) {
+      type = FLOAT_TYPE;
+    } else if (typeName.equals(Constants.DOUBLE_TYPE_NAME)) {
+      type = DOUBLE_TYPE;
+    } else {
+      type = UNKNOWN_TYPE;
+    }
+    reset();
+  }
+
+  private RCFileColumnStats(int type) {
+    this.type = type;
+    this.nullSequence = null;
+    reset();
+  }
+
+  /**
+   * Create statistics collecting typed values, given to updateNull,
+   * updateLong, updateDouble and updateBytes.
+   */
+  public static RCFileColumnStats forValues() {
+    return new RCFileColumnStats(VALUES_TYPE);
+  }
+
+  public void reset() {
+    numNulls = type == UNKNOWN_TYPE ? -1 : 0;
+    kind = NONE;
+    noBounds = false;
+  }
+
+  /**
+   * Add a value of the column, in the text encoding.
+   */
+  public void update(byte[] bytes, int start, int length) {
+    if (type == UNKNOWN_TYPE || type == VALUES_TYPE) {
+      return;
+    }
+    if (length == nullSequence.length
+        && WritableComparator.compareBytes(bytes, start, length, nullSequence,
+        0, nullSequence.length) == 0) {
+      numNulls++;
+      return;
+    }
+    try {
+      switch (type) {
+      case STRING_TYPE:
+        updateBytes(bytes, start, length);
+        break;
+      case TINYINT_TYPE:
+        updateLong(LazyByte.parseByte(bytes, start, length));
+        break;
+      case SMALLINT_TYPE:
+        updateLong(LazyShort.parseShort(bytes, start, length));
+        break;
+      case INT_TYPE:
+        updateLong(LazyInteger.parseInt(bytes, start, length));
+        break;
+      case BIGINT_TYPE:
+        updateLong(LazyLong.parseLong(bytes, start, length));
+        break;
+      case FLOAT_TYPE:
+        updateDouble(Float.parseFloat(Text.decode(bytes, start, length)));
+        break;
+      case DOUBLE_TYPE:
+        updateDouble(Double.parseDouble(Text.decode(bytes, start, length)));
+        break;
+      default:
+        break;
+      }
+    } catch (NumberFormatException e) {
+      numNulls++;
+    } catch (CharacterCodingException e) {
+      numNulls++;
+    }
+  }
+
+  public void updateNull() {
+    if (numNulls >= 0) {
+      numNulls++;
+    }
+  }
+
+  public void updateLong(long v) {
+    if (kind == NONE) {
+      kind = LONG;
+      longMin = v;
+      longMax = v;
+    } else if (v < longMin) {
+      longMin = v;
+    } else if (v > longMax) {
+      longMax = v;
+    }
+  }
+
+  public void updateDouble(double v) {
+    if (Double.isNaN(v)) {
+      noBounds = true;
+    } else if (kind == NONE) {
+      kind = DOUBLE;
+      doubleMin = v;
+      doubleMax = v;
+    } else if (v < doubleMin) {
+      doubleMin = v;
+    } else if (v > doubleMax) {
+      doubleMax = v;
+    }
+  }
+
+  public void updateBytes(byte[] bytes, int start, int length) {
+    if (kind == NONE) {
+      kind = BYTES;
+      bytesMin = copy(bytesMin, bytes, start, length);
+      bytesMinLength = length;
+      bytesMax = copy(bytesMax, bytes, start, length);
+      bytesMaxLength = length;
+    } else if (WritableComparator.compareBytes(bytes, start, length, bytesMin,
+        0, bytesMinLength) < 0) {
+      bytesMin = copy(bytesMin, bytes, start, length);
+      bytesMinLength = length;
+    } else if (WritableComparator.compareBytes(bytes, start, length, bytesMax,
+        0, bytesMaxLength) > 0) {
+      bytesMax = copy(bytesMax, bytes, start, length);
+      bytesMaxLength = length;
+    }
+  }
+
+  private static byte[] copy(byte[] dest, byte[] bytes, int start, int length) {
+    if (dest.length < length) {
+      dest = new byte[length];
+    }
+    System.arraycopy(bytes, start, dest, 0, length);
+    return dest;
+  }
+
+  /**
+   * Write the statistics of a column whose values are not known.
+   */
+  public static void writeUnknown(DataOutput out) throws IOException {
+    WritableUtils.writeVLong(out, -1);
+    out.writeByte(NONE);
+  }
+
+  public void write(DataOutput out) throws IOException {
+    WritableUtils.writeVLong(out, numNulls);
+    byte k = noBounds ? NONE : kind;
+    out.writeByte(k);
+    switch (k) {
+    case LONG:
+      WritableUtils.writeVLong(out, longMin);
+      WritableUtils.writeVLong(out, longMax);
+      break;
+    case DOUBLE:
+      out.writeDouble(doubleMin);
+      out.writeDouble(doubleMax);
+      break;
+    case BYTES:
+      WritableUtils.writeVInt(out, bytesMinLength);
+      out.write(bytesMin, 0, bytesMinLength);
+      WritableUtils.writeVInt(out, bytesMaxLength);
+      out.write(bytesMax, 0, bytesMaxLength);
+      break;
+    default:
+      break;
+    }
+  }
+
+  public void readFields(DataInput in) throws IOException {
+    numNulls = WritableUtils.readVLong(in);
+    kind = in.readByte();
+    noBounds = false;
+    switch (kind) {
+    case LONG:
+      longMin = WritableUtils.readVLong(in);
+      longMax = WritableUtils.readVLong(in);
+      break;
+    case DOUBLE:
+      doubleMin = in.readDouble();
+      doubleMax = in.readDouble();
+      break;
+    case BYTES:
+      bytesMinLength = WritableUtils.readVInt(in);
+      if (bytesMin.length < bytesMinLength) {
+        bytesMin = new byte[bytesMinLength];
+      }
+      in.readFully(bytesMin, 0, bytesMinLength);
+      bytesMaxLength = WritableUtils.readVInt(in);
+      if (bytesMax.length < bytesMaxLength) {
+        bytesMax = new byte[bytesMaxLength];
+      }
+      in.readFully(bytesMax, 0, bytesMaxLength);
+      break;
+    case NONE:
+      break;
+    default:
+      throw new IOException("Unknown kind of RCFile column statistics: " + kind);
+    }
+  }
+
+  /**
+   * @return the number of nulls, -1 if unknown
+   */
+  public long getNumNulls() {
+    return numNulls;
+  }
+
+  /**
+   * @return the kind of the bounds, NONE if there are no known bounds
+   */
+  public byte getKind() {
+    return noBounds ? NONE : kind;
+  }
+
+  public long getLongMin() {
+    return longMin;
+  }
+
+  public long getLongMax() {
+    return longMax;
+  }
+
+  public double getDoubleMin() {
+    return doubleMin;
+  }
+
+  public double getDoubleMax() {
+    return doubleMax;
+  }
+
+  /**
+   * Compare the minimum or the maximum of a BYTES column with some bytes.
+   */
+  public int compareBytes(boolean min, byte[] bytes, int start, int length) {
+    if (min) {
+      return WritableComparator.compareBytes(bytesMin, 0, bytesMinLength, bytes, start, length);
+    }
+    return WritableComparator.compareBytes(bytesMax, 0, bytesMaxLength, bytes, start, length);
+  }
+}
@@ -26,7 +26,9 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hive.ql.exec.Utilities;
+import org.apache.hadoop.hive.serde.Constants;
 import org.apache.hadoop.hive.serde2.columnar.BytesRefArrayWritable;
+import org.apache.hadoop.hive.serde2.columnar.ColumnarSerDe;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.WritableComparable;
 import org.apache.hadoop.io.compress.CompressionCodec;
@@ -103,6 +105,23 @@ public class RCFileOutputFormat extends
     };
   }
 
+  /**
+   * Set the types and the null sequence of the columns for the column
+   * statistics, if the values are written in the text encoding of
+   * ColumnarSerDe. The types are cleared otherwise.
+   */
+  private static void setColumnTypes(Configuration conf, Properties tableProperties) {
+    String types = "";
+    if (ColumnarSerDe.class.getName().equals(
+        tableProperties.getProperty(Constants.SERIALIZATION_LIB))
+        && tableProperties.getProperty(Constants.ESCAPE_CHAR) == null) {
+      types = tableProperties.getProperty(Constants.LIST_COLUMN_TYPES, "");
+    }
+    conf.set(RCFile.COLUMN_TYPES_CONF_STR, types);
+    conf.set(RCFile.NULL_SEQUENCE_CONF_STR, tableProperties.getProperty(
+        Constants.SERIALIZATION_NULL_FORMAT, "\\N"));
+  }
+
   /**
    * create the final out file.
    * 
@@ -134,6 +153,7 @@ public class RCFileOutputFormat extends
     }
 
     RCFileOutputFormat.setColumnNumber(jc, cols.length);
+    setColumnTypes(jc, tableProperties);
     final RCFile.Writer outWriter = Utilities.createRCFileWriter
       (jc, finalOutPath.getFileSystem(jc),
        finalOutPath, isCompressed);
@@ -53,10 +53,21 @@ public class RCFileRecordReader<K extends LongWritable, V extends BytesRefArrayW
     this.end = split.getStart() + split.getLength();
     this.conf = conf;
 
+    RCFileStatsFilter filter = RCFileStatsFilter.create(conf);
+    if (filter != null) {
+      in.setStatsFilter(filter, end);
+    }
+
     if (split.getStart() > in.getPosition()) {
       in.sync(split.getStart()); // sync to start
     }
 
+    int readAheadBlocks = conf.getInt(RCFile.READ_AHEAD_CONF_STR, 0);
+    if (readAheadBlocks > 0) {
+      in.setReadAhead(readAheadBlocks,
+          conf.getBoolean(RCFile.READ_AHEAD_DECOMPRESS_CONF_STR, false), end);
+    }
+
     this.start = in.getPosition();
     more = start < end;
   }
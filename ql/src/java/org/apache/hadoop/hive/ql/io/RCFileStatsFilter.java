@@ -0,0 +1,221 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.io;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.ql.exec.Utilities;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeConstantDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeGenericFuncDesc;
+import org.apache.hadoop.hive.ql.plan.TableScanDesc;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPAnd;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqual;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqualOrGreaterThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqualOrLessThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPGreaterThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPLessThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPNotEqual;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPNotNull;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPNull;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPOr;
+import org.apache.hadoop.hive.serde.Constants;
+
+/**
+ * Predicate pushed down to a table scan (TableScanDesc.FILTER_EXPR_CONF_STR),
+ * evaluated against the column statistics of the row groups of an RCFile. A
+ * row group can be skipped when no row of it can satisfy the predicate.
+ *
+ * Only the conjunctions, disjunctions, null checks and comparisons of a
+ * column with a constant are evaluated. Any other expression, or a column
+ * without statistics, may match.
+ */
+public class RCFileStatsFilter {
+
+  private final ExprNodeDesc predicate;
+  private final List<String> columnNames;
+
+  public RCFileStatsFilter(ExprNodeDesc predicate, List<String> columnNames) {
+    this.predicate = predicate;
+    this.columnNames = columnNames;
+  }
+
+  /**
+   * @return the filter of the predicate pushed in the configuration, or null
+   *         if there is none
+   */
+  public static RCFileStatsFilter create(Configuration conf) {
+    String serialized = conf.get(TableScanDesc.FILTER_EXPR_CONF_STR);
+    String columns = conf.get(Constants.LIST_COLUMNS);
+    if (serialized == null || columns == null) {
+      return null;
+    }
+    ExprNodeDesc predicate = Utilities.deserializeExpression(serialized, conf);
+    return new RCFileStatsFilter(predicate, Arrays.asList(columns.split(",")));
+  }
+
+  /**
+   * @return false if no row of a row group with these statistics satisfies
+   *         the predicate
+   */
+  public boolean mayMatch(RCFileColumnStats[] stats, int numRows) {
+    return mayMatch(predicate, stats, numRows);
+  }
+
+  private boolean mayMatch(ExprNodeDesc expr, RCFileColumnStats[] stats, int numRows) {
+    if (!(expr instanceof ExprNodeGenericFuncDesc)) {
+      return true;
+    }
+    GenericUDF udf = ((ExprNodeGenericFuncDesc) expr).getGenericUDF();
+    List<ExprNodeDesc> children = expr.getChildren();
+
+    if (udf instanceof GenericUDFOPAnd) {
+      for (ExprNodeDesc child : children) {
+        if (!mayMatch(child, stats, numRows)) {
+          return false;
+        }
+      }
+      return true;
+    }
+    if (udf instanceof GenericUDFOPOr) {
+      for (ExprNodeDesc child : children) {
+        if (mayMatch(child, stats, numRows)) {
+          return true;
+        }
+      }
+      return false;
+    }
+    if (udf instanceof GenericUDFOPNull || udf instanceof GenericUDFOPNotNull) {
+      RCFileColumnStats s = getStats(children.get(0), stats);
+      if (s == null || s.getNumNulls() < 0) {
+        return true;
+      }
+      return udf instanceof GenericUDFOPNull ? s.getNumNulls() > 0 : s.getNumNulls() < numRows;
+    }
+
+    if (children.size() != 2) {
+      return true;
+    }
+    ExprNodeDesc left = children.get(0);
+    ExprNodeDesc right = children.get(1);
+    boolean flip = false;
+    if (left instanceof ExprNodeConstantDesc && right instanceof ExprNodeColumnDesc) {
+      ExprNodeDesc t = left;
+      left = right;
+      right = t;
+      flip = true;
+    }
+    if (!(right instanceof ExprNodeConstantDesc)) {
+      return true;
+    }
+    RCFileColumnStats s = getStats(left, stats);
+    Object constant = ((ExprNodeConstantDesc) right).getValue();
+    if (s == null || constant == null) {
+      return true;
+    }
+    if (s.getNumNulls() == numRows) {
+      // null compares to nothing
+      return false;
+    }
+    Integer cmpMin = compare(s, true, constant);
+    Integer cmpMax = compare(s, false, constant);
+    if (cmpMin == null || cmpMax == null) {
+      return true;
+    }
+
+    if (udf instanceof GenericUDFOPEqual) {
+      return cmpMin <= 0 && cmpMax >= 0;
+    } else if (udf instanceof GenericUDFOPNotEqual) {
+      return cmpMin != 0 || cmpMax != 0;
+    } else if (udf instanceof GenericUDFOPLessThan) {
+      return flip ? cmpMax > 0 : cmpMin < 0;
+    } else if (udf instanceof GenericUDFOPEqualOrLessThan) {
+      return flip ? cmpMax >= 0 : cmpMin <= 0;
+    } else if (udf instanceof GenericUDFOPGreaterThan) {
+      return flip ? cmpMin < 0 : cmpMax > 0;
+    } else if (udf instanceof GenericUDFOPEqualOrGreaterThan) {
+      return flip ? cmpMin <= 0 : cmpMax >= 0;
+    }
+    return true;
+  }
+
+  private RCFileColumnStats getStats(ExprNodeDesc expr, RCFileColumnStats[] stats) {
+    if (!(expr instanceof ExprNodeColumnDesc)) {
+      return null;
+    }
+    int index = columnNames.indexOf(((ExprNodeColumnDesc) expr).getColumn());
+    // partition and virtual columns are after the columns of the file
+    if (index < 0 || index >= stats.length) {
+      return null;
+    }
+    return stats[index];
+  }
+
+  /**
+   * Compare the minimum or the maximum of a column with a constant.
+   *
+   * @return the sign of the comparison, or null if they can not be compared
+   */
+  private static Integer compare(RCFileColumnStats s, boolean min, Object constant) {
+    switch (s.getKind()) {
+    case RCFileColumnStats.LONG:
+      long l = min ? s.getLongMin() : s.getLongMax();
+      if (constant instanceof Long || constant instanceof Integer
+          || constant instanceof Short || constant instanceof Byte) {
+        long c = ((Number) constant).longValue();
+        return l < c ? -1 : (l == c ? 0 : 1);
+      }
+      if (constant instanceof Double || constant instanceof Float) {
+        return compare((double) l, ((Number) constant).doubleValue());
+      }
+      return null;
+    case RCFileColumnStats.DOUBLE:
+      if (constant instanceof Number) {
+        return compare(min ? s.getDoubleMin() : s.getDoubleMax(),
+            ((Number) constant).doubleValue());
+      }
+      return null;
+    case RCFileColumnStats.BYTES:
+      if (constant instanceof String) {
+        try {
+          byte[] c = ((String) constant).getBytes("UTF-8");
+          int cmp = s.compareBytes(min, c, 0, c.length);
+          return cmp < 0 ? -1 : (cmp == 0 ? 0 : 1);
+        } catch (UnsupportedEncodingException e) {
+          return null;
+        }
+      }
+      return null;
+    default:
+      return null;
+    }
+  }
+
+  private static Integer compare(double v, double c) {
+    if (Double.isNaN(c)) {
+      return null;
+    }
+    return v < c ? -1 : (v == c ? 0 : 1);
+  }
+}
@@ -0,0 +1,212 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.io;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatchCtx;
+import org.apache.hadoop.hive.ql.io.RCFile.Reader;
+import org.apache.hadoop.hive.ql.plan.PartitionDesc;
+import org.apache.hadoop.hive.serde2.SerDeException;
+import org.apache.hadoop.hive.serde2.columnar.BytesRefArrayWritable;
+import org.apache.hadoop.hive.serde2.columnar.ColumnarSerDe;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.RecordReader;
+
+/**
+ * VectorizedRCFileRecordReader reads an RCFile split a row group at a time.
+ * The columns of each row group are decoded straight into the column vectors
+ * of a VectorizedRowBatch by VectorizedRowBatchCtx.addRowGroup(), rather
+ * than returned row by row for the ColumnarSerDe to wrap in lazy objects.
+ * The key is the number of rows read before the batch.
+ */
+public class VectorizedRCFileRecordReader
+    implements RecordReader<LongWritable, VectorizedRowBatch> {
+
+  private final Reader in;
+  private final long start;
+  private final long end;
+  private boolean more = true;
+
+  private final VectorizedRowBatchCtx context;
+  private final int batchSize;
+
+  // the cells of the columns of the current row group
+  private final BytesRefArrayWritable[] columns;
+  private int rowGroupSize = 0;
+  private int nextRowInGroup = 0;
+  private long rowsRead = 0;
+
+  /**
+   * Create a reader of the split of a file read by the ColumnarSerDe and
+   * partition of part, whose batches hold the rows the MapOperator makes of
+   * the file: the columns of the ColumnarSerDe followed by the partition
+   * columns.
+   *
+   * @return the reader, or null if the file is not read by a ColumnarSerDe
+   *         or some of its columns are not primitives of a type supported
+   *         in vectorized mode
+   */
+  public static VectorizedRCFileRecordReader create(Configuration conf,
+      FileSplit split, PartitionDesc part) throws IOException {
+    Class<?> serdeClass = part.getDeserializerClass();
+    String serdeClassName = serdeClass == null ? part.getSerdeClassName() : serdeClass.getName();
+    if (!ColumnarSerDe.class.getName().equals(serdeClassName)) {
+      return null;
+    }
+    Properties props = part.getProperties();
+    try {
+      ColumnarSerDe serde = new ColumnarSerDe();
+      serde.initialize(conf, props);
+      StructObjectInspector oi = (StructObjectInspector) serde.getObjectInspector();
+      if (!VectorizedRowBatchCtx.isVectorizable(oi)) {
+        return null;
+      }
+
+      // the partition values as MapOperator sets them
+      List<String> partColumns = new ArrayList<String>();
+      List<String> partValues = new ArrayList<String>();
+      String pcols = props.getProperty(
+          org.apache.hadoop.hive.metastore.api.Constants.META_TABLE_PARTITION_COLUMNS);
+      if (pcols != null && pcols.length() > 0) {
+        LinkedHashMap<String, String> partSpec = part.getPartSpec();
+        for (String key : pcols.trim().split("/")) {
+          partColumns.add(key);
+          partValues.add(partSpec == null ? "" : partSpec.get(key));
+        }
+      }
+      VectorizedRowBatchCtx context = new VectorizedRowBatchCtx(serde, partColumns,
+          partValues);
+      return new VectorizedRCFileRecordReader(conf, split, context,
+          oi.getAllStructFieldRefs().size());
+    } catch (SerDeException e) {
+      throw new IOException(e);
+    }
+  }
+
+  /**
+   * @param numColumns
+   *          the number of columns of the ColumnarSerDe of the context
+   */
+  public VectorizedRCFileRecordReader(Configuration conf, FileSplit split,
+      VectorizedRowBatchCtx context, int numColumns) throws IOException {
+    Path path = split.getPath();
+    FileSystem fs = path.getFileSystem(conf);
+    this.in = new RCFile.Reader(fs, path, conf);
+    this.end = split.getStart() + split.getLength();
+    this.context = context;
+    this.batchSize = HiveConf.getIntVar(conf, HiveConf.ConfVars.HIVE_VECTORIZATION_BATCH_SIZE);
+    this.columns = new BytesRefArrayWritable[numColumns];
+
+    RCFileStatsFilter filter = RCFileStatsFilter.create(conf);
+    if (filter != null) {
+      in.setStatsFilter(filter, end);
+    }
+
+    if (split.getStart() > in.getPosition()) {
+      in.sync(split.getStart()); // sync to start
+    }
+
+    int readAheadBlocks = conf.getInt(RCFile.READ_AHEAD_CONF_STR, 0);
+    if (readAheadBlocks > 0) {
+      in.setReadAhead(readAheadBlocks,
+          conf.getBoolean(RCFile.READ_AHEAD_DECOMPRESS_CONF_STR, false), end);
+    }
+
+    this.start = in.getPosition();
+    more = start < end;
+  }
+
+  public LongWritable createKey() {
+    return new LongWritable();
+  }
+
+  public VectorizedRowBatch createValue() {
+    return context.createBatch(batchSize);
+  }
+
+  @Override
+  public boolean next(LongWritable key, VectorizedRowBatch value)
+      throws IOException {
+    value.reset();
+    key.set(rowsRead);
+    while (!value.isFull()) {
+      if (nextRowInGroup == rowGroupSize && !nextRowGroup()) {
+        break;
+      }
+      nextRowInGroup += context.addRowGroup(value, columns, nextRowInGroup,
+          rowGroupSize - nextRowInGroup);
+    }
+    rowsRead += value.size;
+    return value.size > 0;
+  }
+
+  private boolean nextRowGroup() throws IOException {
+    if (!more) {
+      return false;
+    }
+    more = in.nextColumnsBatch() && in.lastSeenSyncPos() < end;
+    if (!more) {
+      return false;
+    }
+    // the columns which are not read, or not in the file, are nulls
+    for (int i = 0; i < columns.length; i++) {
+      columns[i] = i < in.getColumnNumber() ? in.getColumn(i, columns[i]) : null;
+    }
+    rowGroupSize = in.getRowGroupSize();
+    nextRowInGroup = 0;
+    return true;
+  }
+
+  /**
+   * Return the progress within the input split.
+   *
+   * @return 0.0 to 1.0 of the input byte range
+   */
+  public float getProgress() throws IOException {
+    if (end == start) {
+      return 0.0f;
+    } else {
+      return Math.min(1.0f, (in.getPosition() - start) / (float) (end - start));
+    }
+  }
+
+  public long getPos() throws IOException {
+    return in.getPosition();
+  }
+
+  public long getStart() {
+    return start;
+  }
+
+  public void close() throws IOException {
+    in.close();
+  }
+}
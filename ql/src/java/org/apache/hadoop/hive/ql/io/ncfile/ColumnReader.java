@@ -0,0 +1,428 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.io.ncfile;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.hive.ql.io.NonSyncDataInputBuffer;
+import org.apache.hadoop.hive.serde2.io.ByteWritable;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.hive.serde2.io.ShortWritable;
+import org.apache.hadoop.hive.serde2.objectinspector.StandardUnionObjectInspector.StandardUnion;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector.PrimitiveCategory;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.StructTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.UnionTypeInfo;
+import org.apache.hadoop.io.BooleanWritable;
+import org.apache.hadoop.io.FloatWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * ColumnReader reads the values of a node of an NCFile from its streams, and
+ * those of its children from theirs.
+ *
+ * The values are those of the standard writable object inspectors of the
+ * type of the node. A value of the previous row is reused if it is given.
+ */
+abstract class ColumnReader {
+
+  private final int firstStream;
+  private final NonSyncDataInputBuffer present = new NonSyncDataInputBuffer();
+  private boolean hasNulls;
+  private int presentBits;
+  private int numPresentBits;
+
+  protected ColumnReader(int firstStream) {
+    this.firstStream = firstStream;
+  }
+
+  /**
+   * Create the readers of a node and of its children.
+   *
+   * @param nextNode
+   *          the node to create, incremented past the node and its children
+   */
+  static ColumnReader create(NCFile.Schema schema, int[] nextNode) {
+    int node = nextNode[0]++;
+    TypeInfo type = schema.getNode(node);
+    int firstStream = schema.getFirstStream(node);
+    switch (type.getCategory()) {
+    case PRIMITIVE:
+      PrimitiveCategory category = ((PrimitiveTypeInfo) type).getPrimitiveCategory();
+      switch (category) {
+      case VOID:
+        return new VoidReader(firstStream);
+      case FLOAT:
+      case DOUBLE:
+        return new DoubleReader(firstStream, category);
+      case STRING:
+        return new StringReader(firstStream);
+      default:
+        return new LongReader(firstStream, category);
+      }
+    case LIST:
+      return new ListReader(firstStream, create(schema, nextNode));
+    case MAP:
+      return new MapReader(firstStream, create(schema, nextNode),
+          create(schema, nextNode));
+    case STRUCT:
+      int numFields = ((StructTypeInfo) type).getAllStructFieldTypeInfos().size();
+      ColumnReader[] fields = new ColumnReader[numFields];
+      for (int i = 0; i < numFields; i++) {
+        fields[i] = create(schema, nextNode);
+      }
+      return new StructReader(firstStream, fields);
+    default:
+      int numChildren = ((UnionTypeInfo) type).getAllUnionObjectTypeInfos().size();
+      ColumnReader[] children = new ColumnReader[numChildren];
+      for (int i = 0; i < numChildren; i++) {
+        children[i] = create(schema, nextNode);
+      }
+      return new UnionReader(firstStream, children);
+    }
+  }
+
+  /**
+   * Read the streams of a new row group.
+   *
+   * @param streams
+   *          the arrays holding the uncompressed streams of the row group,
+   *          indexed by stream
+   * @param starts
+   *          where each stream starts in its array
+   * @param lengths
+   *          the length of each stream
+   */
+  void startRowGroup(byte[][] streams, int[] starts, int[] lengths) {
+    present.reset(streams[firstStream], starts[firstStream], lengths[firstStream]);
+    hasNulls = lengths[firstStream] > 0;
+    numPresentBits = 0;
+  }
+
+  protected static void reset(NonSyncDataInputBuffer in, byte[][] streams,
+      int[] starts, int[] lengths, int stream) {
+    in.reset(streams[stream], starts[stream], lengths[stream]);
+  }
+
+  /**
+   * Read the next value, which may be null.
+   *
+   * @param previous
+   *          the value to reuse, or null
+   */
+  final Object next(Object previous) throws IOException {
+    if (hasNulls) {
+      if (numPresentBits == 0) {
+        presentBits = present.readUnsignedByte();
+        numPresentBits = 8;
+      }
+      numPresentBits--;
+      if ((presentBits & (1 << numPresentBits)) == 0) {
+        return null;
+      }
+    }
+    return nextValue(previous);
+  }
+
+  abstract Object nextValue(Object previous) throws IOException;
+
+  static class VoidReader extends ColumnReader {
+
+    VoidReader(int firstStream) {
+      super(firstStream);
+    }
+
+    @Override
+    Object nextValue(Object previous) {
+      return null;
+    }
+  }
+
+  /**
+   * The boolean and integer types.
+   */
+  static class LongReader extends ColumnReader {
+
+    private final int dataStream;
+    private final PrimitiveCategory category;
+    private final NonSyncDataInputBuffer data = new NonSyncDataInputBuffer();
+
+    LongReader(int firstStream, PrimitiveCategory category) {
+      super(firstStream);
+      dataStream = firstStream + 1;
+      this.category = category;
+    }
+
+    @Override
+    void startRowGroup(byte[][] streams, int[] starts, int[] lengths) {
+      super.startRowGroup(streams, starts, lengths);
+      reset(data, streams, starts, lengths, dataStream);
+    }
+
+    @Override
+    Object nextValue(Object previous) throws IOException {
+      long v = WritableUtils.readVLong(data);
+      switch (category) {
+      case BOOLEAN:
+        BooleanWritable b = previous instanceof BooleanWritable
+            ? (BooleanWritable) previous : new BooleanWritable();
+        b.set(v != 0);
+        return b;
+      case BYTE:
+        ByteWritable bw = previous instanceof ByteWritable
+            ? (ByteWritable) previous : new ByteWritable();
+        bw.set((byte) v);
+        return bw;
+      case SHORT:
+        ShortWritable s = previous instanceof ShortWritable
+            ? (ShortWritable) previous : new ShortWritable();
+        s.set((short) v);
+        return s;
+      case INT:
+        IntWritable i = previous instanceof IntWritable
+            ? (IntWritable) previous : new IntWritable();
+        i.set((int) v);
+        return i;
+      default:
+        LongWritable l = previous instanceof LongWritable
+            ? (LongWritable) previous : new LongWritable();
+        l.set(v);
+        return l;
+      }
+    }
+  }
+
+  /**
+   * The float and double types.
+   */
+  static class DoubleReader extends ColumnReader {
+
+    private final int dataStream;
+    private final boolean isFloat;
+    private final NonSyncDataInputBuffer data = new NonSyncDataInputBuffer();
+
+    DoubleReader(int firstStream, PrimitiveCategory category) {
+      super(firstStream);
+      dataStream = firstStream + 1;
+      isFloat = category == PrimitiveCategory.FLOAT;
+    }
+
+    @Override
+    void startRowGroup(byte[][] streams, int[] starts, int[] lengths) {
+      super.startRowGroup(streams, starts, lengths);
+      reset(data, streams, starts, lengths, dataStream);
+    }
+
+    @Override
+    Object nextValue(Object previous) throws IOException {
+      if (isFloat) {
+        FloatWritable f = previous instanceof FloatWritable
+            ? (FloatWritable) previous : new FloatWritable();
+        f.set(data.readFloat());
+        return f;
+      }
+      DoubleWritable d = previous instanceof DoubleWritable
+          ? (DoubleWritable) previous : new DoubleWritable();
+      d.set(data.readDouble());
+      return d;
+    }
+  }
+
+  static class StringReader extends ColumnReader {
+
+    private final int lengthStream;
+    private final NonSyncDataInputBuffer lengths = new NonSyncDataInputBuffer();
+    private byte[] data;
+    private int dataPosition;
+
+    StringReader(int firstStream) {
+      super(firstStream);
+      lengthStream = firstStream + 1;
+    }
+
+    @Override
+    void startRowGroup(byte[][] streams, int[] starts, int[] streamLengths) {
+      super.startRowGroup(streams, starts, streamLengths);
+      reset(lengths, streams, starts, streamLengths, lengthStream);
+      data = streams[lengthStream + 1];
+      dataPosition = starts[lengthStream + 1];
+    }
+
+    @Override
+    Object nextValue(Object previous) throws IOException {
+      int length = WritableUtils.readVInt(lengths);
+      Text t = previous instanceof Text ? (Text) previous : new Text();
+      t.set(data, dataPosition, length);
+      dataPosition += length;
+      return t;
+    }
+  }
+
+  static class ListReader extends ColumnReader {
+
+    private final int lengthStream;
+    private final NonSyncDataInputBuffer lengths = new NonSyncDataInputBuffer();
+    private final ColumnReader elements;
+
+    ListReader(int firstStream, ColumnReader elements) {
+      super(firstStream);
+      lengthStream = firstStream + 1;
+      this.elements = elements;
+    }
+
+    @Override
+    void startRowGroup(byte[][] streams, int[] starts, int[] streamLengths) {
+      super.startRowGroup(streams, starts, streamLengths);
+      reset(lengths, streams, starts, streamLengths, lengthStream);
+      elements.startRowGroup(streams, starts, streamLengths);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    Object nextValue(Object previous) throws IOException {
+      int length = WritableUtils.readVInt(lengths);
+      List<Object> list = previous instanceof ArrayList
+          ? (List<Object>) previous : new ArrayList<Object>(length);
+      int reused = Math.min(list.size(), length);
+      for (int i = 0; i < reused; i++) {
+        list.set(i, elements.next(list.get(i)));
+      }
+      for (int i = reused; i < length; i++) {
+        list.add(elements.next(null));
+      }
+      while (list.size() > length) {
+        list.remove(list.size() - 1);
+      }
+      return list;
+    }
+  }
+
+  static class MapReader extends ColumnReader {
+
+    private final int lengthStream;
+    private final NonSyncDataInputBuffer lengths = new NonSyncDataInputBuffer();
+    private final ColumnReader keys;
+    private final ColumnReader values;
+
+    MapReader(int firstStream, ColumnReader keys, ColumnReader values) {
+      super(firstStream);
+      lengthStream = firstStream + 1;
+      this.keys = keys;
+      this.values = values;
+    }
+
+    @Override
+    void startRowGroup(byte[][] streams, int[] starts, int[] streamLengths) {
+      super.startRowGroup(streams, starts, streamLengths);
+      reset(lengths, streams, starts, streamLengths, lengthStream);
+      keys.startRowGroup(streams, starts, streamLengths);
+      values.startRowGroup(streams, starts, streamLengths);
+    }
+
+    @Override
+    Object nextValue(Object previous) throws IOException {
+      int length = WritableUtils.readVInt(lengths);
+      // the keys of a map are not reused, as they are hashed
+      Map<Object, Object> map = new HashMap<Object, Object>(length * 4 / 3 + 1);
+      for (int i = 0; i < length; i++) {
+        Object key = keys.next(null);
+        map.put(key, values.next(null));
+      }
+      return map;
+    }
+  }
+
+  static class StructReader extends ColumnReader {
+
+    private final ColumnReader[] fields;
+
+    StructReader(int firstStream, ColumnReader[] fields) {
+      super(firstStream);
+      this.fields = fields;
+    }
+
+    @Override
+    void startRowGroup(byte[][] streams, int[] starts, int[] streamLengths) {
+      super.startRowGroup(streams, starts, streamLengths);
+      for (ColumnReader field : fields) {
+        field.startRowGroup(streams, starts, streamLengths);
+      }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    Object nextValue(Object previous) throws IOException {
+      List<Object> struct;
+      if (previous instanceof ArrayList
+          && ((List<Object>) previous).size() == fields.length) {
+        struct = (List<Object>) previous;
+      } else {
+        struct = new ArrayList<Object>(fields.length);
+        for (int i = 0; i < fields.length; i++) {
+          struct.add(null);
+        }
+      }
+      for (int i = 0; i < fields.length; i++) {
+        struct.set(i, fields[i].next(struct.get(i)));
+      }
+      return struct;
+    }
+  }
+
+  static class UnionReader extends ColumnReader {
+
+    private final int tagStream;
+    private final NonSyncDataInputBuffer tags = new NonSyncDataInputBuffer();
+    private final ColumnReader[] children;
+
+    UnionReader(int firstStream, ColumnReader[] children) {
+      super(firstStream);
+      tagStream = firstStream + 1;
+      this.children = children;
+    }
+
+    @Override
+    void startRowGroup(byte[][] streams, int[] starts, int[] streamLengths) {
+      super.startRowGroup(streams, starts, streamLengths);
+      reset(tags, streams, starts, streamLengths, tagStream);
+      for (ColumnReader child : children) {
+        child.startRowGroup(streams, starts, streamLengths);
+      }
+    }
+
+    @Override
+    Object nextValue(Object previous) throws IOException {
+      byte tag = tags.readByte();
+      StandardUnion union = previous instanceof StandardUnion
+          ? (StandardUnion) previous : new StandardUnion();
+      Object reused = union.getTag() == tag ? union.getObject() : null;
+      union.setTag(tag);
+      union.setObject(children[tag].next(reused));
+      return union;
+    }
+  }
+}
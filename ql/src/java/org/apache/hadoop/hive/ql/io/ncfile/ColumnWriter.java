@@ -0,0 +1,432 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.io.ncfile;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.hive.ql.io.NonSyncDataOutputBuffer;
+import org.apache.hadoop.hive.ql.io.RCFileColumnStats;
+import org.apache.hadoop.hive.serde2.objectinspector.ListObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.MapObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.StructField;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.UnionObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector.Category;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector.PrimitiveCategory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.StringObjectInspector;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.StructTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.UnionTypeInfo;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * ColumnWriter writes the values of a node of an NCFile into its streams,
+ * and those of its children into theirs.
+ *
+ * The values are read with the object inspectors of the rows, and converted
+ * to the type of the node if they are of another primitive type.
+ */
+abstract class ColumnWriter {
+
+  private final NonSyncDataOutputBuffer present;
+  // the bits of the values not yet written to PRESENT
+  private int presentBits;
+  private int numPresentBits;
+  private boolean hasNulls;
+
+  // the statistics of a top-level primitive column, null otherwise
+  protected RCFileColumnStats stats;
+
+  protected ColumnWriter(NonSyncDataOutputBuffer[] streams, int firstStream) {
+    present = streams[firstStream];
+  }
+
+  /**
+   * Create the writers of a node and of its children.
+   *
+   * @param nextNode
+   *          the node to create, incremented past the node and its children
+   * @param topLevel
+   *          whether the node is a top-level column, of which statistics are
+   *          collected if it is primitive
+   */
+  static ColumnWriter create(NCFile.Schema schema, int[] nextNode,
+      NonSyncDataOutputBuffer[] streams, boolean topLevel) {
+    int node = nextNode[0]++;
+    TypeInfo type = schema.getNode(node);
+    int firstStream = schema.getFirstStream(node);
+    ColumnWriter writer;
+    switch (type.getCategory()) {
+    case PRIMITIVE:
+      PrimitiveCategory category = ((PrimitiveTypeInfo) type).getPrimitiveCategory();
+      switch (category) {
+      case VOID:
+        writer = new VoidWriter(streams, firstStream);
+        break;
+      case FLOAT:
+      case DOUBLE:
+        writer = new DoubleWriter(streams, firstStream, category);
+        break;
+      case STRING:
+        writer = new StringWriter(streams, firstStream);
+        break;
+      default:
+        writer = new LongWriter(streams, firstStream, category);
+        break;
+      }
+      if (topLevel) {
+        writer.stats = RCFileColumnStats.forValues();
+      }
+      break;
+    case LIST:
+      writer = new ListWriter(streams, firstStream, create(schema, nextNode,
+          streams, false));
+      break;
+    case MAP:
+      writer = new MapWriter(streams, firstStream, create(schema, nextNode,
+          streams, false), create(schema, nextNode, streams, false));
+      break;
+    default:
+      int numChildren = type.getCategory() == Category.STRUCT
+          ? ((StructTypeInfo) type).getAllStructFieldTypeInfos().size()
+          : ((UnionTypeInfo) type).getAllUnionObjectTypeInfos().size();
+      ColumnWriter[] children = new ColumnWriter[numChildren];
+      for (int i = 0; i < numChildren; i++) {
+        children[i] = create(schema, nextNode, streams, node == 0);
+      }
+      if (type.getCategory() == Category.STRUCT) {
+        writer = new StructWriter(streams, firstStream, children);
+      } else {
+        writer = new UnionWriter(streams, firstStream, children);
+      }
+      break;
+    }
+    return writer;
+  }
+
+  /**
+   * Write a value, which may be null.
+   */
+  final void write(Object o, ObjectInspector oi) throws IOException {
+    boolean isNull = o == null || (oi.getCategory() == Category.PRIMITIVE
+        && ((PrimitiveObjectInspector) oi).getPrimitiveCategory() == PrimitiveCategory.VOID);
+    presentBits = (presentBits << 1) | (isNull ? 0 : 1);
+    if (++numPresentBits == 8) {
+      present.write(presentBits);
+      presentBits = 0;
+      numPresentBits = 0;
+    }
+    if (isNull) {
+      hasNulls = true;
+      if (stats != null) {
+        stats.updateNull();
+      }
+    } else {
+      writeValue(o, oi);
+    }
+  }
+
+  abstract void writeValue(Object o, ObjectInspector oi) throws IOException;
+
+  /**
+   * Complete the streams of the row group of the node and of its children.
+   */
+  void finishRowGroup() throws IOException {
+    if (numPresentBits > 0) {
+      present.write(presentBits << (8 - numPresentBits));
+      presentBits = 0;
+      numPresentBits = 0;
+    }
+    if (!hasNulls) {
+      present.reset();
+    }
+    hasNulls = false;
+  }
+
+  /**
+   * @return the statistics of the row group, which are then reset
+   */
+  RCFileColumnStats takeStats() {
+    RCFileColumnStats result = stats;
+    if (stats != null) {
+      stats = RCFileColumnStats.forValues();
+    }
+    return result;
+  }
+
+  /**
+   * A column of nulls.
+   */
+  static class VoidWriter extends ColumnWriter {
+
+    VoidWriter(NonSyncDataOutputBuffer[] streams, int firstStream) {
+      super(streams, firstStream);
+    }
+
+    @Override
+    void writeValue(Object o, ObjectInspector oi) {
+    }
+  }
+
+  /**
+   * The boolean and integer types.
+   */
+  static class LongWriter extends ColumnWriter {
+
+    private final NonSyncDataOutputBuffer data;
+    private final PrimitiveCategory category;
+
+    LongWriter(NonSyncDataOutputBuffer[] streams, int firstStream,
+        PrimitiveCategory category) {
+      super(streams, firstStream);
+      data = streams[firstStream + 1];
+      this.category = category;
+    }
+
+    @Override
+    void writeValue(Object o, ObjectInspector oi) throws IOException {
+      PrimitiveObjectInspector poi = (PrimitiveObjectInspector) oi;
+      long v;
+      switch (category) {
+      case BOOLEAN:
+        v = PrimitiveObjectInspectorUtils.getBoolean(o, poi) ? 1 : 0;
+        break;
+      case BYTE:
+        v = PrimitiveObjectInspectorUtils.getByte(o, poi);
+        break;
+      case SHORT:
+        v = PrimitiveObjectInspectorUtils.getShort(o, poi);
+        break;
+      case INT:
+        v = PrimitiveObjectInspectorUtils.getInt(o, poi);
+        break;
+      default:
+        v = PrimitiveObjectInspectorUtils.getLong(o, poi);
+        break;
+      }
+      WritableUtils.writeVLong(data, v);
+      if (stats != null && category != PrimitiveCategory.BOOLEAN) {
+        stats.updateLong(v);
+      }
+    }
+  }
+
+  /**
+   * The float and double types.
+   */
+  static class DoubleWriter extends ColumnWriter {
+
+    private final NonSyncDataOutputBuffer data;
+    private final boolean isFloat;
+
+    DoubleWriter(NonSyncDataOutputBuffer[] streams, int firstStream,
+        PrimitiveCategory category) {
+      super(streams, firstStream);
+      data = streams[firstStream + 1];
+      isFloat = category == PrimitiveCategory.FLOAT;
+    }
+
+    @Override
+    void writeValue(Object o, ObjectInspector oi) throws IOException {
+      PrimitiveObjectInspector poi = (PrimitiveObjectInspector) oi;
+      double v;
+      if (isFloat) {
+        float f = PrimitiveObjectInspectorUtils.getFloat(o, poi);
+        data.writeFloat(f);
+        v = f;
+      } else {
+        v = PrimitiveObjectInspectorUtils.getDouble(o, poi);
+        data.writeDouble(v);
+      }
+      if (stats != null) {
+        stats.updateDouble(v);
+      }
+    }
+  }
+
+  static class StringWriter extends ColumnWriter {
+
+    private final NonSyncDataOutputBuffer lengths;
+    private final NonSyncDataOutputBuffer data;
+    private final Text text = new Text();
+
+    StringWriter(NonSyncDataOutputBuffer[] streams, int firstStream) {
+      super(streams, firstStream);
+      lengths = streams[firstStream + 1];
+      data = streams[firstStream + 2];
+    }
+
+    @Override
+    void writeValue(Object o, ObjectInspector oi) throws IOException {
+      PrimitiveObjectInspector poi = (PrimitiveObjectInspector) oi;
+      Text t;
+      if (poi.getPrimitiveCategory() == PrimitiveCategory.STRING) {
+        t = ((StringObjectInspector) poi).getPrimitiveWritableObject(o);
+      } else {
+        text.set(PrimitiveObjectInspectorUtils.getString(o, poi));
+        t = text;
+      }
+      WritableUtils.writeVInt(lengths, t.getLength());
+      data.write(t.getBytes(), 0, t.getLength());
+      if (stats != null) {
+        stats.updateBytes(t.getBytes(), 0, t.getLength());
+      }
+    }
+  }
+
+  static class ListWriter extends ColumnWriter {
+
+    private final NonSyncDataOutputBuffer lengths;
+    private final ColumnWriter elements;
+
+    ListWriter(NonSyncDataOutputBuffer[] streams, int firstStream,
+        ColumnWriter elements) {
+      super(streams, firstStream);
+      lengths = streams[firstStream + 1];
+      this.elements = elements;
+    }
+
+    @Override
+    void writeValue(Object o, ObjectInspector oi) throws IOException {
+      ListObjectInspector loi = (ListObjectInspector) oi;
+      ObjectInspector elementOI = loi.getListElementObjectInspector();
+      int length = loi.getListLength(o);
+      WritableUtils.writeVInt(lengths, length);
+      for (int i = 0; i < length; i++) {
+        elements.write(loi.getListElement(o, i), elementOI);
+      }
+    }
+
+    @Override
+    void finishRowGroup() throws IOException {
+      super.finishRowGroup();
+      elements.finishRowGroup();
+    }
+  }
+
+  static class MapWriter extends ColumnWriter {
+
+    private final NonSyncDataOutputBuffer lengths;
+    private final ColumnWriter keys;
+    private final ColumnWriter values;
+
+    MapWriter(NonSyncDataOutputBuffer[] streams, int firstStream,
+        ColumnWriter keys, ColumnWriter values) {
+      super(streams, firstStream);
+      lengths = streams[firstStream + 1];
+      this.keys = keys;
+      this.values = values;
+    }
+
+    @Override
+    void writeValue(Object o, ObjectInspector oi) throws IOException {
+      MapObjectInspector moi = (MapObjectInspector) oi;
+      ObjectInspector keyOI = moi.getMapKeyObjectInspector();
+      ObjectInspector valueOI = moi.getMapValueObjectInspector();
+      Map<?, ?> map = moi.getMap(o);
+      WritableUtils.writeVInt(lengths, map.size());
+      for (Map.Entry<?, ?> entry : map.entrySet()) {
+        keys.write(entry.getKey(), keyOI);
+        values.write(entry.getValue(), valueOI);
+      }
+    }
+
+    @Override
+    void finishRowGroup() throws IOException {
+      super.finishRowGroup();
+      keys.finishRowGroup();
+      values.finishRowGroup();
+    }
+  }
+
+  static class StructWriter extends ColumnWriter {
+
+    private final ColumnWriter[] fields;
+
+    StructWriter(NonSyncDataOutputBuffer[] streams, int firstStream,
+        ColumnWriter[] fields) {
+      super(streams, firstStream);
+      this.fields = fields;
+    }
+
+    @Override
+    void writeValue(Object o, ObjectInspector oi) throws IOException {
+      StructObjectInspector soi = (StructObjectInspector) oi;
+      List<? extends StructField> structFields = soi.getAllStructFieldRefs();
+      for (int i = 0; i < fields.length; i++) {
+        if (i < structFields.size()) {
+          StructField field = structFields.get(i);
+          fields[i].write(soi.getStructFieldData(o, field),
+              field.getFieldObjectInspector());
+        } else {
+          // a missing field is null
+          fields[i].write(null, null);
+        }
+      }
+    }
+
+    @Override
+    void finishRowGroup() throws IOException {
+      super.finishRowGroup();
+      for (ColumnWriter field : fields) {
+        field.finishRowGroup();
+      }
+    }
+
+    ColumnWriter getField(int field) {
+      return fields[field];
+    }
+  }
+
+  static class UnionWriter extends ColumnWriter {
+
+    private final NonSyncDataOutputBuffer tags;
+    private final ColumnWriter[] children;
+
+    UnionWriter(NonSyncDataOutputBuffer[] streams, int firstStream,
+        ColumnWriter[] children) {
+      super(streams, firstStream);
+      tags = streams[firstStream + 1];
+      this.children = children;
+    }
+
+    @Override
+    void writeValue(Object o, ObjectInspector oi) throws IOException {
+      UnionObjectInspector uoi = (UnionObjectInspector) oi;
+      byte tag = uoi.getTag(o);
+      tags.writeByte(tag);
+      children[tag].write(uoi.getField(o), uoi.getObjectInspectors().get(tag));
+    }
+
+    @Override
+    void finishRowGroup() throws IOException {
+      super.finishRowGroup();
+      for (ColumnWriter child : children) {
+        child.finishRowGroup();
+      }
+    }
+  }
+}
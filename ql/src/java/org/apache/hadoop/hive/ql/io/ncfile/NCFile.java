@@ -0,0 +1,336 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.io.ncfile;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.hive.ql.io.RCFileColumnStats;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector.Category;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector.PrimitiveCategory;
+import org.apache.hadoop.hive.serde2.typeinfo.ListTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.MapTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.StructTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.UnionTypeInfo;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * <code>NCFile</code>s, short of Nested Columnar File, store the rows of a
+ * table column by column like RCFile, but shred the nested types: the
+ * values of the fields of a struct, of the elements of an array and of the
+ * keys and values of a map are stored in their own streams, so a reader
+ * does not parse a whole map or array to get to its values, and reads only
+ * the streams of the columns it needs.
+ *
+ * <p>
+ * The type of the rows is a struct. Its nodes, numbered in pre-order, each
+ * have these streams:
+ * </p>
+ * <ul>
+ * <li>all the nodes: PRESENT, one bit per value of the node, 0 for a null.
+ * The stream is empty if the node has no null in the row group.</li>
+ * <li>boolean, tinyint, smallint, int and bigint: DATA, a vlong per non
+ * null value.</li>
+ * <li>float and double: DATA, the IEEE 754 values.</li>
+ * <li>string: LENGTH, a vint per non null value, and DATA, the bytes of the
+ * values.</li>
+ * <li>array and map: LENGTH, the number of elements of each non null
+ * value. The children of the node have the values of the elements, the
+ * keys then the values for a map.</li>
+ * <li>struct: the children have a value per non null struct.</li>
+ * <li>uniontype: TAG, a byte per non null value. The child of a tag has
+ * the values with the tag.</li>
+ * </ul>
+ *
+ * <h5>NCFile Format</h5>
+ * <ul>
+ * <li>Header: the magic bytes <b>NCF</b> and a version byte.</li>
+ * <li>Row groups: the streams of the row group, by node then in the above
+ * order, each compressed by the codec of the file if there is one. The
+ * streams of a top-level column are contiguous.</li>
+ * <li>Footer: the version (vint), the type of the rows, the class of the
+ * codec or an empty string, the number of rows (vlong), the number of row
+ * groups (vint), then the index entry of each row group: {@link RowGroup}.
+ * </li>
+ * <li>The length of the footer (int) and the magic bytes.</li>
+ * </ul>
+ *
+ * <p>
+ * The index gives the position in the file and the first row of each row
+ * group, so a reader seeks directly to a row, and the
+ * {@link RCFileColumnStats} of its top-level primitive columns, so a reader
+ * skips the row groups which can not match a pushed down predicate.
+ * </p>
+ */
+public final class NCFile {
+
+  public static final String ROW_GROUP_ROWS_CONF_STR = "hive.io.ncfile.row.group.rows";
+
+  public static final int DEFAULT_ROW_GROUP_ROWS = 10000;
+
+  public static final String ROW_GROUP_SIZE_CONF_STR = "hive.io.ncfile.row.group.size";
+
+  public static final int DEFAULT_ROW_GROUP_SIZE = 4 * 1024 * 1024;
+
+  static final byte[] MAGIC = new byte[] {(byte) 'N', (byte) 'C', (byte) 'F'};
+
+  static final byte VERSION = (byte) 1;
+
+  // the kinds of the streams of a node
+  static final int PRESENT = 0;
+  static final int DATA = 1;
+  static final int LENGTH = 2;
+  static final int TAG = 3;
+
+  private NCFile() {
+  }
+
+  /**
+   * The nodes of the type of the rows of a file, and their streams.
+   */
+  static class Schema {
+
+    private final StructTypeInfo type;
+    // the nodes in pre-order
+    private final List<TypeInfo> nodes = new ArrayList<TypeInfo>();
+    // the first stream of each node, and the number of streams at the end
+    private final int[] firstStreams;
+    // the first node of each top-level column, and the number of nodes at
+    // the end
+    private final int[] firstNodes;
+
+    Schema(StructTypeInfo type) {
+      this.type = type;
+      List<TypeInfo> columns = type.getAllStructFieldTypeInfos();
+      firstNodes = new int[columns.size() + 1];
+      nodes.add(type);
+      for (int i = 0; i < columns.size(); i++) {
+        firstNodes[i] = nodes.size();
+        addNodes(columns.get(i));
+      }
+      firstNodes[columns.size()] = nodes.size();
+
+      firstStreams = new int[nodes.size() + 1];
+      for (int i = 0; i < nodes.size(); i++) {
+        firstStreams[i + 1] = firstStreams[i] + getStreamKinds(nodes.get(i)).length;
+      }
+    }
+
+    private void addNodes(TypeInfo node) {
+      nodes.add(node);
+      switch (node.getCategory()) {
+      case PRIMITIVE:
+        break;
+      case LIST:
+        addNodes(((ListTypeInfo) node).getListElementTypeInfo());
+        break;
+      case MAP:
+        addNodes(((MapTypeInfo) node).getMapKeyTypeInfo());
+        addNodes(((MapTypeInfo) node).getMapValueTypeInfo());
+        break;
+      case STRUCT:
+        for (TypeInfo field : ((StructTypeInfo) node).getAllStructFieldTypeInfos()) {
+          addNodes(field);
+        }
+        break;
+      case UNION:
+        for (TypeInfo field : ((UnionTypeInfo) node).getAllUnionObjectTypeInfos()) {
+          addNodes(field);
+        }
+        break;
+      default:
+        throw new IllegalArgumentException("Unsupported type " + node);
+      }
+    }
+
+    /**
+     * @return the kinds of the streams of a node, in their order
+     */
+    static int[] getStreamKinds(TypeInfo node) {
+      if (node.getCategory() == Category.PRIMITIVE) {
+        PrimitiveCategory category = ((PrimitiveTypeInfo) node).getPrimitiveCategory();
+        switch (category) {
+        case VOID:
+          return new int[] {PRESENT};
+        case STRING:
+          return new int[] {PRESENT, LENGTH, DATA};
+        default:
+          return new int[] {PRESENT, DATA};
+        }
+      }
+      switch (node.getCategory()) {
+      case LIST:
+      case MAP:
+        return new int[] {PRESENT, LENGTH};
+      case UNION:
+        return new int[] {PRESENT, TAG};
+      default:
+        return new int[] {PRESENT};
+      }
+    }
+
+    StructTypeInfo getType() {
+      return type;
+    }
+
+    int getNumColumns() {
+      return firstNodes.length - 1;
+    }
+
+    int getNumNodes() {
+      return nodes.size();
+    }
+
+    TypeInfo getNode(int node) {
+      return nodes.get(node);
+    }
+
+    int getNumStreams() {
+      return firstStreams[nodes.size()];
+    }
+
+    int getFirstStream(int node) {
+      return firstStreams[node];
+    }
+
+    int getFirstNode(int column) {
+      return firstNodes[column];
+    }
+
+    /**
+     * @return the first stream of a top-level column, or the number of
+     *         streams for the column after the last one
+     */
+    int getColumnFirstStream(int column) {
+      return firstStreams[firstNodes[column]];
+    }
+  }
+
+  /**
+   * The index entry of a row group: where it is in the file, its first row,
+   * the lengths of its streams and the statistics of the top-level columns.
+   */
+  public static class RowGroup {
+
+    private long offset;
+    private long firstRow;
+    private int numRows;
+    // the length of each stream in the file, and uncompressed
+    private int[] streamLengths;
+    private int[] rawStreamLengths;
+    private RCFileColumnStats[] columnStats;
+
+    RowGroup() {
+    }
+
+    RowGroup(long offset, long firstRow, int numRows, int[] streamLengths,
+        int[] rawStreamLengths, RCFileColumnStats[] columnStats) {
+      this.offset = offset;
+      this.firstRow = firstRow;
+      this.numRows = numRows;
+      this.streamLengths = streamLengths;
+      this.rawStreamLengths = rawStreamLengths;
+      this.columnStats = columnStats;
+    }
+
+    /**
+     * @return the position of the row group in the file
+     */
+    public long getOffset() {
+      return offset;
+    }
+
+    /**
+     * @return the number of bytes of the row group in the file
+     */
+    public long getLength() {
+      long length = 0;
+      for (int streamLength : streamLengths) {
+        length += streamLength;
+      }
+      return length;
+    }
+
+    /**
+     * @return the number in the file of the first row of the row group
+     */
+    public long getFirstRow() {
+      return firstRow;
+    }
+
+    public int getNumRows() {
+      return numRows;
+    }
+
+    int getStreamLength(int stream) {
+      return streamLengths[stream];
+    }
+
+    int getRawStreamLength(int stream) {
+      return rawStreamLengths[stream];
+    }
+
+    /**
+     * @return the statistics of the top-level columns, unknown for the
+     *         columns which are not primitive
+     */
+    public RCFileColumnStats[] getColumnStats() {
+      return columnStats;
+    }
+
+    void write(DataOutput out) throws IOException {
+      WritableUtils.writeVLong(out, offset);
+      WritableUtils.writeVLong(out, firstRow);
+      WritableUtils.writeVInt(out, numRows);
+      for (int i = 0; i < streamLengths.length; i++) {
+        WritableUtils.writeVInt(out, streamLengths[i]);
+        WritableUtils.writeVInt(out, rawStreamLengths[i]);
+      }
+      for (RCFileColumnStats stats : columnStats) {
+        if (stats == null) {
+          RCFileColumnStats.writeUnknown(out);
+        } else {
+          stats.write(out);
+        }
+      }
+    }
+
+    void readFields(DataInput in, Schema schema) throws IOException {
+      offset = WritableUtils.readVLong(in);
+      firstRow = WritableUtils.readVLong(in);
+      numRows = WritableUtils.readVInt(in);
+      streamLengths = new int[schema.getNumStreams()];
+      rawStreamLengths = new int[schema.getNumStreams()];
+      for (int i = 0; i < streamLengths.length; i++) {
+        streamLengths[i] = WritableUtils.readVInt(in);
+        rawStreamLengths[i] = WritableUtils.readVInt(in);
+      }
+      columnStats = new RCFileColumnStats[schema.getNumColumns()];
+      for (int i = 0; i < columnStats.length; i++) {
+        columnStats[i] = new RCFileColumnStats();
+        columnStats[i].readFields(in);
+      }
+    }
+  }
+}
@@ -0,0 +1,134 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.io.ncfile;
+
+import java.io.IOException;
+import java.util.Properties;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.ql.io.HiveOutputFormat;
+import org.apache.hadoop.hive.serde2.typeinfo.StructTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoUtils;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordWriter;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.util.Progressable;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * NCFileOutputFormat.
+ *
+ */
+public class NCFileOutputFormat extends
+    FileOutputFormat<WritableComparable, NCFileRow> implements
+    HiveOutputFormat<WritableComparable, Writable> {
+
+  private static CompressionCodec getCodec(JobConf job, boolean isCompressed) {
+    if (!isCompressed) {
+      return null;
+    }
+    Class<? extends CompressionCodec> codecClass = getOutputCompressorClass(job,
+        DefaultCodec.class);
+    return ReflectionUtils.newInstance(codecClass, job);
+  }
+
+  /**
+   * {@inheritDoc} The type of the rows is the type of the object inspector
+   * of the first row.
+   */
+  @Override
+  public RecordWriter<WritableComparable, NCFileRow> getRecordWriter(
+      FileSystem ignored, final JobConf job, String name,
+      final Progressable progress) throws IOException {
+
+    Path outputPath = getWorkOutputPath(job);
+    final FileSystem fs = outputPath.getFileSystem(job);
+    if (!fs.exists(outputPath)) {
+      fs.mkdirs(outputPath);
+    }
+    final Path file = new Path(outputPath, name);
+    final CompressionCodec codec = getCodec(job, getCompressOutput(job));
+
+    return new RecordWriter<WritableComparable, NCFileRow>() {
+      private NCFileWriter out;
+
+      @Override
+      public void close(Reporter reporter) throws IOException {
+        if (out != null) {
+          out.close();
+        }
+      }
+
+      @Override
+      public void write(WritableComparable key, NCFileRow value)
+          throws IOException {
+        if (out == null) {
+          StructTypeInfo type = (StructTypeInfo) TypeInfoUtils
+              .getTypeInfoFromObjectInspector(value.getObjectInspector());
+          out = new NCFileWriter(fs, job, file, type, codec, progress);
+        }
+        out.addRow(value.getRow(), value.getObjectInspector());
+      }
+    };
+  }
+
+  /**
+   * create the final out file.
+   *
+   * @param jc
+   *          the job configuration file
+   * @param finalOutPath
+   *          the final output file to be created
+   * @param valueClass
+   *          the value class used for create
+   * @param isCompressed
+   *          whether the content is compressed or not
+   * @param tableProperties
+   *          the tableInfo of this file's corresponding table
+   * @param progress
+   *          progress used for status report
+   * @throws IOException
+   */
+  @Override
+  public org.apache.hadoop.hive.ql.exec.FileSinkOperator.RecordWriter getHiveRecordWriter(
+      JobConf jc, Path finalOutPath, Class<? extends Writable> valueClass,
+      boolean isCompressed, Properties tableProperties, Progressable progress) throws IOException {
+
+    final NCFileWriter outWriter = new NCFileWriter(finalOutPath.getFileSystem(jc),
+        jc, finalOutPath, NCFileSerDe.getRowType(tableProperties),
+        getCodec(jc, isCompressed), progress);
+
+    return new org.apache.hadoop.hive.ql.exec.FileSinkOperator.RecordWriter() {
+      public void write(Writable r) throws IOException {
+        NCFileRow row = (NCFileRow) r;
+        outWriter.addRow(row.getRow(), row.getObjectInspector());
+      }
+
+      public void close(boolean abort) throws IOException {
+        outWriter.close();
+      }
+    };
+  }
+}
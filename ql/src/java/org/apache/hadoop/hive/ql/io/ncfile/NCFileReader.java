@@ -0,0 +1,433 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.io.ncfile;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.ql.io.CodecPool;
+import org.apache.hadoop.hive.ql.io.NonSyncDataInputBuffer;
+import org.apache.hadoop.hive.ql.io.RCFileStatsFilter;
+import org.apache.hadoop.hive.serde2.typeinfo.StructTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoUtils;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionInputStream;
+import org.apache.hadoop.io.compress.Decompressor;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * Read the rows of an NCFile.
+ *
+ * The rows are lists of the values of the top-level columns, in the standard
+ * writable objects of their types. Only the streams of the columns set by
+ * {@link #setReadColumns(List)} are read, the other columns are null. The
+ * rows, and the values of the columns which are not maps, are reused from
+ * one row to the next.
+ */
+public class NCFileReader {
+
+  private final Path file;
+  private final FSDataInputStream in;
+  private final NCFile.Schema schema;
+  private final long numRows;
+  private final List<NCFile.RowGroup> rowGroups;
+
+  private CompressionCodec codec;
+  private Decompressor decompressor;
+  private NonSyncDataInputBuffer compressedIn;
+  private CompressionInputStream inflateFilter;
+  private DataInputStream inflateIn;
+
+  private final ColumnReader[] columns;
+  private boolean[] readColumns;
+  private RCFileStatsFilter statsFilter;
+  private int skippedRowGroups;
+
+  // the row groups to read are from firstGroup to endGroup
+  private int firstGroup;
+  private int endGroup;
+  private int nextGroup;
+  private NCFile.RowGroup currentGroup;
+  private int rowsLeftInGroup;
+  private long rowNumber;
+
+  // the streams of the current row group
+  private byte[] readBuffer = new byte[0];
+  private final byte[][] streams;
+  private final int[] streamStarts;
+  private final int[] streamLengths;
+
+  public NCFileReader(FileSystem fs, Path file, Configuration conf)
+      throws IOException {
+    this.file = file;
+    long fileLength = fs.getFileStatus(file).getLen();
+    in = fs.open(file);
+    try {
+      int tailLength = 4 + NCFile.MAGIC.length;
+      if (fileLength < NCFile.MAGIC.length + 1 + tailLength) {
+        throw new IOException(file + " not a NCFile");
+      }
+      byte[] header = new byte[NCFile.MAGIC.length + 1];
+      in.readFully(0, header);
+      byte[] tail = new byte[tailLength];
+      in.readFully(fileLength - tailLength, tail);
+      if (!Arrays.equals(NCFile.MAGIC, Arrays.copyOf(header, NCFile.MAGIC.length))
+          || !Arrays.equals(NCFile.MAGIC, Arrays.copyOfRange(tail, 4, tailLength))) {
+        throw new IOException(file + " not a NCFile");
+      }
+      if (header[NCFile.MAGIC.length] > NCFile.VERSION) {
+        throw new IOException(file + " is a version "
+            + header[NCFile.MAGIC.length] + " NCFile, newer than the reader");
+      }
+
+      int footerLength = ((tail[0] & 0xff) << 24) | ((tail[1] & 0xff) << 16)
+          | ((tail[2] & 0xff) << 8) | (tail[3] & 0xff);
+      byte[] footer = new byte[footerLength];
+      in.readFully(fileLength - tailLength - footerLength, footer);
+      NonSyncDataInputBuffer footerIn = new NonSyncDataInputBuffer();
+      footerIn.reset(footer, footerLength);
+
+      WritableUtils.readVInt(footerIn); // version
+      TypeInfo type = TypeInfoUtils.getTypeInfoFromTypeString(Text.readString(footerIn));
+      schema = new NCFile.Schema((StructTypeInfo) type);
+      String codecClassname = Text.readString(footerIn);
+      if (codecClassname.length() > 0) {
+        try {
+          Class<? extends CompressionCodec> codecClass = conf.getClassByName(
+              codecClassname).asSubclass(CompressionCodec.class);
+          codec = ReflectionUtils.newInstance(codecClass, conf);
+        } catch (ClassNotFoundException cnfe) {
+          throw new IllegalArgumentException(
+              "Unknown codec: " + codecClassname, cnfe);
+        }
+        decompressor = CodecPool.getDecompressor(codec);
+        compressedIn = new NonSyncDataInputBuffer();
+        inflateFilter = codec.createInputStream(compressedIn, decompressor);
+        inflateIn = new DataInputStream(inflateFilter);
+      }
+      numRows = WritableUtils.readVLong(footerIn);
+      int numRowGroups = WritableUtils.readVInt(footerIn);
+      List<NCFile.RowGroup> groups = new ArrayList<NCFile.RowGroup>(numRowGroups);
+      for (int i = 0; i < numRowGroups; i++) {
+        NCFile.RowGroup rowGroup = new NCFile.RowGroup();
+        rowGroup.readFields(footerIn, schema);
+        groups.add(rowGroup);
+      }
+      rowGroups = Collections.unmodifiableList(groups);
+    } catch (IOException e) {
+      in.close();
+      throw e;
+    } catch (RuntimeException e) {
+      in.close();
+      throw e;
+    }
+
+    columns = new ColumnReader[schema.getNumColumns()];
+    for (int i = 0; i < columns.length; i++) {
+      columns[i] = ColumnReader.create(schema, new int[] {schema.getFirstNode(i)});
+    }
+    readColumns = new boolean[columns.length];
+    Arrays.fill(readColumns, true);
+    streams = new byte[schema.getNumStreams()][];
+    streamStarts = new int[streams.length];
+    streamLengths = new int[streams.length];
+    endGroup = rowGroups.size();
+  }
+
+  /**
+   * @return the type of the rows
+   */
+  public StructTypeInfo getType() {
+    return schema.getType();
+  }
+
+  /**
+   * @return the number of rows of the file
+   */
+  public long getNumRows() {
+    return numRows;
+  }
+
+  /**
+   * @return the index of the row groups of the file
+   */
+  public List<NCFile.RowGroup> getRowGroups() {
+    return rowGroups;
+  }
+
+  /** Returns the compression codec of the file, or null. */
+  public CompressionCodec getCompressionCodec() {
+    return codec;
+  }
+
+  /**
+   * Read only the row groups which start in a range of bytes of the file,
+   * e.g. of an input split.
+   */
+  public void setRange(long start, long end) {
+    firstGroup = rowGroups.size();
+    endGroup = 0;
+    for (int i = 0; i < rowGroups.size(); i++) {
+      long offset = rowGroups.get(i).getOffset();
+      if (offset >= start && offset < end) {
+        firstGroup = Math.min(firstGroup, i);
+        endGroup = i + 1;
+      }
+    }
+    endGroup = Math.max(firstGroup, endGroup);
+    nextGroup = firstGroup;
+    rowsLeftInGroup = 0;
+  }
+
+  /**
+   * Skip the row groups whose column statistics show that none of their
+   * rows satisfies a predicate.
+   */
+  public void setStatsFilter(RCFileStatsFilter filter) {
+    statsFilter = filter;
+  }
+
+  /**
+   * @return the number of row groups skipped by the stats filter
+   */
+  public int getSkippedRowGroups() {
+    return skippedRowGroups;
+  }
+
+  /**
+   * Read only some top-level columns.
+   *
+   * @param columnIds
+   *          the columns to read, all the columns if it is null or empty
+   */
+  public void setReadColumns(List<Integer> columnIds) {
+    boolean all = columnIds == null || columnIds.isEmpty();
+    Arrays.fill(readColumns, all);
+    if (!all) {
+      for (Integer id : columnIds) {
+        if (id.intValue() < readColumns.length) {
+          readColumns[id.intValue()] = true;
+        }
+      }
+    }
+  }
+
+  /**
+   * @return true if there is a row left to read, positioning the reader on
+   *         its row group
+   */
+  public boolean hasNext() throws IOException {
+    while (rowsLeftInGroup == 0) {
+      if (nextGroup >= endGroup) {
+        return false;
+      }
+      NCFile.RowGroup rowGroup = rowGroups.get(nextGroup++);
+      if (statsFilter != null
+          && !statsFilter.mayMatch(rowGroup.getColumnStats(), rowGroup.getNumRows())) {
+        skippedRowGroups++;
+        continue;
+      }
+      readRowGroup(rowGroup);
+    }
+    return true;
+  }
+
+  /**
+   * Read the next row.
+   *
+   * @param previous
+   *          the row to reuse, or null
+   * @return the row, or null if there is no row left
+   */
+  @SuppressWarnings("unchecked")
+  public Object next(Object previous) throws IOException {
+    if (!hasNext()) {
+      return null;
+    }
+    List<Object> row;
+    if (previous instanceof ArrayList
+        && ((List<Object>) previous).size() == columns.length) {
+      row = (List<Object>) previous;
+    } else {
+      row = new ArrayList<Object>(columns.length);
+      for (int i = 0; i < columns.length; i++) {
+        row.add(null);
+      }
+    }
+    for (int i = 0; i < columns.length; i++) {
+      row.set(i, readColumns[i] ? columns[i].next(row.get(i)) : null);
+    }
+    rowsLeftInGroup--;
+    rowNumber++;
+    return row;
+  }
+
+  /**
+   * @return the number in the file of the row which {@link #next(Object)}
+   *         reads, once {@link #hasNext()} returned true
+   */
+  public long getRowNumber() {
+    return rowNumber;
+  }
+
+  /**
+   * Position the reader on a row of the file. The next rows are read up to
+   * the end of the file, whatever the range.
+   */
+  public void seekToRow(long row) throws IOException {
+    endGroup = rowGroups.size();
+    rowsLeftInGroup = 0;
+    nextGroup = endGroup;
+    int low = 0;
+    int high = rowGroups.size() - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      NCFile.RowGroup rowGroup = rowGroups.get(mid);
+      if (row < rowGroup.getFirstRow()) {
+        high = mid - 1;
+      } else if (row >= rowGroup.getFirstRow() + rowGroup.getNumRows()) {
+        low = mid + 1;
+      } else {
+        nextGroup = mid + 1;
+        readRowGroup(rowGroup);
+        // the rows before the row are read, not returned
+        Object skipped = null;
+        while (rowNumber < row) {
+          skipped = next(skipped);
+        }
+        return;
+      }
+    }
+  }
+
+  /**
+   * @return the position in the file of the row group being read
+   */
+  public long getPosition() {
+    if (rowsLeftInGroup > 0) {
+      return currentGroup.getOffset();
+    }
+    return nextGroup < rowGroups.size() ? rowGroups.get(nextGroup).getOffset() : 0;
+  }
+
+  /**
+   * @return the fraction of the row groups of the range which were read
+   */
+  public float getProgress() {
+    if (endGroup == firstGroup) {
+      return 1.0f;
+    }
+    return Math.min(1.0f, (nextGroup - firstGroup) / (float) (endGroup - firstGroup));
+  }
+
+  /**
+   * Read the streams of the columns to read in a row group, one contiguous
+   * range of the file per column.
+   */
+  private void readRowGroup(NCFile.RowGroup rowGroup) throws IOException {
+    long position = rowGroup.getOffset();
+    int stream = 0;
+    for (int column = 0; column < columns.length; column++) {
+      int firstStream = schema.getColumnFirstStream(column);
+      int endStream = schema.getColumnFirstStream(column + 1);
+      for (; stream < firstStream; stream++) {
+        position += rowGroup.getStreamLength(stream);
+      }
+      int length = 0;
+      for (int i = firstStream; i < endStream; i++) {
+        length += rowGroup.getStreamLength(i);
+      }
+      if (readColumns[column]) {
+        readColumn(rowGroup, position, length, firstStream, endStream);
+        columns[column].startRowGroup(streams, streamStarts, streamLengths);
+      }
+      position += length;
+      stream = endStream;
+    }
+    currentGroup = rowGroup;
+    rowsLeftInGroup = rowGroup.getNumRows();
+    rowNumber = rowGroup.getFirstRow();
+  }
+
+  private void readColumn(NCFile.RowGroup rowGroup, long position, int length,
+      int firstStream, int endStream) throws IOException {
+    byte[] buffer;
+    if (codec == null) {
+      // the streams are read in place, each column in its own buffer
+      buffer = streams[firstStream];
+      if (buffer == null || buffer.length < length) {
+        buffer = new byte[Math.max(length, buffer == null ? 0 : buffer.length * 2)];
+      }
+    } else {
+      if (readBuffer.length < length) {
+        readBuffer = new byte[Math.max(length, readBuffer.length * 2)];
+      }
+      buffer = readBuffer;
+    }
+    in.readFully(position, buffer, 0, length);
+
+    int start = 0;
+    for (int i = firstStream; i < endStream; i++) {
+      int streamLength = rowGroup.getStreamLength(i);
+      int rawLength = rowGroup.getRawStreamLength(i);
+      if (codec == null) {
+        streams[i] = buffer;
+        streamStarts[i] = start;
+      } else {
+        byte[] raw = streams[i];
+        if (raw == null || raw.length < rawLength) {
+          raw = new byte[Math.max(rawLength, raw == null ? 0 : raw.length * 2)];
+          streams[i] = raw;
+        }
+        if (rawLength > 0) {
+          compressedIn.reset(buffer, start, streamLength);
+          inflateFilter.resetState();
+          inflateIn.readFully(raw, 0, rawLength);
+        }
+        streamStarts[i] = 0;
+      }
+      streamLengths[i] = rawLength;
+      start += streamLength;
+    }
+  }
+
+  public void close() throws IOException {
+    in.close();
+    if (decompressor != null) {
+      CodecPool.returnDecompressor(decompressor);
+      decompressor = null;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return file.toString();
+  }
+}
@@ -0,0 +1,89 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.io.ncfile;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.ql.io.RCFileStatsFilter;
+import org.apache.hadoop.hive.serde2.ColumnProjectionUtils;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.RecordReader;
+
+/**
+ * NCFileRecordReader reads the rows of the row groups of an NCFile which
+ * start in a split, with the columns projected by ColumnProjectionUtils and
+ * the predicate pushed down to the table scan.
+ */
+public class NCFileRecordReader implements RecordReader<NullWritable, NCFileRow> {
+
+  private final NCFileReader in;
+
+  public NCFileRecordReader(Configuration conf, FileSplit split)
+      throws IOException {
+    Path path = split.getPath();
+    FileSystem fs = path.getFileSystem(conf);
+    in = new NCFileReader(fs, path, conf);
+    in.setRange(split.getStart(), split.getStart() + split.getLength());
+    in.setReadColumns(ColumnProjectionUtils.getReadColumnIDs(conf));
+
+    RCFileStatsFilter filter = RCFileStatsFilter.create(conf);
+    if (filter != null) {
+      in.setStatsFilter(filter);
+    }
+  }
+
+  public NullWritable createKey() {
+    return NullWritable.get();
+  }
+
+  public NCFileRow createValue() {
+    return new NCFileRow();
+  }
+
+  @Override
+  public boolean next(NullWritable key, NCFileRow value) throws IOException {
+    Object row = in.next(value.getRow());
+    if (row == null) {
+      return false;
+    }
+    value.set(row, null);
+    return true;
+  }
+
+  /**
+   * Return the progress within the input split.
+   *
+   * @return 0.0 to 1.0 of the row groups of the split
+   */
+  public float getProgress() throws IOException {
+    return in.getProgress();
+  }
+
+  public long getPos() throws IOException {
+    return in.getPosition();
+  }
+
+  public void close() throws IOException {
+    in.close();
+  }
+}
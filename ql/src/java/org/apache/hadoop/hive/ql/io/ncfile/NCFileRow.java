@@ -0,0 +1,64 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.io.ncfile;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.io.Writable;
+
+/**
+ * NCFileRow passes a row between NCFileSerDe and the NCFile readers and
+ * writers, which encode the row themselves: it is not serialized.
+ */
+public class NCFileRow implements Writable {
+
+  private Object row;
+  private ObjectInspector oi;
+
+  public Object getRow() {
+    return row;
+  }
+
+  /**
+   * @return the object inspector of the row, or null for the rows read from
+   *         an NCFile, which are in the standard writable objects of their
+   *         type
+   */
+  public ObjectInspector getObjectInspector() {
+    return oi;
+  }
+
+  public void set(Object row, ObjectInspector oi) {
+    this.row = row;
+    this.oi = oi;
+  }
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    throw new UnsupportedOperationException("NCFileRow is not serialized");
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    throw new UnsupportedOperationException("NCFileRow is not serialized");
+  }
+}
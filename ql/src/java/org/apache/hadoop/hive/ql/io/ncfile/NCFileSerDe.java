@@ -0,0 +1,123 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.io.ncfile;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.serde.Constants;
+import org.apache.hadoop.hive.serde2.SerDe;
+import org.apache.hadoop.hive.serde2.SerDeException;
+import org.apache.hadoop.hive.serde2.SerDeStats;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.typeinfo.StructTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoUtils;
+import org.apache.hadoop.io.Writable;
+
+/**
+ * NCFileSerDe is the SerDe of the tables stored in NCFiles. The files encode
+ * the rows themselves, so the SerDe only hands the rows over in an
+ * {@link NCFileRow}. The rows read are in the standard writable objects of
+ * the types of the columns.
+ *
+ * A table is stored in NCFiles with:
+ *
+ * <pre>
+ * ROW FORMAT SERDE 'org.apache.hadoop.hive.ql.io.ncfile.NCFileSerDe'
+ * STORED AS INPUTFORMAT 'org.apache.hadoop.hive.ql.io.ncfile.NCFileInputFormat'
+ * OUTPUTFORMAT 'org.apache.hadoop.hive.ql.io.ncfile.NCFileOutputFormat'
+ * </pre>
+ */
+public class NCFileSerDe implements SerDe {
+
+  public static final Log LOG = LogFactory.getLog(NCFileSerDe.class.getName());
+
+  private StructTypeInfo rowTypeInfo;
+  private ObjectInspector cachedObjectInspector;
+  private final NCFileRow serializeCache = new NCFileRow();
+  private final SerDeStats stats = new SerDeStats();
+
+  @Override
+  public void initialize(Configuration conf, Properties tbl)
+      throws SerDeException {
+    rowTypeInfo = getRowType(tbl);
+    cachedObjectInspector = TypeInfoUtils
+        .getStandardWritableObjectInspectorFromTypeInfo(rowTypeInfo);
+    LOG.debug("NCFileSerDe initialized with: " + rowTypeInfo);
+  }
+
+  /**
+   * @return the type of the rows of a table
+   */
+  static StructTypeInfo getRowType(Properties tbl) {
+    String columnNameProperty = tbl.getProperty(Constants.LIST_COLUMNS, "");
+    String columnTypeProperty = tbl.getProperty(Constants.LIST_COLUMN_TYPES, "");
+    List<String> columnNames;
+    List<TypeInfo> columnTypes;
+    if (columnNameProperty.length() == 0) {
+      columnNames = new ArrayList<String>();
+    } else {
+      columnNames = Arrays.asList(columnNameProperty.split(","));
+    }
+    if (columnTypeProperty.length() == 0) {
+      columnTypes = new ArrayList<TypeInfo>();
+    } else {
+      columnTypes = TypeInfoUtils.getTypeInfosFromTypeString(columnTypeProperty);
+    }
+    return (StructTypeInfo) TypeInfoFactory.getStructTypeInfo(columnNames,
+        columnTypes);
+  }
+
+  @Override
+  public Object deserialize(Writable blob) throws SerDeException {
+    return ((NCFileRow) blob).getRow();
+  }
+
+  @Override
+  public ObjectInspector getObjectInspector() throws SerDeException {
+    return cachedObjectInspector;
+  }
+
+  @Override
+  public Class<? extends Writable> getSerializedClass() {
+    return NCFileRow.class;
+  }
+
+  @Override
+  public Writable serialize(Object obj, ObjectInspector objInspector)
+      throws SerDeException {
+    serializeCache.set(obj, objInspector);
+    return serializeCache;
+  }
+
+  /**
+   * The raw data size is not known, as the rows are encoded by the writer.
+   */
+  @Override
+  public SerDeStats getSerDeStats() {
+    return stats;
+  }
+}
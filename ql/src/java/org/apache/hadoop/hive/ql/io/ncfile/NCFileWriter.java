@@ -0,0 +1,210 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.io.ncfile;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.ql.io.CodecPool;
+import org.apache.hadoop.hive.ql.io.NonSyncDataOutputBuffer;
+import org.apache.hadoop.hive.ql.io.RCFileColumnStats;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.typeinfo.StructTypeInfo;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionOutputStream;
+import org.apache.hadoop.io.compress.Compressor;
+import org.apache.hadoop.util.Progressable;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * Write the rows of a table to an NCFile.
+ *
+ * The rows are buffered column by column until a row group is full, i.e. it
+ * has {@link NCFile#ROW_GROUP_ROWS_CONF_STR} rows or its streams take
+ * {@link NCFile#ROW_GROUP_SIZE_CONF_STR} bytes before compression. The index
+ * of the row groups is written in the footer when the writer is closed.
+ */
+public class NCFileWriter {
+
+  // how often the size of the row group is checked
+  private static final int SIZE_CHECK_ROWS = 64;
+
+  private final FSDataOutputStream out;
+  private final NCFile.Schema schema;
+  private final CompressionCodec codec;
+  private final Progressable progress;
+  private final int rowGroupRows;
+  private final long rowGroupSize;
+
+  private final NonSyncDataOutputBuffer[] streams;
+  private final ColumnWriter.StructWriter writer;
+
+  private Compressor compressor;
+  private NonSyncDataOutputBuffer compressionBuffer;
+  private CompressionOutputStream deflateFilter;
+
+  private final List<NCFile.RowGroup> rowGroups = new ArrayList<NCFile.RowGroup>();
+  private long numRows;
+  private int rowGroupNumRows;
+
+  /**
+   * Create an NCFile.
+   *
+   * @param type
+   *          the type of the rows
+   * @param codec
+   *          the codec compressing the streams, or null
+   * @param progress
+   *          reported to when a row group is written, or null
+   */
+  public NCFileWriter(FileSystem fs, Configuration conf, Path name,
+      StructTypeInfo type, CompressionCodec codec, Progressable progress)
+      throws IOException {
+    this.schema = new NCFile.Schema(type);
+    this.codec = codec;
+    this.progress = progress;
+    rowGroupRows = Math.max(1, conf.getInt(NCFile.ROW_GROUP_ROWS_CONF_STR,
+        NCFile.DEFAULT_ROW_GROUP_ROWS));
+    rowGroupSize = conf.getLong(NCFile.ROW_GROUP_SIZE_CONF_STR,
+        NCFile.DEFAULT_ROW_GROUP_SIZE);
+
+    streams = new NonSyncDataOutputBuffer[schema.getNumStreams()];
+    for (int i = 0; i < streams.length; i++) {
+      streams[i] = new NonSyncDataOutputBuffer();
+    }
+    writer = (ColumnWriter.StructWriter) ColumnWriter.create(schema,
+        new int[] {0}, streams, false);
+
+    if (codec != null) {
+      ReflectionUtils.setConf(codec, conf);
+      compressor = CodecPool.getCompressor(codec);
+      compressionBuffer = new NonSyncDataOutputBuffer();
+      deflateFilter = codec.createOutputStream(compressionBuffer, compressor);
+    }
+
+    out = fs.create(name, progress);
+    out.write(NCFile.MAGIC);
+    out.writeByte(NCFile.VERSION);
+  }
+
+  /**
+   * Add a row.
+   *
+   * @param row
+   *          the row, a struct of the type of the file, not null
+   * @param oi
+   *          the object inspector of the row
+   */
+  public void addRow(Object row, ObjectInspector oi) throws IOException {
+    // the rows are not null, so the PRESENT stream of the root is empty
+    writer.writeValue(row, oi);
+    rowGroupNumRows++;
+    if (rowGroupNumRows >= rowGroupRows
+        || (rowGroupNumRows % SIZE_CHECK_ROWS == 0 && getBufferedSize() >= rowGroupSize)) {
+      flushRowGroup();
+    }
+  }
+
+  private long getBufferedSize() {
+    long size = 0;
+    for (NonSyncDataOutputBuffer stream : streams) {
+      size += stream.getLength();
+    }
+    return size;
+  }
+
+  /**
+   * @return the number of rows added
+   */
+  public long getNumRows() {
+    return numRows + rowGroupNumRows;
+  }
+
+  private void flushRowGroup() throws IOException {
+    if (rowGroupNumRows == 0) {
+      return;
+    }
+    writer.finishRowGroup();
+    int[] streamLengths = new int[streams.length];
+    int[] rawStreamLengths = new int[streams.length];
+    long offset = out.getPos();
+    for (int i = 0; i < streams.length; i++) {
+      NonSyncDataOutputBuffer stream = streams[i];
+      rawStreamLengths[i] = stream.getLength();
+      if (codec == null || stream.getLength() == 0) {
+        out.write(stream.getData(), 0, stream.getLength());
+        streamLengths[i] = stream.getLength();
+      } else {
+        compressionBuffer.reset();
+        deflateFilter.resetState();
+        deflateFilter.write(stream.getData(), 0, stream.getLength());
+        deflateFilter.finish();
+        out.write(compressionBuffer.getData(), 0, compressionBuffer.getLength());
+        streamLengths[i] = compressionBuffer.getLength();
+      }
+      stream.reset();
+    }
+
+    RCFileColumnStats[] columnStats = new RCFileColumnStats[schema.getNumColumns()];
+    for (int i = 0; i < columnStats.length; i++) {
+      columnStats[i] = writer.getField(i).takeStats();
+    }
+    rowGroups.add(new NCFile.RowGroup(offset, numRows, rowGroupNumRows,
+        streamLengths, rawStreamLengths, columnStats));
+    numRows += rowGroupNumRows;
+    rowGroupNumRows = 0;
+    if (progress != null) {
+      progress.progress();
+    }
+  }
+
+  /**
+   * Write the last row group and the footer, and close the file.
+   */
+  public void close() throws IOException {
+    try {
+      flushRowGroup();
+      NonSyncDataOutputBuffer footer = new NonSyncDataOutputBuffer();
+      WritableUtils.writeVInt(footer, NCFile.VERSION);
+      Text.writeString(footer, schema.getType().getTypeName());
+      Text.writeString(footer, codec == null ? "" : codec.getClass().getName());
+      WritableUtils.writeVLong(footer, numRows);
+      WritableUtils.writeVInt(footer, rowGroups.size());
+      for (NCFile.RowGroup rowGroup : rowGroups) {
+        rowGroup.write(footer);
+      }
+      out.write(footer.getData(), 0, footer.getLength());
+      out.writeInt(footer.getLength());
+      out.write(NCFile.MAGIC);
+    } finally {
+      out.close();
+      if (compressor != null) {
+        CodecPool.returnCompressor(compressor);
+        compressor = null;
+      }
+    }
+  }
+}
@@ -43,6 +43,7 @@ import org.apache.hadoop.hive.ql.exec.Task;
 import org.apache.hadoop.hive.ql.exec.Throttle;
 import org.apache.hadoop.hive.ql.exec.Utilities;
 import org.apache.hadoop.hive.ql.io.CombineHiveInputFormat;
+import org.apache.hadoop.hive.ql.io.RCFile;
 import org.apache.hadoop.hive.ql.plan.api.StageType;
 import org.apache.hadoop.hive.ql.session.SessionState;
 import org.apache.hadoop.hive.ql.session.SessionState.LogHelper;
@@ -165,6 +166,11 @@ public class BlockMergeTask extends Task<MergeWork> implements Serializable,
 
     try {
       addInputPaths(job, work);
+      if (hasColumnEncodings(job, work)) {
+        // the blocks are copied as they are, so the output file must be able
+        // to hold the encoded ones whatever the first input file is
+        job.setBoolean(RCFile.COLUMN_ENCODING_CONF_STR, true);
+      }
       
       Utilities.setMapRedWork(job, work, ctx.getMRTmpFileURI());
 
@@ -226,6 +232,26 @@ public class BlockMergeTask extends Task<MergeWork> implements Serializable,
     }
   }
 
+  /**
+   * @return true if one of the input files has column encodings
+   */
+  private boolean hasColumnEncodings(JobConf job, MergeWork work) throws IOException {
+    for (String path : work.getInputPaths()) {
+      Path inputPath = new Path(path);
+      FileSystem fs = inputPath.getFileSystem(job);
+      FileStatus[] files = fs.listStatus(inputPath);
+      if (files == null) {
+        continue;
+      }
+      for (FileStatus file : files) {
+        if (!file.isDir() && RCFile.hasColumnEncodings(fs, file.getPath())) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
   @Override
   public String getName() {
     return "RCFile Merge";
@@ -97,6 +97,10 @@ public class RCFileMergeMapper extends MapReduceBase implements
         codec = key.codec;
         columnNumber = key.keyBuffer.getColumnNumber();
         jc.setInt(RCFile.COLUMN_NUMBER_CONF_STR, columnNumber);
+        if (key.keyBuffer.hasColumnEncodings()) {
+          // keep the layout of the encoded blocks which are copied
+          jc.setBoolean(RCFile.COLUMN_ENCODING_CONF_STR, true);
+        }
         outWriter = new RCFile.Writer(fs, jc, outPath, null, codec);
       }
 
@@ -72,6 +72,7 @@ import org.apache.hadoop.hive.metastore.api.Role;
 import org.apache.hadoop.hive.metastore.api.SerDeInfo;
 import org.apache.hadoop.hive.ql.exec.Utilities;
 import org.apache.hadoop.hive.ql.index.HiveIndexHandler;
+import org.apache.hadoop.hive.ql.io.InputPathCache;
 import org.apache.hadoop.hive.ql.session.CreateTableAutomaticGrant;
 import org.apache.hadoop.hive.ql.session.SessionState;
 import org.apache.hadoop.hive.serde2.Deserializer;
@@ -1070,6 +1071,21 @@ public class Hive {
       boolean inheritTableSpecs)
       throws HiveException {
     Table tbl = getTable(tableName);
+    loadPartition(loadPath, tbl, partSpec, getPartition(tbl, partSpec, false), replace,
+        !holdDDLTime, inheritTableSpecs);
+  }
+
+  /**
+   * Loads a partition whose current metadata, if it exists, has been looked
+   * up already.
+   *
+   * @param oldPart the partition, or null if it does not exist
+   * @param updateMetastore if true, create or alter the partition in the
+   *          metastore once its files are in place
+   */
+  private void loadPartition(Path loadPath, Table tbl, Map<String, String> partSpec,
+      Partition oldPart, boolean replace, boolean updateMetastore,
+      boolean inheritTableSpecs) throws HiveException {
     try {
       /**
        * Move files before creating the partition since down stream processes
@@ -1078,7 +1094,6 @@ public class Hive {
        * processes might move forward with partial data
        */
 
-      Partition oldPart = getPartition(tbl, partSpec, false);
       Path oldPartPath = null;
       if(oldPart != null) {
         oldPartPath = oldPart.getPartitionPath();
@@ -1118,7 +1133,7 @@ public class Hive {
       }
 
       // recreate the partition if it existed before
-      if (!holdDDLTime) {
+      if (updateMetastore) {
         getPartition(tbl, partSpec, true, newPartPath.toString(), inheritTableSpecs);
       }
     } catch (IOException e) {
@@ -1168,7 +1183,8 @@ public class Hive {
       }
 
       // for each dynamically created DP directory, construct a full partition spec
-      // and load the partition based on that
+      Table tbl = getTable(tableName);
+      List<String> partNames = new ArrayList<String>(status.length);
       for (int i= 0; i < status.length; ++i) {
         // get the dynamically created directory
         Path partPath = status[i].getPath();
@@ -1178,15 +1194,40 @@ public class Hive {
         // generate a full partition specification
         LinkedHashMap<String, String> fullPartSpec = new LinkedHashMap<String, String>(partSpec);
         Warehouse.makeSpecFromName(fullPartSpec, partPath);
-      	fullPartSpecs.add(fullPartSpec);
+        fullPartSpecs.add(fullPartSpec);
+        List<String> partVals = new ArrayList<String>();
+        for (FieldSchema field : tbl.getPartCols()) {
+          partVals.add(fullPartSpec.get(field.getName()));
+        }
+        partNames.add(Warehouse.makePartName(tbl.getPartCols(), partVals));
+      }
+
+      // the partitions that exist already are looked up in batches, and the
+      // new ones are created together once all their files are in place
+      Map<String, Partition> oldParts = new HashMap<String, Partition>();
+      for (Partition oldPart : getPartitionsByNames(tbl, partNames)) {
+        oldParts.put(oldPart.getName(), oldPart);
+      }
+      List<Map<String, String>> newPartSpecs = new ArrayList<Map<String, String>>();
+      for (int i= 0; i < status.length; ++i) {
+        Path partPath = status[i].getPath();
+        LinkedHashMap<String, String> fullPartSpec = fullPartSpecs.get(i);
+        Partition oldPart = oldParts.get(partNames.get(i));
+        if (oldPart == null && !holdDDLTime) {
+          newPartSpecs.add(fullPartSpec);
+        }
 
         // finally load the partition -- move the file to the final table address
-      	loadPartition(partPath, tableName, fullPartSpec, replace, holdDDLTime, true);
-      	LOG.info("New loading path = " + partPath + " with partSpec " + fullPartSpec);
-    	}
+        loadPartition(partPath, tbl, fullPartSpec, oldPart, replace,
+            oldPart != null && !holdDDLTime, true);
+        LOG.info("New loading path = " + partPath + " with partSpec " + fullPartSpec);
+      }
+      createPartitions(tbl, newPartSpecs);
       return fullPartSpecs;
     } catch (IOException e) {
       throw new HiveException(e);
+    } catch (MetaException e) {
+      throw new HiveException(e);
     }
   }
 
@@ -1323,6 +1364,43 @@ public class Hive {
     return new Partition(tbl, partition);
   }
 
+  /**
+   * Creates partitions of a table at their default locations, with the
+   * storage descriptor of the table, in one call to the metastore.
+   *
+   * @param tbl
+   *          table for which partitions need to be created
+   * @param partSpecs
+   *          partition keys and their values, for each partition
+   * @throws HiveException
+   *           if table doesn't exist or one of the partitions already exists
+   */
+  public void createPartitions(Table tbl, List<? extends Map<String, String>> partSpecs)
+      throws HiveException {
+    if (partSpecs.isEmpty()) {
+      return;
+    }
+    List<org.apache.hadoop.hive.metastore.api.Partition> inParts =
+      new ArrayList<org.apache.hadoop.hive.metastore.api.Partition>(partSpecs.size());
+    for (Map<String, String> partSpec : partSpecs) {
+      for (FieldSchema field : tbl.getPartCols()) {
+        String val = partSpec.get(field.getName());
+        if (val == null || val.length() == 0) {
+          throw new HiveException("add partition: Value for key "
+              + field.getName() + " is null or empty");
+        }
+      }
+      inParts.add(new Partition(tbl, partSpec, null).getTPartition());
+    }
+
+    try {
+      getMSC().add_partitions(inParts);
+    } catch (Exception e) {
+      LOG.error(StringUtils.stringifyException(e));
+      throw new HiveException(e);
+    }
+  }
+
   public Partition getPartition(Table tbl, Map<String, String> partSpec,
       boolean forceCreate) throws HiveException {
     return getPartition(tbl, partSpec, forceCreate, null, true);
@@ -1887,6 +1965,8 @@ public class Hive {
       }
     } catch (IOException e) {
       throw new HiveException("copyFiles: error while moving files!!!", e);
+    } finally {
+      InputPathCache.invalidate(destf, fs.getConf());
     }
   }
 
@@ -1971,6 +2051,13 @@ public class Hive {
       }
     } catch (IOException e) {
       throw new HiveException(e.getMessage(), e);
+    } finally {
+      // the files of the locations changed, possibly within the same
+      // modification time
+      InputPathCache.invalidate(destf, conf);
+      if (oldPath != null) {
+        InputPathCache.invalidate(oldPath, conf);
+      }
     }
   }
 
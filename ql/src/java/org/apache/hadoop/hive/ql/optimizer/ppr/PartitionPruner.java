@@ -218,15 +218,25 @@ public class PartitionPruner implements Transform {
             // are on non-partition columns.
             unkn_parts.addAll(Hive.get().getPartitions(tab));
           } else if (Utilities.checkJDOPushDown(tab, compactExpr)) {
-            String filter = compactExpr.getExprString();
-            String oldFilter = prunerExpr.getExprString();
-
-            if (filter.equals(oldFilter)) {
-              // pruneExpr contains only partition columns
-              pruneByPushDown(tab, true_parts, filter);
-            } else {
-              // pruneExpr contains non-partition columns
-              pruneByPushDown(tab, unkn_parts, filter);
+            String filter = Utilities.generateJDOFilter(tab, compactExpr);
+            boolean onlyPartCols =
+                compactExpr.getExprString().equals(prunerExpr.getExprString());
+
+            try {
+              if (onlyPartCols) {
+                // pruneExpr contains only partition columns
+                pruneByPushDown(tab, true_parts, filter);
+              } else {
+                // pruneExpr contains non-partition columns
+                pruneByPushDown(tab, unkn_parts, filter);
+              }
+            } catch (MetaException e) {
+              // the metastore may not be able to evaluate the filter, e.g.
+              // on integral keys without direct SQL
+              LOG.info("Metastore cannot evaluate the filter " + filter
+                  + ", pruning by sequential scan: " + e.getMessage());
+              pruneBySequentialScan(tab, true_parts, unkn_parts, denied_parts, prunerExpr,
+                  rowObjectInspector);
             }
           } else {
             pruneBySequentialScan(tab, true_parts, unkn_parts, denied_parts, prunerExpr, rowObjectInspector);
@@ -451,6 +451,11 @@ public final class OpProcFactory {
     TableScanDesc tableScanDesc = tableScanOp.getConf();
     Table tbl = owi.getParseContext().getTopToTable().get(tableScanOp);
     if (!tbl.isNonNative()) {
+      if (hiveConf.getBoolVar(HiveConf.ConfVars.HIVEOPTRCFILESTATSFILTER)) {
+        // the predicate only lets RCFile skip row groups, Hive still
+        // evaluates it on the rows read
+        tableScanDesc.setFilterExpr(originalPredicate);
+      }
       return originalPredicate;
     }
     HiveStorageHandler storageHandler = tbl.getStorageHandler();
@@ -0,0 +1,301 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hadoop.hive.ql.exec.HashTableSinkOperator.HashTableSinkObjectCtx;
+import org.apache.hadoop.hive.ql.exec.persistence.AbstractMapJoinKey;
+import org.apache.hadoop.hive.ql.exec.persistence.HashMapWrapper;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinBloomFilter;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinDoubleKeys;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinHashTableFile;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinObjectValue;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinPartitionSpill;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinRowContainer;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinSingleKey;
+import org.apache.hadoop.hive.ql.plan.PlanUtils;
+import org.apache.hadoop.hive.ql.plan.TableDesc;
+import org.apache.hadoop.hive.serde.Constants;
+import org.apache.hadoop.hive.serde2.SerDe;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils.ObjectInspectorCopyOption;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * TestMapJoinHashTableFile.
+ *
+ */
+public class TestMapJoinHashTableFile extends TestCase {
+
+  private static final int VALUE_TAG = 1;
+
+  private void registerSerDe(int tag, String... columnTypes) throws Exception {
+    List<FieldSchema> fields = new ArrayList<FieldSchema>();
+    for (int i = 0; i < columnTypes.length; i++) {
+      fields.add(new FieldSchema("_col" + i, columnTypes[i], ""));
+    }
+    TableDesc desc = PlanUtils.getMapJoinKeyTableDesc(fields);
+    SerDe serde = (SerDe) ReflectionUtils.newInstance(desc.getDeserializerClass(), null);
+    serde.initialize(null, desc.getProperties());
+    MapJoinMetaData.put(Integer.valueOf(tag), new HashTableSinkObjectCtx(
+        ObjectInspectorUtils.getStandardObjectInspector(serde.getObjectInspector(),
+        ObjectInspectorCopyOption.WRITABLE), serde, desc, new JobConf()));
+  }
+
+  private MapJoinObjectValue newValue(int numRows, int key) throws Exception {
+    MapJoinRowContainer<Object[]> rows = new MapJoinRowContainer<Object[]>();
+    for (int i = 0; i < numRows; i++) {
+      rows.add(new Object[] {new Text("row" + i), i == 0 ? null : new IntWritable(key)});
+    }
+    return new MapJoinObjectValue(VALUE_TAG, rows);
+  }
+
+  private void checkRoundTrip(HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue> table)
+      throws Exception {
+    File file = File.createTempFile("TestMapJoinHashTableFile", ".hashtable");
+    try {
+      table.flushMemoryCacheToPersistent(file);
+      HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue> loaded =
+        new HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue>();
+      loaded.initilizePersistentHash(file.getPath());
+      HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue> mapped =
+        new HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue>();
+      mapped.initilizeMappedHash(file.getPath());
+      assertTrue(mapped.isMapped());
+
+      assertEquals(table.size(), loaded.size());
+      assertEquals(table.size(), mapped.size());
+      for (AbstractMapJoinKey key : table.keySet()) {
+        MapJoinObjectValue expected = table.get(key);
+        checkRows(expected, loaded.get(key));
+        checkRows(expected, mapped.get(key));
+        // the bloom filter is loaded with the entries
+        assertTrue(loaded.mightContain(key));
+        assertTrue(isIndexed(file, key));
+      }
+      mapped.close();
+      assertFalse(mapped.isMapped());
+    } finally {
+      file.delete();
+    }
+  }
+
+  private void checkRows(MapJoinObjectValue expected, MapJoinObjectValue actual)
+      throws Exception {
+    assertNotNull(actual);
+    assertEquals(VALUE_TAG, actual.getMetadataTag());
+    assertEquals(expected.getObj().size(), actual.getObj().size());
+    Object[] e = expected.getObj().first();
+    Object[] a = actual.getObj().first();
+    while (e != null) {
+      assertEquals(e.length, a.length);
+      for (int i = 0; i < e.length; i++) {
+        assertEquals(e[i], a[i]);
+      }
+      e = expected.getObj().next();
+      a = actual.getObj().next();
+    }
+    assertNull(a);
+  }
+
+  /**
+   * Find the key in the index of the file from its serialized bytes.
+   */
+  private boolean isIndexed(File file, AbstractMapJoinKey key) throws Exception {
+    byte[] bytes = new byte[(int) file.length()];
+    DataInputStream in = new DataInputStream(new FileInputStream(file));
+    in.readFully(bytes);
+    in.close();
+
+    DataOutputBuffer keyBytes = new DataOutputBuffer();
+    key.write(keyBytes);
+    int hash = MapJoinHashTableFile.hash(keyBytes.getData(), 0, keyBytes.getLength());
+    int numSlots = MapJoinHashTableFile.readInt(bytes, 8);
+    int indexStart = MapJoinHashTableFile.getIndexStart(MapJoinHashTableFile.readInt(bytes, 12));
+    int dataStart = indexStart + numSlots * MapJoinHashTableFile.SLOT_SIZE;
+    int slot = hash & (numSlots - 1);
+    while (true) {
+      int pos = indexStart + slot * MapJoinHashTableFile.SLOT_SIZE;
+      int offset = MapJoinHashTableFile.readInt(bytes, pos + 4) - 1;
+      if (offset < 0) {
+        return false;
+      }
+      if (MapJoinHashTableFile.readInt(bytes, pos) == hash
+          && MapJoinHashTableFile.readInt(bytes, dataStart + offset) == keyBytes.getLength()) {
+        boolean equal = true;
+        for (int i = 0; i < keyBytes.getLength(); i++) {
+          equal = equal && bytes[dataStart + offset + 4 + i] == keyBytes.getData()[i];
+        }
+        if (equal) {
+          return true;
+        }
+      }
+      slot = (slot + 1) & (numSlots - 1);
+    }
+  }
+
+  public void testSingleKey() throws Exception {
+    MapJoinMetaData.clear();
+    registerSerDe(-1, Constants.INT_TYPE_NAME);
+    registerSerDe(VALUE_TAG, Constants.STRING_TYPE_NAME, Constants.INT_TYPE_NAME);
+
+    HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue> table =
+      new HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue>();
+    for (int i = 0; i < 1000; i++) {
+      table.put(new MapJoinSingleKey(new IntWritable(i)), newValue(1 + i % 3, i));
+    }
+    checkRoundTrip(table);
+  }
+
+  public void testMappedMissingKeys() throws Exception {
+    MapJoinMetaData.clear();
+    registerSerDe(-1, Constants.STRING_TYPE_NAME);
+    registerSerDe(VALUE_TAG, Constants.STRING_TYPE_NAME, Constants.INT_TYPE_NAME);
+
+    HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue> table =
+      new HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue>();
+    for (int i = 0; i < 100; i += 2) {
+      table.put(new MapJoinSingleKey(new Text("k" + i)), newValue(2, i));
+    }
+    File file = File.createTempFile("TestMapJoinHashTableFile", ".hashtable");
+    try {
+      table.flushMemoryCacheToPersistent(file);
+      HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue> mapped =
+        new HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue>();
+      mapped.initilizeMappedHash(file.getPath());
+      for (int i = 0; i < 100; i++) {
+        // probe every key twice, the second probe hits the last key
+        for (int j = 0; j < 2; j++) {
+          MapJoinObjectValue o = mapped.get(new MapJoinSingleKey(new Text("k" + i)));
+          if (i % 2 == 0) {
+            assertEquals(2, o.getObj().size());
+            o.getObj().first();
+            assertEquals(new IntWritable(i), o.getObj().next()[1]);
+          } else {
+            assertNull(o);
+          }
+        }
+      }
+      mapped.close();
+    } finally {
+      file.delete();
+    }
+  }
+
+  public void testDoubleKeys() throws Exception {
+    MapJoinMetaData.clear();
+    registerSerDe(-1, Constants.INT_TYPE_NAME, Constants.STRING_TYPE_NAME);
+    registerSerDe(VALUE_TAG, Constants.STRING_TYPE_NAME, Constants.INT_TYPE_NAME);
+
+    HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue> table =
+      new HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue>();
+    for (int i = 0; i < 100; i++) {
+      table.put(new MapJoinDoubleKeys(new IntWritable(i), new Text("k" + i)), newValue(2, i));
+    }
+    checkRoundTrip(table);
+  }
+
+  public void testPartitionSpill() throws Exception {
+    MapJoinMetaData.clear();
+    registerSerDe(-1, Constants.INT_TYPE_NAME);
+    registerSerDe(VALUE_TAG, Constants.STRING_TYPE_NAME, Constants.INT_TYPE_NAME);
+
+    int numPartitions = 4;
+    MapJoinPartitionSpill spill = new MapJoinPartitionSpill("TestMapJoinHashTableFile");
+    try {
+      HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue> expected =
+        new HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue>();
+      for (int i = 0; i < 200; i++) {
+        AbstractMapJoinKey key = new MapJoinSingleKey(new IntWritable(i % 50));
+        if (JoinUtil.getGraceHashPartition(key, numPartitions) != 2) {
+          continue;
+        }
+        // the rows of a key are added in several pairs
+        spill.add(key, newValue(1, i));
+        MapJoinObjectValue o = expected.get(key);
+        if (o == null) {
+          expected.put(key, newValue(1, i));
+        } else {
+          o.getObj().add(newValue(1, i).getObj().first());
+        }
+      }
+      assertTrue(spill.size() > 0);
+
+      HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue> table =
+        new HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue>();
+      spill.readInto(table);
+      assertEquals(expected.size(), table.size());
+      for (AbstractMapJoinKey key : expected.keySet()) {
+        assertEquals(2, JoinUtil.getGraceHashPartition(key, numPartitions));
+        checkRows(expected.get(key), table.get(key));
+      }
+    } finally {
+      spill.close();
+    }
+  }
+
+  public void testBloomFilter() throws Exception {
+    int num = 10000;
+    MapJoinBloomFilter filter = new MapJoinBloomFilter(num);
+    for (int i = 0; i < num; i++) {
+      byte[] key = ("key" + i).getBytes("UTF-8");
+      filter.add(key, 0, key.length);
+    }
+    int falsePositives = 0;
+    for (int i = 0; i < 2 * num; i++) {
+      byte[] key = ("key" + i).getBytes("UTF-8");
+      boolean found = filter.mightContain(key, 0, key.length);
+      if (i < num) {
+        assertTrue(found);
+      } else if (found) {
+        falsePositives++;
+      }
+    }
+    assertTrue("false positives: " + falsePositives, falsePositives < num / 100);
+
+    ByteBuffer buffer = ByteBuffer.allocate(filter.getWords().length * 8);
+    for (long word : filter.getWords()) {
+      buffer.putLong(word);
+    }
+    for (int i = 0; i < num; i++) {
+      byte[] key = ("key" + i).getBytes("UTF-8");
+      assertTrue(MapJoinBloomFilter.mightContain(buffer, 0, filter.getWords().length,
+          key, 0, key.length));
+    }
+  }
+
+  public void testEmpty() throws Exception {
+    MapJoinMetaData.clear();
+    registerSerDe(-1, Constants.INT_TYPE_NAME);
+    checkRoundTrip(new HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue>());
+  }
+}
@@ -0,0 +1,66 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.hive.ql.exec.persistence.AbstractMapJoinKey;
+import org.apache.hadoop.hive.ql.exec.persistence.HashMapWrapper;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinObjectValue;
+
+/**
+ * TestMapJoinTableCache.
+ *
+ */
+public class TestMapJoinTableCache extends TestCase {
+
+  private HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue> newTable() {
+    return new HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue>(16);
+  }
+
+  public void testReuseAndEvict() throws Exception {
+    MapJoinTableCache.clear();
+
+    assertNull(MapJoinTableCache.acquire("Stage-1", "f1"));
+    HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue> t1 = newTable();
+    MapJoinTableCache.put("Stage-1", "f1", t1);
+    assertTrue(MapJoinTableCache.release(t1));
+
+    // the next task of the stage gets the same table
+    assertSame(t1, MapJoinTableCache.acquire("Stage-1", "f1"));
+    assertNull(MapJoinTableCache.acquire("Stage-1", "f2"));
+
+    // the table is in use, so it is kept while another stage loads its tables
+    HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue> t2 = newTable();
+    MapJoinTableCache.put("Stage-2", "f1", t2);
+    assertEquals(2, MapJoinTableCache.size());
+    assertTrue(MapJoinTableCache.release(t1));
+    assertTrue(MapJoinTableCache.release(t2));
+
+    // once released, it is evicted by the other stage
+    assertSame(t2, MapJoinTableCache.acquire("Stage-2", "f1"));
+    assertEquals(1, MapJoinTableCache.size());
+    assertNull(MapJoinTableCache.acquire("Stage-1", "f1"));
+    assertTrue(MapJoinTableCache.release(t2));
+
+    assertFalse(MapJoinTableCache.release(newTable()));
+    MapJoinTableCache.clear();
+    assertEquals(0, MapJoinTableCache.size());
+  }
+}
@@ -18,36 +18,72 @@
 
 package org.apache.hadoop.hive.ql.exec;
 
+import java.io.File;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import junit.framework.TestCase;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hadoop.hive.ql.exec.HashTableSinkOperator.HashTableSinkObjectCtx;
+import org.apache.hadoop.hive.ql.exec.persistence.AbstractMapJoinKey;
+import org.apache.hadoop.hive.ql.exec.persistence.HashMapWrapper;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinObjectValue;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinRowContainer;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinSingleKey;
+import org.apache.hadoop.hive.ql.exec.vector.BytesColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.DoubleColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatchCtx;
 import org.apache.hadoop.hive.ql.parse.TypeCheckProcFactory;
+import org.apache.hadoop.hive.ql.plan.AggregationDesc;
 import org.apache.hadoop.hive.ql.plan.CollectDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
 import org.apache.hadoop.hive.ql.plan.ExprNodeConstantDesc;
 import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
 import org.apache.hadoop.hive.ql.plan.FilterDesc;
+import org.apache.hadoop.hive.ql.plan.GroupByDesc;
+import org.apache.hadoop.hive.ql.plan.JoinCondDesc;
+import org.apache.hadoop.hive.ql.plan.JoinDesc;
+import org.apache.hadoop.hive.ql.plan.MapJoinDesc;
+import org.apache.hadoop.hive.ql.plan.MapredLocalWork;
 import org.apache.hadoop.hive.ql.plan.MapredWork;
 import org.apache.hadoop.hive.ql.plan.PartitionDesc;
 import org.apache.hadoop.hive.ql.plan.PlanUtils;
 import org.apache.hadoop.hive.ql.plan.ScriptDesc;
 import org.apache.hadoop.hive.ql.plan.SelectDesc;
 import org.apache.hadoop.hive.ql.plan.TableDesc;
+import org.apache.hadoop.hive.ql.plan.TableScanDesc;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.serde.Constants;
+import org.apache.hadoop.hive.serde2.SerDe;
 import org.apache.hadoop.hive.serde2.objectinspector.InspectableObject;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils.ObjectInspectorCopyOption;
 import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector.PrimitiveCategory;
 import org.apache.hadoop.hive.serde2.objectinspector.StructField;
 import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.util.ReflectionUtils;
 
 /**
  * TestOperators.
@@ -259,6 +295,196 @@ public class TestOperators extends TestCase {
     }
   }
 
+  private List<String> runReduceGroupBy(String[][] keys, boolean reduceGroups)
+      throws Throwable {
+    // rows of the reducer: KEY (a, b), VALUE (v)
+    ArrayList<String> keyNames = new ArrayList<String>();
+    keyNames.add("_col0");
+    keyNames.add("_col1");
+    ArrayList<ObjectInspector> keyOIs = new ArrayList<ObjectInspector>();
+    keyOIs.add(PrimitiveObjectInspectorFactory.javaStringObjectInspector);
+    keyOIs.add(PrimitiveObjectInspectorFactory.javaStringObjectInspector);
+    ArrayList<String> valueNames = new ArrayList<String>();
+    valueNames.add("_col0");
+    ArrayList<ObjectInspector> valueOIs = new ArrayList<ObjectInspector>();
+    valueOIs.add(PrimitiveObjectInspectorFactory.javaStringObjectInspector);
+    ArrayList<String> rowNames = new ArrayList<String>();
+    rowNames.add(Utilities.ReduceField.KEY.toString());
+    rowNames.add(Utilities.ReduceField.VALUE.toString());
+    ArrayList<ObjectInspector> rowOIs = new ArrayList<ObjectInspector>();
+    rowOIs.add(ObjectInspectorFactory.getStandardStructObjectInspector(keyNames, keyOIs));
+    rowOIs.add(ObjectInspectorFactory.getStandardStructObjectInspector(valueNames, valueOIs));
+    ObjectInspector rowOI = ObjectInspectorFactory.getStandardStructObjectInspector(
+        rowNames, rowOIs);
+
+    // select KEY._col0, count(VALUE._col0) group by KEY._col0
+    ArrayList<ExprNodeDesc> groupByKeys = new ArrayList<ExprNodeDesc>();
+    groupByKeys.add(TestExecDriver.getStringColumn("KEY._col0"));
+    ArrayList<ExprNodeDesc> parameters = new ArrayList<ExprNodeDesc>();
+    parameters.add(TestExecDriver.getStringColumn("VALUE._col0"));
+    ArrayList<TypeInfo> parameterTypes = new ArrayList<TypeInfo>();
+    parameterTypes.add(TypeInfoFactory.stringTypeInfo);
+    ArrayList<AggregationDesc> aggregations = new ArrayList<AggregationDesc>();
+    aggregations.add(new AggregationDesc("count", FunctionRegistry
+        .getGenericUDAFEvaluator("count", parameterTypes, false, false),
+        parameters, false, GenericUDAFEvaluator.Mode.COMPLETE));
+    ArrayList<String> outputCols = new ArrayList<String>();
+    outputCols.add("_col0");
+    outputCols.add("_col1");
+    GroupByDesc groupByDesc = new GroupByDesc(GroupByDesc.Mode.COMPLETE,
+        outputCols, groupByKeys, aggregations, false, 0.5f, 0.9f);
+    Operator<GroupByDesc> op = OperatorFactory.get(GroupByDesc.class);
+    op.setConf(groupByDesc);
+    CollectOperator cdop = (CollectOperator) OperatorFactory.getAndMakeChild(
+        new CollectDesc(Integer.valueOf(keys.length)), op);
+    op.initialize(new JobConf(TestOperators.class), new ObjectInspector[] {rowOI});
+
+    // as ExecReducer, which starts a group when the serialized key changes
+    String[] groupKey = null;
+    for (int i = 0; i < keys.length; i++) {
+      if (reduceGroups && (groupKey == null || !Arrays.equals(groupKey, keys[i]))) {
+        if (groupKey != null) {
+          op.endGroup();
+        }
+        op.startGroup();
+        groupKey = keys[i];
+      }
+      ArrayList<Object> row = new ArrayList<Object>();
+      row.add(new ArrayList<Object>(Arrays.asList(keys[i])));
+      row.add(new ArrayList<Object>(Arrays.asList("v" + i)));
+      op.process(row, 0);
+    }
+    if (groupKey != null) {
+      op.endGroup();
+    }
+    op.close(false);
+
+    List<String> results = new ArrayList<String>();
+    InspectableObject io = new InspectableObject();
+    for (cdop.retrieve(io); io.o != null; cdop.retrieve(io)) {
+      results.add(io.o.toString());
+    }
+    return results;
+  }
+
+  /**
+   * Test that a GroupByOperator at the root of a reducer groups the rows of a
+   * reducer group without comparing their keys, and still groups the rows of
+   * different reducer groups with the same grouping key.
+   */
+  public void testReduceGroupByOperator() throws Throwable {
+    String[][] keys = new String[][] {
+        {"a1", "b1"}, {"a1", "b1"}, {"a1", "b2"}, {"a2", "b1"}, {"a2", "b1"},
+        {"a2", "b1"}, {"a3", "b3"}};
+    List<String> expected = Arrays.asList("[a1, 3]", "[a2, 3]", "[a3, 1]");
+    assertEquals(expected, runReduceGroupBy(keys, true));
+    assertEquals(expected, runReduceGroupBy(keys, false));
+  }
+
+  private List<String> runHashGroupBy(boolean vectorized) throws Throwable {
+    // rows of (k string, g int, v int, d double)
+    List<String> names = Arrays.asList("k", "g", "v", "d");
+    List<PrimitiveCategory> types = Arrays.asList(PrimitiveCategory.STRING,
+        PrimitiveCategory.INT, PrimitiveCategory.INT, PrimitiveCategory.DOUBLE);
+    VectorizedRowBatchCtx batchCtx = new VectorizedRowBatchCtx(names, types);
+
+    // select k, g, count(*), count(v), sum(v), sum(d), min(d), max(v)
+    // group by k, g
+    ArrayList<ExprNodeDesc> groupByKeys = new ArrayList<ExprNodeDesc>();
+    groupByKeys.add(new ExprNodeColumnDesc(TypeInfoFactory.stringTypeInfo, "k", "", false));
+    groupByKeys.add(new ExprNodeColumnDesc(TypeInfoFactory.intTypeInfo, "g", "", false));
+    ExprNodeDesc v = new ExprNodeColumnDesc(TypeInfoFactory.intTypeInfo, "v", "", false);
+    ExprNodeDesc d = new ExprNodeColumnDesc(TypeInfoFactory.doubleTypeInfo, "d", "", false);
+    ArrayList<AggregationDesc> aggregations = new ArrayList<AggregationDesc>();
+    aggregations.add(getAggregation("count", null, true));
+    aggregations.add(getAggregation("count", v, false));
+    aggregations.add(getAggregation("sum", v, false));
+    aggregations.add(getAggregation("sum", d, false));
+    aggregations.add(getAggregation("min", d, false));
+    aggregations.add(getAggregation("max", v, false));
+    ArrayList<String> outputCols = new ArrayList<String>();
+    for (int i = 0; i < groupByKeys.size() + aggregations.size(); i++) {
+      outputCols.add("_col" + i);
+    }
+    GroupByDesc groupByDesc = new GroupByDesc(GroupByDesc.Mode.HASH,
+        outputCols, groupByKeys, aggregations, false, 0.5f, 0.9f);
+    Operator<GroupByDesc> op = OperatorFactory.get(GroupByDesc.class);
+    op.setConf(groupByDesc);
+    CollectOperator cdop = (CollectOperator) OperatorFactory.getAndMakeChild(
+        new CollectDesc(Integer.valueOf(1000)), op);
+    op.initialize(new JobConf(TestOperators.class),
+        new ObjectInspector[] {batchCtx.getRowObjectInspector()});
+
+    // k and v have nulls, and only the even rows of the batches are selected
+    VectorizedRowBatch batch = batchCtx.createBatch(128);
+    for (int i = 0; i < 2000; i++) {
+      int r = batch.size++;
+      BytesColumnVector k = (BytesColumnVector) batch.cols[0];
+      if (i % 11 == 0) {
+        k.setNull(r);
+      } else {
+        byte[] key = ("k" + i % 7).getBytes();
+        k.setVal(r, key, 0, key.length);
+      }
+      ((LongColumnVector) batch.cols[1]).vector[r] = i % 3;
+      if (i % 13 == 0) {
+        batch.cols[2].setNull(r);
+      } else {
+        ((LongColumnVector) batch.cols[2]).vector[r] = i;
+      }
+      ((DoubleColumnVector) batch.cols[3]).vector[r] = i / 4.0;
+      if (batch.isFull() || i == 1999) {
+        batch.selectedInUse = true;
+        int numSelected = 0;
+        for (int j = 0; j < batch.size; j += 2) {
+          batch.selected[numSelected++] = j;
+        }
+        batch.size = numSelected;
+        if (vectorized) {
+          op.processBatch(batch, 0);
+        } else {
+          for (int j = 0; j < batch.size; j++) {
+            op.process(batchCtx.materializeRow(batch, batch.getRow(j)), 0);
+          }
+        }
+        batch.reset();
+      }
+    }
+    op.close(false);
+
+    List<String> results = new ArrayList<String>();
+    InspectableObject io = new InspectableObject();
+    for (cdop.retrieve(io); io.o != null; cdop.retrieve(io)) {
+      results.add(io.o.toString());
+    }
+    Collections.sort(results);
+    return results;
+  }
+
+  private static AggregationDesc getAggregation(String name, ExprNodeDesc parameter,
+      boolean allColumns) throws Throwable {
+    ArrayList<ExprNodeDesc> parameters = new ArrayList<ExprNodeDesc>();
+    ArrayList<TypeInfo> parameterTypes = new ArrayList<TypeInfo>();
+    if (parameter != null) {
+      parameters.add(parameter);
+      parameterTypes.add(parameter.getTypeInfo());
+    }
+    return new AggregationDesc(name, FunctionRegistry.getGenericUDAFEvaluator(
+        name, parameterTypes, false, allColumns), parameters, false,
+        GenericUDAFEvaluator.Mode.PARTIAL1);
+  }
+
+  /**
+   * Test that the vectorized hash aggregation of batches by a map-side
+   * GroupByOperator returns the same groups as the aggregation of their rows.
+   */
+  public void testVectorizedHashGroupByOperator() throws Throwable {
+    List<String> expected = runHashGroupBy(false);
+    // 7 string keys and null, by 3 int keys
+    assertEquals(24, expected.size());
+    assertEquals(expected, runHashGroupBy(true));
+  }
+
   public void testMapOperator() throws Throwable {
     try {
       System.out.println("Testing Map Operator");
@@ -329,4 +555,261 @@ public class TestOperators extends TestCase {
       throw (e);
     }
   }
+
+  private static TableDesc registerMapJoinSerDe(int tag, TableDesc desc) throws Exception {
+    SerDe serde = (SerDe) ReflectionUtils.newInstance(desc.getDeserializerClass(), null);
+    serde.initialize(null, desc.getProperties());
+    MapJoinMetaData.put(Integer.valueOf(tag), new HashTableSinkObjectCtx(
+        ObjectInspectorUtils.getStandardObjectInspector(serde.getObjectInspector(),
+        ObjectInspectorCopyOption.WRITABLE), serde, desc, new JobConf()));
+    return desc;
+  }
+
+  /**
+   * @return an inner map join of the big table (key int, value string) at
+   *         position 0 with a small table of the same columns, the SerDes of
+   *         the small table being registered in MapJoinMetaData
+   */
+  private MapJoinDesc getMapJoinDesc() throws Exception {
+    ExprNodeDesc key = new ExprNodeColumnDesc(TypeInfoFactory.intTypeInfo, "key", "", false);
+    Map<Byte, List<ExprNodeDesc>> keys = new HashMap<Byte, List<ExprNodeDesc>>();
+    keys.put((byte) 0, Arrays.asList(key));
+    keys.put((byte) 1, Arrays.asList(key));
+    Map<Byte, List<ExprNodeDesc>> values = new HashMap<Byte, List<ExprNodeDesc>>();
+    values.put((byte) 0, Arrays.asList(key,
+        (ExprNodeDesc) TestExecDriver.getStringColumn("value")));
+    values.put((byte) 1, Arrays.asList(
+        (ExprNodeDesc) TestExecDriver.getStringColumn("value")));
+    Map<Byte, List<ExprNodeDesc>> filters = new HashMap<Byte, List<ExprNodeDesc>>();
+    filters.put((byte) 0, new ArrayList<ExprNodeDesc>());
+    filters.put((byte) 1, new ArrayList<ExprNodeDesc>());
+
+    MapJoinMetaData.clear();
+    TableDesc keyDesc = registerMapJoinSerDe(-1, PlanUtils.getMapJoinKeyTableDesc(
+        Arrays.asList(new FieldSchema("joinkey0", Constants.INT_TYPE_NAME, ""))));
+    List<TableDesc> valueDescs = new ArrayList<TableDesc>();
+    valueDescs.add(PlanUtils.getMapJoinValueTableDesc(Arrays.asList(
+        new FieldSchema("_col0", Constants.INT_TYPE_NAME, ""),
+        new FieldSchema("_col1", Constants.STRING_TYPE_NAME, ""))));
+    valueDescs.add(registerMapJoinSerDe(1, PlanUtils.getMapJoinValueTableDesc(Arrays.asList(
+        new FieldSchema("_col0", Constants.STRING_TYPE_NAME, "")))));
+    return new MapJoinDesc(keys, keyDesc, values, valueDescs, valueDescs,
+        Arrays.asList("_col0", "_col1", "_col2"), 0,
+        new JoinCondDesc[] {new JoinCondDesc(0, 1, JoinDesc.INNER_JOIN)}, filters, true);
+  }
+
+  /**
+   * A grace hash map join over two input files: the rows of the spilled
+   * partition are joined at the end, and the rows of the second file are
+   * still probed against the main hash table.
+   */
+  public void testMapJoinGraceHashMultipleFiles() throws Throwable {
+    int numPartitions = 2;
+    int numKeys = 20;
+    File baseDir = File.createTempFile("TestOperators", "");
+    baseDir.delete();
+    baseDir.mkdirs();
+    try {
+      MapJoinDesc desc = getMapJoinDesc();
+
+      // the hash tables of the small table, with one partition in its own file
+      HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue> mainTable =
+        new HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue>();
+      HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue> spilledTable =
+        new HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue>();
+      for (int i = 0; i < numKeys; i++) {
+        AbstractMapJoinKey k = new MapJoinSingleKey(new IntWritable(i));
+        MapJoinRowContainer<Object[]> rows = new MapJoinRowContainer<Object[]>();
+        rows.add(new Object[] {new Text("small" + i)});
+        (JoinUtil.getGraceHashPartition(k, numPartitions) == 1 ? spilledTable : mainTable)
+            .put(k, new MapJoinObjectValue(1, rows));
+      }
+      assertTrue(mainTable.size() > 0 && spilledTable.size() > 0);
+      mainTable.flushMemoryCacheToPersistent(
+          new File(Utilities.generatePath(baseDir.getPath(), (byte) 1, "-")));
+      spilledTable.flushMemoryCacheToPersistent(
+          new File(Utilities.generatePartitionPath(baseDir.getPath(), (byte) 1, "-", 1)));
+
+      JobConf jc = new JobConf(TestOperators.class);
+      HiveConf.setVar(jc, HiveConf.ConfVars.HADOOPJT, "local");
+      HiveConf.setBoolVar(jc, HiveConf.ConfVars.HIVEMAPJOINGRACEHASH, true);
+      HiveConf.setIntVar(jc, HiveConf.ConfVars.HIVEMAPJOINGRACEHASHPARTITIONS, numPartitions);
+      MapredLocalWork localWork = new MapredLocalWork();
+      localWork.setTmpFileURI(baseDir.getPath());
+      localWork.setStageID("Stage-1");
+      localWork.setInputFileChangeSensitive(false);
+      ExecMapperContext context = new ExecMapperContext();
+      context.setLocalWork(localWork);
+
+      Operator<MapJoinDesc> op = OperatorFactory.get(MapJoinDesc.class);
+      op.setConf(desc);
+      op.setExecContext(context);
+      CollectOperator cdop = (CollectOperator) OperatorFactory.getAndMakeChild(
+          new CollectDesc(Integer.valueOf(4 * numKeys)), op);
+      ObjectInspector rowOI = ObjectInspectorFactory.getStandardStructObjectInspector(
+          Arrays.asList("key", "value"), Arrays.asList(
+          (ObjectInspector) PrimitiveObjectInspectorFactory.writableIntObjectInspector,
+          PrimitiveObjectInspectorFactory.writableStringObjectInspector));
+      op.initialize(jc, new ObjectInspector[] {rowOI, rowOI});
+
+      // every key of the big table is in both files
+      for (String file : new String[] {"file1", "file2"}) {
+        HiveConf.setVar(jc, HiveConf.ConfVars.HADOOPMAPFILENAME, file);
+        op.cleanUpInputFileChanged();
+        for (int i = 0; i < numKeys; i++) {
+          op.process(Arrays.asList(new IntWritable(i), new Text(file)), 0);
+        }
+      }
+      op.close(false);
+
+      InspectableObject io = new InspectableObject();
+      int numRows = 0;
+      for (cdop.retrieve(io); io.o != null; cdop.retrieve(io)) {
+        List<?> row = (List<?>) io.o;
+        assertEquals("small" + row.get(0), row.get(2).toString());
+        numRows++;
+      }
+      assertEquals(2 * numKeys, numRows);
+    } finally {
+      FileUtil.fullyDelete(baseDir);
+    }
+  }
+
+  /**
+   * A map join fed by a table scan through a filter: the scan drops the rows
+   * whose keys are not in the bloom filter of the small table, so most of
+   * them never reach the filter.
+   */
+  public void testMapJoinScanBloomFilter() throws Throwable {
+    int numKeys = 50;
+    File baseDir = File.createTempFile("TestOperators", "");
+    baseDir.delete();
+    baseDir.mkdirs();
+    try {
+      MapJoinDesc desc = getMapJoinDesc();
+
+      // the small table has the even keys
+      HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue> table =
+        new HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue>();
+      for (int i = 0; i < 2 * numKeys; i += 2) {
+        MapJoinRowContainer<Object[]> rows = new MapJoinRowContainer<Object[]>();
+        rows.add(new Object[] {new Text("small" + i)});
+        table.put(new MapJoinSingleKey(new IntWritable(i)), new MapJoinObjectValue(1, rows));
+      }
+      table.flushMemoryCacheToPersistent(
+          new File(Utilities.generatePath(baseDir.getPath(), (byte) 1, "-")));
+
+      JobConf jc = new JobConf(TestOperators.class);
+      HiveConf.setVar(jc, HiveConf.ConfVars.HADOOPJT, "local");
+      HiveConf.setVar(jc, HiveConf.ConfVars.HADOOPMAPFILENAME, "file1");
+      MapredLocalWork localWork = new MapredLocalWork();
+      localWork.setTmpFileURI(baseDir.getPath());
+      localWork.setStageID("Stage-1");
+      localWork.setInputFileChangeSensitive(false);
+      ExecMapperContext context = new ExecMapperContext();
+      context.setLocalWork(localWork);
+
+      // big table scan -> filter -> map join <- small table scan
+      Operator<TableScanDesc> scan = OperatorFactory.get(TableScanDesc.class);
+      Operator<FilterDesc> filter = OperatorFactory.getAndMakeChild(
+          new FilterDesc(new ExprNodeConstantDesc(Boolean.TRUE), false), scan);
+      Operator<TableScanDesc> smallScan = OperatorFactory.get(TableScanDesc.class);
+      Operator<MapJoinDesc> op = OperatorFactory.getAndMakeChild(desc, filter, smallScan);
+      scan.setExecContext(context);
+      smallScan.setExecContext(context);
+      CollectOperator cdop = (CollectOperator) OperatorFactory.getAndMakeChild(
+          new CollectDesc(Integer.valueOf(2 * numKeys)), op);
+      ObjectInspector rowOI = ObjectInspectorFactory.getStandardStructObjectInspector(
+          Arrays.asList("key", "value"), Arrays.asList(
+          (ObjectInspector) PrimitiveObjectInspectorFactory.writableIntObjectInspector,
+          PrimitiveObjectInspectorFactory.writableStringObjectInspector));
+      scan.initialize(jc, new ObjectInspector[] {rowOI});
+      smallScan.initialize(jc, new ObjectInspector[] {rowOI});
+
+      scan.cleanUpInputFileChanged();
+      for (int i = 0; i < 2 * numKeys; i++) {
+        scan.process(Arrays.asList(new IntWritable(i), new Text("big" + i)), 0);
+      }
+      scan.close(false);
+
+      InspectableObject io = new InspectableObject();
+      int numRows = 0;
+      for (cdop.retrieve(io); io.o != null; cdop.retrieve(io)) {
+        List<?> row = (List<?>) io.o;
+        assertEquals("small" + row.get(0), row.get(2).toString());
+        numRows++;
+      }
+      assertEquals(numKeys, numRows);
+
+      // only the matching keys and a few false positives pass the scan
+      long passed = filter.getStats().get(FilterOperator.Counter.PASSED).longValue();
+      assertTrue("rows passed to the filter: " + passed, passed >= numKeys
+          && passed < numKeys + numKeys / 10);
+    } finally {
+      FileUtil.fullyDelete(baseDir);
+    }
+  }
+
+  /**
+   * A reduce side join of a key with more rows than the cache in the first
+   * table, which are spilled, and a key with few rows.
+   */
+  public void testJoinSpilledKeyBatches() throws Throwable {
+    Map<Byte, List<ExprNodeDesc>> exprs = new HashMap<Byte, List<ExprNodeDesc>>();
+    Map<Byte, List<ExprNodeDesc>> filters = new HashMap<Byte, List<ExprNodeDesc>>();
+    for (byte tag = 0; tag < 2; tag++) {
+      exprs.put(tag, Arrays.asList((ExprNodeDesc) new ExprNodeColumnDesc(
+          TypeInfoFactory.stringTypeInfo, "VALUE._col0", "", false)));
+      filters.put(tag, new ArrayList<ExprNodeDesc>());
+    }
+    JoinDesc desc = new JoinDesc(exprs, Arrays.asList("_col0", "_col1"), true,
+        new JoinCondDesc[] {new JoinCondDesc(0, 1, JoinDesc.INNER_JOIN)}, filters);
+
+    JobConf jc = new JobConf(TestOperators.class);
+    HiveConf.setIntVar(jc, HiveConf.ConfVars.HIVEJOINCACHESIZE, 5);
+    HiveConf.setIntVar(jc, HiveConf.ConfVars.HIVEJOINEMITINTERVAL, 2);
+    HiveConf.setBoolVar(jc, HiveConf.ConfVars.HIVEJOINBATCHSPILLEDKEYS, true);
+
+    Operator<JoinDesc> op = OperatorFactory.get(JoinDesc.class);
+    op.setConf(desc);
+    CollectOperator cdop = (CollectOperator) OperatorFactory.getAndMakeChild(
+        new CollectDesc(Integer.valueOf(1000)), op);
+    ObjectInspector keyOI = ObjectInspectorFactory.getStandardStructObjectInspector(
+        Arrays.asList("reducesinkkey0"), Arrays.asList(
+        (ObjectInspector) PrimitiveObjectInspectorFactory.writableIntObjectInspector));
+    ObjectInspector valueOI = ObjectInspectorFactory.getStandardStructObjectInspector(
+        Arrays.asList("_col0"), Arrays.asList(
+        (ObjectInspector) PrimitiveObjectInspectorFactory.writableStringObjectInspector));
+    ObjectInspector rowOI = ObjectInspectorFactory.getStandardStructObjectInspector(
+        Arrays.asList(Utilities.ReduceField.KEY.toString(),
+        Utilities.ReduceField.VALUE.toString()), Arrays.asList(keyOI, valueOI));
+    op.initialize(jc, new ObjectInspector[] {rowOI, rowOI});
+
+    // key 1 has 20 and 30 rows, key 2 has 3 and 4 rows
+    int[][] numRows = new int[][] {{20, 30}, {3, 4}};
+    for (int key = 1; key <= numRows.length; key++) {
+      op.startGroup();
+      for (int tag = 0; tag < 2; tag++) {
+        for (int i = 0; i < numRows[key - 1][tag]; i++) {
+          op.process(Arrays.asList(Arrays.asList(new IntWritable(key)),
+              Arrays.asList(new Text(key + "-" + tag + "-" + i))), tag);
+        }
+      }
+      op.endGroup();
+    }
+    op.close(false);
+
+    InspectableObject io = new InspectableObject();
+    int[] numOutput = new int[numRows.length];
+    for (cdop.retrieve(io); io.o != null; cdop.retrieve(io)) {
+      List<?> row = (List<?>) io.o;
+      String left = row.get(0).toString();
+      assertEquals(left.charAt(0), row.get(1).toString().charAt(0));
+      numOutput[left.charAt(0) - '1']++;
+    }
+    assertEquals(20 * 30, numOutput[0]);
+    assertEquals(3 * 4, numOutput[1]);
+    assertEquals(Long.valueOf(1),
+        op.getStats().get(JoinOperator.SpilledKeyCounter.SPILLEDKEYS));
+  }
 }
@@ -0,0 +1,148 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator.AggregationBuffer;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+
+/**
+ * TestPrimitiveKeyHashTable.
+ *
+ */
+public class TestPrimitiveKeyHashTable extends TestCase {
+
+  private static final ObjectInspector[] KEY_OIS = new ObjectInspector[] {
+      PrimitiveObjectInspectorFactory.javaLongObjectInspector,
+      PrimitiveObjectInspectorFactory.writableStringObjectInspector,
+      PrimitiveObjectInspectorFactory.javaDoubleObjectInspector};
+
+  private AggregationBuffer[] lookup(PrimitiveKeyHashTable table, Object... keys) {
+    table.setProbeKey(keys);
+    return table.get();
+  }
+
+  private AggregationBuffer[] insert(PrimitiveKeyHashTable table, Object... keys) {
+    table.setProbeKey(keys);
+    assertNull(table.get());
+    AggregationBuffer[] aggs = new AggregationBuffer[0];
+    table.put(aggs);
+    return aggs;
+  }
+
+  public void testPutGet() throws Exception {
+    PrimitiveKeyHashTable table = new PrimitiveKeyHashTable(KEY_OIS);
+    AggregationBuffer[] a = insert(table, 1L, new Text("a"), 1.5d);
+    AggregationBuffer[] b = insert(table, 1L, new Text("b"), 1.5d);
+    AggregationBuffer[] c = insert(table, null, null, null);
+    AggregationBuffer[] d = insert(table, 1L, new Text(""), 0.0d);
+
+    assertEquals(4, table.size());
+    assertSame(a, lookup(table, 1L, new Text("a"), 1.5d));
+    assertSame(b, lookup(table, 1L, new Text("b"), 1.5d));
+    assertSame(c, lookup(table, null, null, null));
+    // -0.0 and 0.0 are the same group
+    assertSame(d, lookup(table, 1L, new Text(""), -0.0d));
+    assertNull(lookup(table, 1L, null, 1.5d));
+    assertNull(lookup(table, 2L, new Text("a"), 1.5d));
+
+    Object[] keys = table.getKeys(1);
+    assertEquals(new LongWritable(1), keys[0]);
+    assertEquals(new Text("b"), keys[1]);
+    assertEquals(new DoubleWritable(1.5), keys[2]);
+    keys = table.getKeys(2);
+    assertNull(keys[0]);
+    assertNull(keys[1]);
+    assertNull(keys[2]);
+  }
+
+  public void testGrowAndRemove() throws Exception {
+    PrimitiveKeyHashTable table = new PrimitiveKeyHashTable(KEY_OIS);
+    int num = 10000;
+    for (long i = 0; i < num; i++) {
+      insert(table, i, new Text("key" + i), (double) i);
+    }
+    assertEquals(num, table.size());
+    long grownMemory = table.getMemoryUsage();
+
+    table.removeFirst(num / 2);
+    assertEquals(num / 2, table.size());
+    assertTrue(table.getMemoryUsage() < grownMemory);
+    for (long i = 0; i < num; i++) {
+      AggregationBuffer[] aggs = lookup(table, i, new Text("key" + i), (double) i);
+      if (i < num / 2) {
+        assertNull(aggs);
+      } else {
+        assertSame(table.getAggregations((int) i - num / 2), aggs);
+      }
+    }
+    assertEquals(new Text("key" + (num / 2)), table.getKeys(0)[1]);
+
+    table.clear();
+    assertEquals(0, table.size());
+    assertNull(lookup(table, (long) num - 1, new Text("key" + (num - 1)), (double) num - 1));
+  }
+
+  public void testRemovePartition() throws Exception {
+    PrimitiveKeyHashTable table = new PrimitiveKeyHashTable(KEY_OIS);
+    int num = 5000;
+    int numPartitions = 4;
+    int[] partitionSizes = new int[numPartitions];
+    for (long i = 0; i < num; i++) {
+      insert(table, i, new Text("key" + i), (double) i);
+      partitionSizes[table.getPartition(table.size() - 1, numPartitions)]++;
+    }
+    for (int p = 0; p < numPartitions; p++) {
+      assertTrue(partitionSizes[p] > 0);
+    }
+
+    table.removePartition(1, numPartitions);
+    assertEquals(num - partitionSizes[1], table.size());
+    for (int i = 0; i < table.size(); i++) {
+      assertTrue(table.getPartition(i, numPartitions) != 1);
+    }
+
+    // the partition of a key does not depend on the table it is in
+    PrimitiveKeyHashTable other = new PrimitiveKeyHashTable(KEY_OIS);
+    int found = 0;
+    for (long i = 0; i < num; i++) {
+      boolean removed = lookup(table, i, new Text("key" + i), (double) i) == null;
+      insert(other, i, new Text("key" + i), (double) i);
+      assertEquals(removed, other.getPartition(other.size() - 1, numPartitions) == 1);
+      found += removed ? 0 : 1;
+    }
+    assertEquals(table.size(), found);
+  }
+
+  public void testIsSupported() throws Exception {
+    assertTrue(PrimitiveKeyHashTable.isSupported(
+        PrimitiveObjectInspectorFactory.writableIntObjectInspector));
+    assertFalse(PrimitiveKeyHashTable.isSupported(
+        PrimitiveObjectInspectorFactory.writableVoidObjectInspector));
+    assertFalse(PrimitiveKeyHashTable.isSupported(
+        ObjectInspectorFactory.getStandardListObjectInspector(
+        PrimitiveObjectInspectorFactory.writableIntObjectInspector)));
+  }
+}
@@ -0,0 +1,91 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec;
+
+import java.util.ArrayList;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.exec.persistence.RowContainer;
+import org.apache.hadoop.hive.ql.plan.PlanUtils;
+import org.apache.hadoop.hive.serde.Constants;
+import org.apache.hadoop.hive.serde2.lazybinary.LazyBinarySerDe;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils.ObjectInspectorCopyOption;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+
+/**
+ * TestRowContainer.
+ *
+ */
+public class TestRowContainer extends TestCase {
+
+  private void spillAndRead(HiveConf conf, int numRows) throws Exception {
+    Properties props = new Properties();
+    props.setProperty(Constants.LIST_COLUMNS, "key,value");
+    props.setProperty(Constants.LIST_COLUMN_TYPES, "int,string");
+    LazyBinarySerDe serde = new LazyBinarySerDe();
+    serde.initialize(conf, props);
+    ObjectInspector oi = ObjectInspectorUtils.getStandardObjectInspector(
+        serde.getObjectInspector(), ObjectInspectorCopyOption.WRITABLE);
+
+    RowContainer<ArrayList<Object>> rc = new RowContainer<ArrayList<Object>>(1000, conf);
+    rc.setSerDe(serde, oi);
+    rc.setTableDesc(PlanUtils.getDefaultTableDesc("" + Utilities.ctrlaCode, "key,value"));
+    for (int i = 0; i < numRows; i++) {
+      ArrayList<Object> row = new ArrayList<Object>(2);
+      row.add(new IntWritable(i));
+      row.add(i % 7 == 0 ? null : new Text("value" + i));
+      rc.add(row);
+    }
+    assertEquals(numRows, rc.size());
+
+    // the rows can be read more than once
+    for (int pass = 0; pass < 2; pass++) {
+      int i = 0;
+      for (ArrayList<Object> row = rc.first(); row != null; row = rc.next()) {
+        assertEquals(i, ((IntWritable) row.get(0)).get());
+        if (i % 7 == 0) {
+          assertNull(row.get(1));
+        } else {
+          assertEquals("value" + i, row.get(1).toString());
+        }
+        i++;
+      }
+      assertEquals(numRows, i);
+    }
+    rc.clear();
+    assertEquals(0, rc.size());
+  }
+
+  public void testCompactSpill() throws Exception {
+    HiveConf conf = new HiveConf(TestRowContainer.class);
+    spillAndRead(conf, 5500);
+
+    conf.setBoolVar(HiveConf.ConfVars.HIVEJOINSPILLCOMPRESS, true);
+    conf.setBoolVar(HiveConf.ConfVars.HIVEJOINSPILLPREFETCH, false);
+    // blocks of the minimum number of rows
+    conf.setLongVar(HiveConf.ConfVars.HIVEJOINSPILLBLOCKBYTES, 1);
+    spillAndRead(conf, 5500);
+  }
+}
@@ -0,0 +1,147 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.hive.ql.exec.vector.expressions.VectorExpression;
+import org.apache.hadoop.hive.ql.parse.TypeCheckProcFactory;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeConstantDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector.PrimitiveCategory;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+
+/**
+ * TestVectorExpressions.
+ *
+ */
+public class TestVectorExpressions extends TestCase {
+
+  private VectorizedRowBatchCtx ctx;
+  private VectorizedRowBatch batch;
+  private ExprNodeDesc a;
+  private ExprNodeDesc b;
+
+  @Override
+  protected void setUp() {
+    List<String> names = new ArrayList<String>();
+    names.add("a");
+    names.add("b");
+    names.add("s");
+    List<PrimitiveCategory> types = new ArrayList<PrimitiveCategory>();
+    types.add(PrimitiveCategory.INT);
+    types.add(PrimitiveCategory.DOUBLE);
+    types.add(PrimitiveCategory.STRING);
+    ctx = new VectorizedRowBatchCtx(names, types);
+    batch = ctx.createBatch(VectorizedRowBatch.DEFAULT_SIZE);
+
+    // a = 0..9, b = a / 2.0, s = "v" + a, a is null for the last row
+    LongColumnVector acol = (LongColumnVector) batch.cols[0];
+    DoubleColumnVector bcol = (DoubleColumnVector) batch.cols[1];
+    BytesColumnVector scol = (BytesColumnVector) batch.cols[2];
+    for (int i = 0; i < 10; i++) {
+      acol.vector[i] = i;
+      bcol.vector[i] = i / 2.0;
+      byte[] s = ("v" + i).getBytes();
+      scol.setVal(i, s, 0, s.length);
+    }
+    acol.setNull(9);
+    batch.size = 10;
+
+    a = new ExprNodeColumnDesc(TypeInfoFactory.intTypeInfo, "a", "", false);
+    b = new ExprNodeColumnDesc(TypeInfoFactory.doubleTypeInfo, "b", "", false);
+  }
+
+  private VectorExpression filter(ExprNodeDesc desc) {
+    VectorExpression expr = new VectorizationContext(ctx).getFilterExpression(desc);
+    assertNotNull(expr);
+    return expr;
+  }
+
+  private static ExprNodeDesc func(String name, ExprNodeDesc... children)
+      throws Exception {
+    return TypeCheckProcFactory.DefaultExprProcessor.getFuncExprNodeDesc(name, children);
+  }
+
+  private void assertSelected(int... expected) {
+    assertEquals(expected.length, batch.size);
+    for (int j = 0; j < expected.length; j++) {
+      assertEquals(expected[j], batch.getRow(j));
+    }
+  }
+
+  public void testCompareScalar() throws Exception {
+    filter(func(">=", a, new ExprNodeConstantDesc(6))).evaluate(batch);
+    assertSelected(6, 7, 8);
+  }
+
+  public void testCompareScalarOnTheLeft() throws Exception {
+    filter(func("<", new ExprNodeConstantDesc(6), a)).evaluate(batch);
+    assertSelected(7, 8);
+  }
+
+  public void testCompareColumns() throws Exception {
+    // a < b only holds for negative numbers, a = b for 0
+    filter(func("<=", a, b)).evaluate(batch);
+    assertSelected(0);
+  }
+
+  public void testAndOr() throws Exception {
+    ExprNodeDesc low = func("<", a, new ExprNodeConstantDesc(2));
+    ExprNodeDesc high = func(">", b, new ExprNodeConstantDesc(3.5));
+    ExprNodeDesc notFive = func("<>", a, new ExprNodeConstantDesc(5));
+    filter(func("and", func("or", low, high), notFive)).evaluate(batch);
+    assertSelected(0, 1, 8);
+  }
+
+  public void testIsNull() throws Exception {
+    filter(func("isnull", a)).evaluate(batch);
+    assertSelected(9);
+  }
+
+  public void testArithmetic() throws Exception {
+    // (a * 2) + 1 > b + 10
+    ExprNodeDesc left = func("+", func("*", a, new ExprNodeConstantDesc(2)),
+        new ExprNodeConstantDesc(1));
+    ExprNodeDesc right = func("+", b, new ExprNodeConstantDesc(10.0));
+    filter(func(">", left, right)).evaluate(batch);
+    assertSelected(7, 8);
+  }
+
+  public void testUnsupportedExpression() throws Exception {
+    ExprNodeDesc s = new ExprNodeColumnDesc(TypeInfoFactory.stringTypeInfo, "s", "", false);
+    ExprNodeDesc desc = func("=", s, new ExprNodeConstantDesc("v1"));
+    assertNull(new VectorizationContext(ctx).getFilterExpression(desc));
+  }
+
+  public void testMaterializeRow() throws Exception {
+    filter(func(">", a, new ExprNodeConstantDesc(7))).evaluate(batch);
+    Object[] row = ctx.materializeRow(batch, batch.getRow(0));
+    assertEquals(new IntWritable(8), row[0]);
+    assertEquals(new Text("v8"), row[2]);
+    row = ctx.materializeRow(batch, 9);
+    assertNull(row[0]);
+  }
+}
@@ -0,0 +1,175 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hive.ql.io;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.serde.Constants;
+import org.apache.hadoop.hive.serde2.binarysortable.BinarySortableSerDe;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.util.IndexedSortable;
+import org.apache.hadoop.util.QuickSort;
+
+/**
+ * PerformTestHiveKeyComparator. Measures the time the map-side sort takes to
+ * sort string-heavy keys serialized by BinarySortableSerDe, with the byte by
+ * byte HiveKey.Comparator and with HiveKey.PrefixComparator. The keys are
+ * sorted as MapTask sorts them: indexes into one buffer of serialized keys,
+ * sorted by QuickSort.
+ *
+ * Run with: PerformTestHiveKeyComparator [-keys n] [-iterations n]
+ */
+public class PerformTestHiveKeyComparator {
+
+  private final Random r = new Random(17);
+
+  private byte[] buffer;
+  private int[] starts;
+  private int[] lengths;
+
+  /**
+   * Serialize keys of a url, a user agent and a count, which share long
+   * prefixes.
+   */
+  private void createKeys(int numKeys) throws Exception {
+    Properties schema = new Properties();
+    schema.setProperty(Constants.LIST_COLUMNS, "url,agent,count");
+    schema.setProperty(Constants.LIST_COLUMN_TYPES, "string,string,int");
+    BinarySortableSerDe serde = new BinarySortableSerDe();
+    serde.initialize(new Configuration(), schema);
+
+    List<String> names = new ArrayList<String>();
+    List<ObjectInspector> ois = new ArrayList<ObjectInspector>();
+    names.add("url");
+    ois.add(PrimitiveObjectInspectorFactory.javaStringObjectInspector);
+    names.add("agent");
+    ois.add(PrimitiveObjectInspectorFactory.javaStringObjectInspector);
+    names.add("count");
+    ois.add(PrimitiveObjectInspectorFactory.javaIntObjectInspector);
+    ObjectInspector rowOI = ObjectInspectorFactory
+        .getStandardStructObjectInspector(names, ois);
+
+    DataOutputBuffer out = new DataOutputBuffer();
+    HiveKey key = new HiveKey();
+    starts = new int[numKeys];
+    lengths = new int[numKeys];
+    List<Object> row = new ArrayList<Object>();
+    for (int i = 0; i < numKeys; i++) {
+      row.clear();
+      row.add("http://www.example.com/catalog/" + r.nextInt(50) + "/item?id="
+          + r.nextInt(numKeys));
+      row.add("Mozilla/5.0 (compatible; " + (r.nextBoolean() ? "MSIE" : "Firefox")
+          + " " + r.nextInt(10) + ")");
+      row.add(Integer.valueOf(r.nextInt(1000)));
+      BytesWritable bytes = (BytesWritable) serde.serialize(row, rowOI);
+      key.set(bytes.getBytes(), 0, bytes.getLength());
+      starts[i] = out.getLength();
+      key.write(out);
+      lengths[i] = out.getLength() - starts[i];
+    }
+    buffer = out.getData();
+  }
+
+  /**
+   * @return the nanoseconds taken to sort the keys
+   */
+  private long run(final WritableComparator comparator) {
+    final int[] indexes = new int[starts.length];
+    for (int i = 0; i < indexes.length; i++) {
+      indexes[i] = i;
+    }
+    IndexedSortable sortable = new IndexedSortable() {
+      public int compare(int i, int j) {
+        return comparator.compare(buffer, starts[indexes[i]], lengths[indexes[i]],
+            buffer, starts[indexes[j]], lengths[indexes[j]]);
+      }
+
+      public void swap(int i, int j) {
+        int t = indexes[i];
+        indexes[i] = indexes[j];
+        indexes[j] = t;
+      }
+    };
+    long start = System.nanoTime();
+    new QuickSort().sort(sortable, 0, indexes.length);
+    long time = System.nanoTime() - start;
+
+    // check the order
+    for (int i = 1; i < indexes.length; i++) {
+      if (sortable.compare(i - 1, i) > 0) {
+        throw new RuntimeException("Keys " + (i - 1) + " and " + i
+            + " are out of order");
+      }
+    }
+    return time;
+  }
+
+  private static void report(String name, long best, long total,
+      int iterations, int numKeys) {
+    System.out.println(name + ": best " + (best / 1000000) + " ms ("
+        + (best / numKeys) + " ns/key), average "
+        + (total / iterations / 1000000) + " ms");
+  }
+
+  public static void main(String[] args) throws Exception {
+    int numKeys = 500000;
+    int iterations = 10;
+    for (int i = 0; i < args.length; ++i) {
+      if (args[i].equals("-keys")) {
+        numKeys = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-iterations")) {
+        iterations = Integer.parseInt(args[++i]);
+      }
+    }
+
+    PerformTestHiveKeyComparator test = new PerformTestHiveKeyComparator();
+    test.createKeys(numKeys);
+    WritableComparator byteComparator = new HiveKey.Comparator();
+    WritableComparator prefixComparator = new HiveKey.PrefixComparator();
+
+    // warm up, then keep the best of the measured iterations
+    for (int i = 0; i < iterations; i++) {
+      test.run(byteComparator);
+      test.run(prefixComparator);
+    }
+    long byteBest = Long.MAX_VALUE;
+    long byteTotal = 0;
+    long prefixBest = Long.MAX_VALUE;
+    long prefixTotal = 0;
+    for (int i = 0; i < iterations; i++) {
+      long time = test.run(byteComparator);
+      byteBest = Math.min(byteBest, time);
+      byteTotal += time;
+      time = test.run(prefixComparator);
+      prefixBest = Math.min(prefixBest, time);
+      prefixTotal += time;
+    }
+    System.out.println("Keys: " + numKeys + ", iterations: " + iterations);
+    report("Comparator", byteBest, byteTotal, iterations, numKeys);
+    report("PrefixComparator", prefixBest, prefixTotal, iterations, numKeys);
+  }
+}
@@ -0,0 +1,327 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hive.ql.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.exec.LimitOperator;
+import org.apache.hadoop.hive.ql.exec.MapOperator;
+import org.apache.hadoop.hive.ql.exec.Operator;
+import org.apache.hadoop.hive.ql.exec.TableScanOperator;
+import org.apache.hadoop.hive.ql.exec.Utilities;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.plan.LimitDesc;
+import org.apache.hadoop.hive.ql.plan.MapredWork;
+import org.apache.hadoop.hive.ql.plan.PartitionDesc;
+import org.apache.hadoop.hive.ql.plan.TableDesc;
+import org.apache.hadoop.hive.ql.plan.TableScanDesc;
+import org.apache.hadoop.hive.serde.Constants;
+import org.apache.hadoop.hive.serde2.columnar.BytesRefArrayWritable;
+import org.apache.hadoop.hive.serde2.columnar.BytesRefWritable;
+import org.apache.hadoop.hive.serde2.columnar.ColumnarSerDe;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.StructField;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.Reporter;
+
+/**
+ * TestHiveInputFormat.
+ *
+ */
+public class TestHiveInputFormat extends TestCase {
+
+  private static final int NUM_DIRS = 20;
+
+  private JobConf job;
+  private FileSystem fs;
+  private Path testDir;
+  private Path[] dirs;
+
+  @Override
+  protected void setUp() throws IOException {
+    job = new JobConf(TestHiveInputFormat.class);
+    job.set("fs.default.name", "file:///");
+    fs = FileSystem.getLocal(job);
+    testDir = new Path(System.getProperty("test.data.dir", System.getProperty(
+        "user.dir", new File(".").getAbsolutePath()))
+        + "/TestHiveInputFormat");
+    fs.delete(testDir, true);
+
+    LinkedHashMap<String, ArrayList<String>> pathToAliases =
+      new LinkedHashMap<String, ArrayList<String>>();
+    LinkedHashMap<String, PartitionDesc> pathToPartitionInfo =
+      new LinkedHashMap<String, PartitionDesc>();
+    dirs = new Path[NUM_DIRS];
+    for (int i = 0; i < NUM_DIRS; i++) {
+      dirs[i] = fs.makeQualified(new Path(testDir, "dir" + i));
+      // a different number of files in each directory
+      for (int j = 0; j <= i % 3; j++) {
+        FSDataOutputStream out = fs.create(new Path(dirs[i], "file" + j));
+        out.writeBytes("dir" + i + "_file" + j + "\n");
+        out.close();
+      }
+      ArrayList<String> aliases = new ArrayList<String>();
+      aliases.add("a");
+      pathToAliases.put(dirs[i].toString(), aliases);
+      pathToPartitionInfo.put(dirs[i].toString(), new PartitionDesc(Utilities.defaultTd, null));
+    }
+
+    MapredWork work = new MapredWork();
+    work.setPathToAliases(pathToAliases);
+    work.setPathToPartitionInfo(pathToPartitionInfo);
+    work.setAliasToWork(new LinkedHashMap<String, Operator<? extends Serializable>>());
+    Utilities.setMapRedWork(job, work, new Path(testDir, "plan").toString());
+    FileInputFormat.setInputPaths(job, dirs);
+  }
+
+  @Override
+  protected void tearDown() throws IOException {
+    InputPathCache.clear();
+    Utilities.clearMapRedWork(job);
+    fs.delete(testDir, true);
+  }
+
+  private InputSplit[] computeSplits(int numThreads) throws IOException {
+    HiveConf.setIntVar(job, HiveConf.ConfVars.HIVE_INPUT_SPLIT_THREADS, numThreads);
+    job.setLong(HiveInputFormat.SPLITS_TIME_CONF_STR, -1);
+    HiveInputFormat<?, ?> inputFormat = new HiveInputFormat();
+    inputFormat.configure(job);
+    InputSplit[] splits = inputFormat.getSplits(job, NUM_DIRS);
+    assertTrue(job.getLong(HiveInputFormat.SPLITS_TIME_CONF_STR, -1) >= 0);
+
+    // the times are also kept for the thread, as JobClient may compute the
+    // splits with a copy of the configuration
+    long[] times = HiveInputFormat.takeSplitsTimes();
+    assertNotNull(times);
+    assertEquals(job.getLong(HiveInputFormat.SPLITS_TIME_CONF_STR, -1), times[0]);
+    assertNull(HiveInputFormat.takeSplitsTimes());
+    return splits;
+  }
+
+  private List<String> getSplits(int numThreads) throws IOException {
+    InputSplit[] splits = computeSplits(numThreads);
+    List<String> result = new ArrayList<String>();
+    for (InputSplit split : splits) {
+      FileSplit fileSplit = (FileSplit) split;
+      result.add(fileSplit.getPath() + ":" + fileSplit.getStart());
+    }
+    return result;
+  }
+
+  /**
+   * Test that the splits computed in parallel are those computed serially,
+   * in the order of the input paths.
+   */
+  public void testParallelSplits() throws Exception {
+    List<String> serialSplits = getSplits(1);
+    // 1, 2 or 3 files in each directory
+    assertEquals(NUM_DIRS / 3 * 6 + 1 + 2, serialSplits.size());
+    int dir = 0;
+    for (String split : serialSplits) {
+      while (!split.startsWith(dirs[dir].toString() + "/")) {
+        dir++;
+        assertTrue("split " + split + " is out of order", dir < NUM_DIRS);
+      }
+    }
+
+    for (int numThreads = 2; numThreads <= NUM_DIRS + 1; numThreads += 9) {
+      assertEquals(serialSplits, getSplits(numThreads));
+    }
+  }
+
+  /**
+   * Test that a failure on one path fails the computation of the splits.
+   */
+  public void testParallelSplitsFailure() throws Exception {
+    fs.delete(dirs[NUM_DIRS / 2], true);
+    for (int numThreads = 1; numThreads <= 4; numThreads += 3) {
+      try {
+        getSplits(numThreads);
+        fail("splits computed for a missing input path");
+      } catch (IOException e) {
+        // expected
+      }
+    }
+  }
+
+  /**
+   * Test that the splits of the directories are cached until a directory
+   * changes or is invalidated.
+   */
+  public void testCachedSplits() throws Exception {
+    HiveConf.setBoolVar(job, HiveConf.ConfVars.HIVE_INPUT_PATH_CACHE, true);
+    InputSplit[] splits = computeSplits(4);
+    InputSplit[] cachedSplits = computeSplits(1);
+    assertEquals(splits.length, cachedSplits.length);
+    for (int i = 0; i < splits.length; i++) {
+      assertSame(((HiveInputFormat.HiveInputSplit) splits[i]).getInputSplit(),
+          ((HiveInputFormat.HiveInputSplit) cachedSplits[i]).getInputSplit());
+    }
+
+    // a new file in a directory, which may keep its modification time
+    FSDataOutputStream out = fs.create(new Path(dirs[0], "newfile"));
+    out.writeBytes("newfile\n");
+    out.close();
+    InputPathCache.invalidate(dirs[0].getParent(), job);
+    List<String> newSplits = getSplits(1);
+    assertEquals(splits.length + 1, newSplits.size());
+    assertTrue(newSplits.contains(new Path(dirs[0], "newfile") + ":0"));
+
+    // the directory is listed again when its modification time changes
+    Thread.sleep(1100);
+    out = fs.create(new Path(dirs[1], "newfile"));
+    out.writeBytes("newfile\n");
+    out.close();
+    assertEquals(splits.length + 2, getSplits(1).size());
+  }
+
+  /**
+   * Counts the rows of a table scan, and sums their first column.
+   */
+  public static class RowCounter extends LimitOperator {
+    private static final long serialVersionUID = 1L;
+
+    static int rows;
+    static long sum;
+
+    public RowCounter() {
+      setConf(new LimitDesc(Integer.MAX_VALUE));
+    }
+
+    @Override
+    public void processOp(Object row, int tag) throws HiveException {
+      StructObjectInspector oi = (StructObjectInspector) inputObjInspectors[tag];
+      List<? extends StructField> fields = oi.getAllStructFieldRefs();
+      sum += (Integer) ((PrimitiveObjectInspector) fields.get(0).getFieldObjectInspector())
+          .getPrimitiveJavaObject(oi.getStructFieldData(row, fields.get(0)));
+      assertEquals("1", ((PrimitiveObjectInspector) fields.get(2).getFieldObjectInspector())
+          .getPrimitiveJavaObject(oi.getStructFieldData(row, fields.get(2))));
+      rows++;
+    }
+  }
+
+  /**
+   * Test that the rows of an RCFile partition are read a row group at a time
+   * and handed to the table scan in batches in vectorized mode, and are read
+   * one at a time otherwise.
+   */
+  public void testVectorizedRCFile() throws Exception {
+    Path dir = fs.makeQualified(new Path(testDir, "rc/ds=1"));
+    Path file = new Path(dir, "file0");
+    JobConf writeConf = new JobConf(job);
+    RCFileOutputFormat.setColumnNumber(writeConf, 2);
+    writeConf.setInt(RCFile.RECORD_INTERVAL_CONF_STR, 300);
+    RCFile.Writer writer = new RCFile.Writer(fs, writeConf, file, null, null);
+    for (int i = 0; i < 1000; i++) {
+      BytesRefArrayWritable row = new BytesRefArrayWritable(2);
+      row.set(0, new BytesRefWritable(String.valueOf(i).getBytes("UTF-8")));
+      row.set(1, new BytesRefWritable(("val_" + i).getBytes("UTF-8")));
+      writer.append(row);
+    }
+    writer.close();
+
+    Properties props = new Properties();
+    props.setProperty(Constants.SERIALIZATION_FORMAT, "1");
+    props.setProperty("name", "default.t");
+    props.setProperty("columns", "key,value");
+    props.setProperty("columns.types", "int:string");
+    props.setProperty(
+        org.apache.hadoop.hive.metastore.api.Constants.META_TABLE_PARTITION_COLUMNS, "ds");
+    TableDesc td = new TableDesc(ColumnarSerDe.class, RCFileInputFormat.class,
+        RCFileOutputFormat.class, props);
+    LinkedHashMap<String, String> partSpec = new LinkedHashMap<String, String>();
+    partSpec.put("ds", "1");
+
+    TableScanOperator scan = new TableScanOperator();
+    scan.setConf(new TableScanDesc("t"));
+    RowCounter counter = new RowCounter();
+    scan.setChildOperators(new ArrayList<Operator<? extends Serializable>>());
+    scan.getChildOperators().add(counter);
+    counter.setParentOperators(new ArrayList<Operator<? extends Serializable>>());
+    counter.getParentOperators().add(scan);
+
+    LinkedHashMap<String, ArrayList<String>> pathToAliases =
+      new LinkedHashMap<String, ArrayList<String>>();
+    ArrayList<String> aliases = new ArrayList<String>();
+    aliases.add("t");
+    pathToAliases.put(dir.toString(), aliases);
+    LinkedHashMap<String, PartitionDesc> pathToPartitionInfo =
+      new LinkedHashMap<String, PartitionDesc>();
+    pathToPartitionInfo.put(dir.toString(), new PartitionDesc(td, partSpec));
+    LinkedHashMap<String, Operator<? extends Serializable>> aliasToWork =
+      new LinkedHashMap<String, Operator<? extends Serializable>>();
+    aliasToWork.put("t", scan);
+    MapredWork work = new MapredWork();
+    work.setPathToAliases(pathToAliases);
+    work.setPathToPartitionInfo(pathToPartitionInfo);
+    work.setAliasToWork(aliasToWork);
+    Utilities.setMapRedWork(job, work, new Path(testDir, "plan").toString());
+    FileInputFormat.setInputPaths(job, dir);
+    HiveConf.setVar(job, HiveConf.ConfVars.HADOOPMAPFILENAME, file.toString());
+    HiveConf.setIntVar(job, HiveConf.ConfVars.HIVE_VECTORIZATION_BATCH_SIZE, 128);
+
+    for (boolean vectorized : new boolean[] {true, false}) {
+      HiveConf.setBoolVar(job, HiveConf.ConfVars.HIVE_VECTORIZATION_ENABLED, vectorized);
+      HiveInputFormat<?, ?> inputFormat = new HiveInputFormat();
+      inputFormat.configure(job);
+      InputSplit[] splits = inputFormat.getSplits(job, 1);
+      assertEquals(1, splits.length);
+
+      MapOperator mo = new MapOperator();
+      mo.initializeAsRoot(job, Utilities.getMapRedWork(job));
+      RowCounter.rows = 0;
+      RowCounter.sum = 0;
+      RecordReader reader = inputFormat.getRecordReader(splits[0], job, Reporter.NULL);
+      Object key = reader.createKey();
+      Object value = reader.createValue();
+      assertEquals(vectorized ? VectorizedRowBatch.class : BytesRefArrayWritable.class,
+          value.getClass());
+      int values = 0;
+      while (reader.next(key, value)) {
+        mo.process((Writable) value);
+        values++;
+      }
+      reader.close();
+      mo.close(false);
+
+      // batches of up to 128 rows, over row groups of up to 300 rows
+      assertEquals(vectorized ? 8 : 1000, values);
+      assertEquals(1000, RowCounter.rows);
+      assertEquals(999 * 1000 / 2, RowCounter.sum);
+    }
+  }
+}
@@ -21,6 +21,8 @@ package org.apache.hadoop.hive.ql.io;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Properties;
 
@@ -33,6 +35,26 @@ import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.LocalFileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.exec.Utilities;
+import org.apache.hadoop.hive.ql.exec.vector.BytesColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.DoubleColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatchCtx;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeConstantDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeGenericFuncDesc;
+import org.apache.hadoop.hive.ql.plan.PartitionDesc;
+import org.apache.hadoop.hive.ql.plan.TableScanDesc;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPAnd;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqual;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqualOrGreaterThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPLessThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPNull;
 import org.apache.hadoop.hive.serde.Constants;
 import org.apache.hadoop.hive.serde2.ColumnProjectionUtils;
 import org.apache.hadoop.hive.serde2.SerDeException;
@@ -43,15 +65,18 @@ import org.apache.hadoop.hive.serde2.io.ByteWritable;
 import org.apache.hadoop.hive.serde2.io.DoubleWritable;
 import org.apache.hadoop.hive.serde2.io.ShortWritable;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.StructField;
 import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils.ObjectInspectorCopyOption;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
 import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.compress.CompressionCodec;
 import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.mapred.FileSplit;
 import org.apache.hadoop.mapred.InputSplit;
 import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.RecordReader;
@@ -465,6 +490,387 @@ public class TestRCFile extends TestCase {
   }
   
 
+  private static ExprNodeDesc func(GenericUDF udf, ExprNodeDesc... children) {
+    List<ExprNodeDesc> list = new ArrayList<ExprNodeDesc>();
+    for (ExprNodeDesc child : children) {
+      list.add(child);
+    }
+    return new ExprNodeGenericFuncDesc(TypeInfoFactory.booleanTypeInfo, udf, list);
+  }
+
+  private int readWithFilter(Configuration writeConf, Path testFile,
+      ExprNodeDesc filter) throws IOException {
+    JobConf jobConf = new JobConf(writeConf);
+    jobConf.set("mapred.input.dir", testFile.getParent().toString());
+    jobConf.set(Constants.LIST_COLUMNS, "key,value");
+    jobConf.set(TableScanDesc.FILTER_EXPR_CONF_STR, Utilities.serializeExpression(filter));
+    RCFileInputFormat inputFormat = new RCFileInputFormat();
+    int readCount = 0;
+    for (InputSplit split : inputFormat.getSplits(jobConf, 1)) {
+      RecordReader rr = inputFormat.getRecordReader(split, jobConf, Reporter.NULL);
+      Object key = rr.createKey();
+      Object value = rr.createValue();
+      while (rr.next(key, value)) {
+        readCount++;
+      }
+      rr.close();
+    }
+    return readCount;
+  }
+
+  public void testColumnStatsFilter() throws IOException {
+    Path testFile = new Path(System.getProperty("test.data.dir", ".")
+        + "/mapred/testcolumnstats", "test_rcfile");
+    for (CompressionCodec codec : new CompressionCodec[] {null, new DefaultCodec()}) {
+      fs.delete(testFile, true);
+      Configuration cloneConf = new Configuration(conf);
+      RCFileOutputFormat.setColumnNumber(cloneConf, 2);
+      cloneConf.setInt(RCFile.RECORD_INTERVAL_CONF_STR, 100);
+      cloneConf.setBoolean(RCFile.COLUMN_STATS_CONF_STR, true);
+      cloneConf.set(RCFile.COLUMN_TYPES_CONF_STR, "int:string");
+
+      // 10 row groups of 100 rows, the values are null in the last one
+      RCFile.Writer writer = new RCFile.Writer(fs, cloneConf, testFile, null, codec);
+      for (int i = 0; i < 1000; i++) {
+        BytesRefArrayWritable row = new BytesRefArrayWritable(2);
+        row.set(0, new BytesRefWritable(String.valueOf(i).getBytes("UTF-8")));
+        String value = i >= 900 ? "\\N" : "v" + (char) ('a' + i / 100);
+        row.set(1, new BytesRefWritable(value.getBytes("UTF-8")));
+        writer.append(row);
+      }
+      writer.close();
+
+      ExprNodeDesc key = new ExprNodeColumnDesc(TypeInfoFactory.intTypeInfo, "key", "t", false);
+      ExprNodeDesc value = new ExprNodeColumnDesc(TypeInfoFactory.stringTypeInfo, "value", "t",
+          false);
+      assertEquals(100, readWithFilter(cloneConf, testFile, func(new GenericUDFOPAnd(),
+          func(new GenericUDFOPEqualOrGreaterThan(), key, new ExprNodeConstantDesc(250)),
+          func(new GenericUDFOPLessThan(), key, new ExprNodeConstantDesc(300)))));
+      assertEquals(200, readWithFilter(cloneConf, testFile,
+          func(new GenericUDFOPLessThan(), key, new ExprNodeConstantDesc(150L))));
+      assertEquals(100, readWithFilter(cloneConf, testFile,
+          func(new GenericUDFOPEqual(), new ExprNodeConstantDesc("vc"), value)));
+      assertEquals(100, readWithFilter(cloneConf, testFile,
+          func(new GenericUDFOPNull(), value)));
+      assertEquals(0, readWithFilter(cloneConf, testFile,
+          func(new GenericUDFOPEqual(), key, new ExprNodeConstantDesc(1000.5))));
+    }
+  }
+
+  private static String encodingTestValue(int row, int column) {
+    switch (column) {
+    case 0:
+      // runs of arithmetic progressions
+      return String.valueOf(row < 500 ? 1000 - row * 3 : row * 7);
+    case 1:
+      return "value_" + (row % 5);
+    case 2:
+      // integers with edge cases, not in canonical form for some rows
+      if (row % 97 == 0) {
+        return String.valueOf(Long.MIN_VALUE);
+      } else if (row % 89 == 0) {
+        return String.valueOf(Long.MAX_VALUE);
+      }
+      return row % 50 == 1 ? "0" + row : String.valueOf(row % 3);
+    default:
+      return "text" + (row * 7919 % 1013) + "_" + row;
+    }
+  }
+
+  private long writeEncodingTestFile(Path file, boolean encode,
+      CompressionCodec codec) throws IOException {
+    fs.delete(file, true);
+    Configuration cloneConf = new Configuration(conf);
+    RCFileOutputFormat.setColumnNumber(cloneConf, 4);
+    cloneConf.setInt(RCFile.RECORD_INTERVAL_CONF_STR, 300);
+    cloneConf.setBoolean(RCFile.COLUMN_ENCODING_CONF_STR, encode);
+    RCFile.Writer writer = new RCFile.Writer(fs, cloneConf, file, null, codec);
+    for (int i = 0; i < 1000; i++) {
+      BytesRefArrayWritable row = new BytesRefArrayWritable(4);
+      for (int j = 0; j < 4; j++) {
+        row.set(j, new BytesRefWritable(encodingTestValue(i, j).getBytes("UTF-8")));
+      }
+      writer.append(row);
+    }
+    writer.close();
+    return fs.getFileStatus(file).getLen();
+  }
+
+  public void testColumnEncoding() throws IOException {
+    Path testFile = new Path(System.getProperty("test.data.dir", ".")
+        + "/mapred/testcolumnencoding", "test_rcfile");
+    ColumnProjectionUtils.setFullyReadColumns(conf);
+    for (CompressionCodec codec : new CompressionCodec[] {null, new DefaultCodec()}) {
+      long plainSize = writeEncodingTestFile(testFile, false, codec);
+      long encodedSize = writeEncodingTestFile(testFile, true, codec);
+      assertTrue("encoded " + encodedSize + " plain " + plainSize,
+          encodedSize < plainSize);
+
+      RCFile.Reader reader = new RCFile.Reader(fs, testFile, conf);
+      LongWritable rowID = new LongWritable();
+      BytesRefArrayWritable cols = new BytesRefArrayWritable();
+      int row = 0;
+      while (reader.next(rowID)) {
+        reader.getCurrentRow(cols);
+        for (int j = 0; j < 4; j++) {
+          BytesRefWritable cell = cols.get(j);
+          assertEquals(encodingTestValue(row, j),
+              new String(cell.getData(), cell.getStart(), cell.getLength(), "UTF-8"));
+        }
+        row++;
+      }
+      reader.close();
+      assertEquals(1000, row);
+
+      // read the columns of the row groups
+      reader = new RCFile.Reader(fs, testFile, conf);
+      row = 0;
+      while (reader.nextColumnsBatch()) {
+        int numRows = 0;
+        for (int j = 0; j < 4; j++) {
+          BytesRefArrayWritable column = reader.getColumn(j, null);
+          numRows = column.size();
+          for (int i = 0; i < numRows; i++) {
+            BytesRefWritable cell = column.get(i);
+            assertEquals(encodingTestValue(row + i, j),
+                new String(cell.getData(), cell.getStart(), cell.getLength(), "UTF-8"));
+          }
+        }
+        row += numRows;
+      }
+      reader.close();
+      assertEquals(1000, row);
+    }
+  }
+
+  /**
+   * Copy the blocks of a plain file then of an encoded file into a file with
+   * encodings, as the block merge task does.
+   */
+  public void testMergeEncodedBlocks() throws IOException {
+    Path dir = new Path(System.getProperty("test.data.dir", ".") + "/mapred/testmergeencoded");
+    Path plainFile = new Path(dir, "plain");
+    Path encodedFile = new Path(dir, "encoded");
+    Path mergedFile = new Path(dir, "merged");
+    writeEncodingTestFile(plainFile, false, null);
+    writeEncodingTestFile(encodedFile, true, null);
+    assertFalse(RCFile.hasColumnEncodings(fs, plainFile));
+    assertTrue(RCFile.hasColumnEncodings(fs, encodedFile));
+
+    fs.delete(mergedFile, true);
+    Configuration cloneConf = new Configuration(conf);
+    RCFileOutputFormat.setColumnNumber(cloneConf, 4);
+    cloneConf.setBoolean(RCFile.COLUMN_ENCODING_CONF_STR, true);
+    RCFile.Writer writer = new RCFile.Writer(fs, cloneConf, mergedFile, null, null);
+    for (Path file : new Path[] {plainFile, encodedFile}) {
+      RCFile.Reader reader = new RCFile.Reader(fs, file, conf);
+      while (reader.nextBlock()) {
+        writer.flushBlock(reader.getCurrentKeyBufferObj(), reader.getCurrentValueBufferObj(),
+            reader.getCurrentBlockLength(), reader.getCurrentKeyLength(),
+            reader.getCurrentCompressedKeyLen());
+      }
+      reader.close();
+    }
+    writer.close();
+
+    ColumnProjectionUtils.setFullyReadColumns(conf);
+    RCFile.Reader reader = new RCFile.Reader(fs, mergedFile, conf);
+    LongWritable rowID = new LongWritable();
+    BytesRefArrayWritable cols = new BytesRefArrayWritable();
+    int row = 0;
+    while (reader.next(rowID)) {
+      reader.getCurrentRow(cols);
+      for (int j = 0; j < 4; j++) {
+        BytesRefWritable cell = cols.get(j);
+        assertEquals(encodingTestValue(row % 1000, j),
+            new String(cell.getData(), cell.getStart(), cell.getLength(), "UTF-8"));
+      }
+      row++;
+    }
+    reader.close();
+    assertEquals(2000, row);
+    fs.delete(dir, true);
+  }
+
+  public void testReadAhead() throws IOException {
+    Path testFile = new Path(System.getProperty("test.data.dir", ".")
+        + "/mapred/testreadahead", "test_rcfile");
+    ColumnProjectionUtils.setFullyReadColumns(conf);
+    for (CompressionCodec codec : new CompressionCodec[] {null, new DefaultCodec()}) {
+      writeEncodingTestFile(testFile, true, codec);
+
+      for (boolean decompressValues : new boolean[] {false, true}) {
+        RCFile.Reader reader = new RCFile.Reader(fs, testFile, conf);
+        reader.setReadAhead(2, decompressValues, Long.MAX_VALUE);
+        LongWritable rowID = new LongWritable();
+        BytesRefArrayWritable cols = new BytesRefArrayWritable();
+        int row = 0;
+        while (reader.next(rowID)) {
+          if (row == 400) {
+            // continue without the read-ahead thread
+            reader.setReadAhead(0, false, Long.MAX_VALUE);
+          } else if (row == 700) {
+            reader.setReadAhead(1, decompressValues, Long.MAX_VALUE);
+          }
+          reader.getCurrentRow(cols);
+          for (int j = 0; j < 4; j++) {
+            BytesRefWritable cell = cols.get(j);
+            assertEquals(encodingTestValue(row, j),
+                new String(cell.getData(), cell.getStart(), cell.getLength(), "UTF-8"));
+          }
+          row++;
+        }
+        reader.close();
+        assertEquals(1000, row);
+      }
+
+      // splits are read up to the same row groups
+      JobConf jobConf = new JobConf(conf);
+      jobConf.set("mapred.input.dir", testFile.getParent().toString());
+      jobConf.setInt(RCFile.READ_AHEAD_CONF_STR, 2);
+      RCFileInputFormat inputFormat = new RCFileInputFormat();
+      int readCount = 0;
+      InputSplit[] splits = inputFormat.getSplits(jobConf, 3);
+      assertTrue(splits.length > 1);
+      for (InputSplit split : splits) {
+        RecordReader rr = inputFormat.getRecordReader(split, jobConf, Reporter.NULL);
+        Object key = rr.createKey();
+        Object value = rr.createValue();
+        while (rr.next(key, value)) {
+          readCount++;
+        }
+        rr.close();
+      }
+      assertEquals(1000, readCount);
+    }
+  }
+
+  public void testDecodeColumns() throws Exception {
+    Path testFile = new Path(System.getProperty("test.data.dir", ".")
+        + "/mapred/testdecodecolumns", "test_rcfile");
+    ColumnProjectionUtils.setFullyReadColumns(conf);
+    writeEncodingTestFile(testFile, true, new DefaultCodec());
+
+    for (String types : new String[] {"int:string:bigint:double",
+        "tinyint:string:smallint:float"}) {
+      Properties props = new Properties();
+      props.setProperty(Constants.SERIALIZATION_FORMAT, "9");
+      props.setProperty("columns", "a,b,c,d");
+      props.setProperty("columns.types", types);
+      ColumnarSerDe columnarSerDe = new ColumnarSerDe();
+      columnarSerDe.initialize(conf, props);
+      StructObjectInspector oi = (StructObjectInspector) columnarSerDe.getObjectInspector();
+      List<? extends StructField> fields = oi.getAllStructFieldRefs();
+
+      // compare the batches decoded from the columns of each row group with
+      // the rows, the batches being smaller than the row groups
+      VectorizedRowBatchCtx ctx = new VectorizedRowBatchCtx(columnarSerDe);
+      VectorizedRowBatch batch = ctx.createBatch(100);
+      RCFile.Reader columnReader = new RCFile.Reader(fs, testFile, conf);
+      RCFile.Reader rowReader = new RCFile.Reader(fs, testFile, conf);
+      BytesRefArrayWritable[] columns = new BytesRefArrayWritable[4];
+      LongWritable rowID = new LongWritable();
+      BytesRefArrayWritable cols = new BytesRefArrayWritable();
+      int row = 0;
+      while (columnReader.nextColumnsBatch()) {
+        for (int j = 0; j < 4; j++) {
+          columns[j] = columnReader.getColumn(j, null);
+        }
+        int groupSize = columns[0].size();
+        for (int first = 0; first < groupSize; first += batch.size) {
+          batch.reset();
+          ctx.addRowGroup(batch, columns, first, groupSize - first);
+          for (int i = 0; i < batch.size; i++, row++) {
+            assertTrue(rowReader.next(rowID));
+            rowReader.getCurrentRow(cols);
+            Object struct = columnarSerDe.deserialize(cols);
+            for (int j = 0; j < 4; j++) {
+              ColumnVector col = batch.cols[j];
+              Object expected = ((PrimitiveObjectInspector) fields.get(j).getFieldObjectInspector())
+                  .getPrimitiveJavaObject(oi.getStructFieldData(struct, fields.get(j)));
+              String message = "row " + row + " column " + j;
+              assertEquals(message, expected == null, col.isNull[i]);
+              if (expected == null) {
+                assertFalse(col.noNulls);
+              } else if (col instanceof LongColumnVector) {
+                assertEquals(message, ((Number) expected).longValue(),
+                    ((LongColumnVector) col).vector[i]);
+              } else if (col instanceof DoubleColumnVector) {
+                assertEquals(message, ((Number) expected).doubleValue(),
+                    ((DoubleColumnVector) col).vector[i], 0);
+              } else {
+                BytesColumnVector bytes = (BytesColumnVector) col;
+                assertEquals(message, expected, new String(bytes.buffer, bytes.start[i],
+                    bytes.length[i], "UTF-8"));
+              }
+            }
+          }
+        }
+      }
+      assertFalse(rowReader.next(rowID));
+      columnReader.close();
+      rowReader.close();
+      assertEquals(1000, row);
+    }
+  }
+
+  public void testVectorizedRecordReader() throws Exception {
+    Path testFile = new Path(System.getProperty("test.data.dir", ".")
+        + "/mapred/testvectorizedreader", "test_rcfile");
+    Properties props = new Properties();
+    props.setProperty(Constants.SERIALIZATION_FORMAT, "9");
+    props.setProperty("columns", "a,b,c,d");
+    props.setProperty("columns.types", "int:string:bigint:string");
+    props.setProperty(
+        org.apache.hadoop.hive.metastore.api.Constants.META_TABLE_PARTITION_COLUMNS, "ds");
+    LinkedHashMap<String, String> partSpec = new LinkedHashMap<String, String>();
+    partSpec.put("ds", "2012-01-01");
+    PartitionDesc part = new PartitionDesc(null, partSpec, ColumnarSerDe.class,
+        RCFileInputFormat.class, RCFileOutputFormat.class, props,
+        ColumnarSerDe.class.getName());
+
+    // only b and d are read; the batches are smaller than the row groups
+    JobConf jobConf = new JobConf(conf);
+    ArrayList<Integer> readColumns = new ArrayList<Integer>();
+    readColumns.add(1);
+    readColumns.add(3);
+    ColumnProjectionUtils.setReadColumnIDs(jobConf, readColumns);
+    HiveConf.setIntVar(jobConf, HiveConf.ConfVars.HIVE_VECTORIZATION_BATCH_SIZE, 128);
+
+    for (CompressionCodec codec : new CompressionCodec[] {null, new DefaultCodec()}) {
+      writeEncodingTestFile(testFile, true, codec);
+      FileSplit split = new FileSplit(testFile, 0, fs.getFileStatus(testFile).getLen(),
+          (String[]) null);
+      VectorizedRCFileRecordReader reader =
+          VectorizedRCFileRecordReader.create(jobConf, split, part);
+      LongWritable key = reader.createKey();
+      VectorizedRowBatch batch = reader.createValue();
+      assertEquals(5, batch.getContext().getNumColumns());
+      int row = 0;
+      while (reader.next(key, batch)) {
+        assertEquals(row, key.get());
+        for (int i = 0; i < batch.size; i++, row++) {
+          assertTrue(batch.cols[0].isNull[i]);
+          assertTrue(batch.cols[2].isNull[i]);
+          for (int j : new int[] {1, 3, 4}) {
+            BytesColumnVector col = (BytesColumnVector) batch.cols[j];
+            assertFalse(col.isNull[i]);
+            assertEquals("row " + row + " column " + j,
+                j == 4 ? "2012-01-01" : encodingTestValue(row, j),
+                new String(col.buffer, col.start[i], col.length[i], "UTF-8"));
+          }
+        }
+      }
+      reader.close();
+      assertEquals(1000, row);
+    }
+
+    // the columns of other types are not read in batches
+    props.setProperty("columns.types", "int:string:bigint:map<string,string>");
+    assertNull(VectorizedRCFileRecordReader.create(jobConf,
+        new FileSplit(testFile, 0, 1, (String[]) null), part));
+  }
+
   // adopted Hadoop-5476 (calling new SequenceFile.Reader(...) leaves an
   // InputStream open, if the given sequence file is broken) to RCFile 
   private static class TestFSDataInputStream extends FSDataInputStream {
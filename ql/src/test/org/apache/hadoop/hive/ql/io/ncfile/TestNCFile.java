@@ -0,0 +1,282 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.io.ncfile;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.exec.FileSinkOperator.RecordWriter;
+import org.apache.hadoop.hive.ql.exec.Utilities;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeConstantDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeGenericFuncDesc;
+import org.apache.hadoop.hive.ql.plan.TableScanDesc;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPLessThan;
+import org.apache.hadoop.hive.serde.Constants;
+import org.apache.hadoop.hive.serde2.ColumnProjectionUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.StandardUnionObjectInspector.StandardUnion;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils.ObjectInspectorCopyOption;
+import org.apache.hadoop.hive.serde2.typeinfo.StructTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoUtils;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.Reporter;
+
+/**
+ * TestNCFile.
+ *
+ */
+public class TestNCFile extends TestCase {
+
+  private static final String COLUMNS = "id,name,score,tags,props,address,choice,flag";
+  private static final String TYPES = "int:string:double:array<string>:"
+      + "map<string,bigint>:struct<city:string,zip:smallint,geo:array<float>>:"
+      + "uniontype<int,string>:boolean";
+
+  private final Configuration conf = new Configuration();
+  private FileSystem fs;
+  private Path dir;
+  private Path file;
+  private Properties tbl;
+  private StructTypeInfo type;
+  private ObjectInspector javaOI;
+  private ObjectInspector writableOI;
+
+  @Override
+  protected void setUp() throws Exception {
+    fs = FileSystem.getLocal(conf);
+    dir = new Path(System.getProperty("test.data.dir", ".") + "/mapred/testncfile");
+    file = new Path(dir, "test_ncfile");
+    fs.delete(dir, true);
+    tbl = new Properties();
+    tbl.setProperty(Constants.LIST_COLUMNS, COLUMNS);
+    tbl.setProperty(Constants.LIST_COLUMN_TYPES, TYPES);
+    type = NCFileSerDe.getRowType(tbl);
+    javaOI = TypeInfoUtils.getStandardJavaObjectInspectorFromTypeInfo(type);
+    NCFileSerDe serde = new NCFileSerDe();
+    serde.initialize(conf, tbl);
+    writableOI = serde.getObjectInspector();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    fs.delete(dir, true);
+  }
+
+  /**
+   * A row with nulls at every level of nesting.
+   */
+  private static List<Object> createRow(int i) {
+    List<Object> row = new ArrayList<Object>();
+    row.add(i % 11 == 0 ? null : Integer.valueOf(i));
+    row.add(i % 7 == 0 ? null : "name_" + (i % 13));
+    row.add(Double.valueOf(i * 1.5));
+    if (i % 5 == 0) {
+      row.add(null);
+    } else {
+      List<Object> tags = new ArrayList<Object>();
+      for (int j = 0; j < i % 4; j++) {
+        tags.add(j == 2 ? null : "tag" + j);
+      }
+      row.add(tags);
+    }
+    Map<Object, Object> props = new HashMap<Object, Object>();
+    for (int j = 0; j < i % 3; j++) {
+      props.put("p" + j, j == 1 ? null : Long.valueOf((long) i << 33));
+    }
+    row.add(props);
+    if (i % 6 == 0) {
+      row.add(null);
+    } else {
+      List<Object> geo = i % 4 == 0 ? null : Arrays.asList((Object) Float.valueOf(i),
+          Float.valueOf(-i));
+      row.add(Arrays.asList((Object) ("city" + i), i % 3 == 0 ? null
+          : Short.valueOf((short) i), geo));
+    }
+    row.add(i % 9 == 0 ? null : i % 2 == 0 ? new StandardUnion((byte) 0,
+        Integer.valueOf(i)) : new StandardUnion((byte) 1, "u" + i));
+    row.add(Boolean.valueOf(i % 2 == 0));
+    return row;
+  }
+
+  private void writeFile(int numRows, CompressionCodec codec, int rowGroupRows)
+      throws IOException {
+    Configuration writeConf = new Configuration(conf);
+    writeConf.setInt(NCFile.ROW_GROUP_ROWS_CONF_STR, rowGroupRows);
+    NCFileWriter writer = new NCFileWriter(fs, writeConf, file, type, codec, null);
+    for (int i = 0; i < numRows; i++) {
+      writer.addRow(createRow(i), javaOI);
+    }
+    writer.close();
+  }
+
+  private void assertRow(int i, Object row) {
+    Object expected = ObjectInspectorUtils.copyToStandardObject(createRow(i),
+        javaOI, ObjectInspectorCopyOption.JAVA);
+    Object actual = ObjectInspectorUtils.copyToStandardObject(row, writableOI,
+        ObjectInspectorCopyOption.JAVA);
+    assertEquals("row " + i, expected, actual);
+  }
+
+  public void testReadAndWrite() throws IOException {
+    for (CompressionCodec codec : new CompressionCodec[] {null, new DefaultCodec()}) {
+      writeFile(1000, codec, 128);
+      NCFileReader reader = new NCFileReader(fs, file, conf);
+      assertEquals(type, reader.getType());
+      assertEquals(1000, reader.getNumRows());
+      assertEquals(8, reader.getRowGroups().size());
+      assertEquals(codec == null, reader.getCompressionCodec() == null);
+      Object row = null;
+      for (int i = 0; i < 1000; i++) {
+        assertTrue(reader.hasNext());
+        assertEquals(i, reader.getRowNumber());
+        row = reader.next(row);
+        assertRow(i, row);
+      }
+      assertFalse(reader.hasNext());
+      reader.close();
+    }
+  }
+
+  public void testProjection() throws IOException {
+    writeFile(300, new DefaultCodec(), 100);
+    NCFileReader reader = new NCFileReader(fs, file, conf);
+    reader.setReadColumns(Arrays.asList(Integer.valueOf(1), Integer.valueOf(5)));
+    Object row = null;
+    for (int i = 0; i < 300; i++) {
+      row = reader.next(row);
+      List<?> fields = (List<?>) row;
+      List<?> expected = (List<?>) ObjectInspectorUtils.copyToStandardObject(
+          createRow(i), javaOI, ObjectInspectorCopyOption.WRITABLE);
+      for (int j = 0; j < fields.size(); j++) {
+        if (j == 1 || j == 5) {
+          assertEquals("row " + i, expected.get(j), fields.get(j));
+        } else {
+          assertNull(fields.get(j));
+        }
+      }
+    }
+    assertNull(reader.next(row));
+    reader.close();
+  }
+
+  public void testSeekToRow() throws IOException {
+    writeFile(1000, null, 64);
+    NCFileReader reader = new NCFileReader(fs, file, conf);
+    for (int target : new int[] {777, 0, 64, 63, 999}) {
+      reader.seekToRow(target);
+      assertTrue(reader.hasNext());
+      assertEquals(target, reader.getRowNumber());
+      assertRow(target, reader.next(null));
+    }
+    reader.seekToRow(1000);
+    assertFalse(reader.hasNext());
+    reader.close();
+  }
+
+  private List<Integer> readWithInputFormat(JobConf job) throws IOException {
+    NCFileInputFormat inputFormat = new NCFileInputFormat();
+    List<Integer> ids = new ArrayList<Integer>();
+    for (InputSplit split : inputFormat.getSplits(job, 4)) {
+      RecordReader<NullWritable, NCFileRow> rr = inputFormat.getRecordReader(
+          split, job, Reporter.NULL);
+      NullWritable key = rr.createKey();
+      NCFileRow value = rr.createValue();
+      while (rr.next(key, value)) {
+        List<?> row = (List<?>) value.getRow();
+        assertNull(row.get(1));
+        IntWritable id = (IntWritable) row.get(0);
+        ids.add(id == null ? null : Integer.valueOf(id.get()));
+      }
+      rr.close();
+    }
+    return ids;
+  }
+
+  public void testInputFormat() throws Exception {
+    JobConf writeConf = new JobConf(conf);
+    writeConf.setInt(NCFile.ROW_GROUP_ROWS_CONF_STR, 100);
+    NCFileSerDe serde = new NCFileSerDe();
+    serde.initialize(writeConf, tbl);
+    RecordWriter writer = new NCFileOutputFormat().getHiveRecordWriter(writeConf,
+        file, NCFileRow.class, true, tbl, null);
+    for (int i = 0; i < 1000; i++) {
+      writer.write(serde.serialize(createRow(i), javaOI));
+    }
+    writer.close(false);
+
+    JobConf job = new JobConf(conf);
+    FileInputFormat.setInputPaths(job, dir);
+    job.set(Constants.LIST_COLUMNS, COLUMNS);
+    ArrayList<Integer> readColumns = new ArrayList<Integer>();
+    readColumns.add(Integer.valueOf(0));
+    ColumnProjectionUtils.setReadColumnIDs(job, readColumns);
+
+    // the splits read every row group once
+    List<Integer> ids = readWithInputFormat(job);
+    assertEquals(1000, ids.size());
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(i % 11 == 0 ? null : Integer.valueOf(i), ids.get(i));
+    }
+
+    // the row groups of ids 250 and more are skipped
+    List<ExprNodeDesc> children = new ArrayList<ExprNodeDesc>();
+    children.add(new ExprNodeColumnDesc(TypeInfoFactory.intTypeInfo, "id", "t", false));
+    children.add(new ExprNodeConstantDesc(250));
+    ExprNodeDesc filter = new ExprNodeGenericFuncDesc(TypeInfoFactory.booleanTypeInfo,
+        new GenericUDFOPLessThan(), children);
+    job.set(TableScanDesc.FILTER_EXPR_CONF_STR, Utilities.serializeExpression(filter));
+    assertEquals(300, readWithInputFormat(job).size());
+  }
+
+  public void testValidateInput() throws IOException {
+    writeFile(10, null, 100);
+    Path other = new Path(dir, "other");
+    fs.create(other).close();
+    NCFileInputFormat inputFormat = new NCFileInputFormat();
+    HiveConf hiveConf = new HiveConf(conf, TestNCFile.class);
+    ArrayList<FileStatus> files = new ArrayList<FileStatus>();
+    files.add(fs.getFileStatus(file));
+    assertTrue(inputFormat.validateInput(fs, hiveConf, files));
+    files.add(fs.getFileStatus(other));
+    assertFalse(inputFormat.validateInput(fs, hiveConf, files));
+  }
+}
@@ -33,11 +33,19 @@ import org.apache.hadoop.hive.metastore.MetaStoreUtils;
 import org.apache.hadoop.hive.metastore.Warehouse;
 import org.apache.hadoop.hive.metastore.api.Database;
 import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hadoop.hive.ql.exec.Utilities;
 import org.apache.hadoop.hive.ql.io.HiveIgnoreKeyTextOutputFormat;
+import org.apache.hadoop.hive.ql.optimizer.ppr.PartitionPruner;
+import org.apache.hadoop.hive.ql.parse.PrunedPartitionList;
+import org.apache.hadoop.hive.ql.parse.TypeCheckProcFactory;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeConstantDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
 import org.apache.hadoop.hive.serde.Constants;
 import org.apache.hadoop.hive.serde2.lazy.LazySimpleSerDe;
 import org.apache.hadoop.hive.serde2.thrift.ThriftDeserializer;
 import org.apache.hadoop.hive.serde2.thrift.test.Complex;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
 import org.apache.hadoop.mapred.SequenceFileInputFormat;
 import org.apache.hadoop.mapred.SequenceFileOutputFormat;
 import org.apache.hadoop.mapred.TextInputFormat;
@@ -374,4 +382,74 @@ public class TestHive extends TestCase {
       throw e;
     }
   }
+
+  private ExprNodeDesc makeFunc(String name, ExprNodeDesc... children) throws Exception {
+    return TypeCheckProcFactory.DefaultExprProcessor.getFuncExprNodeDesc(name, children);
+  }
+
+  /**
+   * Tests that comparisons on integral partition keys, IN lists and LIKE are
+   * pushed down to the metastore, and prune as Hive evaluates them.
+   */
+  public void testPartitionFilterPushDown() throws Throwable {
+    String tableName = "table_for_testpartitionfilter";
+    hm.dropTable(MetaStoreUtils.DEFAULT_DATABASE_NAME, tableName);
+
+    Table tbl = new Table(MetaStoreUtils.DEFAULT_DATABASE_NAME, tableName);
+    List<FieldSchema> fields = new ArrayList<FieldSchema>();
+    fields.add(new FieldSchema("key", Constants.STRING_TYPE_NAME, ""));
+    tbl.setFields(fields);
+    List<FieldSchema> partCols = new ArrayList<FieldSchema>();
+    partCols.add(new FieldSchema("ds", Constants.STRING_TYPE_NAME, ""));
+    partCols.add(new FieldSchema("hr", Constants.INT_TYPE_NAME, ""));
+    tbl.setPartCols(partCols);
+    tbl.setInputFormatClass(TextInputFormat.class.getName());
+    tbl.setOutputFormatClass(HiveIgnoreKeyTextOutputFormat.class.getName());
+    tbl.setSerializationLib(LazySimpleSerDe.class.getName());
+    hm.createTable(tbl);
+    tbl = hm.getTable(MetaStoreUtils.DEFAULT_DATABASE_NAME, tableName);
+
+    for (String ds : new String[] {"2008-04-08", "2008-04-09"}) {
+      for (String hr : new String[] {"1", "2", "10"}) {
+        HashMap<String, String> partSpec = new HashMap<String, String>();
+        partSpec.put("ds", ds);
+        partSpec.put("hr", hr);
+        hm.createPartition(tbl, partSpec);
+      }
+    }
+
+    ExprNodeDesc ds = new ExprNodeColumnDesc(TypeInfoFactory.stringTypeInfo, "ds", "t", true);
+    ExprNodeDesc hr = new ExprNodeColumnDesc(TypeInfoFactory.intTypeInfo, "hr", "t", true);
+
+    // hr is compared as a number: "10" > "2" is false for strings
+    ExprNodeDesc expr = makeFunc(">", hr, new ExprNodeConstantDesc(2));
+    assertEquals("(hr > 2)", Utilities.generateJDOFilter(tbl, expr));
+    checkPruned(tbl, expr, 2);
+
+    expr = makeFunc("and",
+        makeFunc("=", ds, new ExprNodeConstantDesc("2008-04-08")),
+        makeFunc("in", hr, new ExprNodeConstantDesc(1), new ExprNodeConstantDesc(10)));
+    assertEquals("((ds = \"2008-04-08\") and (hr in (1, 10)))",
+        Utilities.generateJDOFilter(tbl, expr));
+    checkPruned(tbl, expr, 2);
+
+    expr = makeFunc("or",
+        makeFunc("<=", hr, new ExprNodeConstantDesc(2)),
+        makeFunc("like", ds, new ExprNodeConstantDesc("%-09")));
+    assertEquals("((hr <= 2) or (ds like \".*-09\"))", Utilities.generateJDOFilter(tbl, expr));
+    checkPruned(tbl, expr, 5);
+
+    // a string compared to an integral key is not pushed down
+    expr = makeFunc("=", ds, new ExprNodeConstantDesc(1));
+    assertNull(Utilities.generateJDOFilter(tbl, expr));
+
+    hm.dropTable(MetaStoreUtils.DEFAULT_DATABASE_NAME, tableName);
+  }
+
+  private void checkPruned(Table tbl, ExprNodeDesc expr, int expectedCount) throws Exception {
+    PrunedPartitionList parts = PartitionPruner.prune(tbl, expr, hiveConf, "t",
+        new HashMap<String, PrunedPartitionList>());
+    assertEquals("Partitions pruned by " + expr.getExprString(),
+        expectedCount, parts.getConfirmedPartns().size());
+  }
 }
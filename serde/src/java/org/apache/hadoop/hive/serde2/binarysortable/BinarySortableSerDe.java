@@ -70,7 +70,8 @@ import org.apache.hadoop.io.Writable;
 
 /**
  * BinarySortableSerDe can be used to write data in a way that the data can be
- * compared byte-by-byte with the same order.
+ * compared byte-by-byte with the same order. {@link KeyPrefix} compares the
+ * serialized data on a fixed-width prefix first.
  *
  * The data format: NULL: a single byte \0 NON-NULL Primitives: ALWAYS prepend a
  * single byte \1, and then: Boolean: FALSE = \1, TRUE = \2 Byte: flip the
@@ -425,8 +426,12 @@ public class BinarySortableSerDe implements SerDe {
           fields.get(i).getFieldObjectInspector(), columnSortOrderIsDesc[i]);
     }
 
-    serializeBytesWritable.set(outputByteBuffer.getData(), 0, outputByteBuffer
-        .getLength());
+    int length = outputByteBuffer.getLength();
+    if (serializeBytesWritable.getCapacity() > OutputByteBuffer.MAX_RETAINED_SIZE
+        && length <= OutputByteBuffer.MAX_RETAINED_SIZE) {
+      serializeBytesWritable.setCapacity(length);
+    }
+    serializeBytesWritable.set(outputByteBuffer.getData(), 0, length);
     return serializeBytesWritable;
   }
 
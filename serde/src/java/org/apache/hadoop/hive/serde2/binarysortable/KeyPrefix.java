@@ -0,0 +1,83 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.serde2.binarysortable;
+
+/**
+ * KeyPrefix compares keys serialized by BinarySortableSerDe on a fixed-width
+ * normalized prefix.
+ *
+ * The keys of BinarySortableSerDe compare byte-by-byte as unsigned bytes, so
+ * their first {@link #BYTES} bytes, read as a big-endian number and padded
+ * with zeros, are already a normalized key: two keys whose prefixes differ
+ * compare as their prefixes, and only the keys with the same prefix need to
+ * be compared further. The rest of the keys is compared {@link #BYTES} bytes
+ * at a time in the same way.
+ */
+public final class KeyPrefix {
+
+  /**
+   * The number of bytes of the prefix.
+   */
+  public static final int BYTES = 8;
+
+  private KeyPrefix() {
+  }
+
+  /**
+   * Compare two keys on their prefixes, then on the rest of their bytes.
+   *
+   * @return a negative number, zero or a positive number as the first key is
+   *         less than, equal to or greater than the second one, in the order
+   *         of WritableComparator.compareBytes
+   */
+  public static int compare(byte[] b1, int s1, int l1, byte[] b2, int s2,
+      int l2) {
+    int length = Math.min(l1, l2);
+    int words = length - length % BYTES;
+    for (int i = 0; i < words; i += BYTES) {
+      long w1 = getWord(b1, s1 + i);
+      long w2 = getWord(b2, s2 + i);
+      if (w1 != w2) {
+        return (w1 ^ Long.MIN_VALUE) < (w2 ^ Long.MIN_VALUE) ? -1 : 1;
+      }
+    }
+    for (int i = words; i < length; i++) {
+      int a = b1[s1 + i] & 0xff;
+      int b = b2[s2 + i] & 0xff;
+      if (a != b) {
+        return a - b;
+      }
+    }
+    return l1 - l2;
+  }
+
+  /**
+   * @return the {@link #BYTES} bytes at start as a big-endian number
+   */
+  private static long getWord(byte[] bytes, int start) {
+    return ((long) (bytes[start] & 0xff) << 56)
+        | ((long) (bytes[start + 1] & 0xff) << 48)
+        | ((long) (bytes[start + 2] & 0xff) << 40)
+        | ((long) (bytes[start + 3] & 0xff) << 32)
+        | ((long) (bytes[start + 4] & 0xff) << 24)
+        | ((bytes[start + 5] & 0xff) << 16)
+        | ((bytes[start + 6] & 0xff) << 8)
+        | (bytes[start + 7] & 0xff);
+  }
+}
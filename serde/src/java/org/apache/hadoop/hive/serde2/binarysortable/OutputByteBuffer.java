@@ -25,7 +25,15 @@ import java.util.Arrays;
  */
 public class OutputByteBuffer {
 
-  byte[] data = new byte[128];
+  private static final int INITIAL_SIZE = 128;
+
+  /**
+   * A buffer grown larger than this by an exceptionally large row is not kept
+   * for the next rows.
+   */
+  public static final int MAX_RETAINED_SIZE = 1024 * 1024;
+
+  byte[] data = new byte[INITIAL_SIZE];
   int length;
 
   /**
@@ -33,6 +41,9 @@ public class OutputByteBuffer {
    */
   public void reset() {
     length = 0;
+    if (data.length > MAX_RETAINED_SIZE) {
+      data = new byte[INITIAL_SIZE];
+    }
   }
 
   public final void write(byte b) {
@@ -142,6 +142,14 @@ public class ColumnarSerDe implements SerDe {
     return cachedLazyStruct;
   }
 
+  /**
+   * @return the parameters of the SerDe, e.g. to decode the cells of a column
+   *         without the lazy objects
+   */
+  public SerDeParameters getSerdeParams() {
+    return serdeParams;
+  }
+
   /**
    * Returns the ObjectInspector for the row.
    */
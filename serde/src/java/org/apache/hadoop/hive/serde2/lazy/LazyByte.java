@@ -48,11 +48,10 @@ public class LazyByte extends
 
   @Override
   public void init(ByteArrayRef bytes, int start, int length) {
-    try {
-      data.set(parseByte(bytes.getData(), start, length, 10));
-      isNull = false;
-    } catch (NumberFormatException e) {
-      isNull = true;
+    long value = LazyInteger.parse(bytes.getData(), start, length, 10);
+    isNull = value != (byte) value;
+    if (!isNull) {
+      data.set((byte) value);
     }
   }
 
@@ -30,6 +30,24 @@ import org.apache.hadoop.io.Text;
 public class LazyDouble extends
     LazyPrimitive<LazyDoubleObjectInspector, DoubleWritable> {
 
+  // the powers of ten which are exact doubles
+  private static final double[] POWERS_OF_TEN = new double[23];
+  // the powers of ten which are exact floats
+  private static final float[] FLOAT_POWERS_OF_TEN = new float[11];
+  static {
+    double p = 1;
+    for (int i = 0; i < POWERS_OF_TEN.length; i++) {
+      POWERS_OF_TEN[i] = p;
+      if (i < FLOAT_POWERS_OF_TEN.length) {
+        FLOAT_POWERS_OF_TEN[i] = (float) p;
+      }
+      p *= 10;
+    }
+  }
+
+  // the significands of more digits are parsed by Double.parseDouble()
+  private static final int MAX_SIGNIFICAND_DIGITS = 18;
+
   public LazyDouble(LazyDoubleObjectInspector oi) {
     super(oi);
     data = new DoubleWritable();
@@ -42,13 +60,143 @@ public class LazyDouble extends
 
   @Override
   public void init(ByteArrayRef bytes, int start, int length) {
+    isNull = !parse(bytes.getData(), start, length, false, data);
+  }
+
+  /**
+   * Parses the string argument as Double.parseDouble() or Float.parseFloat()
+   * do, without creating a string or an exception for the plain decimal
+   * numbers and the malformed values.
+   * 
+   * A decimal number whose significand and power of ten are both exact
+   * doubles (floats) is computed with a single rounded multiplication or
+   * division, which gives the correctly rounded value as the JDK does. The
+   * other numbers are parsed by the JDK.
+   * 
+   * @param bytes
+   * @param start
+   * @param length
+   *          a UTF-8 encoded string representation of a double quantity.
+   * @param isFloat
+   *          whether the value is rounded to a float
+   * @param result
+   *          set to the value represented by the argument
+   * @return false if the argument could not be parsed as a double quantity,
+   *         in which case result is unchanged
+   */
+  public static boolean parse(byte[] bytes, int start, int length, boolean isFloat,
+      DoubleWritable result) {
+    int end = start + length;
+    int i = start;
+    boolean negative = false;
+    if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+      negative = bytes[i] == '-';
+      i++;
+    }
+
+    long significand = 0;
+    int numDigits = 0;
+    int significantDigits = 0;
+    int exponent = 0;
+    boolean fraction = false;
+    for (; i < end; i++) {
+      byte b = bytes[i];
+      if (b == '.' && !fraction) {
+        fraction = true;
+        continue;
+      }
+      int digit = b - '0';
+      if (digit < 0 || digit > 9) {
+        break;
+      }
+      numDigits++;
+      if (significand != 0 || digit != 0) {
+        if (++significantDigits > MAX_SIGNIFICAND_DIGITS) {
+          return parseString(bytes, start, length, isFloat, result);
+        }
+        significand = significand * 10 + digit;
+      }
+      if (fraction) {
+        exponent--;
+      }
+    }
+    if (numDigits == 0) {
+      return parseString(bytes, start, length, isFloat, result);
+    }
+
+    if (i < end && (bytes[i] == 'e' || bytes[i] == 'E')) {
+      i++;
+      boolean negativeExponent = false;
+      if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+        negativeExponent = bytes[i] == '-';
+        i++;
+      }
+      int exponentStart = i;
+      int e = 0;
+      for (; i < end && i - exponentStart < 4; i++) {
+        int digit = bytes[i] - '0';
+        if (digit < 0 || digit > 9) {
+          break;
+        }
+        e = e * 10 + digit;
+      }
+      if (i == exponentStart) {
+        return parseString(bytes, start, length, isFloat, result);
+      }
+      exponent += negativeExponent ? -e : e;
+    }
+    if (i != end) {
+      return parseString(bytes, start, length, isFloat, result);
+    }
+
+    double value;
+    if (significand == 0) {
+      value = 0;
+    } else if (isFloat) {
+      if (significand > (1L << 24) || exponent > 10 || exponent < -10) {
+        return parseString(bytes, start, length, isFloat, result);
+      }
+      value = exponent >= 0 ? (float) significand * FLOAT_POWERS_OF_TEN[exponent]
+          : (float) significand / FLOAT_POWERS_OF_TEN[-exponent];
+    } else {
+      if (significand > (1L << 53) || exponent > 22 || exponent < -22) {
+        return parseString(bytes, start, length, isFloat, result);
+      }
+      value = exponent >= 0 ? significand * POWERS_OF_TEN[exponent]
+          : significand / POWERS_OF_TEN[-exponent];
+    }
+    result.set(negative ? -value : value);
+    return true;
+  }
+
+  private static boolean parseString(byte[] bytes, int start, int length,
+      boolean isFloat, DoubleWritable result) {
+    // after the spaces and the sign, Double.parseDouble() only accepts a
+    // digit, a point, NaN or Infinity
+    int end = start + length;
+    int i = start;
+    while (i < end && (bytes[i] & 0xff) <= ' ') {
+      i++;
+    }
+    if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+      i++;
+    }
+    if (i == end) {
+      return false;
+    }
+    byte b = bytes[i];
+    if ((b < '0' || b > '9') && b != '.' && b != 'N' && b != 'I') {
+      return false;
+    }
+
     try {
-      data.set(Double.parseDouble(Text.decode(bytes.getData(), start, length)));
-      isNull = false;
+      String s = Text.decode(bytes, start, length);
+      result.set(isFloat ? Float.parseFloat(s) : Double.parseDouble(s));
+      return true;
     } catch (NumberFormatException e) {
-      isNull = true;
+      return false;
     } catch (CharacterCodingException e) {
-      isNull = true;
+      return false;
     }
   }
 
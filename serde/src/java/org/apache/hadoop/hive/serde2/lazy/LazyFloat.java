@@ -17,11 +17,9 @@
  */
 package org.apache.hadoop.hive.serde2.lazy;
 
-import java.nio.charset.CharacterCodingException;
-
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
 import org.apache.hadoop.hive.serde2.lazy.objectinspector.primitive.LazyFloatObjectInspector;
 import org.apache.hadoop.io.FloatWritable;
-import org.apache.hadoop.io.Text;
 
 /**
  * LazyObject for storing a value of Double.
@@ -30,6 +28,9 @@ import org.apache.hadoop.io.Text;
 public class LazyFloat extends
     LazyPrimitive<LazyFloatObjectInspector, FloatWritable> {
 
+  // the value parsed, exactly a float
+  private final DoubleWritable parsed = new DoubleWritable();
+
   public LazyFloat(LazyFloatObjectInspector oi) {
     super(oi);
     data = new FloatWritable();
@@ -42,13 +43,9 @@ public class LazyFloat extends
 
   @Override
   public void init(ByteArrayRef bytes, int start, int length) {
-    try {
-      data.set(Float.parseFloat(Text.decode(bytes.getData(), start, length)));
-      isNull = false;
-    } catch (NumberFormatException e) {
-      isNull = true;
-    } catch (CharacterCodingException e) {
-      isNull = true;
+    isNull = !LazyDouble.parse(bytes.getData(), start, length, true, parsed);
+    if (!isNull) {
+      data.set((float) parsed.get());
     }
   }
 
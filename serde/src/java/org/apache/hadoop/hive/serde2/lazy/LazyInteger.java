@@ -39,6 +39,10 @@ import org.apache.hadoop.io.IntWritable;
 public class LazyInteger extends
     LazyPrimitive<LazyIntObjectInspector, IntWritable> {
 
+  // returned by parse() for the bytes which are not an int, out of the range
+  // of the int values
+  static final long INVALID = Long.MAX_VALUE;
+
   public LazyInteger(LazyIntObjectInspector oi) {
     super(oi);
     data = new IntWritable();
@@ -51,11 +55,10 @@ public class LazyInteger extends
 
   @Override
   public void init(ByteArrayRef bytes, int start, int length) {
-    try {
-      data.set(parseInt(bytes.getData(), start, length, 10));
-      isNull = false;
-    } catch (NumberFormatException e) {
-      isNull = true;
+    long value = parse(bytes.getData(), start, length, 10);
+    isNull = value == INVALID;
+    if (!isNull) {
+      data.set((int) value);
     }
   }
 
@@ -102,20 +105,18 @@ public class LazyInteger extends
     if (length == 0) {
       throw new NumberFormatException("Empty string!");
     }
-    int offset = start;
-    boolean negative = bytes[start] == '-';
-    if (negative || bytes[start] == '+') {
-      offset++;
-      if (length == 1) {
-        throw new NumberFormatException(LazyUtils.convertToString(bytes, start,
-            length));
-      }
+    long value = parse(bytes, start, length, radix);
+    if (value == INVALID) {
+      throw new NumberFormatException(LazyUtils.convertToString(bytes, start,
+          length));
     }
-
-    return parse(bytes, start, length, offset, radix, negative);
+    return (int) value;
   }
 
   /**
+   * Parses the string argument as if it was an int value, without throwing:
+   * the lazy objects see many malformed values, e.g. the null sequence, for
+   * which creating an exception costs more than the parsing.
    * 
    * @param bytes
    * @param start
@@ -123,42 +124,39 @@ public class LazyInteger extends
    *          a UTF-8 encoded string representation of an int quantity.
    * @param radix
    *          the base to use for conversion.
-   * @param offset
-   *          the starting position after the sign (if exists)
-   * @param radix
-   *          the base to use for conversion.
-   * @param negative
-   *          whether the number is negative.
-   * @return the value represented by the argument
-   * @exception NumberFormatException
-   *              if the argument could not be parsed as an int quantity.
+   * @return the value represented by the argument, or INVALID if it could not
+   *         be parsed as an int quantity
    */
-  private static int parse(byte[] bytes, int start, int length, int offset,
-      int radix, boolean negative) {
+  static long parse(byte[] bytes, int start, int length, int radix) {
+    if (length == 0) {
+      return INVALID;
+    }
+    int offset = start;
+    boolean negative = bytes[start] == '-';
+    if (negative || bytes[start] == '+') {
+      offset++;
+      if (length == 1) {
+        return INVALID;
+      }
+    }
+
     int max = Integer.MIN_VALUE / radix;
     int result = 0, end = start + length;
     while (offset < end) {
       int digit = LazyUtils.digit(bytes[offset++], radix);
-      if (digit == -1) {
-        throw new NumberFormatException(LazyUtils.convertToString(bytes, start,
-            length));
-      }
-      if (max > result) {
-        throw new NumberFormatException(LazyUtils.convertToString(bytes, start,
-            length));
+      if (digit == -1 || max > result) {
+        return INVALID;
       }
       int next = result * radix - digit;
       if (next > result) {
-        throw new NumberFormatException(LazyUtils.convertToString(bytes, start,
-            length));
+        return INVALID;
       }
       result = next;
     }
     if (!negative) {
       result = -result;
       if (result < 0) {
-        throw new NumberFormatException(LazyUtils.convertToString(bytes, start,
-            length));
+        return INVALID;
       }
     }
     return result;
@@ -51,12 +51,7 @@ public class LazyLong extends
 
   @Override
   public void init(ByteArrayRef bytes, int start, int length) {
-    try {
-      data.set(parseLong(bytes.getData(), start, length, 10));
-      isNull = false;
-    } catch (NumberFormatException e) {
-      isNull = true;
-    }
+    isNull = !parse(bytes.getData(), start, length, 10, data);
   }
 
   /**
@@ -102,64 +97,65 @@ public class LazyLong extends
     if (length == 0) {
       throw new NumberFormatException("Empty string!");
     }
-    int offset = start;
-    boolean negative = bytes[start] == '-';
-    if (negative || bytes[start] == '+') {
-      offset++;
-      if (length == 1) {
-        throw new NumberFormatException(LazyUtils.convertToString(bytes, start,
-            length));
-      }
+    LongWritable result = new LongWritable();
+    if (!parse(bytes, start, length, radix, result)) {
+      throw new NumberFormatException(LazyUtils.convertToString(bytes, start,
+          length));
     }
-
-    return parse(bytes, start, length, offset, radix, negative);
+    return result.get();
   }
 
   /**
-   * /** Parses the string argument as if it was an long value and returns the
-   * result. Throws NumberFormatException if the string does not represent an
-   * long quantity. The second argument specifies the radix to use when parsing
-   * the value.
+   * Parses the string argument as if it was a long value, without throwing:
+   * the lazy objects see many malformed values, e.g. the null sequence, for
+   * which creating an exception costs more than the parsing.
    * 
    * @param bytes
    * @param start
    * @param length
    *          a UTF-8 encoded string representation of a long quantity.
-   * @param offset
-   *          the starting position after the sign (if exists)
    * @param radix
    *          the base to use for conversion.
-   * @param negative
-   *          whether the number is negative.
-   * @return the value represented by the argument
-   * @exception NumberFormatException
-   *              if the argument could not be parsed as an long quantity.
+   * @param result
+   *          set to the value represented by the argument
+   * @return false if the argument could not be parsed as a long quantity, in
+   *         which case result is unchanged
    */
-  private static long parse(byte[] bytes, int start, int length, int offset,
-      int radix, boolean negative) {
+  public static boolean parse(byte[] bytes, int start, int length, int radix,
+      LongWritable result) {
+    if (length == 0) {
+      return false;
+    }
+    int offset = start;
+    boolean negative = bytes[start] == '-';
+    if (negative || bytes[start] == '+') {
+      offset++;
+      if (length == 1) {
+        return false;
+      }
+    }
+
     long max = Long.MIN_VALUE / radix;
-    long result = 0, end = start + length;
+    long value = 0, end = start + length;
     while (offset < end) {
       int digit = LazyUtils.digit(bytes[offset++], radix);
-      if (digit == -1 || max > result) {
-        throw new NumberFormatException(LazyUtils.convertToString(bytes, start,
-            length));
+      if (digit == -1 || max > value) {
+        return false;
       }
-      long next = result * radix - digit;
-      if (next > result) {
-        throw new NumberFormatException(LazyUtils.convertToString(bytes, start,
-            length));
+      long next = value * radix - digit;
+      if (next > value) {
+        return false;
       }
-      result = next;
+      value = next;
     }
     if (!negative) {
-      result = -result;
-      if (result < 0) {
-        throw new NumberFormatException(LazyUtils.convertToString(bytes, start,
-            length));
+      value = -value;
+      if (value < 0) {
+        return false;
       }
     }
-    return result;
+    result.set(value);
+    return true;
   }
 
   /**
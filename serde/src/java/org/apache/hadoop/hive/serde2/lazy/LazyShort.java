@@ -48,11 +48,10 @@ public class LazyShort extends
 
   @Override
   public void init(ByteArrayRef bytes, int start, int length) {
-    try {
-      data.set(parseShort(bytes.getData(), start, length));
-      isNull = false;
-    } catch (NumberFormatException e) {
-      isNull = true;
+    long value = LazyInteger.parse(bytes.getData(), start, length, 10);
+    isNull = value != (short) value;
+    if (!isNull) {
+      data.set((short) value);
     }
   }
 
@@ -35,6 +35,7 @@ import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
 import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory.ObjectInspectorOptions;
 import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.WritableComparator;
 
 /**
  * TestBinarySortableSerDe.
@@ -85,6 +86,8 @@ public class TestBinarySortableSerDe extends TestCase {
       bytes[i].set(s);
       if (i > 0) {
         int compareResult = bytes[i - 1].compareTo(bytes[i]);
+        assertKeyPrefixOrder(bytes[i - 1].getBytes(), 0, bytes[i - 1].getLength(),
+            bytes[i].getBytes(), 0, bytes[i].getLength());
         if ((compareResult < 0 && !ascending)
             || (compareResult > 0 && ascending)) {
           System.out.println("Test failed in "
@@ -120,6 +123,41 @@ public class TestBinarySortableSerDe extends TestCase {
     }
   }
 
+  /**
+   * Assert that KeyPrefix orders two keys as they compare byte by byte.
+   */
+  private void assertKeyPrefixOrder(byte[] b1, int s1, int l1, byte[] b2,
+      int s2, int l2) {
+    int expected = Integer.signum(WritableComparator.compareBytes(b1, s1, l1,
+        b2, s2, l2));
+    assertEquals(expected, Integer.signum(KeyPrefix.compare(b1, s1, l1, b2, s2, l2)));
+    assertEquals(-expected, Integer.signum(KeyPrefix.compare(b2, s2, l2, b1, s1, l1)));
+  }
+
+  public void testKeyPrefix() throws Throwable {
+    Random r = new Random(4321);
+    byte[][] keys = new byte[200][];
+    for (int i = 0; i < keys.length; i++) {
+      // few distinct bytes, so that the keys share long prefixes
+      keys[i] = new byte[r.nextInt(3 * KeyPrefix.BYTES)];
+      for (int j = 0; j < keys[i].length; j++) {
+        keys[i][j] = (byte) (r.nextInt(3) == 0 ? 0xff : r.nextInt(2));
+      }
+    }
+    byte[] buffer = new byte[4 * KeyPrefix.BYTES];
+    for (int i = 0; i < keys.length; i++) {
+      for (int j = 0; j < keys.length; j++) {
+        assertKeyPrefixOrder(keys[i], 0, keys[i].length, keys[j], 0,
+            keys[j].length);
+      }
+      // at an unaligned offset in a larger buffer
+      int start = 1 + r.nextInt(KeyPrefix.BYTES);
+      System.arraycopy(keys[i], 0, buffer, start, keys[i].length);
+      assertEquals(0, KeyPrefix.compare(keys[i], 0, keys[i].length, buffer,
+          start, keys[i].length));
+    }
+  }
+
   private void sort(Object[] structs, ObjectInspector oi) {
     for (int i = 0; i < structs.length; i++) {
       for (int j = i + 1; j < structs.length; j++) {
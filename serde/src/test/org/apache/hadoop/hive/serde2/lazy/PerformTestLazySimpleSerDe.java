@@ -0,0 +1,125 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hive.serde2.lazy;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.serde.Constants;
+import org.apache.hadoop.hive.serde2.objectinspector.StructField;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.io.Text;
+
+/**
+ * PerformTestLazySimpleSerDe. Measures the time LazySimpleSerDe takes to
+ * deserialize delimited rows and parse all their fields, for typical rows
+ * of numbers, strings and nulls.
+ *
+ * Run with: PerformTestLazySimpleSerDe [-rows n] [-iterations n]
+ */
+public class PerformTestLazySimpleSerDe {
+
+  private static final String COLUMNS =
+      "atinyint,asmallint,aint,abigint,afloat,adouble,astring,anullint,abaddouble";
+  private static final String COLUMN_TYPES =
+      "tinyint:smallint:int:bigint:float:double:string:int:double";
+
+  private final Random r = new Random(11);
+
+  private Text[] createRows(int numRows) {
+    Text[] rows = new Text[numRows];
+    for (int i = 0; i < numRows; i++) {
+      StringBuilder sb = new StringBuilder();
+      sb.append(r.nextInt(256) - 128).append('\t');
+      sb.append(r.nextInt(65536) - 32768).append('\t');
+      sb.append(r.nextInt()).append('\t');
+      sb.append(r.nextLong()).append('\t');
+      sb.append(r.nextInt(100000) / 100.0f).append('\t');
+      sb.append(r.nextInt(10000000) / 1000.0).append('\t');
+      sb.append("value_").append(r.nextInt(1000)).append('\t');
+      sb.append(i % 3 == 0 ? "\\N" : String.valueOf(i)).append('\t');
+      sb.append(i % 5 == 0 ? "n/a" : "\\N");
+      rows[i] = new Text(sb.toString());
+    }
+    return rows;
+  }
+
+  /**
+   * @return the nanoseconds taken to deserialize the rows and parse all
+   *         their fields
+   */
+  private long run(LazySimpleSerDe serDe, Text[] rows) throws Exception {
+    StructObjectInspector oi = (StructObjectInspector) serDe.getObjectInspector();
+    List<? extends StructField> fields = oi.getAllStructFieldRefs();
+    int nulls = 0;
+    long start = System.nanoTime();
+    for (Text row : rows) {
+      Object struct = serDe.deserialize(row);
+      for (StructField field : fields) {
+        Object data = oi.getStructFieldData(struct, field);
+        if (data == null || ((LazyPrimitive<?, ?>) data).getWritableObject() == null) {
+          nulls++;
+        }
+      }
+    }
+    long time = System.nanoTime() - start;
+    if (nulls < 0) {
+      // keep the results alive
+      System.out.println(nulls);
+    }
+    return time;
+  }
+
+  public static void main(String[] args) throws Exception {
+    int numRows = 100000;
+    int iterations = 20;
+    for (int i = 0; i < args.length; ++i) {
+      if (args[i].equals("-rows")) {
+        numRows = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-iterations")) {
+        iterations = Integer.parseInt(args[++i]);
+      }
+    }
+
+    PerformTestLazySimpleSerDe test = new PerformTestLazySimpleSerDe();
+    Properties tbl = new Properties();
+    tbl.setProperty(Constants.SERIALIZATION_FORMAT, "9");
+    tbl.setProperty("columns", COLUMNS);
+    tbl.setProperty("columns.types", COLUMN_TYPES);
+    LazySimpleSerDe serDe = new LazySimpleSerDe();
+    serDe.initialize(new Configuration(), tbl);
+    Text[] rows = test.createRows(numRows);
+
+    // warm up, then keep the best of the measured iterations
+    for (int i = 0; i < iterations; i++) {
+      test.run(serDe, rows);
+    }
+    long best = Long.MAX_VALUE;
+    long total = 0;
+    for (int i = 0; i < iterations; i++) {
+      long time = test.run(serDe, rows);
+      best = Math.min(best, time);
+      total += time;
+    }
+    System.out.println("Rows: " + numRows + ", iterations: " + iterations);
+    System.out.println("Best: " + (best / numRows) + " ns/row, average: "
+        + (total / iterations / numRows) + " ns/row");
+  }
+}
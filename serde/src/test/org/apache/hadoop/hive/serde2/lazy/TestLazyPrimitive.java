@@ -353,6 +353,67 @@ public class TestLazyPrimitive extends TestCase {
     }
   }
 
+  private static void assertParsedAsJdk(LazyDouble d, LazyFloat f, String s)
+      throws Exception {
+    byte[] bytes = ("x" + s + "y").getBytes("UTF-8");
+    initLazyObject(d, bytes, 1, bytes.length - 2);
+    initLazyObject(f, bytes, 1, bytes.length - 2);
+    Double expectedDouble = null;
+    Float expectedFloat = null;
+    try {
+      expectedDouble = Double.parseDouble(s);
+      expectedFloat = Float.parseFloat(s);
+    } catch (NumberFormatException e) {
+      // null
+    }
+    // compare the bits, as NaN is not equal to itself
+    if (expectedDouble == null) {
+      assertNull(s, d.getWritableObject());
+      assertNull(s, f.getWritableObject());
+    } else {
+      assertEquals(s, Double.doubleToLongBits(expectedDouble),
+          Double.doubleToLongBits(d.getWritableObject().get()));
+      assertEquals(s, Float.floatToIntBits(expectedFloat),
+          Float.floatToIntBits(f.getWritableObject().get()));
+    }
+  }
+
+  /**
+   * Test that LazyDouble and LazyFloat parse as the JDK does.
+   */
+  public void testLazyDoubleFloatParsing() throws Throwable {
+    LazyDouble d = new LazyDouble(
+        LazyPrimitiveObjectInspectorFactory.LAZY_DOUBLE_OBJECT_INSPECTOR);
+    LazyFloat f = new LazyFloat(
+        LazyPrimitiveObjectInspectorFactory.LAZY_FLOAT_OBJECT_INSPECTOR);
+    String[] values = {"", "\\N", "-", "+", ".", "-.", "1.", ".5", "-.5e1",
+        "1e", "1e+", "1e-5", "1E22", "1e23", "9007199254740993", "16777217",
+        "0.1", "0.3", "3.4028235e38", "1.4e-45", "4.9e-324", "1.7976931348623157e308",
+        "123456789012345678", "1234567890123456789", "0000000000000000000001.5",
+        "1.2.3", "1e00001", " 1.5", "1.5 ", "1.5d", "2f", "0x1p3", "NaN", "-Infinity",
+        "abc", "1,5", "--1", "+-1", "1e-0", "-0", "-0.0", "0e999999"};
+    for (String s : values) {
+      assertParsedAsJdk(d, f, s);
+    }
+    java.util.Random r = new java.util.Random(17);
+    for (int i = 0; i < 20000; i++) {
+      StringBuilder sb = new StringBuilder();
+      if (r.nextBoolean()) {
+        sb.append('-');
+      }
+      sb.append(r.nextInt(r.nextBoolean() ? 100 : Integer.MAX_VALUE));
+      if (r.nextBoolean()) {
+        sb.append('.').append(r.nextInt(1000000));
+      }
+      if (r.nextInt(4) == 0) {
+        sb.append('e').append(r.nextInt(60) - 30);
+      }
+      assertParsedAsJdk(d, f, sb.toString());
+      assertParsedAsJdk(d, f, Double.toString(r.nextDouble() * Math.pow(10, r.nextInt(40) - 20)));
+      assertParsedAsJdk(d, f, Float.toString(r.nextFloat() * r.nextInt(100000)));
+    }
+  }
+
   /**
    * Test the LazyString class.
    */